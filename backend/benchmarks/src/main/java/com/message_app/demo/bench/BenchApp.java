@@ -0,0 +1,32 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.MessengerAppApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Boots the real application (H2, write-behind writer, audit journal) for benchmarks that need
+ * Spring-managed beans. Uses the {@code bench} profile: random port, quiet logs, no fsync.
+ */
+final class BenchApp {
+
+    private BenchApp() { }
+
+    static ConfigurableApplicationContext start() {
+        Path audit;
+        try {
+            audit = Files.createTempDirectory("bench-audit");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SpringApplicationBuilder(MessengerAppApplication.class)
+                .profiles("bench")
+                .properties("chat.audit.dir=" + audit)
+                .run();
+    }
+}
@@ -0,0 +1,108 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.chat.api.DmWebSocketController;
+import com.message_app.demo.chat.application.DeliveryCursors;
+import com.message_app.demo.chat.application.DmNotifications;
+import com.message_app.demo.chat.application.DmService;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.chat.application.MessageAuditLog;
+import com.message_app.demo.chat.application.MessageSearch;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.realtime.FanOut;
+import com.message_app.demo.realtime.OnlineUserRegistry;
+import com.message_app.demo.realtime.UserSubscriptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.file.AccessDeniedException;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code DmWebSocketController.send} end to end: DM lookup, write-behind append, audit record,
+ * history cache, unread counter, inbox summary, search index hand-off, JSON conversion of the DM
+ * (once for both participants), two broker sends and the recipient's notifier. Every send goes to the same
+ * conversation, so after the first one per window the notifier is coalesced, as in a burst.
+ *
+ * The broker is stubbed with a channel that only consumes the converted message, so the numbers
+ * are the controller's own cost. Persistence is real: once the writer's queue is full, sends are
+ * paced by the background flush to H2, which is part of what this measures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DmSendBenchmark {
+
+    /** Broker stand-in: accepts everything, keeps nothing. */
+    static final class NullChannel implements MessageChannel {
+        private final Blackhole bh;
+
+        NullChannel(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public boolean send(Message<?> message, long timeout) {
+            bh.consume(message);
+            return true;
+        }
+    }
+
+    private ConfigurableApplicationContext app;
+    private DmWebSocketController controller;
+    private final Principal alice = () -> "alice";
+    private final DmWebSocketController.ChatIn in = new DmWebSocketController.ChatIn("hello there, how are you?");
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole bh) {
+        app = BenchApp.start();
+        SimpMessagingTemplate broker = new SimpMessagingTemplate(new NullChannel(bh));
+        broker.setMessageConverter(app.getBean("brokerMessageConverter", MessageConverter.class));
+        controller = new DmWebSocketController(
+                new FanOut(broker, app.getBean(MetricsRegistry.class)),
+                app.getBean(DmService.class),
+                app.getBean(MessageWriter.class),
+                app.getBean(OnlineUserRegistry.class),
+                app.getBean(MessageAuditLog.class),
+                app.getBean(HistoryService.class),
+                app.getBean(UnreadCounters.class),
+                app.getBean(InboxService.class),
+                app.getBean(MessageSearch.class),
+                app.getBean(DmNotifications.class),
+                app.getBean(DeliveryCursors.class),
+                app.getBean(UserSubscriptions.class),
+                app.getBean(MetricsRegistry.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+    }
+
+    @Benchmark
+    public void send() throws AccessDeniedException {
+        controller.send("bob", in, alice);
+    }
+}
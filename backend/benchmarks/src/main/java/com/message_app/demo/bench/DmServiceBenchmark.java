@@ -0,0 +1,66 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.chat.application.DmService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code DmService.getOrCreateDmId} against the application's H2 database.
+ *
+ *  - {@link #existingDm()}: the steady state of a send, served by the dmKey cache.
+ *  - {@link #newDm()}: a never-seen pair every time: cache miss, lookup, insert of the
+ *    conversation and both members.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DmServiceBenchmark {
+
+    private ConfigurableApplicationContext app;
+    private DmService dms;
+    private final AtomicLong users = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        app = BenchApp.start();
+        dms = app.getBean(DmService.class);
+        dms.getOrCreateDmId("alice", "bob");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+    }
+
+    @Benchmark
+    public Long existingDm() {
+        return dms.getOrCreateDmId("alice", "bob");
+    }
+
+    @Benchmark
+    public Long newDm() {
+        return dms.getOrCreateDmId("alice", "user-" + users.incrementAndGet());
+    }
+
+    @Benchmark
+    public boolean userExists() {
+        return dms.userExists("bob");
+    }
+}
@@ -0,0 +1,135 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.realtime.FanOut;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.TextMessage;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per delivered message of the broadcast paths. Every benchmark declares how many messages one
+ * invocation delivers, so with {@code -prof gc} {@code gc.alloc.rate.norm} is bytes per delivery.
+ *
+ *  - {@link #dmConvertPerRecipient()}: the old DM path, {@code convertAndSendToUser} to sender and
+ *    recipient, i.e. two JSON serializations of the same message.
+ *  - {@link #dmEncodeOnce()}: {@link FanOut#encode} once, {@link FanOut#toUser} twice.
+ *  - {@link #topicFanOut()}: one message through the real simple broker to {@value #SUBSCRIBERS}
+ *    subscribed sessions; each frame is then STOMP-encoded into a {@link TextMessage} as the
+ *    session handler does, so this is the whole per-subscriber cost of a large room or
+ *    {@code /topic/public}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+    static final int SUBSCRIBERS = 100;
+    private static final String TOPIC = "/topic/room/1";
+
+    private SimpMessagingTemplate userTemplate;
+    private FanOut userFanOut;
+    private FanOut topicFanOut;
+    private SimpleBrokerMessageHandler broker;
+    private MessageDto dto;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(Jackson2ObjectMapperBuilder.json().build());
+        dto = new MessageDto(123_456L, 42L, "alice", "hello there, how are you?",
+                Instant.now().truncatedTo(ChronoUnit.MICROS));
+
+        // DM paths: the broker channel only consumes what the template hands it
+        userTemplate = new SimpMessagingTemplate(new DmSendBenchmark.NullChannel(bh));
+        userTemplate.setMessageConverter(converter);
+        userFanOut = new FanOut(userTemplate, new MetricsRegistry());
+
+        // Topic path: template -> simple broker -> per-session frame encoding
+        StompEncoder encoder = new StompEncoder();
+        MessageChannel sessions = (message, timeout) -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return true;
+            StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+            accessor.updateStompCommandAsServerMessage(); // as StompSubProtocolHandler does for broker messages
+            accessor.setNativeHeader("message-id", accessor.getSessionId() + "-" + accessor.getId());
+            bh.consume(new TextMessage(encoder.encode(accessor.getMessageHeaders(), (byte[]) message.getPayload())));
+            return true;
+        };
+        broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), sessions,
+                new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.start();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            // The broker only delivers to sessions it saw connect
+            SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+            connect.setSessionId("s" + i);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId("s" + i);
+            subscribe.setSubscriptionId("sub-0");
+            subscribe.setDestination(TOPIC);
+            broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+        SimpMessagingTemplate topicTemplate = new SimpMessagingTemplate((Message<?> message, long timeout) -> {
+            broker.handleMessage(message);
+            return true;
+        });
+        topicTemplate.setMessageConverter(converter);
+        topicFanOut = new FanOut(topicTemplate, new MetricsRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void dmConvertPerRecipient() {
+        userTemplate.convertAndSendToUser("alice", "/queue/dm/42", dto);
+        userTemplate.convertAndSendToUser("bob", "/queue/dm/42", dto);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void dmEncodeOnce() {
+        FanOut.Encoded encoded = userFanOut.encode(dto);
+        userFanOut.toUser("alice", "/queue/dm/42", encoded);
+        userFanOut.toUser("bob", "/queue/dm/42", encoded);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBSCRIBERS)
+    public void topicFanOut() {
+        topicFanOut.toTopic(TOPIC, topicFanOut.encode(dto));
+    }
+}
@@ -0,0 +1,114 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.chat.infrastructure.ws.InboundRateLimiter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link InboundRateLimiter#preSend} on a client SEND frame, in ns per frame.
+ *
+ * The limiter only reads headers, so frames are built once in setup and this measures the
+ * limiter alone. {@link #baseline()} is the header reads any interceptor does (message type,
+ * user, destination) and is the number to subtract.
+ *  - {@link #allowed()}: limits far above the send rate; the production case.
+ *  - {@link #refused()}: limits far below it; every frame is refused (notices off: no broker here).
+ *  - {@link #allowedManyUsers()}: 10,000 users, so bucket lookups miss the CPU cache like a busy node.
+ *  - {@link #allowedContended()}: 4 threads sending as one user; CAS retries on the same buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboundRateLimiterBenchmark {
+    private static final byte[] BODY = "{\"content\":\"hello there\"}".getBytes(StandardCharsets.UTF_8);
+    private static final String RULES = "/app/message:5:20,/app/dm/{user}/send:10:30,/app/room/{id}/send:10:30";
+    private static final int USERS = 10_000;
+
+    private final MessageChannel channel = new ExecutorSubscribableChannel();
+    private InboundRateLimiter open;
+    private InboundRateLimiter closed;
+    private Message<byte[]> frame;
+    private Message<?>[] userFrames;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        String generous = RULES.replaceAll(":\\d+:\\d+", ":1e9:1000000");
+        open = new InboundRateLimiter(new MetricsRegistry(), () -> null, () -> 0,
+                true, 1e9, 1_000_000, generous, 10_000, 0, 1000);
+        closed = new InboundRateLimiter(new MetricsRegistry(), () -> null, () -> 0,
+                true, 1e-6, 1, RULES, 10_000, 0, 1000);
+        frame = sendFrame("alice", "/app/dm/bob/send");
+        closed.preSend(frame, channel); // use up the single token
+        userFrames = new Message<?>[USERS];
+        for (int i = 0; i < USERS; i++) userFrames[i] = sendFrame("user" + i, "/app/dm/bob/send");
+    }
+
+    @Benchmark
+    public Object baseline() {
+        MessageHeaders headers = frame.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) == null) return null;
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        return user != null ? user.getName() : SimpMessageHeaderAccessor.getDestination(headers);
+    }
+
+    @Benchmark
+    public Message<?> allowed() {
+        return open.preSend(frame, channel);
+    }
+
+    @Benchmark
+    public Message<?> refused() {
+        return closed.preSend(frame, channel);
+    }
+
+    @Benchmark
+    public Message<?> allowedManyUsers(Cursor c) {
+        Message<?> m = userFrames[c.next];
+        c.next = c.next + 1 == USERS ? 0 : c.next + 1;
+        return open.preSend(m, channel);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message<?> allowedContended() {
+        return open.preSend(frame, channel);
+    }
+
+    private static Message<byte[]> sendFrame(String user, String destination) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setSessionId("s-" + user);
+        acc.setUser(new UsernamePasswordAuthenticationToken(user, "N/A"));
+        acc.setDestination(destination);
+        return MessageBuilder.createMessage(BODY, acc.getMessageHeaders());
+    }
+}
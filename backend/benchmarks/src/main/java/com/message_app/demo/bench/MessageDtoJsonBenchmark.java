@@ -0,0 +1,84 @@
+package com.message_app.demo.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.realtime.Cbor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and CBOR encoding of the DM payload.
+ *
+ *  - {@link #objectMapper()}: Jackson alone, configured like the application's ObjectMapper.
+ *  - {@link #messageConverter()}: what {@code SimpMessagingTemplate.convertAndSend} does per
+ *    recipient (converter lookup, headers, Message allocation, encoding).
+ *  - {@link #cborFromJson()}: what {@code CompactPayloads} does on a cache miss (JSON bytes to CBOR);
+ *    {@link #cborFromDto()} is {@code CborMessageConverter}'s direct path, for comparison.
+ * {@link #sizes()} prints the payload size of both formats once per fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageDtoJsonBenchmark {
+
+    private ObjectMapper mapper;
+    private MappingJackson2MessageConverter converter;
+    private MessageDto dto;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(mapper);
+        dto = new MessageDto(123_456L, 42L, "alice", "hello there, how are you?",
+                Instant.now().truncatedTo(ChronoUnit.MICROS));
+        json = objectMapper();
+        sizes();
+    }
+
+    private void sizes() throws IOException {
+        System.out.printf("%nMessageDto: json=%d bytes, cbor=%d bytes%n", json.length, cborFromJson().length);
+    }
+
+    @Benchmark
+    public byte[] objectMapper() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(dto);
+    }
+
+    @Benchmark
+    public byte[] cborFromJson() throws IOException {
+        return Cbor.encode(mapper.readTree(json));
+    }
+
+    @Benchmark
+    public byte[] cborFromDto() {
+        return Cbor.encode(mapper.valueToTree(dto));
+    }
+
+    @Benchmark
+    public Message<?> messageConverter() {
+        return converter.toMessage(dto, SimpMessageHeaderAccessor.create().getMessageHeaders());
+    }
+}
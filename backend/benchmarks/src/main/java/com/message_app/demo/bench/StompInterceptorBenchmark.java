@@ -0,0 +1,140 @@
+package com.message_app.demo.bench;
+
+import com.message_app.demo.auth.infrastructure.security.JwtService;
+import com.message_app.demo.chat.infrastructure.ws.ClientIdMdcInterceptor;
+import com.message_app.demo.chat.infrastructure.ws.StompAuthChannelInterceptor;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound channel interceptors, one STOMP frame per operation.
+ *
+ * {@code preSend} reads and mutates the frame's header accessor, so every invocation gets a fresh
+ * frame; {@link #buildSendFrame()} / {@link #buildConnectFrame()} measure that construction alone
+ * and are the baselines to subtract.
+ *
+ * {@link #authSendAttached()} is the production case: Spring's STOMP handler stamps the session's
+ * principal on every frame after CONNECT. Run with {@code -prof gc}; its allocation rate per op
+ * should match {@link #buildAttachedSendFrame()}, i.e. the interceptor itself allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StompInterceptorBenchmark {
+    private static final String SECRET = "YWJjZGVmZ2hpamtsbW5vcHFyc3R1dnd4eXowMTIzNDU2Nzg5YWJjZGVmZ2g=";
+    private static final byte[] BODY = "{\"content\":\"hello there\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final MessageChannel channel = new ExecutorSubscribableChannel();
+    private StompAuthChannelInterceptor auth;
+    private ClientIdMdcInterceptor mdc;
+    private String bearer;
+    private Map<String, Object> sessionAttributes;
+    private Principal principal;
+
+    @Setup
+    public void setup() {
+        JwtService jwt = new JwtService(SECRET);
+        auth = new StompAuthChannelInterceptor(jwt, new MetricsRegistry());
+        mdc = new ClientIdMdcInterceptor();
+        bearer = "Bearer " + jwt.issue("alice", List.of("ROLE_USER"), 3600);
+        sessionAttributes = new HashMap<>();
+        // What a connected session carries after CONNECT went through the interceptor
+        principal = new UsernamePasswordAuthenticationToken("alice", "N/A");
+        sessionAttributes.put("auth", principal);
+    }
+
+    @Benchmark
+    public Message<?> buildConnectFrame() {
+        return connectFrame();
+    }
+
+    @Benchmark
+    public Message<?> buildSendFrame() {
+        return sendFrame(null);
+    }
+
+    @Benchmark
+    public Message<?> buildAttachedSendFrame() {
+        return sendFrame(principal);
+    }
+
+    /** CONNECT: JWT verification + principal attached to the session. */
+    @Benchmark
+    public Message<?> authConnect() {
+        return auth.preSend(connectFrame(), channel);
+    }
+
+    /** SEND without a principal on the frame: restored from session attributes (fallback path). */
+    @Benchmark
+    public Message<?> authSend() {
+        return auth.preSend(sendFrame(null), channel);
+    }
+
+    /** SEND on an established session, principal already on the frame (fast path). */
+    @Benchmark
+    public Message<?> authSendAttached() {
+        return auth.preSend(sendFrame(principal), channel);
+    }
+
+    @Benchmark
+    public Message<?> mdcSend() {
+        Message<?> m = mdc.preSend(sendFrame(null), channel);
+        mdc.afterSendCompletion(m, channel, true, null);
+        return m;
+    }
+
+    /** Both interceptors in registration order, as the inbound channel runs them. */
+    @Benchmark
+    public Message<?> chainSend() {
+        Message<?> m = mdc.preSend(auth.preSend(sendFrame(principal), channel), channel);
+        mdc.afterSendCompletion(m, channel, true, null);
+        return m;
+    }
+
+    private Message<byte[]> connectFrame() {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.CONNECT);
+        acc.setSessionId("s1");
+        acc.setSessionAttributes(new HashMap<>());
+        acc.addNativeHeader("accept-version", "1.2");
+        acc.addNativeHeader("Authorization", bearer);
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+    }
+
+    private Message<byte[]> sendFrame(Principal user) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setSessionId("s1");
+        acc.setUser(user);
+        acc.setSessionAttributes(sessionAttributes);
+        acc.setDestination("/app/dm/bob/send");
+        acc.addNativeHeader("x-client-id", "tab-1");
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(BODY, acc.getMessageHeaders());
+    }
+}
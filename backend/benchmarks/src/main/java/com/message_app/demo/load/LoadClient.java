@@ -0,0 +1,188 @@
+package com.message_app.demo.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One simulated user: a STOMP session plus the subscriptions the frontend makes.
+ *
+ * Every message it sends carries {@code lg:<System.nanoTime()>:<padding>} as content; receivers in
+ * the same JVM turn that into send-to-receive latency. Sends on one session are serialized, since
+ * a WebSocket session does not allow concurrent writes.
+ */
+final class LoadClient extends StompSessionHandlerAdapter {
+    private static final String STAMP = "lg:";
+
+    private final String user;
+    private final String partner;
+    private final LoadStats stats;
+    private final String padding;
+    private final ConcurrentLinkedQueue<Long> openStarted = new ConcurrentLinkedQueue<>();
+    private volatile StompSession session;
+    private volatile Long conversationId;
+
+    LoadClient(String user, String partner, LoadStats stats, int payloadBytes) {
+        this.user = user;
+        this.partner = partner;
+        this.stats = stats;
+        this.padding = "x".repeat(Math.max(0, payloadBytes - 24));
+    }
+
+    String user() {
+        return user;
+    }
+
+    boolean connected() {
+        return session != null && session.isConnected();
+    }
+
+    CompletableFuture<StompSession> connect(WebSocketStompClient client, String endpoint, String token) {
+        StompHeaders connect = new StompHeaders();
+        connect.add("Authorization", "Bearer " + token);
+        connect.add("x-client-id", user);
+        return client.connectAsync(endpoint, new WebSocketHttpHeaders(), connect, this);
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        synchronized (this) {
+            session.subscribe("/topic/public", handler(this::onPublic));
+            session.subscribe("/user/queue/dm/open", handler(this::onOpen));
+            this.session = session;
+        }
+    }
+
+    void run(LoadConfig.Op op) {
+        switch (op) {
+            case PUBLIC -> publicMessage();
+            case OPEN -> open();
+            case SEND -> {
+                if (conversationId == null) open(); // the DM has to exist before we can watch it
+                else dm();
+            }
+        }
+    }
+
+    void open() {
+        openStarted.add(System.nanoTime());
+        send("/app/dm/" + partner + "/open", Map.of());
+    }
+
+    void disconnect() {
+        StompSession s = session;
+        if (s != null && s.isConnected()) s.disconnect();
+    }
+
+    private void publicMessage() {
+        send("/app/message", Map.of("content", stamp()));
+    }
+
+    private void dm() {
+        send("/app/dm/" + partner + "/send", Map.of("content", stamp()));
+    }
+
+    private void send(String destination, Object payload) {
+        StompSession s = session;
+        if (s == null || !s.isConnected()) {
+            stats.sendErrors.increment();
+            return;
+        }
+        try {
+            synchronized (this) {
+                s.send(destination, payload);
+            }
+            stats.sent.increment();
+        } catch (RuntimeException e) {
+            stats.sendErrors.increment();
+        }
+    }
+
+    // === Inbound ===
+
+    private void onPublic(JsonNode m) {
+        stats.received.increment();
+        recordStamp(LoadStats.Kind.PUBLIC, m.path("content").asText());
+    }
+
+    private void onOpen(JsonNode m) {
+        stats.received.increment();
+        Long started = openStarted.poll();
+        if (!m.hasNonNull("conversationId")) {
+            stats.openErrors.increment();
+            return;
+        }
+        if (started != null) stats.record(LoadStats.Kind.OPEN, System.nanoTime() - started);
+        if (conversationId == null) {
+            long id = m.get("conversationId").asLong();
+            synchronized (this) {
+                if (conversationId == null) {
+                    session.subscribe("/user/queue/dm/" + id, handler(this::onDm));
+                    conversationId = id;
+                }
+            }
+        }
+    }
+
+    private void onDm(JsonNode m) {
+        stats.received.increment();
+        if (!user.equals(m.path("sender").asText())) recordStamp(LoadStats.Kind.SEND, m.path("content").asText());
+    }
+
+    private void recordStamp(LoadStats.Kind kind, String content) {
+        if (!content.startsWith(STAMP)) return; // someone else's traffic
+        int end = content.indexOf(':', STAMP.length());
+        try {
+            long sentAt = Long.parseLong(content.substring(STAMP.length(), end < 0 ? content.length() : end));
+            stats.record(kind, System.nanoTime() - sentAt);
+        } catch (NumberFormatException ignored) {
+            // not one of ours
+        }
+    }
+
+    private String stamp() {
+        return STAMP + System.nanoTime() + ":" + padding;
+    }
+
+    // === Errors ===
+
+    /** ERROR frames from the server. */
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        stats.stompErrors.increment();
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+        stats.stompErrors.increment();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        stats.transportErrors.increment();
+    }
+
+    private static StompFrameHandler handler(java.util.function.Consumer<JsonNode> onMessage) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                onMessage.accept((JsonNode) payload);
+            }
+        };
+    }
+}
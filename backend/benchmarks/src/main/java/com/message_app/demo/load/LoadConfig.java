@@ -0,0 +1,92 @@
+package com.message_app.demo.load;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line options of {@link LoadGenerator}, all {@code --name=value}.
+ *
+ * @param baseUrl        application root, e.g. {@code http://localhost:8080}
+ * @param transport      {@code websocket} ({@code /ws}), {@code sockjs} ({@code /chat}) or {@code sockjs-websocket}
+ *                       (the SockJS endpoint's raw WebSocket URL, {@code /chat/websocket})
+ * @param users          concurrent STOMP sessions; users are paired (user-0 with user-1, ...) for DMs
+ * @param connectRate    new sessions per second while ramping up
+ * @param ratePerUser    operations per second per user
+ * @param mix            relative weights of {@code public} / {@code open} / {@code send}
+ * @param warmup         traffic before the histograms are reset
+ * @param duration       measured traffic
+ * @param reportInterval how often to print an interval line
+ * @param payloadBytes   approximate message size
+ */
+record LoadConfig(String baseUrl, String transport, int users, int connectRate, double ratePerUser,
+                  Map<Op, Integer> mix, Duration warmup, Duration duration, Duration reportInterval,
+                  int payloadBytes) {
+
+    enum Op { PUBLIC, OPEN, SEND }
+
+    static final String USAGE = """
+            Usage: java -cp benchmarks.jar com.message_app.demo.load.LoadGenerator [--option=value ...]
+              --url=http://localhost:8080   application under test
+              --transport=websocket         websocket | sockjs | sockjs-websocket
+              --users=1000                  concurrent STOMP sessions (paired for DMs)
+              --connect-rate=200            sessions opened per second during ramp-up
+              --rate=1                      operations per second per user
+              --mix=public:10,open:5,send:85
+              --warmup=10s --duration=60s --report=5s
+              --payload=64                  message size in bytes
+            """;
+
+    static LoadConfig parse(String[] args) {
+        Map<String, String> o = new LinkedHashMap<>();
+        for (String a : args) {
+            if (a.equals("--help") || a.equals("-h")) throw new IllegalArgumentException(USAGE);
+            if (!a.startsWith("--") || !a.contains("=")) throw new IllegalArgumentException("Bad option " + a + "\n" + USAGE);
+            o.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+        }
+        String transport = o.getOrDefault("transport", "websocket");
+        if (!transport.equals("websocket") && !transport.equals("sockjs") && !transport.equals("sockjs-websocket")) {
+            throw new IllegalArgumentException("--transport must be websocket, sockjs or sockjs-websocket");
+        }
+        int users = Integer.parseInt(o.getOrDefault("users", "1000"));
+        if (users < 2) throw new IllegalArgumentException("--users must be >= 2");
+        return new LoadConfig(
+                o.getOrDefault("url", "http://localhost:8080").replaceAll("/+$", ""),
+                transport,
+                users,
+                Integer.parseInt(o.getOrDefault("connect-rate", "200")),
+                Double.parseDouble(o.getOrDefault("rate", "1")),
+                mix(o.getOrDefault("mix", "public:10,open:5,send:85")),
+                duration(o.getOrDefault("warmup", "10s")),
+                duration(o.getOrDefault("duration", "60s")),
+                duration(o.getOrDefault("report", "5s")),
+                Integer.parseInt(o.getOrDefault("payload", "64")));
+    }
+
+    String endpoint() {
+        String ws = baseUrl.replaceFirst("^http", "ws");
+        return switch (transport) {
+            case "sockjs" -> baseUrl + "/chat";
+            case "sockjs-websocket" -> ws + "/chat/websocket";
+            default -> ws + "/ws";
+        };
+    }
+
+    private static Map<Op, Integer> mix(String s) {
+        Map<Op, Integer> m = new LinkedHashMap<>();
+        for (String part : s.split(",")) {
+            String[] kv = part.trim().split(":");
+            m.put(Op.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        if (m.values().stream().mapToInt(Integer::intValue).sum() <= 0) throw new IllegalArgumentException("--mix needs a positive weight");
+        return m;
+    }
+
+    private static Duration duration(String s) {
+        s = s.trim();
+        if (s.endsWith("ms")) return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+        if (s.endsWith("s")) return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1)));
+        if (s.endsWith("m")) return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1)));
+        return Duration.ofSeconds(Long.parseLong(s));
+    }
+}
@@ -0,0 +1,184 @@
+package com.message_app.demo.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator: many concurrent STOMP sessions against a running backend.
+ *
+ * Phases:
+ *  1) ramp-up: every user logs in via {@code /auth/dev-login} and connects ({@code --connect-rate} per second),
+ *     subscribing to {@code /topic/public} and {@code /user/queue/dm/open};
+ *  2) every user opens the DM with its partner and subscribes to {@code /user/queue/dm/{id}};
+ *  3) traffic: each user runs {@code --rate} operations per second, picked by {@code --mix};
+ *     after {@code --warmup} the numbers are reset and {@code --duration} is measured.
+ *
+ * Prints an interval line every {@code --report} and a final summary with send-to-receive latency
+ * percentiles (HdrHistogram), throughput and error counts. See {@link LoadConfig#USAGE}.
+ */
+public final class LoadGenerator {
+
+    private LoadGenerator() { }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig cfg;
+        try {
+            cfg = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new Run(cfg).execute();
+        System.exit(0);
+    }
+
+    private static final class Run {
+        private final LoadConfig cfg;
+        private final LoadStats stats = new LoadStats();
+        private final HttpClient http = HttpClient.newHttpClient();
+        private final ObjectMapper json = new ObjectMapper();
+        private final List<LoadClient> clients = new ArrayList<>();
+        private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        Run(LoadConfig cfg) {
+            this.cfg = cfg;
+        }
+
+        void execute() throws Exception {
+            ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+            heartbeats.setPoolSize(2);
+            heartbeats.setThreadNamePrefix("lg-heartbeat-");
+            heartbeats.initialize();
+
+            WebSocketClient ws = new StandardWebSocketClient();
+            if (cfg.transport().equals("sockjs")) ws = new SockJsClient(List.of(new WebSocketTransport(ws)));
+            WebSocketStompClient stomp = new WebSocketStompClient(ws);
+            stomp.setMessageConverter(new CompositeMessageConverter(
+                    List.of(new StringMessageConverter(), new MappingJackson2MessageConverter()))); // text ERROR frames, JSON otherwise
+            stomp.setTaskScheduler(heartbeats);
+            stomp.setDefaultHeartbeat(new long[]{10_000, 10_000});
+
+            System.out.printf("load: %d users via %s, %.2f ops/s each, mix=%s, warmup=%ss, duration=%ss%n",
+                    cfg.users(), cfg.endpoint(), cfg.ratePerUser(), cfg.mix(),
+                    cfg.warmup().toSeconds(), cfg.duration().toSeconds());
+
+            connectAll(stomp);
+            for (LoadClient c : clients) if (c.connected()) c.open();
+            Thread.sleep(2_000);
+
+            ScheduledExecutorService traffic = Executors.newScheduledThreadPool(
+                    Math.max(2, Runtime.getRuntime().availableProcessors()));
+            startTraffic(traffic);
+
+            long warmupEnd = System.nanoTime() + cfg.warmup().toNanos();
+            report(warmupEnd, false);
+            stats.reset();
+            long start = System.nanoTime();
+            report(start + cfg.duration().toNanos(), true);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            traffic.shutdownNow();
+            Thread.sleep(1_000); // let in-flight messages arrive
+            stats.roll(true);
+            stats.printSummary(System.out, seconds);
+
+            clients.forEach(LoadClient::disconnect);
+            heartbeats.shutdown();
+        }
+
+        private void connectAll(WebSocketStompClient stomp) throws InterruptedException {
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, cfg.connectRate());
+            long next = System.nanoTime();
+            for (int i = 0; i < cfg.users(); i++) {
+                String user = "lg-" + runId + "-" + i;
+                String partner = "lg-" + runId + "-" + ((i ^ 1) < cfg.users() ? (i ^ 1) : i - 1);
+                LoadClient c = new LoadClient(user, partner, stats, cfg.payloadBytes());
+                clients.add(c);
+                try {
+                    pending.add(c.connect(stomp, cfg.endpoint(), login(user))
+                            .whenComplete((s, e) -> (e == null ? stats.connected : stats.connectErrors).increment()));
+                } catch (IOException | RuntimeException e) {
+                    stats.connectErrors.increment();
+                }
+                next += intervalNanos;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            try {
+                CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // counted per session above
+            }
+            System.out.printf("connected %d/%d sessions (%d failed)%n", stats.connected.sum(), cfg.users(), stats.connectErrors.sum());
+        }
+
+        private void startTraffic(ScheduledExecutorService traffic) {
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / cfg.ratePerUser());
+            int totalWeight = cfg.mix().values().stream().mapToInt(Integer::intValue).sum();
+            for (LoadClient c : clients) {
+                if (!c.connected()) continue;
+                long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos); // spread users over the period
+                traffic.scheduleAtFixedRate(() -> c.run(pick(totalWeight)), initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private LoadConfig.Op pick(int totalWeight) {
+            int r = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Map.Entry<LoadConfig.Op, Integer> e : cfg.mix().entrySet()) {
+                r -= e.getValue();
+                if (r < 0) return e.getKey();
+            }
+            return LoadConfig.Op.SEND;
+        }
+
+        /** Print interval lines until {@code untilNanos}. */
+        private void report(long untilNanos, boolean measured) throws InterruptedException {
+            System.out.println(measured ? "-- measuring --" : "-- warming up --");
+            long sent = stats.sent.sum(), received = stats.received.sum();
+            while (System.nanoTime() < untilNanos) {
+                long t0 = System.nanoTime();
+                TimeUnit.NANOSECONDS.sleep(Math.min(cfg.reportInterval().toNanos(), untilNanos - t0));
+                double seconds = (System.nanoTime() - t0) / 1e9;
+                stats.roll(measured);
+                long s = stats.sent.sum(), r = stats.received.sum();
+                stats.printInterval(System.out, seconds, s - sent, r - received);
+                sent = s;
+                received = r;
+            }
+        }
+
+        private String login(String user) throws IOException, InterruptedException {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(cfg.baseUrl() + "/auth/dev-login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json.writeValueAsString(Map.of("username", user))))
+                    .build();
+            HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+            if (res.statusCode() != 200) throw new IOException("dev-login " + user + ": HTTP " + res.statusCode());
+            return json.readTree(res.body()).get("token").asText();
+        }
+    }
+}
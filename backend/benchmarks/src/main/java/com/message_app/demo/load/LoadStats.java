@@ -0,0 +1,115 @@
+package com.message_app.demo.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters shared by all {@link LoadClient}s.
+ *
+ * Latencies are recorded in microseconds into HdrHistogram {@link Recorder}s, which are safe for
+ * concurrent writers and hand out interval histograms without stopping them. Every interval is
+ * also added to a cumulative histogram for the final summary.
+ */
+final class LoadStats {
+
+    /** What a latency sample measures. */
+    enum Kind {
+        /** {@code /app/message} until each {@code /topic/public} subscriber receives it. */
+        PUBLIC,
+        /** {@code /app/dm/{user}/open} until the reply on {@code /user/queue/dm/open}. */
+        OPEN,
+        /** {@code /app/dm/{user}/send} until the recipient receives it. */
+        SEND
+    }
+
+    private static final long MAX_LATENCY_US = TimeUnit.MINUTES.toMicros(5);
+
+    private final Map<Kind, Recorder> recorders = new EnumMap<>(Kind.class);
+    private final Map<Kind, Histogram> total = new EnumMap<>(Kind.class);
+    private final Map<Kind, Histogram> interval = new EnumMap<>(Kind.class);
+
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectErrors = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder sendErrors = new LongAdder();
+    final LongAdder stompErrors = new LongAdder();
+    final LongAdder transportErrors = new LongAdder();
+    final LongAdder openErrors = new LongAdder();
+
+    LoadStats() {
+        for (Kind k : Kind.values()) {
+            recorders.put(k, new Recorder(MAX_LATENCY_US, 3));
+            total.put(k, new Histogram(MAX_LATENCY_US, 3));
+        }
+    }
+
+    void record(Kind kind, long latencyNanos) {
+        long us = Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_US));
+        recorders.get(kind).recordValue(us);
+    }
+
+    /** Swap interval histograms; returns false while warming up to discard the samples. */
+    synchronized void roll(boolean keep) {
+        for (Kind k : Kind.values()) {
+            Histogram h = recorders.get(k).getIntervalHistogram(interval.get(k));
+            interval.put(k, h);
+            if (keep) total.get(k).add(h);
+        }
+    }
+
+    synchronized void reset() {
+        roll(false);
+        total.values().forEach(Histogram::reset);
+        sent.reset();
+        received.reset();
+        sendErrors.reset();
+        stompErrors.reset();
+        transportErrors.reset();
+        openErrors.reset();
+    }
+
+    synchronized void printInterval(PrintStream out, double seconds, long sentDelta, long receivedDelta) {
+        StringBuilder line = new StringBuilder(String.format("%8.0f sent/s %9.0f recv/s", sentDelta / seconds, receivedDelta / seconds));
+        for (Kind k : Kind.values()) {
+            Histogram h = interval.get(k);
+            if (h == null || h.getTotalCount() == 0) continue;
+            line.append(String.format(" | %s p50=%s p99=%s max=%s", k.name().toLowerCase(),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99)), ms(h.getMaxValue())));
+        }
+        line.append(String.format(" | errors=%d", errors()));
+        out.println(line);
+    }
+
+    synchronized void printSummary(PrintStream out, double seconds) {
+        out.println();
+        out.printf("sessions: %d connected, %d failed to connect%n", connected.sum(), connectErrors.sum());
+        out.printf("throughput: %.0f sent/s, %.0f received/s over %.0fs%n", sent.sum() / seconds, received.sum() / seconds, seconds);
+        out.printf("errors: send=%d stomp=%d transport=%d open=%d (%.3f%% of sends)%n",
+                sendErrors.sum(), stompErrors.sum(), transportErrors.sum(), openErrors.sum(),
+                sent.sum() == 0 ? 0.0 : 100.0 * errors() / sent.sum());
+        out.println();
+        out.printf("%-8s %10s %9s %9s %9s %9s %9s %9s%n", "latency", "count", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        for (Kind k : Kind.values()) {
+            Histogram h = total.get(k);
+            out.printf("%-8s %10d %9s %9s %9s %9s %9s %9s%n", k.name().toLowerCase(), h.getTotalCount(),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)),
+                    ms(h.getValueAtPercentile(99.9)), ms(h.getValueAtPercentile(99.99)), ms(h.getMaxValue()));
+        }
+        out.println("(milliseconds)");
+    }
+
+    private long errors() {
+        return sendErrors.sum() + stompErrors.sum() + transportErrors.sum() + openErrors.sum();
+    }
+
+    private static String ms(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+}
@@ -2,8 +2,10 @@ package com.message_app.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MessengerAppApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(MessengerAppApplication.class, args);
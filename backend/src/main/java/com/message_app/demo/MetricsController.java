@@ -0,0 +1,28 @@
+package com.message_app.demo;
+
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/** Prometheus scrape endpoint. */
+@RestController
+class MetricsController {
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain;version=0.0.4;charset=utf-8");
+
+    private final MetricsRegistry metrics;
+
+    MetricsController(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping("/metrics")
+    ResponseEntity<String> scrape() throws IOException {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        metrics.scrape(out);
+        return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(out.toString());
+    }
+}
@@ -0,0 +1,57 @@
+package com.message_app.demo.auth.infrastructure.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Authenticates HTTP requests that carry {@code Authorization: Bearer <JWT>}, with the same tokens
+ * the STOMP CONNECT uses, so REST handlers can take a {@link java.security.Principal}.
+ *
+ * Requests without the header stay anonymous (endpoints that need a user answer 401 themselves);
+ * a header with an invalid or expired token is rejected with 401 right here.
+ * Not a bean on purpose: Spring Boot would also register it as a plain servlet filter.
+ */
+class BearerTokenFilter extends OncePerRequestFilter {
+    private static final String PREFIX = "Bearer ";
+
+    private final JwtService jwt;
+
+    BearerTokenFilter(JwtService jwt) {
+        this.jwt = jwt;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authz = request.getHeader("Authorization");
+        if (authz == null || !authz.startsWith(PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String username;
+        try {
+            Jws<Claims> jws = jwt.parse(authz.substring(PREFIX.length()).trim());
+            username = jwt.userName(jws);
+        } catch (JwtException | IllegalArgumentException e) {
+            username = null;
+        }
+        if (username == null || username.isBlank()) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid bearer token");
+            return;
+        }
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+        chain.doFilter(request, response);
+    }
+}
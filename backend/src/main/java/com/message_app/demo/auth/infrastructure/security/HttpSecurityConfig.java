@@ -4,12 +4,13 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
 public class HttpSecurityConfig {
 
     @Bean
-    SecurityFilterChain httpSecurity(HttpSecurity http) throws Exception {
+    SecurityFilterChain httpSecurity(HttpSecurity http, JwtService jwt) throws Exception {
         http
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
@@ -18,11 +19,14 @@ public class HttpSecurityConfig {
                                 "/auth/**", "/", "/index.html", "/favicon.ico",
                                 "/static/**", "/assets/**",
                                 "/chat/**",
+                                "/ws",
                                 "/actuator/**",
                                 "/auth/dev-login"
                         ).permitAll()
                         .anyRequest().permitAll() // or .authenticated() if you plan real HTTP auth
                 )
+                // Bearer JWT (same token as the STOMP CONNECT) gives REST handlers a Principal
+                .addFilterBefore(new BearerTokenFilter(jwt), UsernamePasswordAuthenticationFilter.class)
                 // Disable browser login prompts
                 .httpBasic(basic -> basic.disable())
                 .formLogin(form -> form.disable());
@@ -13,6 +13,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Small utility service for parsing and validating JWTs using the JJWT library.
@@ -22,32 +23,85 @@ import java.util.Map;
  *  - Extract specific claims (username/roles).
  * Note: Right now we hard-code HS256 with a simple secret. In production,
  *       use a longer secret loaded from environment or keystore.
+ *
+ * Performance:
+ *  - The {@link JwtParser} is immutable and thread-safe, so it is built once instead of per call.
+ *  - Verified tokens are kept in a bounded {@link VerifiedTokenCache} until they expire, so a mass
+ *    reconnect presenting the same tokens does not redo the HMAC and JSON work for each CONNECT.
+ *  - {@link #stats()} feeds the {@code chat_jwt_*} metrics registered in {@link SecurityBeans}.
  */
 public class JwtService {
+    /** Counters since startup; verification time only covers the full (cache miss) path. */
+    public record Stats(long cacheSize, long cacheHits, long cacheMisses, long cacheEvictions,
+                        long verified, long rejected, long verifyNanos) { }
+
+    private static final int DEFAULT_CACHE_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_CACHE_MAX_TTL_MS = 15 * 60_000L;
+
     private final Key key;
+    private final JwtParser parser;
+    private final VerifiedTokenCache cache; // null = disabled
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder verifyNanos = new LongAdder();
     private static final Logger log = LoggerFactory.getLogger(JwtService.class);
 
     /**
-     * Construct service with a secret key.
+     * Construct service with a secret key and the default verified-token cache.
      * @param secret - must be >= 256 bits for HS256
      */
     public JwtService(String secret) {
+        this(secret, DEFAULT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_TTL_MS);
+    }
+
+    /**
+     * @param cacheMaxEntries - verified tokens to remember; 0 disables the cache
+     * @param cacheMaxTtlMs   - upper bound on how long a verified token is trusted without re-checking
+     */
+    public JwtService(String secret, int cacheMaxEntries, long cacheMaxTtlMs) {
         //this.key = Keys.hmacShaKeyFor(secret.getBytes());
         this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)); // decode base64 before creating a key.
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.cache = cacheMaxEntries > 0 && cacheMaxTtlMs > 0
+                ? new VerifiedTokenCache(cacheMaxEntries, cacheMaxTtlMs) : null;
     }
 
     /**
      * Parse and validate a JWT.
+     * The returned claims may be shared with other callers presenting the same token; treat them as read-only.
      * @param rawToken - the raw "eyJ..." string
      * @return verified Jws<Claims> if valid; throws if invalid/expired
      */
     public Jws<Claims> parse(String rawToken) {
-        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(rawToken);
+        long now = System.currentTimeMillis();
+        if (cache != null) {
+            Jws<Claims> hit = cache.get(rawToken, now);
+            if (hit != null) return hit;
+        }
+        long start = System.nanoTime();
+        Jws<Claims> jws;
+        try {
+            jws = parser.parseClaimsJws(rawToken);
+        } catch (RuntimeException e) {
+            rejected.increment();
+            throw e;
+        } finally {
+            verifyNanos.add(System.nanoTime() - start);
+        }
+        verified.increment();
+        if (cache != null) cache.put(rawToken, jws, now);
+        return jws;
+    }
+
+    public Stats stats() {
+        VerifiedTokenCache.Stats c = cache != null ? cache.stats() : new VerifiedTokenCache.Stats(0, 0, 0, 0);
+        return new Stats(c.size(), c.hits(), c.misses(), c.evictions(),
+                verified.sum(), rejected.sum(), verifyNanos.sum());
     }
 
     public String userName(Jws<Claims> jws) {
         String username = jws.getBody().getSubject();
-        log.info("JwtService: extracted username='{}' from JWT id={}", username, jws.getBody().getId());
+        log.debug("JwtService: extracted username='{}' from JWT id={}", username, jws.getBody().getId());
         //return jws.getBody().getSubject();
         return username;
     }
@@ -1,6 +1,9 @@
 package com.message_app.demo.auth.infrastructure.security;
 
 import com.message_app.demo.auth.infrastructure.security.JwtService;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,13 +11,35 @@ import org.springframework.context.annotation.Configuration;
 /**
  * Spring @Configuration class for providing security-related beans.
  * Right now it exposes JwtService as a singleton managed by Spring,
- * so it can be injected into interceptors/controllers.
+ * so it can be injected into interceptors/controllers, and registers its
+ * verification counters ({@code chat_jwt_*}) with the metrics registry.
  */
 @Configuration
 public class SecurityBeans {
+    private static final Logger log = LoggerFactory.getLogger(SecurityBeans.class);
+
     @Bean
-    public JwtService jwtService(@Value("${jwt.secret}") String secret) {
-        System.out.println("Loaded JWT secret from Spring: " + secret);
-        return new JwtService(secret);
+    public JwtService jwtService(@Value("${jwt.secret}") String secret,
+                                 @Value("${jwt.cache.max-entries:10000}") int cacheMaxEntries,
+                                 @Value("${jwt.cache.max-ttl-ms:900000}") long cacheMaxTtlMs,
+                                 MetricsRegistry metrics) {
+        // Never the key itself: only that one was configured
+        log.info("event=jwt_key_loaded cache_max_entries={} cache_max_ttl_ms={}", cacheMaxEntries, cacheMaxTtlMs);
+        JwtService jwt = new JwtService(secret, cacheMaxEntries, cacheMaxTtlMs);
+        metrics.counter("chat_jwt_verifications_total", "Tokens checked by signature and claims",
+                () -> jwt.stats().verified(), "result", "valid");
+        metrics.counter("chat_jwt_verifications_total", "Tokens checked by signature and claims",
+                () -> jwt.stats().rejected(), "result", "invalid");
+        metrics.counter("chat_jwt_verification_seconds_total", "Time spent verifying tokens on a cache miss",
+                () -> jwt.stats().verifyNanos() / 1e9);
+        metrics.counter("chat_jwt_cache_hits_total", "Tokens served from the verified-token cache",
+                () -> jwt.stats().cacheHits());
+        metrics.counter("chat_jwt_cache_misses_total", "Tokens not found in the verified-token cache",
+                () -> jwt.stats().cacheMisses());
+        metrics.counter("chat_jwt_cache_evictions_total", "Verified tokens evicted to stay within max-entries",
+                () -> jwt.stats().cacheEvictions());
+        metrics.gauge("chat_jwt_cache_size", "Verified tokens currently cached",
+                () -> jwt.stats().cacheSize());
+        return jwt;
     }
 }
@@ -0,0 +1,117 @@
+package com.message_app.demo.auth.infrastructure.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of tokens whose signature and claims were already verified, used by {@link JwtService}.
+ *
+ * Why:
+ *  - After a deploy every client reconnects with the token it already had. Verifying the same
+ *    token again means Base64 + JSON parsing + HMAC each time; a hit is one SHA-256 and a map lookup.
+ *
+ * How:
+ *  - Keyed by the SHA-256 of the raw token, so no bearer credential is kept in memory.
+ *  - An entry is valid until the token's {@code exp}, capped at {@code maxTtlMs} after it was
+ *    verified; expired entries are never returned and are removed when found.
+ *  - Eviction is CLOCK (second chance), as in {@code DmConversationCache}: reads set a reference bit
+ *    and never lock; a sweep past {@code maxEntries} drops unreferenced and expired entries.
+ *  - Only successful verifications are cached; an invalid token always takes the full path.
+ */
+class VerifiedTokenCache {
+
+    /** Snapshot of the cache counters. */
+    record Stats(long size, long hits, long misses, long evictions) { }
+
+    private record Key(long a, long b, long c, long d) { }
+
+    private static final class Entry {
+        final Jws<Claims> jws;
+        final long expiresAtMs;
+        volatile boolean referenced;
+
+        Entry(Jws<Claims> jws, long expiresAtMs) {
+            this.jws = jws;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Entry> map = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long maxTtlMs;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private Iterator<Map.Entry<Key, Entry>> hand; // guarded by "this"
+
+    VerifiedTokenCache(int maxEntries, long maxTtlMs) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.maxEntries = maxEntries;
+        this.maxTtlMs = maxTtlMs;
+    }
+
+    /** @return the verified token, or null on a miss or if it expired since */
+    Jws<Claims> get(String rawToken, long nowMs) {
+        Key key = key(rawToken);
+        Entry e = map.get(key);
+        if (e == null || e.expiresAtMs <= nowMs) {
+            if (e != null) map.remove(key, e);
+            misses.increment();
+            return null;
+        }
+        if (!e.referenced) e.referenced = true; // avoid a volatile write on every hit
+        hits.increment();
+        return e.jws;
+    }
+
+    void put(String rawToken, Jws<Claims> jws, long nowMs) {
+        long expiresAt = nowMs + maxTtlMs;
+        if (jws.getBody().getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, jws.getBody().getExpiration().getTime());
+        }
+        if (expiresAt <= nowMs) return;
+        if (map.put(key(rawToken), new Entry(jws, expiresAt)) == null && map.size() > maxEntries) {
+            evict(nowMs);
+        }
+    }
+
+    Stats stats() {
+        return new Stats(map.size(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private synchronized void evict(long nowMs) {
+        // Bounded sweep: at most two passes over the map (first pass may only clear bits)
+        int budget = 2 * map.size() + 1;
+        while (map.size() > maxEntries && budget-- > 0) {
+            if (hand == null || !hand.hasNext()) hand = map.entrySet().iterator();
+            if (!hand.hasNext()) return;
+            Map.Entry<Key, Entry> candidate = hand.next();
+            Entry e = candidate.getValue();
+            if (e.referenced && e.expiresAtMs > nowMs) {
+                e.referenced = false;
+            } else if (map.remove(candidate.getKey(), e)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static Key key(String rawToken) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // mandatory on every JVM
+        }
+        ByteBuffer d = ByteBuffer.wrap(sha256.digest(rawToken.getBytes(StandardCharsets.US_ASCII)));
+        return new Key(d.getLong(), d.getLong(), d.getLong(), d.getLong());
+    }
+}
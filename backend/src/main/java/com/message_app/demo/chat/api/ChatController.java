@@ -2,22 +2,29 @@ package com.message_app.demo.chat.api;
 
 //import com.message_app.demo.chat.api.dto.ChatMessage;
 import com.message_app.demo.chat.api.dto.MessageDto;
-import com.message_app.demo.chat.domain.Message;
+import com.message_app.demo.chat.api.dto.MessagePage;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.MessageSearch;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.chat.application.PublicRoomService;
+import com.message_app.demo.chat.infrastructure.persistence.ConversationMemberRepository;
 import com.message_app.demo.chat.infrastructure.persistence.ConversationRepository;
-import com.message_app.demo.chat.infrastructure.persistence.MessageRepository;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import com.message_app.demo.realtime.FanOut;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 //@Controller
 @RestController
@@ -30,50 +37,98 @@ public class ChatController {
      * Flow:
      *  1) Client publishes to STOMP destination: `/app/message`
      //*  2) Spring routes to {@link #handle(ChatMessage, Principal)}
-     *  3) Controller forwards payload to broker destination `/topic/public`
+     *  3) Controller hands the message to the write-behind writer (public room conversation)
+     *  4) Controller forwards the stored MessageDto to broker destination `/topic/public`
      *
      * Notes:
      *  - `principal.getName()` comes from the authenticated STOMP session (JWT subject),
      *    set by your `StompAuthChannelInterceptor`.
-     *  - `SimpMessagingTemplate.convertAndSend` sends to a *topic* (publish/subscribe),
-     *    so all clients subscribed to `/topic/public` receive the message.
+     *  - {@link FanOut#toTopic} sends to a *topic* (publish/subscribe), so all clients subscribed
+     *    to `/topic/public` receive the message; it is serialized once for all of them.
+     *  - History and reconnect replay of the public room are served by {@link PublicRoomController}.
      */
 
-    private final MessageRepository messages;
     private final ConversationRepository  convs;
+    private final ConversationMemberRepository members;
     private static final Logger log = LoggerFactory.getLogger(ChatController.class);
-    private final SimpMessagingTemplate simp;
+    private final FanOut fanOut;
+    private final HistoryService history;
+    private final PublicRoomService publicRoom;
+    private final MessageWriter messages;
+    private final MessageSearch search;
+    private final Timer publicFanOut;
 
+    /** Newest messages of a DM or room the caller belongs to (needs {@code Authorization: Bearer <JWT>}). */
     @GetMapping("/{conversationId}/messages")
-    public List<MessageDto> recent(@PathVariable Long conversationId, @RequestParam(defaultValue = "50") int limit) {
+    public ResponseEntity<?> recent(@PathVariable Long conversationId, @RequestParam(defaultValue = "50") int limit,
+                                    Principal principal) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            requireReadable(conversationId, principal.getName());
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
         log.info("📥 [GET MESSAGES] Fetching last {} messages for conversationId={}", limit, conversationId);
-        var list = messages.findTopByConversationIdOrderBySentAtDesc(conversationId, Pageable.ofSize(limit));
-        log.debug("📄 [GET MESSAGES] Fetched {} messages from DB", list.size());
+        List<MessageDto> dtos = history.newest(conversationId, limit);
+        log.trace("🧱 [GET MESSAGES] Returning messages: {}", dtos);
+        return ResponseEntity.ok(dtos);
+    }
 
-        // Map domain entities to DTOs
-        List<MessageDto> dtos = list.stream()
-                .sorted(Comparator.comparing(Message::getSentAt))
-                .map(m -> new MessageDto(
-                        m.getId(),
-                        m.getConversation().getId(),
-                        m.getSenderId(),
-                        m.getContent(),
-                        m.getSentAt()
-                ))
-                .toList();
+    /**
+     * Keyset-paginated history.
+     *
+     *  - no cursor: newest page, {@code nextCursor} scrolls back
+     *  - {@code before}: the page right before that position (scrolling back)
+     *  - {@code after}: the page right after that position (catching up after a reconnect)
+     *
+     * A cursor is either a {@code nextCursor} from a previous page or a plain message id.
+     * Members only, like {@link #recent}.
+     */
+    @GetMapping("/{conversationId}/history")
+    public ResponseEntity<?> history(@PathVariable Long conversationId,
+                                     @RequestParam(required = false) String before,
+                                     @RequestParam(required = false) String after,
+                                     @RequestParam(defaultValue = "50") int limit,
+                                     Principal principal) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            requireReadable(conversationId, principal.getName());
+            HistoryService.Page page = history.page(
+                    conversationId, history.cursor(conversationId, before), history.cursor(conversationId, after), limit);
+            log.debug("event=history_page conversationId={} before={} after={} returned={}",
+                    conversationId, before, after, page.messages().size());
+            return ResponseEntity.ok(new MessagePage(
+                    page.messages(), page.next() == null ? null : page.next().encode()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
 
-/*        return list.stream()
-                .sorted(Comparator.comparing(Message::getSentAt)) // chronological
-                .map(m -> new MessageDto(m.getId(), m.getConversation().getId(), m.getSenderId(), m.getContent(), m.getSentAt()))
-                .toList();*/
-        log.trace("🧱 [GET MESSAGES] Returning messages: {}", dtos);
-        return dtos;
+    /**
+     * The public room is open to every signed-in user; DMs and rooms only to their members. A
+     * conversation the caller is not in reads as missing, so ids cannot be probed.
+     */
+    private void requireReadable(Long conversationId, String username) {
+        if (conversationId.equals(publicRoom.conversationId())) return;
+        if (!members.existsByConversation_IdAndUsername(conversationId, username)) {
+            throw new NoSuchElementException("Not a member of conversation " + conversationId);
+        }
     }
+
     @Autowired
-    public ChatController(SimpMessagingTemplate simp, MessageRepository messages, ConversationRepository convs) {
-        this.simp = simp;
-        this. messages = messages;
+    public ChatController(FanOut fanOut, ConversationRepository convs, ConversationMemberRepository members,
+                          HistoryService history, PublicRoomService publicRoom, MessageWriter messages,
+                          MessageSearch search, MetricsRegistry metrics) {
+        this.fanOut = fanOut;
         this.convs = convs;
+        this.members = members;
+        this.history = history;
+        this.publicRoom = publicRoom;
+        this.messages = messages;
+        this.search = search;
+        this.publicFanOut = metrics.timer("chat_broadcast_fanout_seconds", "Time to hand a message to the broker for all recipients", "kind", "public");
     }
 
     public record PublicChatIn(
@@ -95,8 +150,16 @@ public class ChatController {
         // The username comes from the JWT subject stored on the STOMP session.
         String user = principal != null ? principal.getName() : "anonymous";
         int len = (msg.content() == null) ? 0 : msg.content().length();
-        log.info("event=chat_message_received user={} len={}", user, len);
-        // Broadcast to all subscribers of `/topic/public`
-        simp.convertAndSend("/topic/public", msg);
+        log.debug("event=chat_message_received user={} len={}", user, len);
+
+        // Queue for persistence (batched insert later) and keep the public room's cached page current
+        MessageDto out = messages.append(publicRoom.conversationId(), user, msg.content());
+        history.appended(out);
+        search.messageAdded(out);
+
+        // Broadcast to all subscribers of `/topic/public`; id/sentAt let clients resume after a reconnect
+        long start = System.nanoTime();
+        fanOut.toTopic("/topic/public", fanOut.encode(out));
+        publicFanOut.recordSince(start);
     }
 }
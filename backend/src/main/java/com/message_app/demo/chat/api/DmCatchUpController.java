@@ -0,0 +1,76 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.api.dto.DmCatchUp;
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.DeliveryCursors;
+import com.message_app.demo.realtime.FanOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * DM catch-up after a (re)connect.
+ *
+ * STOMP:
+ *  - subscribe to {@code /user/queue/dm/catchup}, then send {@code /app/dm/catchup}.
+ *  - The requesting session (only that one) receives every DM it has not been delivered, across
+ *    conversations and oldest first, as {@link DmCatchUp} frames of up to {@code batch-size}
+ *    messages; the last frame has {@code last=true}, and {@code more=true} if the catch-up stopped at
+ *    {@code max-messages} (send the request again for the rest).
+ *  - The user's delivery cursors move past each frame once it is handed to the broker, so the next
+ *    catch-up, from any session, starts after it.
+ *
+ * It is a request rather than a reaction to the SUBSCRIBE itself: the subscribe event is
+ * published before the broker has registered the subscription, so frames sent from it could be lost.
+ */
+@Controller
+public class DmCatchUpController {
+    private static final Logger log = LoggerFactory.getLogger(DmCatchUpController.class);
+
+    static final String QUEUE_DM_CATCHUP = "/queue/dm/catchup";
+
+    private final DeliveryCursors delivery;
+    private final FanOut fanOut;
+    private final int batchSize;
+    private final int maxMessages;
+
+    public DmCatchUpController(DeliveryCursors delivery, FanOut fanOut,
+                               @Value("${chat.delivery.catchup.batch-size:100}") int batchSize,
+                               @Value("${chat.delivery.catchup.max-messages:1000}") int maxMessages) {
+        this.delivery = delivery;
+        this.fanOut = fanOut;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxMessages = Math.max(1, maxMessages);
+    }
+
+    @MessageMapping("/dm/catchup")
+    public void catchUp(Principal principal, SimpMessageHeaderAccessor headers) {
+        if (principal == null) throw new AccessDeniedException("Unauthenticated");
+        String me = principal.getName();
+        String sessionId = headers.getSessionId();
+
+        DeliveryCursors.Undelivered undelivered = delivery.undelivered(me, maxMessages);
+        List<MessageDto> all = undelivered.messages();
+        int frames = 0;
+        int from = 0;
+        do {
+            int to = Math.min(from + batchSize, all.size());
+            List<MessageDto> batch = all.subList(from, to);
+            boolean last = to == all.size();
+            fanOut.toSession(me, sessionId, QUEUE_DM_CATCHUP,
+                    fanOut.encode(new DmCatchUp(batch, last, last && !undelivered.complete())));
+            for (MessageDto m : batch) delivery.delivered(m, me);
+            frames++;
+            from = to;
+        } while (from < all.size());
+        log.info("event=dm_catchup user={} simpSessionId={} messages={} frames={} complete={}",
+                me, sessionId, all.size(), frames, undelivered.complete());
+    }
+}
@@ -1,29 +1,38 @@
 package com.message_app.demo.chat.api;
 
+import com.message_app.demo.chat.api.dto.DmNotifier;
 import com.message_app.demo.chat.api.dto.MessageDto;
-import com.message_app.demo.chat.domain.Conversation;
-import com.message_app.demo.chat.domain.Message;
+import com.message_app.demo.chat.application.DeliveryCursors;
+import com.message_app.demo.chat.application.DmNotifications;
 import com.message_app.demo.chat.application.DmService;
-import com.message_app.demo.chat.infrastructure.persistence.MessageRepository;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.chat.application.MessageAuditLog;
+import com.message_app.demo.chat.application.MessageSearch;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import com.message_app.demo.realtime.FanOut;
+import com.message_app.demo.realtime.OnlineUserRegistry;
+import com.message_app.demo.realtime.UserSubscriptions;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.annotation.SendToUser;
-import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.FileWriter;
-import java.io.IOException;
 import java.nio.file.AccessDeniedException;
 import java.security.Principal;
-import java.time.Instant;
+import java.util.List;
 
 @Validated
 //@Controller
@@ -31,10 +40,21 @@ import java.time.Instant;
 //@RequiredArgsConstructor
 public class DmWebSocketController {
 
-    private final SimpMessagingTemplate broker; // Sends messages to users
+    private final FanOut fanOut; // Sends to users, serializing each payload once
     private final DmService dmService; // Business logic for DM lookup/creation
-    private final MessageRepository messages; // Persistence for message entities
-    private final SimpUserRegistry userRegistry;
+    private final MessageWriter messages; // Write-behind persistence for messages
+    private final OnlineUserRegistry online; // Cluster-wide, session-counted presence
+    private final MessageAuditLog audit; // Non-blocking audit journal
+    private final HistoryService history; // Recent-messages cache is written through on send
+    private final UnreadCounters unread; // Incremental per-member unread counts
+    private final InboxService inbox; // Newest message per conversation, for conversation lists
+    private final MessageSearch search; // Full-text index, fed asynchronously
+    private final DmNotifications notifications; // Coalesced notifiers on /user/queue/dm/notify
+    private final DeliveryCursors delivery; // Per-member delivery cursors for reconnect catch-up
+    private final UserSubscriptions subscriptions; // Whether the recipient has the DM open
+    private final Timer sendLatency; // whole DM send handler
+    private final Timer fanOutLatency; // handing the DM to the broker for both participants
+    private final Timer bookkeepingLatency; // cursors, unread, inbox, search and notifier after the fan-out
 
     // =======================
     // Outbound (Server → User) destinations
@@ -42,9 +62,9 @@ public class DmWebSocketController {
     // =======================
     // === WebSocket Destinations ===
     private static final String QUEUE_DM_BASE = "/queue/dm/";
+    private static final String USER_QUEUE_DM_BASE = "/user" + QUEUE_DM_BASE; // as subscribed by clients
     private static final String QUEUE_DM_OPEN = "/queue/dm/open";
     private static final String QUEUE_WHOAMI = "/queue/whoami";
-    private static final String QUEUE_DM_NOTIFY = "/queue/dm/notify";
 
 
     // === MessageMapping Prefixes (Client to Server) ===
@@ -54,11 +74,8 @@ public class DmWebSocketController {
     private static final Logger log = LoggerFactory.getLogger(DmWebSocketController.class);
 
     // === Records ===
-    /** DM "send" input payload. Validated by {@link @Validated} on the controller. */
-    public record ChatIn(@NotBlank String content) {
-    }
-    /** Minimal notifier shape you could send to inbox lists / badges (kept here for future use). */
-    public record DmNotifier(Long conversationId, String from, String preview, Instant sentAt, long unreadCount) {
+    /** DM "send" input payload; at most as long as {@code messages.content}. */
+    public record ChatIn(@NotBlank @Size(max = 2000) String content) {
     }
     public record OpenOut(Long conversationId) {
     }
@@ -70,11 +87,25 @@ public class DmWebSocketController {
     }
 
 
-    public DmWebSocketController(SimpMessagingTemplate broker, DmService dmService, MessageRepository messages, SimpUserRegistry userRegistry) {
-        this.broker = broker;
+    public DmWebSocketController(FanOut fanOut, DmService dmService, MessageWriter messages, OnlineUserRegistry online,
+                                 MessageAuditLog audit, HistoryService history, UnreadCounters unread, InboxService inbox,
+                                 MessageSearch search, DmNotifications notifications, DeliveryCursors delivery,
+                                 UserSubscriptions subscriptions, MetricsRegistry metrics) {
+        this.fanOut = fanOut;
         this.dmService = dmService;
         this.messages = messages;
-        this.userRegistry = userRegistry;
+        this.online = online;
+        this.audit = audit;
+        this.history = history;
+        this.unread = unread;
+        this.inbox = inbox;
+        this.search = search;
+        this.notifications = notifications;
+        this.delivery = delivery;
+        this.subscriptions = subscriptions;
+        this.sendLatency = metrics.timer("chat_dm_send_seconds", "DM send handler, from dispatch to return");
+        this.fanOutLatency = metrics.timer("chat_broadcast_fanout_seconds", "Time to hand a message to the broker for all recipients", "kind", "dm");
+        this.bookkeepingLatency = metrics.timer("chat_dm_bookkeeping_seconds", "DM send bookkeeping after the fan-out: cursors, unread, inbox, search, notifier");
     }
 
     /**
@@ -83,77 +114,69 @@ public class DmWebSocketController {
      * Flow:
      *  1) Verify requester is authenticated (has Principal)
      *  2) Resolve or create the DM conversation between the two users
-     *  3) Persist the message
-     *  4) Emit the saved MessageDto to *both* participants via their user queues:
+     *  3) Hand the message to the write-behind writer (id + timestamp assigned, INSERT batched later)
+     *  4) Serialize the saved MessageDto once and emit it to *both* participants via their user queues:
      *     `/user/{me}/queue/dm/{convId}` and `/user/{other}/queue/dm/{convId}`
      *
      * Client consumption pattern:
      *  - Each participant subscribes to `/user/queue/dm/{convId}` to receive messages in that DM.
+     *  - DMs that reached no open conversation are delivered by the next catch-up ({@link DmCatchUpController}).
      */
     @MessageMapping(MAPPING_DM_SEND)
-    public void send(@DestinationVariable String otherUserName, ChatIn in, Principal principal) throws AccessDeniedException {
+    public void send(@DestinationVariable String otherUserName, @Valid ChatIn in, Principal principal) throws AccessDeniedException {
         final String me = (principal != null) ? principal.getName() : null;
         if (me == null) throw new AccessDeniedException("Unauthenticated");
 
         log.info("🟢 DM_SEND invoked by user={} → target={}", me, otherUserName);
+        long start = System.nanoTime();
 
-        Conversation conv = dmService.getOrCreateDm(me, otherUserName);
+        Long convId = dmService.getOrCreateDmId(me, otherUserName);
 
-        // Persist domain entity
-        Message m = new Message();
-        m.setConversation(conv);
-        m.setSenderId(me);
-        m.setContent(in.content());
-        m = messages.save(m);
+        // Queue for persistence; delivery below does not wait for the flush
+        MessageDto out = messages.append(convId, me, in.content());
+        history.appended(out);
 
         // Check if recipeint is online
-        boolean recipientOnline = userRegistry.getUser(otherUserName) != null;
-
-        // Append to message log
-        try (var writer = new FileWriter("message_log.txt", true)) {
-            writer.write(String.format(
-                    "%s | conv=%d | from=%s | to=%s | content=%s | delivered=%s%n",
-                    Instant.now(),
-                    conv.getId(),
-                    me,
-                    otherUserName,
-                    m.getContent(),
-                    recipientOnline ? "LIVE" : "OFFLINE"
-            ));
-        } catch (IOException e) {
-            log.error("Failed to write message log", e);
-        }
+        boolean recipientOnline = online.isOnline(otherUserName);
 
+        // Audit trail (handed off to the journal thread, no I/O here)
+        audit.record(out, otherUserName, recipientOnline);
 
-        // Outgoing message. Map domain entity -> wire DTO
-        MessageDto out = new MessageDto(
-                m.getId(),
-                conv.getId(),
-                me,
-                m.getContent(),
-                m.getSentAt()
-        );
         // Send to both sender and recipient
         log.debug("📤 [DM_SEND] Sending to users: {}, {}", me, otherUserName);
-        broker.convertAndSendToUser(me, QUEUE_DM_BASE + conv.getId(), out);
-        broker.convertAndSendToUser(otherUserName, QUEUE_DM_BASE + conv.getId(), out);
+        long fanOutStart = System.nanoTime();
+        FanOut.Encoded encoded = fanOut.encode(out); // one serialization for both participants
+        fanOut.toUser(me, QUEUE_DM_BASE + convId, encoded);
+        fanOut.toUser(otherUserName, QUEUE_DM_BASE + convId, encoded);
+        fanOutLatency.recordSince(fanOutStart);
+
+        long bookkeepingStart = System.nanoTime();
+
+        // Delivery cursors: the recipient has it only if a session has this DM open, otherwise it waits for catch-up
+        delivery.delivered(out, me);
+        if (subscriptions.isSubscribed(otherUserName, USER_QUEUE_DM_BASE + convId)) delivery.delivered(out, otherUserName);
 
-        // Send notifier to deceiver
-        String preview = m.getContent().length() > 40 ? m.getContent().substring(0, 37) + "..." : m.getContent();
+        // Notifier to the recipient, coalesced with others of this conversation sent close together
+        String preview = out.content().length() > 40 ? out.content().substring(0, 37) + "..." : out.content();
 
-        // Monitor the amount of unread messages
-        long unreadCount = 1; // Placeholder
-                //messages.countByConversationIdAndRecipientUnread(conv.getId(), otherUserName);
+        // Recipient's unread count: an in-memory counter, bumped here and written behind
+        unread.messageAdded(out, List.of(otherUserName));
+        inbox.messageAdded(out);
+        search.messageAdded(out);
+        long unreadCount = unread.get(convId, otherUserName).unreadCount();
 
         DmNotifier notify = new DmNotifier(
-                conv.getId(),
+                convId,
                 me,
                 preview,
-                m.getSentAt(),
-                unreadCount
+                out.sentAt(),
+                unreadCount,
+                1
         );
-        log.info("🔔 Sending DM notifier to user={} convId={} preview='{}'", otherUserName, conv.getId(), preview);
-        broker.convertAndSendToUser(otherUserName, QUEUE_DM_NOTIFY, notify);
+        log.debug("🔔 DM notifier for user={} convId={} preview='{}'", otherUserName, convId, preview);
+        notifications.dmSent(otherUserName, notify);
+        bookkeepingLatency.recordSince(bookkeepingStart);
+        sendLatency.recordSince(start);
         log.info("✅ DM_SEND completed successfully for sender={} recipient={} (online={})", me, otherUserName, recipientOnline);
 
     }
@@ -178,9 +201,9 @@ public class DmWebSocketController {
             return new OpenErr("USER_NOT_FOUND", "No user with that username.", otherUserName);
         }
 
-        Conversation conv = dmService.getOrCreateDm(me, otherUserName);
-        log.info("OPEN DM resolved me={} target={} convId={}", me, otherUserName, conv.getId());
-        return new OpenOk(conv.getId(), otherUserName);
+        Long convId = dmService.getOrCreateDmId(me, otherUserName);
+        log.info("OPEN DM resolved me={} target={} convId={}", me, otherUserName, convId);
+        return new OpenOk(convId, otherUserName);
     }
 
     /**
@@ -0,0 +1,48 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.api.dto.InboxPage;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.InboxService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * The caller's conversation list (needs {@code Authorization: Bearer <JWT>}).
+ *
+ *  - {@code GET /api/inbox?limit=50}: DMs and rooms, most recent activity first, each with its
+ *    newest message, the other participant (DMs) and the caller's unread count.
+ *  - {@code GET /api/inbox?before=<nextCursor>}: the next, older page.
+ *
+ * Served from the denormalized summaries of {@link InboxService}; never reads message rows.
+ */
+@RestController
+@RequestMapping("/api/inbox")
+public class InboxController {
+
+    private final InboxService inbox;
+
+    public InboxController(InboxService inbox) {
+        this.inbox = inbox;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> inbox(@RequestParam(required = false) String before,
+                                   @RequestParam(defaultValue = "50") int limit,
+                                   Principal principal) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            InboxService.Page page = inbox.inbox(
+                    principal.getName(), before == null || before.isBlank() ? null : HistoryCursor.decode(before), limit);
+            return ResponseEntity.ok(new InboxPage(
+                    page.conversations(), page.next() == null ? null : page.next().encode()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
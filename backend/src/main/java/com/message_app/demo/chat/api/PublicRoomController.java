@@ -0,0 +1,74 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.api.dto.MessagePage;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.PublicRoomService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * History of the public room ({@code /topic/public}).
+ *
+ * Endpoints:
+ *  - {@code GET /api/public/messages?limit=50}: newest messages, oldest first. Served from the
+ *    recent-messages cache once the room has been read, which a busy room always has.
+ *  - {@code GET /api/public/history?after=<id|cursor>}: reconnect replay. A client that kept the id
+ *    of the last message it received gets everything after it; while {@code nextCursor} is
+ *    non-null it passes that back as {@code after} for the next page.
+ *  - {@code GET /api/public/history?before=<id|cursor>}: scrolling back.
+ *
+ * Messages are the same {@link MessageDto}s that {@link ChatController#handle} broadcasts, so
+ * ids from the live stream can be used as cursors directly.
+ */
+@RestController
+@RequestMapping("/api/public")
+public class PublicRoomController {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicRoomController.class);
+
+    private final PublicRoomService publicRoom;
+    private final HistoryService history;
+
+    public PublicRoomController(PublicRoomService publicRoom, HistoryService history) {
+        this.publicRoom = publicRoom;
+        this.history = history;
+    }
+
+    @GetMapping
+    public Map<String, Long> room() {
+        return Map.of("conversationId", publicRoom.conversationId());
+    }
+
+    @GetMapping("/messages")
+    public List<MessageDto> recent(@RequestParam(defaultValue = "50") int limit) {
+        return history.newest(publicRoom.conversationId(), limit);
+    }
+
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestParam(required = false) String before,
+                                     @RequestParam(required = false) String after,
+                                     @RequestParam(defaultValue = "50") int limit) {
+        Long conversationId = publicRoom.conversationId();
+        try {
+            HistoryService.Page page = history.page(
+                    conversationId, history.cursor(conversationId, before), history.cursor(conversationId, after), limit);
+            log.debug("event=public_history_page before={} after={} returned={}", before, after, page.messages().size());
+            return ResponseEntity.ok(new MessagePage(
+                    page.messages(), page.next() == null ? null : page.next().encode()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.realtime.FanOut;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Read watermarks and unread counts of DMs and rooms.
+ *
+ * STOMP:
+ *  - {@code /app/conversations/{id}/read} {upTo}: mark everything up to message {@code upTo} read.
+ *  - {@code /app/conversations/{id}/unread}: ask for the current state.
+ *  Either way the new {@link UnreadCounters.Unread} goes to every session of the user on
+ *  {@code /user/queue/unread}, so badges in other tabs clear too; failures go to
+ *  {@code /user/queue/unread/errors}.
+ *
+ * REST (needs {@code Authorization: Bearer <JWT>}):
+ *  - {@code GET /api/conversations/{id}/unread}
+ *  - {@code POST /api/conversations/{id}/read?upTo=<message id>} (also pushed to the user's sessions)
+ */
+@RestController
+@RequestMapping("/api/conversations")
+public class ReadStateController {
+
+    private static final String QUEUE_UNREAD = "/queue/unread";
+
+    private final UnreadCounters unread;
+    private final FanOut fanOut;
+
+    public record ReadIn(long upTo) { }
+    public record ReadErr(String errorCode, String message) { }
+
+    public ReadStateController(UnreadCounters unread, FanOut fanOut) {
+        this.unread = unread;
+        this.fanOut = fanOut;
+    }
+
+    @MessageMapping("/conversations/{conversationId}/read")
+    public void markRead(@DestinationVariable Long conversationId, ReadIn in, Principal principal) {
+        String me = me(principal);
+        fanOut.toUser(me, QUEUE_UNREAD, fanOut.encode(unread.markRead(conversationId, me, in.upTo())));
+    }
+
+    @MessageMapping("/conversations/{conversationId}/unread")
+    public void current(@DestinationVariable Long conversationId, Principal principal) {
+        String me = me(principal);
+        fanOut.toUser(me, QUEUE_UNREAD, fanOut.encode(unread.get(conversationId, me)));
+    }
+
+    @MessageExceptionHandler
+    @SendToUser(QUEUE_UNREAD + "/errors")
+    public ReadErr handleErrors(Exception ex) {
+        String code = ex instanceof AccessDeniedException ? "FORBIDDEN"
+                : ex instanceof NoSuchElementException ? "NOT_FOUND"
+                : "READ_FAILED";
+        return new ReadErr(code, ex.getMessage());
+    }
+
+    @GetMapping("/{conversationId}/unread")
+    public ResponseEntity<?> unread(@PathVariable Long conversationId, Principal principal) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            return ResponseEntity.ok(unread.get(conversationId, principal.getName()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{conversationId}/read")
+    public ResponseEntity<?> read(@PathVariable Long conversationId, @RequestParam long upTo, Principal principal) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            UnreadCounters.Unread state = unread.markRead(conversationId, principal.getName(), upTo);
+            fanOut.toUser(principal.getName(), QUEUE_UNREAD, fanOut.encode(state));
+            return ResponseEntity.ok(state);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static String me(Principal principal) {
+        if (principal == null) throw new AccessDeniedException("Unauthenticated");
+        return principal.getName();
+    }
+}
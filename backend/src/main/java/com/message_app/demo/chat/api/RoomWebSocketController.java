@@ -0,0 +1,144 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.api.dto.RoomDto;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.chat.application.MessageSearch;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.chat.application.RoomService;
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import com.message_app.demo.realtime.FanOut;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * STOMP endpoints for multi-user rooms.
+ *
+ * Client → server ({@code /app/...}), replies go to the requesting user only:
+ *  - {@code /app/room/create} {name}       → {@code /user/queue/room/reply}: {@link RoomDto}
+ *  - {@code /app/room/{roomId}/join}       → {@code /user/queue/room/reply}: {@link RoomDto}
+ *  - {@code /app/room/{roomId}/leave}      → {@code /user/queue/room/reply}: {@link RoomLeft}
+ *  - {@code /app/rooms}                    → {@code /user/queue/rooms}: {@link RoomsOut}
+ *  - {@code /app/room/{roomId}/send} {content}: persisted, then broadcast to {@code /topic/room/{roomId}}
+ *  - failures                              → {@code /user/queue/room/errors}: {@link RoomErr}
+ *
+ * Fan-out:
+ *  - A room message is published once to {@code /topic/room/{roomId}} through {@link FanOut}: the
+ *    payload is serialized once and the broker hands that same buffer to every subscribed session,
+ *    instead of one {@code convertAndSendToUser} (and one serialization) per member.
+ *  - Only members can subscribe ({@code RoomSubscriptionInterceptor}); membership checks here
+ *    and there come from the in-memory index, not the database.
+ *
+ * History uses the generic conversation endpoints ({@code /api/dm/{roomId}/history}), which
+ * check membership the same way (bearer token required, non-members get 404).
+ */
+@Controller
+public class RoomWebSocketController {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomWebSocketController.class);
+    private static final String TOPIC_ROOM = "/topic/room/";
+    private static final int ROOM_LIST_LIMIT = 100;
+
+    private final FanOut fanOut;
+    private final RoomService rooms;
+    private final MessageWriter messages;
+    private final HistoryService history;
+    private final UnreadCounters unread;
+    private final InboxService inbox;
+    private final MessageSearch search;
+    private final Timer fanOutLatency;
+
+    public record CreateIn(@NotBlank @Size(max = 128) String name) { }
+    public record ChatIn(@NotBlank @Size(max = 2000) String content) { }
+    public record RoomLeft(Long roomId, boolean left) { }
+    /** {@code joined}: the user's rooms; {@code available}: all rooms, for discovery. */
+    public record RoomsOut(List<RoomDto> joined, List<RoomDto> available) { }
+    public record RoomErr(String errorCode, String message) { }
+
+    public RoomWebSocketController(FanOut fanOut, RoomService rooms, MessageWriter messages,
+                                   HistoryService history, UnreadCounters unread, InboxService inbox,
+                                   MessageSearch search, MetricsRegistry metrics) {
+        this.fanOut = fanOut;
+        this.rooms = rooms;
+        this.messages = messages;
+        this.history = history;
+        this.unread = unread;
+        this.inbox = inbox;
+        this.search = search;
+        this.fanOutLatency = metrics.timer("chat_broadcast_fanout_seconds", "Time to hand a message to the broker for all recipients", "kind", "room");
+    }
+
+    @MessageMapping("/room/create")
+    @SendToUser("/queue/room/reply")
+    public RoomDto create(@Valid CreateIn in, Principal principal) {
+        return rooms.create(me(principal), in.name());
+    }
+
+    @MessageMapping("/room/{roomId}/join")
+    @SendToUser("/queue/room/reply")
+    public RoomDto join(@DestinationVariable Long roomId, Principal principal) {
+        return rooms.join(roomId, me(principal));
+    }
+
+    @MessageMapping("/room/{roomId}/leave")
+    @SendToUser("/queue/room/reply")
+    public RoomLeft leave(@DestinationVariable Long roomId, Principal principal) {
+        return new RoomLeft(roomId, rooms.leave(roomId, me(principal)));
+    }
+
+    @MessageMapping("/rooms")
+    @SendToUser("/queue/rooms")
+    public RoomsOut list(Principal principal) {
+        return new RoomsOut(rooms.roomsOf(me(principal)), rooms.rooms(ROOM_LIST_LIMIT));
+    }
+
+    @MessageMapping("/room/{roomId}/send")
+    public void send(@DestinationVariable Long roomId, @Valid ChatIn in, Principal principal) {
+        String me = me(principal);
+        if (!rooms.isMember(roomId, me)) throw new AccessDeniedException("Not a member of room " + roomId);
+
+        // Queue for persistence; delivery below does not wait for the flush
+        MessageDto out = messages.append(roomId, me, in.content());
+        history.appended(out);
+        unread.messageAdded(out, rooms.members(roomId));
+        inbox.messageAdded(out);
+        search.messageAdded(out);
+
+        long start = System.nanoTime();
+        fanOut.toTopic(TOPIC_ROOM + roomId, fanOut.encode(out));
+        fanOutLatency.recordSince(start);
+        log.debug("event=room_message_sent roomId={} sender={} id={}", roomId, me, out.id());
+    }
+
+    @MessageExceptionHandler
+    @SendToUser("/queue/room/errors")
+    public RoomErr handleErrors(Exception ex) {
+        String code = ex instanceof AccessDeniedException ? "FORBIDDEN"
+                : ex instanceof NoSuchElementException ? "ROOM_NOT_FOUND"
+                : ex instanceof IllegalArgumentException ? "INVALID"
+                : "ROOM_FAILED";
+        log.info("event=room_request_failed code={} error={}", code, ex.getMessage());
+        return new RoomErr(code, ex.getMessage());
+    }
+
+    private static String me(Principal principal) {
+        if (principal == null) throw new AccessDeniedException("Unauthenticated");
+        return principal.getName();
+    }
+}
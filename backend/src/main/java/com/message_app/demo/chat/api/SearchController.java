@@ -0,0 +1,95 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.api.dto.SearchResults;
+import com.message_app.demo.chat.application.MessageSearch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Full-text search over message history (needs {@code Authorization: Bearer <JWT>}).
+ *
+ *  - {@code GET /api/search?q=...}: across the caller's DMs, rooms and the public room.
+ *  - {@code GET /api/conversations/{id}/search?q=...}: one conversation the caller belongs to.
+ *  Both take {@code limit} (default 20, max 100) and {@code sort=relevance|newest}; each hit has a
+ *  snippet with the matched words' offsets. The last word also matches as a prefix unless the
+ *  query ends with a space.
+ *
+ * {@code POST /api/search/rebuild} re-reads the whole {@code messages} table into a new index in
+ * the background. It is a maintenance command, not a user action: it needs
+ * {@code X-Admin-Token: <chat.search.rebuild-token>} and is refused while that property is empty.
+ * (The remote address proves nothing behind the dev proxy or a reverse proxy on the same host.)
+ */
+@RestController
+public class SearchController {
+
+    private final MessageSearch search;
+    private final byte[] rebuildToken;
+
+    public SearchController(MessageSearch search,
+                            @Value("${chat.search.rebuild-token:}") String rebuildToken) {
+        this.search = search;
+        this.rebuildToken = rebuildToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping("/api/search")
+    public ResponseEntity<?> search(@RequestParam String q,
+                                    @RequestParam(defaultValue = "20") int limit,
+                                    @RequestParam(defaultValue = "relevance") String sort,
+                                    Principal principal) {
+        return run(principal, null, q, sort, limit);
+    }
+
+    @GetMapping("/api/conversations/{conversationId}/search")
+    public ResponseEntity<?> searchConversation(@PathVariable Long conversationId,
+                                                @RequestParam String q,
+                                                @RequestParam(defaultValue = "20") int limit,
+                                                @RequestParam(defaultValue = "relevance") String sort,
+                                                Principal principal) {
+        return run(principal, conversationId, q, sort, limit);
+    }
+
+    @PostMapping("/api/search/rebuild")
+    public ResponseEntity<?> rebuild(@RequestHeader(name = "X-Admin-Token", required = false) String token) {
+        if (rebuildToken.length == 0) {
+            return ResponseEntity.status(403).body(Map.of("error", "Rebuild is disabled: chat.search.rebuild-token is not set"));
+        }
+        if (token == null || !MessageDigest.isEqual(rebuildToken, token.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(403).body(Map.of("error", "X-Admin-Token required"));
+        }
+        try {
+            return search.rebuild()
+                    ? ResponseEntity.accepted().body(Map.of("status", "started"))
+                    : ResponseEntity.status(409).body(Map.of("status", "already running"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> run(Principal principal, Long conversationId, String q, String sort, int limit) {
+        if (principal == null) return ResponseEntity.status(401).body(Map.of("error", "Bearer token required"));
+        try {
+            MessageSearch.Sort order = MessageSearch.Sort.valueOf(sort.trim().toUpperCase(Locale.ROOT));
+            MessageSearch.Result result = search.search(principal.getName(), conversationId, q, order, limit);
+            return ResponseEntity.ok(new SearchResults(q, result.hits(), result.complete()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
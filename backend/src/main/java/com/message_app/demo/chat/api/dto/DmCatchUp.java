@@ -0,0 +1,16 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.util.List;
+
+/**
+ * One frame of a DM catch-up on {@code /user/queue/dm/catchup}.
+ *
+ * @param messages missed DMs of any conversation, oldest first by (sentAt, id)
+ * @param last     last frame of this catch-up
+ * @param more     only on the last frame: the catch-up stopped at its size limit, ask again for the rest
+ */
+public record DmCatchUp(
+        List<MessageDto> messages,
+        boolean last,
+        boolean more
+) { }
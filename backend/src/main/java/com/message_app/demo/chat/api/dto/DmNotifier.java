@@ -0,0 +1,26 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.time.Instant;
+
+/**
+ * Notifier on {@code /user/queue/dm/notify} for inbox lists / badges.
+ *
+ * One frame may stand for several messages of the same conversation sent in a burst; it then
+ * carries the newest message's sender, preview and time.
+ *
+ * @param unreadCount the recipient's unread count including the newest message
+ * @param count       messages this frame stands for (1 unless coalesced)
+ */
+public record DmNotifier(
+        Long conversationId,
+        String from,
+        String preview,
+        Instant sentAt,
+        long unreadCount,
+        int count
+) {
+    /** The same notification standing for {@code count} messages. */
+    public DmNotifier withCount(int count) {
+        return new DmNotifier(conversationId, from, preview, sentAt, unreadCount, count);
+    }
+}
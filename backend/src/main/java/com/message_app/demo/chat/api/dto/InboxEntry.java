@@ -0,0 +1,34 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.time.Instant;
+
+/**
+ * One conversation in a user's inbox.
+ *
+ * @param type             "DM" or "ROOM"
+ * @param name             room name; null for DMs
+ * @param otherParticipant the other user of a DM; null for rooms
+ * @param lastMessageId    newest message, null if the conversation has none yet (also for sender,
+ *                         preview and time)
+ * @param lastPreview      start of the newest message's content, cut at {@value #PREVIEW_CHARS} characters
+ * @param lastActivityAt   the inbox sort key: newest message, or when the user joined
+ * @param unreadCount      messages from others after the user's read watermark
+ */
+public record InboxEntry(
+        Long conversationId,
+        String type,
+        String name,
+        String otherParticipant,
+        Long lastMessageId,
+        String lastSender,
+        String lastPreview,
+        Instant lastMessageAt,
+        Instant lastActivityAt,
+        long unreadCount
+) {
+    public static final int PREVIEW_CHARS = 100;
+
+    public static String preview(String content) {
+        return content.length() > PREVIEW_CHARS ? content.substring(0, PREVIEW_CHARS - 3) + "..." : content;
+    }
+}
@@ -0,0 +1,15 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.util.List;
+
+/**
+ * One page of a user's inbox.
+ *
+ * @param conversations most recent activity first
+ * @param nextCursor    opaque cursor to pass back as {@code before} for the next (older) page;
+ *                      null when there is nothing more
+ */
+public record InboxPage(
+        List<InboxEntry> conversations,
+        String nextCursor
+) { }
@@ -0,0 +1,15 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.util.List;
+
+/**
+ * One page of conversation history.
+ *
+ * @param messages   chronological (oldest first)
+ * @param nextCursor opaque cursor to pass back as {@code before}/{@code after} for the next page
+ *                   in the same direction; null when there is nothing more
+ */
+public record MessagePage(
+        List<MessageDto> messages,
+        String nextCursor
+) { }
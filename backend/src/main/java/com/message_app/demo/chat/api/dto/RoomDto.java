@@ -0,0 +1,12 @@
+package com.message_app.demo.chat.api.dto;
+
+/**
+ * A group room as shown in room lists and join/create replies.
+ *
+ * @param memberCount members at the time of the reply
+ */
+public record RoomDto(
+        Long id,
+        String name,
+        int memberCount
+) { }
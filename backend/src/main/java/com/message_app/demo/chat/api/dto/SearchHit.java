@@ -0,0 +1,20 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.util.List;
+
+/**
+ * One message matching a search.
+ *
+ * @param message    the message as history returns it
+ * @param snippet    the part of its content around the matches, with "…" where it was cut
+ * @param highlights matched words as [start, end) character offsets into {@code snippet}
+ * @param score      relevance (higher is better); 0 when sorted by newest
+ */
+public record SearchHit(
+        MessageDto message,
+        String snippet,
+        List<Highlight> highlights,
+        double score
+) {
+    public record Highlight(int start, int end) { }
+}
@@ -0,0 +1,16 @@
+package com.message_app.demo.chat.api.dto;
+
+import java.util.List;
+
+/**
+ * Result of a message search.
+ *
+ * @param query    the query as received
+ * @param hits     best first (or newest first with {@code sort=newest})
+ * @param complete false while the index is still being loaded or rebuilt, so older messages may be missing
+ */
+public record SearchResults(
+        String query,
+        List<SearchHit> hits,
+        boolean complete
+) { }
@@ -0,0 +1,209 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.DmNotifier;
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.realtime.FanOut;
+import com.message_app.demo.realtime.UserSubscriptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing implementation of {@link DmNotifications}.
+ *
+ * Why:
+ *  - Every DM produced its own notifier frame, so a burst of 50 messages meant 50 frames and 50
+ *    re-renders of the inbox for a recipient who only needs the newest preview and the count.
+ *
+ * How:
+ *  - One window per (recipient, conversation). A notification without an open window is sent
+ *    right away and opens one, so a single DM is not delayed.
+ *  - Notifications inside the window only replace the held notifier and bump a counter. When the
+ *    window ends, whatever was held is sent as one frame and the window is opened again; a window
+ *    that ends with nothing held is dropped. Frames per conversation are at most one per window.
+ *  - Before anything is held or sent, the recipient's subscriptions are checked
+ *    ({@link UserSubscriptions}): anyone subscribed to {@code /user/queue/dm/{id}} gets no notifier for it.
+ *  - Window ends run on one timer thread; sends there are handed to the broker like any other.
+ *  - {@code window-ms=0} sends every notifier as before (the subscription check still applies).
+ */
+@Service
+class CoalescingDmNotifications implements DmNotifications, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(CoalescingDmNotifications.class);
+
+    static final String QUEUE_DM_NOTIFY = "/queue/dm/notify";
+    private static final String USER_QUEUE_DM = "/user/queue/dm/";
+
+    private record Key(String recipient, Long conversationId) { }
+
+    /** All fields guarded by the instance. */
+    private static final class Window {
+        DmNotifier held; // newest notifier not sent yet
+        int count;       // messages it stands for
+        boolean closed;  // dropped from the map: callers holding it must look it up again
+    }
+
+    private final FanOut fanOut;
+    private final UserSubscriptions subscriptions;
+    private final long windowMs;
+    private final boolean suppressWhenSubscribed;
+    private final ConcurrentHashMap<Key, Window> windows = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter suppressed;
+
+    private volatile boolean running;
+
+    CoalescingDmNotifications(FanOut fanOut,
+                              UserSubscriptions subscriptions,
+                              MetricsRegistry metrics,
+                              @Value("${chat.notify.window-ms:500}") long windowMs,
+                              @Value("${chat.notify.suppress-when-subscribed:true}") boolean suppressWhenSubscribed) {
+        this.fanOut = fanOut;
+        this.subscriptions = subscriptions;
+        this.windowMs = windowMs;
+        this.suppressWhenSubscribed = suppressWhenSubscribed;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dm-notify-timer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.sent = metrics.counter("chat_dm_notify_total", "DM notifications by outcome", "result", "sent");
+        this.coalesced = metrics.counter("chat_dm_notify_total", "DM notifications by outcome", "result", "coalesced");
+        this.suppressed = metrics.counter("chat_dm_notify_total", "DM notifications by outcome", "result", "suppressed");
+        metrics.gauge("chat_dm_notify_windows", "Open (recipient, conversation) notification windows", windows::size);
+    }
+
+    @Override
+    public void dmSent(String recipient, DmNotifier notifier) {
+        if (suppressWhenSubscribed && isSubscribed(recipient, notifier.conversationId())) {
+            suppressed.increment();
+            return;
+        }
+        if (windowMs <= 0) {
+            send(recipient, notifier);
+            return;
+        }
+        Key key = new Key(recipient, notifier.conversationId());
+        while (true) {
+            Window fresh = new Window();
+            Window w = windows.putIfAbsent(key, fresh);
+            if (w == null) {
+                // First one: out now, later ones wait for the window to end
+                schedule(key, fresh);
+                send(recipient, notifier);
+                return;
+            }
+            synchronized (w) {
+                if (w.closed) continue;
+                w.held = notifier;
+                w.count++;
+                coalesced.increment();
+                return;
+            }
+        }
+    }
+
+    /** End of a window: send what was held and open the next one, or drop the window. */
+    private void windowEnded(Key key, Window w) {
+        DmNotifier held;
+        int count;
+        synchronized (w) {
+            if (w.held == null) {
+                w.closed = true;
+                windows.remove(key, w);
+                return;
+            }
+            held = w.held;
+            count = w.count;
+            w.held = null;
+            w.count = 0;
+        }
+        if (suppressWhenSubscribed && isSubscribed(key.recipient(), key.conversationId())) {
+            suppressed.increment();
+        } else {
+            send(key.recipient(), held.withCount(count));
+        }
+        schedule(key, w);
+    }
+
+    private void schedule(Key key, Window w) {
+        try {
+            timer.schedule(() -> {
+                try {
+                    windowEnded(key, w);
+                } catch (RuntimeException e) {
+                    log.warn("event=dm_notify_failed user={} conversationId={} error={}", key.recipient(), key.conversationId(), e.toString());
+                    synchronized (w) {
+                        w.closed = true;
+                        windows.remove(key, w);
+                    }
+                }
+            }, windowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: nothing left to deliver to
+            synchronized (w) {
+                w.closed = true;
+                windows.remove(key, w);
+            }
+        }
+    }
+
+    private void send(String recipient, DmNotifier notifier) {
+        fanOut.toUser(recipient, QUEUE_DM_NOTIFY, fanOut.encode(notifier));
+        sent.increment();
+    }
+
+    /** True if any session of the user is subscribed to the conversation itself. */
+    private boolean isSubscribed(String username, Long conversationId) {
+        return subscriptions.isSubscribed(username, USER_QUEUE_DM + conversationId);
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Runs after the broker and the WebSocket sessions have stopped (see {@link #getPhase}), so the
+     * notifiers still held in open windows have nowhere to go: they are dropped, not sent. Only the
+     * notifier frames are lost; the DMs are persisted and show up in the inbox and DM catch-up.
+     */
+    @Override
+    public void stop() {
+        timer.shutdownNow();
+        running = false;
+        int dropped = 0;
+        for (Window w : windows.values()) {
+            synchronized (w) {
+                if (w.held != null) dropped++;
+            }
+        }
+        log.info("event=dm_notifications_stopped sent={} coalesced={} suppressed={} openWindows={} droppedHeld={}",
+                sent.count(), coalesced.count(), suppressed.count(), windows.size(), dropped);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Below the broker and the WebSocket handler ({@link SmartLifecycle#DEFAULT_PHASE}): stops after them. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
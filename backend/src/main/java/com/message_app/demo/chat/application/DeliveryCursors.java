@@ -0,0 +1,38 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.List;
+
+/**
+ * Application-layer port for DM delivery cursors: per member, the newest DM that reached one of
+ * their sessions, and what is left to deliver after it.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>{@link #delivered} is called on the send path (sender, and the recipient if they had the
+ *     conversation open) and after each catch-up frame; it only touches memory, cursors are written
+ *     behind onto {@code conversation_members}. Cursors only move forward.</li>
+ *     <li>{@link #undelivered} finds the user's DMs with messages after the cursor from the
+ *     conversation summaries (no {@code messages} rows), then reads only those conversations with
+ *     keyset pages after the cursor.</li>
+ * </ul>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.persistence.WriteBehindDeliveryCursors}.
+ */
+public interface DeliveryCursors {
+
+    /**
+     * DMs a user has not received yet.
+     *
+     * @param messages oldest first by (sentAt, id), across conversations
+     * @param complete false if {@code max} was reached and more are left
+     */
+    record Undelivered(List<MessageDto> messages, boolean complete) { }
+
+    /** {@code message} reached a session of {@code username}. */
+    void delivered(MessageDto message, String username);
+
+    /** Up to {@code max} DMs after the user's cursors; does not move the cursors. */
+    Undelivered undelivered(String username, int max);
+}
@@ -0,0 +1,88 @@
+package com.message_app.demo.chat.application;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent dmKey -> conversationId cache used by {@link DmServiceImpl}.
+ *
+ * Why:
+ *  - A DM's id never changes once created, so after the first lookup there is no reason
+ *    to ask the database again on every send/open.
+ *
+ * Eviction (CLOCK / second chance):
+ *  - Every hit sets the entry's reference bit.
+ *  - When the cache grows past {@code maxEntries}, a clock hand sweeps the map: referenced
+ *    entries lose their bit and survive, unreferenced ones are evicted. This approximates LRU
+ *    without a shared access-order list, so reads never contend on a lock.
+ *
+ * Counters (hits / misses / evictions) are kept in {@link LongAdder}s and exposed via {@link #stats()},
+ * which {@link DmServiceImpl} publishes as {@code chat_dm_cache_*} metrics.
+ * No invalidation: a DM conversation is never deleted or re-keyed.
+ */
+class DmConversationCache {
+
+    /** Snapshot of the cache counters. */
+    record Stats(long size, long hits, long misses, long evictions) { }
+
+    private static final class Entry {
+        final long conversationId;
+        volatile boolean referenced;
+
+        Entry(long conversationId) {
+            this.conversationId = conversationId;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private Iterator<Map.Entry<String, Entry>> hand; // guarded by "this"
+
+    DmConversationCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be >= 1");
+        this.maxEntries = maxEntries;
+    }
+
+    /** @return the cached conversation id, or null on a miss */
+    Long get(String dmKey) {
+        Entry e = map.get(dmKey);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        if (!e.referenced) e.referenced = true; // avoid a volatile write on every hit
+        hits.increment();
+        return e.conversationId;
+    }
+
+    void put(String dmKey, long conversationId) {
+        if (map.putIfAbsent(dmKey, new Entry(conversationId)) == null && map.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    Stats stats() {
+        return new Stats(map.size(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private synchronized void evict() {
+        // Bounded sweep: at most two passes over the map (first pass may only clear bits)
+        int budget = 2 * map.size() + 1;
+        while (map.size() > maxEntries && budget-- > 0) {
+            if (hand == null || !hand.hasNext()) hand = map.entrySet().iterator();
+            if (!hand.hasNext()) return;
+            Map.Entry<String, Entry> candidate = hand.next();
+            Entry e = candidate.getValue();
+            if (e.referenced) {
+                e.referenced = false;
+            } else if (map.remove(candidate.getKey(), e)) {
+                evictions.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.DmNotifier;
+
+/**
+ * Application-layer port for DM notifications on {@code /user/queue/dm/notify}.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>The first notification for a (recipient, conversation) goes out right away.</li>
+ *     <li>Further ones within the coalescing window are folded into one frame at its end, with
+ *     the newest preview and unread count and {@link DmNotifier#count()} set to how many
+ *     messages it stands for.</li>
+ *     <li>None are sent while the recipient is subscribed to that conversation's
+ *     {@code /user/queue/dm/{id}}: they are reading it and receive the messages themselves.</li>
+ * </ul>
+ *
+ * Implemented by {@link CoalescingDmNotifications}.
+ */
+public interface DmNotifications {
+
+    /** A DM was sent to {@code recipient}; called on the send path, never blocks on the window. */
+    void dmSent(String recipient, DmNotifier notifier);
+}
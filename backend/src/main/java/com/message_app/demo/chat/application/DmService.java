@@ -1,9 +1,6 @@
 package com.message_app.demo.chat.application;
 
 
-import com.message_app.demo.chat.domain.Conversation;
-
-
 /**
  * Service interface on the Application-layer that manages direct message (DM) conversations.
  *
@@ -24,20 +21,21 @@ import com.message_app.demo.chat.domain.Conversation;
  */
 public interface DmService {
     /**
-     * Retrieves an existing direct message (DM) conversation between two users,
-     * or creates a new one if it does not already exist.
+     * Resolves the id of the direct message (DM) conversation between two users,
+     * creating the conversation if it does not already exist.
      *
      * <p>Implementation detail:</p>
      * - The conversation is uniquely identified by a canonical key
      *   (alphabetical order of usernames, e.g., "alice:bob").
+     * - Ids are served from an in-memory cache, so resolving a known DM does not touch the database.
      * - Throws {@link IllegalArgumentException} if a user tries to start a DM with themselves.
      *
      * @param u1 first username
      * @param u2 second username
-     * @return an existing or newly created {@link Conversation} entity
+     * @return id of the existing or newly created {@code Conversation}
      */
+    Long getOrCreateDmId(String u1, String u2);
 
-    Conversation getOrCreateDm(String u1, String u2);
     /**
      * Determines whether a user exists in the system.
      *
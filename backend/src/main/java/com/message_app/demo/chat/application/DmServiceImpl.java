@@ -6,13 +6,15 @@ import com.message_app.demo.chat.domain.ConversationMember;
 import com.message_app.demo.chat.infrastructure.persistence.ConversationMemberRepository;
 import com.message_app.demo.chat.infrastructure.persistence.ConversationRepository;
 import com.message_app.demo.chat.infrastructure.persistence.MessageRepository;
+import com.message_app.demo.metrics.MetricsRegistry;
 import com.message_app.demo.realtime.OnlineUserRegistry;
-import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
-@Transactional
  class DmServiceImpl implements DmService {
 
     /**
@@ -21,25 +23,42 @@ import org.springframework.stereotype.Service;
      *  - Basic user existence checks used by the DM open flow
      *
      * Transactionality:
-     *  - Class-level @Transactional ensures the create path is atomic
-     *    (e.g., create Conversation + two ConversationMember rows).
+     *  - Only the create path runs in a transaction (create Conversation + two
+     *    ConversationMember rows atomically). Resolving a cached DM opens no transaction
+     *    and borrows no connection.
+     *
+     * Caching:
+     *  - dmKey -> conversationId is cached in a bounded {@link DmConversationCache};
+     *    both the lookup path and the create path fill it. In steady state the DM hot
+     *    path does no conversation lookups at all.
      *
      * Concurrency:
      *  - We build a canonical dmKey "a:b" (alphabetical by username, case-insensitive)
      *    to guarantee *one* DM per user pair.
      *  - If two requests race, the unique constraint at the DB layer throws
-     *    DataIntegrityViolationException, which we catch and then re-read.
+     *    DataIntegrityViolationException; the losing transaction is rolled back and we re-read.
      */
     private final ConversationRepository convs;
     private final ConversationMemberRepository members;
     private final MessageRepository messages;
     private final OnlineUserRegistry online; // Tracks connected users
+    private final TransactionTemplate tx;
+    private final DmConversationCache cache;
 
-    DmServiceImpl(ConversationRepository convs, ConversationMemberRepository members, MessageRepository messages, OnlineUserRegistry online) {
+    DmServiceImpl(ConversationRepository convs, ConversationMemberRepository members, MessageRepository messages, OnlineUserRegistry online,
+                  PlatformTransactionManager txManager, MetricsRegistry metrics,
+                  @Value("${chat.dm.cache.max-entries:100000}") int cacheMaxEntries) {
         this.convs = convs;
         this.members = members;
         this.messages = messages;
         this.online = online;
+        this.tx = new TransactionTemplate(txManager);
+        this.cache = new DmConversationCache(cacheMaxEntries);
+
+        metrics.gauge("chat_dm_cache_size", "Cached DM pair -> conversation id entries", () -> cache.stats().size());
+        metrics.counter("chat_dm_cache_requests_total", "DM id lookups in the DM cache", () -> cache.stats().hits(), "result", "hit");
+        metrics.counter("chat_dm_cache_requests_total", "DM id lookups in the DM cache", () -> cache.stats().misses(), "result", "miss");
+        metrics.counter("chat_dm_cache_evictions_total", "DM cache evictions", () -> cache.stats().evictions());
     }
 
     /**
@@ -47,36 +66,43 @@ import org.springframework.stereotype.Service;
      * @throws IllegalArgumentException if a user tries to DM themselves.
      */
     @Override
-    public Conversation getOrCreateDm(String u1, String u2) {
+    public Long getOrCreateDmId(String u1, String u2) {
         if (u1.equals(u2)) throw new IllegalArgumentException("DM with self not allowed");
         // stable key: alphabetical order
         String a = u1.compareToIgnoreCase(u2) < 0 ? u1 : u2;
         String b = u1.compareToIgnoreCase(u2) < 0 ? u2 : u1;
         String key = a + ":" + b;
 
-        return convs.findByDmKey(key).orElseGet(() -> createDm(key, a, b));
+        Long cached = cache.get(key);
+        if (cached != null) return cached;
+
+        Long id = convs.findIdByDmKey(key).orElseGet(() -> createDm(key, a, b));
+        cache.put(key, id);
+        return id;
     }
 
     /**
      * Create the conversation + two membership rows, with a race-safe fallback.
-     * If another thread already created the conversation, we look it up again.
+     * If another thread already created the conversation, its transaction wins and we read its id.
      */
-    private Conversation createDm(String key, String a, String b) {
+    private Long createDm(String key, String a, String b) {
         try {
-            Conversation c = new Conversation();
-            c.setType("DM");
-            c.setDmKey(key);
-            c = convs.saveAndFlush(c);
+            return tx.execute(status -> {
+                Conversation c = new Conversation();
+                c.setType("DM");
+                c.setDmKey(key);
+                c = convs.saveAndFlush(c);
 
-            ConversationMember m1 = new ConversationMember();
-            m1.setConversation(c); m1.setUsername(a); members.save(m1);
+                ConversationMember m1 = new ConversationMember();
+                m1.setConversation(c); m1.setUsername(a); members.save(m1);
 
-            ConversationMember m2 = new ConversationMember();
-            m2.setConversation(c); m2.setUsername(b); members.save(m2);
+                ConversationMember m2 = new ConversationMember();
+                m2.setConversation(c); m2.setUsername(b); members.save(m2);
 
-            return c;
+                return c.getId();
+            });
         } catch (DataIntegrityViolationException e) {
-            return convs.findByDmKey(key).orElseThrow();
+            return convs.findIdByDmKey(key).orElseThrow();
         }
     }
 
@@ -86,7 +112,7 @@ import org.springframework.stereotype.Service;
      *  - Accepts any of:
      *      • Users who appear in ConversationMember (ever had a DM created)
      *      • Users who have sent messages before
-     *      • Users currently online (from the in-memory OnlineUserRegistry)
+     *      • Users currently online on any node (from the OnlineUserRegistry)
      *
      * This is pragmatic for development: you can DM an online user even if they
      * have no DB footprint yet. Tighten the policy later if you introduce a proper
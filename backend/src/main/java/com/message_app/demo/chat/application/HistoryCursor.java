@@ -0,0 +1,66 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * Position in a conversation's history: the (sentAt, id) key of one message.
+ *
+ * Messages are ordered by (sentAt, id), matching the composite index
+ * (conversation_id, sent_at, id) on {@code messages}, so a cursor turns "the page before/after
+ * this message" into an index range seek instead of an OFFSET scan.
+ *
+ * On the wire the cursor is opaque: URL-safe Base64 of (epoch micros, id).
+ */
+public record HistoryCursor(Instant sentAt, long id) implements Comparable<HistoryCursor> {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public static HistoryCursor of(MessageDto m) {
+        return new HistoryCursor(m.sentAt(), m.id());
+    }
+
+    public String encode() {
+        ByteBuffer b = ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(ChronoUnit.MICROS.between(Instant.EPOCH, sentAt))
+                .putLong(id);
+        return ENCODER.encodeToString(b.array());
+    }
+
+    /** @throws IllegalArgumentException if {@code token} was not produced by {@link #encode()} */
+    public static HistoryCursor decode(String token) {
+        byte[] raw;
+        try {
+            raw = DECODER.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed history cursor", e);
+        }
+        if (raw.length != 2 * Long.BYTES) throw new IllegalArgumentException("Malformed history cursor");
+        ByteBuffer b = ByteBuffer.wrap(raw);
+        return new HistoryCursor(Instant.EPOCH.plus(b.getLong(), ChronoUnit.MICROS), b.getLong());
+    }
+
+    /** History order: by sentAt, then id. Ids alone are not ordered in time across nodes. */
+    @Override
+    public int compareTo(HistoryCursor other) {
+        int c = sentAt.compareTo(other.sentAt);
+        return c != 0 ? c : Long.compare(id, other.id);
+    }
+
+    /** True if {@code m} sorts strictly before this position. */
+    public boolean sortsBefore(MessageDto m) {
+        int c = m.sentAt().compareTo(sentAt);
+        return c < 0 || (c == 0 && m.id() < id);
+    }
+
+    /** True if {@code m} sorts strictly after this position. */
+    public boolean sortsAfter(MessageDto m) {
+        int c = m.sentAt().compareTo(sentAt);
+        return c > 0 || (c == 0 && m.id() > id);
+    }
+}
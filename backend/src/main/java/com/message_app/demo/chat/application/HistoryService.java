@@ -0,0 +1,66 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.List;
+
+/**
+ * Application-layer service for reading conversation history.
+ *
+ * <p>All pages are returned in chronological order (oldest first) and are keyset-paginated
+ * with {@link HistoryCursor}s. Messages that were accepted by the {@link MessageWriter} but not
+ * flushed yet are merged in, so history always matches what was delivered live.</p>
+ *
+ * Implemented by {@link com.message_app.demo.chat.application.HistoryServiceImpl}.
+ */
+public interface HistoryService {
+
+    /**
+     * One page of history.
+     *
+     * @param messages chronological messages of this page
+     * @param next     cursor to continue in the same direction, or null if there is nothing more
+     */
+    record Page(List<MessageDto> messages, HistoryCursor next) { }
+
+    /** The newest {@code limit} messages of a conversation, oldest first. */
+    List<MessageDto> newest(Long conversationId, int limit);
+
+    /**
+     * Keyset page relative to a cursor.
+     *
+     * @param before if set, the {@code limit} messages right before this position (scrolling back)
+     * @param after  if set, the {@code limit} messages right after this position (catching up)
+     *               - at most one of {@code before}/{@code after} may be set; with neither,
+     *               the newest page is returned and {@code next} points further back.
+     * @throws IllegalArgumentException if both cursors are given
+     */
+    Page page(Long conversationId, HistoryCursor before, HistoryCursor after, int limit);
+
+    /**
+     * Resolve a message id to its cursor position, so clients can page relative to a message they
+     * already hold ("everything after message 1234").
+     *
+     * @throws java.util.NoSuchElementException if the message does not exist in that conversation
+     */
+    HistoryCursor cursorOf(Long conversationId, long messageId);
+
+    /**
+     * Parse a {@code before}/{@code after} request parameter: either a {@code nextCursor} from a
+     * previous page or a plain message id.
+     *
+     * @return null if {@code token} is blank
+     * @throws IllegalArgumentException if the token is malformed
+     * @throws java.util.NoSuchElementException if it is a message id that does not exist in that conversation
+     */
+    default HistoryCursor cursor(Long conversationId, String token) {
+        if (token == null || token.isBlank()) return null;
+        if (token.chars().allMatch(Character::isDigit) && token.length() < 19) {
+            return cursorOf(conversationId, Long.parseLong(token));
+        }
+        return HistoryCursor.decode(token);
+    }
+
+    /** Called by the send path after {@link MessageWriter#append}, so cached history stays current. */
+    void appended(MessageDto message);
+}
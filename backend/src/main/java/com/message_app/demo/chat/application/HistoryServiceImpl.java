@@ -0,0 +1,173 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.infrastructure.persistence.MessageRepository;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Keyset-paginated history reads.
+ *
+ * Each page is one index range query on (conversation_id, sent_at, id) for
+ * {@code limit + 1} rows (the extra row only tells us whether there is a next page),
+ * merged with the writer's unflushed messages for the same range.
+ *
+ * The newest page (and "after" pages that start inside it) of recently used conversations is
+ * served from {@link RecentMessagesCache} instead; sends write through via {@link #appended}.
+ */
+@Service
+class HistoryServiceImpl implements HistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryServiceImpl.class);
+
+    static final int MAX_LIMIT = 200;
+    private static final Comparator<MessageDto> CHRONOLOGICAL =
+            Comparator.comparing(MessageDto::sentAt).thenComparingLong(MessageDto::id);
+
+    private final MessageRepository messages;
+    private final MessageWriter writer;
+
+    private final RecentMessagesCache cache;
+    private final boolean cacheEnabled;
+    private final Timer cacheQueries;
+    private final Timer databaseQueries;
+
+    HistoryServiceImpl(MessageRepository messages, MessageWriter writer, MetricsRegistry metrics,
+                       @Value("${chat.history.cache.enabled:true}") boolean cacheEnabled,
+                       @Value("${chat.history.cache.messages-per-conversation:100}") int cacheCapacity,
+                       @Value("${chat.history.cache.max-bytes:67108864}") long cacheMaxBytes,
+                       @Value("${chat.history.cache.idle-ttl-ms:600000}") long cacheIdleTtlMs,
+                       @Value("${chat.broker.mode:simple}") String brokerMode) {
+        this.messages = messages;
+        this.writer = writer;
+        // The ring is only written through by sends on this node; with several nodes it would miss the others'
+        this.cacheEnabled = cacheEnabled && "simple".equalsIgnoreCase(brokerMode.trim());
+        if (cacheEnabled && !this.cacheEnabled) log.info("event=history_cache_disabled reason=broker_mode_{}", brokerMode.trim());
+        this.cache = new RecentMessagesCache(cacheCapacity, cacheMaxBytes, cacheIdleTtlMs);
+
+        String help = "History page reads, by where the page came from";
+        this.cacheQueries = metrics.timer("chat_history_query_seconds", help, "source", "cache");
+        this.databaseQueries = metrics.timer("chat_history_query_seconds", help, "source", "database");
+        metrics.gauge("chat_history_cache_conversations", "Conversations held in the recent-messages cache", () -> cache.stats().conversations());
+        metrics.gauge("chat_history_cache_bytes", "Estimated recent-messages cache footprint", () -> cache.stats().bytes());
+        metrics.counter("chat_history_cache_requests_total", "Recent-messages cache lookups", () -> cache.stats().hits(), "result", "hit");
+        metrics.counter("chat_history_cache_requests_total", "Recent-messages cache lookups", () -> cache.stats().misses(), "result", "miss");
+        metrics.counter("chat_history_cache_evictions_total", "Conversations evicted from the recent-messages cache", () -> cache.stats().evictions());
+    }
+
+    @Override
+    public List<MessageDto> newest(Long conversationId, int limit) {
+        return page(conversationId, null, null, limit).messages();
+    }
+
+    @Override
+    public Page page(Long conversationId, HistoryCursor before, HistoryCursor after, int limit) {
+        if (before != null && after != null) throw new IllegalArgumentException("Use either 'before' or 'after', not both");
+        int n = Math.max(1, Math.min(limit, MAX_LIMIT));
+        long start = System.nanoTime();
+        if (cacheEnabled && before == null) {
+            Page hit = after == null ? cache.newest(conversationId, n) : cache.after(conversationId, after, n);
+            if (hit == null && after == null && n <= cache.capacity()) {
+                cache.load(conversationId, () -> fromDatabase(conversationId, null, null, cache.capacity()));
+                hit = cache.newest(conversationId, n);
+                if (hit != null) {
+                    databaseQueries.recordSince(start); // seeded on this call
+                    return hit;
+                }
+            }
+            if (hit != null) {
+                cacheQueries.recordSince(start);
+                return hit;
+            }
+        }
+        Page page = fromDatabase(conversationId, before, after, n);
+        databaseQueries.recordSince(start);
+        return page;
+    }
+
+    @Override
+    public void appended(MessageDto message) {
+        if (cacheEnabled) cache.append(message);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.history.cache.sweep-interval-ms:30000}")
+    void sweepCache() {
+        if (!cacheEnabled) return;
+        cache.sweep();
+        RecentMessagesCache.Stats s = cache.stats();
+        log.debug("event=history_cache_sweep conversations={} bytes={} hits={} misses={} evictions={}",
+                s.conversations(), s.bytes(), s.hits(), s.misses(), s.evictions());
+    }
+
+    private Page fromDatabase(Long conversationId, HistoryCursor before, HistoryCursor after, int n) {
+        Pageable probe = Pageable.ofSize(n + 1);
+        // Unflushed messages are read before the database: a message flushed in between then
+        // shows up in at least one of the two instead of slipping through the gap.
+        if (after != null) {
+            List<MessageDto> pending = pending(conversationId, after::sortsAfter);
+            // Catching up: oldest first, continue from the newest message of the page
+            List<MessageDto> rows = merge(
+                    messages.findAfter(conversationId, after.sentAt(), after.id(), probe),
+                    pending, CHRONOLOGICAL, n + 1);
+            boolean more = rows.size() > n;
+            List<MessageDto> page = more ? rows.subList(0, n) : rows;
+            return new Page(List.copyOf(page), more ? HistoryCursor.of(page.get(page.size() - 1)) : null);
+        }
+
+        // Scrolling back (or newest page): newest first from the index, then flip to chronological
+        List<MessageDto> pending = pending(conversationId, before == null ? m -> true : before::sortsBefore);
+        List<MessageDto> rows = merge(
+                before == null
+                        ? messages.findNewest(conversationId, probe)
+                        : messages.findBefore(conversationId, before.sentAt(), before.id(), probe),
+                pending, CHRONOLOGICAL.reversed(), n + 1);
+        boolean more = rows.size() > n;
+        List<MessageDto> page = new ArrayList<>(more ? rows.subList(0, n) : rows);
+        Collections.reverse(page);
+        return new Page(List.copyOf(page), more ? HistoryCursor.of(page.get(0)) : null);
+    }
+
+    @Override
+    public HistoryCursor cursorOf(Long conversationId, long messageId) {
+        for (MessageDto m : writer.pending(conversationId)) {
+            if (m.id() == messageId) return HistoryCursor.of(m);
+        }
+        return messages.findSentAt(conversationId, messageId)
+                .map(sentAt -> new HistoryCursor(sentAt, messageId))
+                .orElseThrow(() -> new NoSuchElementException("No message " + messageId + " in conversation " + conversationId));
+    }
+
+    private List<MessageDto> pending(Long conversationId, Predicate<MessageDto> inRange) {
+        List<MessageDto> pending = writer.pending(conversationId);
+        if (pending.isEmpty()) return pending;
+        return pending.stream().filter(inRange).toList();
+    }
+
+    /** Union of already-ordered DB rows and unflushed messages, de-duplicated, first {@code max} in {@code order}. */
+    private static List<MessageDto> merge(List<MessageDto> rows, List<MessageDto> pending, Comparator<MessageDto> order, int max) {
+        if (pending.isEmpty()) return rows;
+        TreeSet<MessageDto> all = new TreeSet<>(order); // same (sentAt, id) = same message
+        all.addAll(rows);
+        all.addAll(pending);
+        List<MessageDto> out = new ArrayList<>(Math.min(all.size(), max));
+        for (MessageDto m : all) {
+            if (out.size() == max) break;
+            out.add(m);
+        }
+        return out;
+    }
+}
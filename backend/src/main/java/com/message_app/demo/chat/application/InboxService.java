@@ -0,0 +1,50 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.InboxEntry;
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.List;
+
+/**
+ * Application-layer port for the inbox: a user's DMs and rooms, most recent activity first, each
+ * with its newest message and the user's unread count.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>{@link #messageAdded} is called on the send path and only touches memory. The newest
+ *     message of each conversation and each member's activity time are written behind onto
+ *     {@code conversations} / {@code conversation_members}, like unread counts by {@link UnreadCounters}.</li>
+ *     <li>{@link #inbox} reads one index range of the user's membership rows joined to their
+ *     conversations by primary key; it never reads {@code messages}, so its cost is the page size,
+ *     not the number or length of the user's conversations.</li>
+ *     <li>Messages not yet written behind are overlaid on the page, so previews and counts are
+ *     current; a conversation only moves to another page once its activity time is written.</li>
+ * </ul>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.persistence.WriteBehindInbox}.
+ */
+public interface InboxService {
+
+    /**
+     * @param next position after the last entry, for {@code before} of the next page; null when
+     *             there is nothing more. {@code sentAt} is the activity time, {@code id} the conversation id.
+     */
+    record Page(List<InboxEntry> conversations, HistoryCursor next) { }
+
+    /** The newest message of its conversation, if no newer one was seen. */
+    void messageAdded(MessageDto message);
+
+    /**
+     * Position of the newest message of a conversation: {@code stored} (as read from
+     * {@code conversations.last_message_at/last_message_id}, may be null) or a newer one not written yet.
+     */
+    HistoryCursor lastMessage(Long conversationId, HistoryCursor stored);
+
+    /**
+     * Conversations of {@code username}, most recent activity first.
+     *
+     * @param before {@link Page#next()} of the previous page; null for the first page
+     * @param limit  page size, capped at 200
+     */
+    Page inbox(String username, HistoryCursor before, int limit);
+}
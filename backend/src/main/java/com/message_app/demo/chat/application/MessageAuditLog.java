@@ -0,0 +1,25 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+/**
+ * Application-layer port for the message audit trail (who sent what to whom, and whether
+ * it was delivered live).
+ *
+ * <p>Implementations must never block or do I/O on the calling thread: this is invoked from
+ * the STOMP inbound path for every DM. When the audit pipeline cannot keep up, records may be
+ * dropped (and counted) rather than slowing down delivery.</p>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.audit.AuditJournal}.
+ */
+public interface MessageAuditLog {
+
+    /**
+     * Record a message that was accepted for delivery.
+     *
+     * @param message   the stored message (id, conversation, sender, content, sentAt)
+     * @param recipient username of the recipient
+     * @param delivered true if the recipient was online when the message was sent
+     */
+    void record(MessageDto message, String recipient, boolean delivered);
+}
@@ -0,0 +1,54 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.api.dto.SearchHit;
+
+import java.util.List;
+
+/**
+ * Application-layer port for full-text search over message history.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>{@link #messageAdded} is called on the send path and never blocks or does I/O; the
+ *     message is indexed asynchronously, usually within milliseconds.</li>
+ *     <li>{@link #search} only returns messages of conversations the user may read: their DMs and
+ *     rooms, and the public room. It never scans {@code messages}; only the rows of the hits are
+ *     read, by primary key, to build snippets.</li>
+ *     <li>Every word of the query must occur in a hit; the last one also matches as a prefix
+ *     unless the query ends with a space (search as you type).</li>
+ *     <li>{@link #rebuild} re-reads the whole table into a new index; searches keep using the
+ *     current one until it is done.</li>
+ * </ul>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.search.IndexedMessageSearch}.
+ */
+public interface MessageSearch {
+
+    enum Sort { RELEVANCE, NEWEST }
+
+    /**
+     * @param hits     best first
+     * @param complete false while the index is loading or rebuilding
+     */
+    record Result(List<SearchHit> hits, boolean complete) { }
+
+    /** Queue a message for indexing (after {@link MessageWriter#append}, id assigned). */
+    void messageAdded(MessageDto message);
+
+    /**
+     * @param conversationId only this conversation, or null for all conversations of the user
+     * @param limit          capped at 100
+     * @throws IllegalArgumentException if the query has no searchable word
+     * @throws java.util.NoSuchElementException if the user is not a member of {@code conversationId}
+     * @throws IllegalStateException if search is disabled
+     */
+    Result search(String username, Long conversationId, String query, Sort sort, int limit);
+
+    /**
+     * Start rebuilding the index from the {@code messages} table, in the background.
+     *
+     * @return false if a rebuild is already running
+     */
+    boolean rebuild();
+}
@@ -0,0 +1,44 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.List;
+
+/**
+ * Application-layer port for persisting chat messages.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>{@link #append} assigns the message id and timestamp up front and returns the
+ *     wire-ready {@link MessageDto} immediately, so callers can broadcast without waiting
+ *     for the database.</li>
+ *     <li>Persistence happens asynchronously (write-behind). Until a message is flushed it is
+ *     still visible through {@link #pending(Long)}, which lets history reads stay consistent
+ *     with what was already delivered over the socket.</li>
+ * </ul>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.persistence.WriteBehindMessageWriter}.
+ */
+public interface MessageWriter {
+
+    /**
+     * Accept a message for persistence.
+     *
+     * @param conversationId conversation the message belongs to
+     * @param sender         username of the sender
+     * @param content        message body
+     * @return the message as it will be stored (id and sentAt already assigned)
+     * @throws IllegalStateException if the write queue stays full past the enqueue timeout
+     *                               (backpressure) or the writer is shut down
+     */
+    MessageDto append(Long conversationId, String sender, String content);
+
+    /**
+     * Messages of a conversation that were accepted but are not yet committed to the database,
+     * in the order they were appended.
+     *
+     * @param conversationId conversation to look up
+     * @return a snapshot; empty if everything has been flushed
+     */
+    List<MessageDto> pending(Long conversationId);
+}
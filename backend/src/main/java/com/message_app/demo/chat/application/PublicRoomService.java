@@ -0,0 +1,19 @@
+package com.message_app.demo.chat.application;
+
+/**
+ * Application-layer service for the public room ({@code /topic/public}).
+ *
+ * <p>The public room is stored as an ordinary {@code Conversation} of type "PUBLIC", so its
+ * messages go through the same {@link MessageWriter} and {@link HistoryService} as DMs
+ * (write-behind persistence, recent-messages cache, keyset paging and catch-up).</p>
+ *
+ * Implemented by {@link com.message_app.demo.chat.application.PublicRoomServiceImpl}.
+ */
+public interface PublicRoomService {
+
+    /**
+     * Id of the public room's conversation, created on first use.
+     * Resolved once per process; later calls do not touch the database.
+     */
+    Long conversationId();
+}
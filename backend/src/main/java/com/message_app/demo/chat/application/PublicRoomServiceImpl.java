@@ -0,0 +1,71 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.domain.Conversation;
+import com.message_app.demo.chat.infrastructure.persistence.ConversationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Resolves the public room's conversation.
+ *
+ * The room is one row in {@code conversations} with type "PUBLIC" and the reserved unique key
+ * {@link #ROOM_KEY}. Several nodes may race to create it on an empty database; the unique
+ * constraint lets exactly one insert win and the others re-read, as in {@link DmServiceImpl}.
+ *
+ * On startup the room is resolved and its newest page read once, which seeds the
+ * recent-messages cache: from then on sends write through and the first clients to (re)connect
+ * get their history from memory instead of all querying the database at once.
+ */
+@Service
+class PublicRoomServiceImpl implements PublicRoomService {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicRoomServiceImpl.class);
+
+    /** Stored in {@code dm_key}; DM keys always contain ':' so they can never collide with it. */
+    static final String ROOM_KEY = "public";
+
+    private final ConversationRepository convs;
+    private final HistoryService history;
+    private volatile Long conversationId;
+
+    PublicRoomServiceImpl(ConversationRepository convs, HistoryService history) {
+        this.convs = convs;
+        this.history = history;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void warmUp() {
+        history.newest(conversationId(), 1);
+    }
+
+    @Override
+    public Long conversationId() {
+        Long id = conversationId;
+        if (id == null) {
+            synchronized (this) {
+                id = conversationId;
+                if (id == null) {
+                    id = convs.findIdByDmKey(ROOM_KEY).orElseGet(this::create);
+                    conversationId = id;
+                    log.info("event=public_room_resolved conversationId={}", id);
+                }
+            }
+        }
+        return id;
+    }
+
+    private Long create() {
+        try {
+            Conversation c = new Conversation();
+            c.setType("PUBLIC");
+            c.setDmKey(ROOM_KEY);
+            return convs.saveAndFlush(c).getId();
+        } catch (DataIntegrityViolationException e) {
+            return convs.findIdByDmKey(ROOM_KEY).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Per-conversation ring of the newest messages, used by {@link HistoryServiceImpl}.
+ *
+ * Why:
+ *  - Opening a DM always asks for the newest page, and those messages were just broadcast by
+ *    the send path. Keeping them in memory means the common history read never reaches JPA.
+ *
+ * How:
+ *  - A conversation is seeded once from the database ({@link #load}); after that every send
+ *    writes through ({@link #append}). Sends for conversations that are not cached are ignored.
+ *  - Each ring keeps up to {@code capacity} messages in (sentAt, id) order. Concurrent sends can
+ *    arrive slightly out of order, so inserts walk back from the tail to their slot.
+ *  - {@code truncated} records whether older messages exist outside the ring, so a page served
+ *    from memory still knows if there is a next page.
+ *  - Sends racing with the seeding query land in the ring while it is loading and are merged with
+ *    the loaded rows (de-duplicated by key).
+ *
+ * Eviction:
+ *  - {@link #sweep} drops conversations idle for longer than {@code idleTtlNanos}.
+ *  - When the estimated footprint exceeds {@code maxBytes}, least recently used conversations
+ *    are dropped until it fits again.
+ */
+class RecentMessagesCache {
+
+    /** Snapshot of the cache counters. */
+    record Stats(long conversations, long bytes, long hits, long misses, long evictions) { }
+
+    private static final Comparator<MessageDto> CHRONOLOGICAL =
+            Comparator.comparing(MessageDto::sentAt).thenComparingLong(MessageDto::id);
+    /** Rough per-message footprint besides the strings: DTO, boxed ids, Instant, String headers. */
+    private static final long MESSAGE_OVERHEAD_BYTES = 160;
+
+    private static final class Entry {
+        final Long conversationId;
+        final MessageDto[] ring;
+        int head;
+        int size;
+        long bytes;
+        boolean truncated; // older messages exist that are not in the ring
+        boolean loading;
+        boolean loaded;
+        boolean evicted;
+        volatile long lastAccessNanos = System.nanoTime();
+
+        Entry(Long conversationId, int capacity) {
+            this.conversationId = conversationId;
+            this.ring = new MessageDto[capacity];
+        }
+
+        MessageDto get(int i) {
+            return ring[(head + i) % ring.length];
+        }
+
+        void set(int i, MessageDto m) {
+            ring[(head + i) % ring.length] = m;
+        }
+
+        /** Sorted insert; @return change in estimated bytes */
+        long add(MessageDto m) {
+            int p = size;
+            while (p > 0 && CHRONOLOGICAL.compare(get(p - 1), m) > 0) p--;
+            if (p > 0 && CHRONOLOGICAL.compare(get(p - 1), m) == 0) return 0; // already there
+            long delta = 0;
+            if (size == ring.length) {
+                truncated = true;
+                if (p == 0) return 0; // older than everything we keep
+                delta -= sizeOf(get(0));
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                p--;
+            }
+            for (int i = size; i > p; i--) set(i, get(i - 1));
+            set(p, m);
+            size++;
+            delta += sizeOf(m);
+            bytes += delta;
+            return delta;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Entry> map = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final long maxBytes;
+    private final long idleTtlNanos;
+    private final AtomicLong bytes = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    RecentMessagesCache(int capacity, long maxBytes, long idleTtlMs) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        this.idleTtlNanos = idleTtlMs * 1_000_000L;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /** @return the newest {@code limit} messages from memory, or null if they have to come from the database */
+    HistoryService.Page newest(Long conversationId, int limit) {
+        Entry e = map.get(conversationId);
+        if (e != null) {
+            e.lastAccessNanos = System.nanoTime();
+            synchronized (e) {
+                if (e.loaded && !e.evicted && (limit <= e.size || !e.truncated)) {
+                    int n = Math.min(limit, e.size);
+                    List<MessageDto> out = new ArrayList<>(n);
+                    for (int i = e.size - n; i < e.size; i++) out.add(e.get(i));
+                    boolean more = e.size > n || e.truncated;
+                    hits.increment();
+                    return new HistoryService.Page(List.copyOf(out), more && n > 0 ? HistoryCursor.of(out.get(0)) : null);
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /** @return up to {@code limit} messages after {@code cursor} from memory, or null if the ring does not reach back that far */
+    HistoryService.Page after(Long conversationId, HistoryCursor cursor, int limit) {
+        Entry e = map.get(conversationId);
+        if (e != null) {
+            e.lastAccessNanos = System.nanoTime();
+            synchronized (e) {
+                // Served only if nothing between the cursor and the ring's oldest message can be missing
+                if (e.loaded && !e.evicted && (!e.truncated || (e.size > 0 && !cursor.sortsAfter(e.get(0))))) {
+                    int from = e.size;
+                    while (from > 0 && cursor.sortsAfter(e.get(from - 1))) from--;
+                    int n = Math.min(limit, e.size - from);
+                    List<MessageDto> out = new ArrayList<>(n);
+                    for (int i = from; i < from + n; i++) out.add(e.get(i));
+                    boolean more = e.size - from > n;
+                    hits.increment();
+                    return new HistoryService.Page(List.copyOf(out), more ? HistoryCursor.of(out.get(n - 1)) : null);
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /** Write-through from the send path. */
+    void append(MessageDto m) {
+        Entry e = map.get(m.conversationId());
+        if (e == null) return;
+        long delta;
+        synchronized (e) {
+            if (e.evicted) return;
+            delta = e.add(m);
+        }
+        if (delta != 0 && bytes.addAndGet(delta) > maxBytes) enforceBudget();
+    }
+
+    /**
+     * Seed a conversation with its newest page. {@code loader} runs outside any lock and at most
+     * once at a time per conversation; concurrent callers return immediately and fall back to
+     * the database themselves.
+     */
+    void load(Long conversationId, Supplier<HistoryService.Page> loader) {
+        Entry e = map.computeIfAbsent(conversationId, id -> new Entry(id, capacity));
+        synchronized (e) {
+            if (e.loaded || e.loading || e.evicted) return;
+            e.loading = true;
+        }
+        HistoryService.Page page;
+        try {
+            page = loader.get();
+        } finally {
+            synchronized (e) {
+                e.loading = false;
+            }
+        }
+        long delta = 0;
+        synchronized (e) {
+            if (e.evicted) return;
+            for (MessageDto m : page.messages()) delta += e.add(m);
+            e.truncated |= page.next() != null;
+            e.loaded = true;
+        }
+        if (bytes.addAndGet(delta) > maxBytes) enforceBudget();
+    }
+
+    /** Drop idle conversations, then enforce the memory budget. */
+    void sweep() {
+        long now = System.nanoTime();
+        for (Entry e : map.values()) {
+            if (now - e.lastAccessNanos > idleTtlNanos) evict(e);
+        }
+        if (bytes.get() > maxBytes) enforceBudget();
+    }
+
+    Stats stats() {
+        return new Stats(map.size(), bytes.get(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void enforceBudget() {
+        if (!evictLock.tryLock()) return; // someone else is already making room
+        try {
+            if (bytes.get() <= maxBytes) return;
+            List<Entry> lru = new ArrayList<>(map.values());
+            lru.sort(Comparator.comparingLong(e -> e.lastAccessNanos));
+            for (Entry e : lru) {
+                if (bytes.get() <= maxBytes) break;
+                evict(e);
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private void evict(Entry e) {
+        synchronized (e) {
+            if (e.evicted) return;
+            e.evicted = true;
+            bytes.addAndGet(-e.bytes);
+        }
+        map.remove(e.conversationId, e);
+        evictions.increment();
+    }
+
+    private static long sizeOf(MessageDto m) {
+        long chars = (m.content() == null ? 0 : m.content().length()) + (m.sender() == null ? 0 : m.sender().length());
+        return MESSAGE_OVERHEAD_BYTES + 2 * chars;
+    }
+}
@@ -0,0 +1,7 @@
+package com.message_app.demo.chat.application;
+
+/**
+ * Published by {@link RoomService#leave} after the membership row is gone, so the messaging
+ * layer can cancel that user's live subscriptions to the room.
+ */
+public record RoomLeftEvent(Long roomId, String username) { }
@@ -0,0 +1,102 @@
+package com.message_app.demo.chat.application;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-memory room -> members index, used by {@link RoomServiceImpl}.
+ *
+ * Why:
+ *  - Every room send and every room subscription is authorized by a membership check. Asking
+ *    {@code conversation_members} each time would put a query on the per-message path.
+ *
+ * How:
+ *  - A room's member set is loaded from the database on first use and then kept current by
+ *    {@link #added}/{@link #removed}, which the service calls after its transaction commits.
+ *  - Loads run inside {@link ConcurrentHashMap#computeIfAbsent}, and updates use
+ *    {@code computeIfPresent}, so an update that races with a load waits for it instead of being lost.
+ *  - Empty results (unknown id, DM id, room everyone left) are not cached, so probing random
+ *    ids cannot grow the index.
+ *  - {@code maxAgeNanos > 0} reloads a room's set once it is that old. Only needed with several
+ *    nodes, where joins and leaves handled by another node are not seen here.
+ */
+class RoomMembershipIndex {
+
+    /** Snapshot of the index counters. */
+    record Stats(long rooms, long members, long hits, long loads) { }
+
+    private record Members(Set<String> users, long loadedAtNanos) { }
+
+    private final ConcurrentHashMap<Long, Members> rooms = new ConcurrentHashMap<>();
+    private final Function<Long, List<String>> loader;
+    private final long maxAgeNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    RoomMembershipIndex(Function<Long, List<String>> loader, long maxAgeMs) {
+        this.loader = loader;
+        this.maxAgeNanos = maxAgeMs * 1_000_000L;
+    }
+
+    boolean contains(Long roomId, String username) {
+        Set<String> users = users(roomId);
+        return users != null && users.contains(username);
+    }
+
+    /** Member count; 0 for unknown rooms. */
+    int size(Long roomId) {
+        Set<String> users = users(roomId);
+        return users == null ? 0 : users.size();
+    }
+
+    /** Read-only view of the live member set; empty for unknown rooms. */
+    Set<String> members(Long roomId) {
+        Set<String> users = users(roomId);
+        return users == null ? Set.of() : Collections.unmodifiableSet(users);
+    }
+
+    void added(Long roomId, String username) {
+        rooms.computeIfPresent(roomId, (id, m) -> {
+            m.users().add(username);
+            return m;
+        });
+    }
+
+    void removed(Long roomId, String username) {
+        rooms.computeIfPresent(roomId, (id, m) -> {
+            m.users().remove(username);
+            return m.users().isEmpty() ? null : m;
+        });
+    }
+
+    Stats stats() {
+        long members = 0;
+        for (Members m : rooms.values()) members += m.users().size();
+        return new Stats(rooms.size(), members, hits.sum(), loads.sum());
+    }
+
+    /** @return the live member set, or null if the room has no members (or does not exist) */
+    private Set<String> users(Long roomId) {
+        Members m = rooms.get(roomId);
+        if (m != null && (maxAgeNanos <= 0 || System.nanoTime() - m.loadedAtNanos() < maxAgeNanos)) {
+            hits.increment();
+            return m.users();
+        }
+        if (m != null) rooms.remove(roomId, m); // too old: reload below
+        m = rooms.computeIfAbsent(roomId, this::load);
+        return m == null ? null : m.users();
+    }
+
+    private Members load(Long roomId) {
+        loads.increment();
+        List<String> users = loader.apply(roomId);
+        if (users.isEmpty()) return null;
+        Set<String> set = ConcurrentHashMap.newKeySet(users.size());
+        set.addAll(users);
+        return new Members(set, System.nanoTime());
+    }
+}
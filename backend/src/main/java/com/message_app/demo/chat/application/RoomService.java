@@ -0,0 +1,54 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.RoomDto;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Application-layer service for multi-user rooms.
+ *
+ * <p>A room is a {@code Conversation} of type "ROOM"; membership is stored as
+ * {@code ConversationMember} rows and messages reuse {@code Message}, {@link MessageWriter}
+ * and {@link HistoryService} like DMs.</p>
+ *
+ * <p>Membership checks ({@link #isMember}) are answered from an in-memory index, so
+ * authorizing a send or a subscription does not query the database per message.</p>
+ *
+ * Implemented by {@link com.message_app.demo.chat.application.RoomServiceImpl}.
+ */
+public interface RoomService {
+
+    /**
+     * Create a room; the creator becomes its first member.
+     *
+     * @throws IllegalArgumentException if the name is blank or too long
+     */
+    RoomDto create(String owner, String name);
+
+    /**
+     * Add a user to a room. Joining a room one is already in is a no-op.
+     *
+     * @throws java.util.NoSuchElementException if no room with that id exists
+     */
+    RoomDto join(Long roomId, String username);
+
+    /**
+     * Remove a user from a room and publish a {@link RoomLeftEvent}.
+     *
+     * @return false if the user was not a member
+     */
+    boolean leave(Long roomId, String username);
+
+    /** Membership check from the in-memory index; false for unknown rooms and non-room conversations. */
+    boolean isMember(Long roomId, String username);
+
+    /** Current members of a room from the in-memory index (a read-only view); empty for unknown rooms. */
+    Set<String> members(Long roomId);
+
+    /** Rooms the user is a member of. */
+    List<RoomDto> roomsOf(String username);
+
+    /** All rooms, oldest first, at most {@code limit}. */
+    List<RoomDto> rooms(int limit);
+}
@@ -0,0 +1,137 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.RoomDto;
+import com.message_app.demo.chat.domain.Conversation;
+import com.message_app.demo.chat.domain.ConversationMember;
+import com.message_app.demo.chat.infrastructure.persistence.ConversationMemberRepository;
+import com.message_app.demo.chat.infrastructure.persistence.ConversationRepository;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Group rooms: create / join / leave, backed by {@code conversations} + {@code conversation_members}.
+ *
+ * Transactionality:
+ *  - Each write is one short {@link TransactionTemplate} transaction; the membership index is
+ *    updated only after it committed, so the index never shows a member the database does not have.
+ *
+ * Concurrency:
+ *  - (conversation_id, username) is unique, so two concurrent joins of the same user race safely:
+ *    the loser's insert fails and is treated as "already a member", as in {@link DmServiceImpl}.
+ */
+@Service
+class RoomServiceImpl implements RoomService {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomServiceImpl.class);
+
+    static final int MAX_NAME_LENGTH = 128;
+    static final int MAX_LIST_LIMIT = 200;
+
+    private final ConversationRepository convs;
+    private final ConversationMemberRepository members;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final RoomMembershipIndex index;
+
+    RoomServiceImpl(ConversationRepository convs, ConversationMemberRepository members, PlatformTransactionManager txManager,
+                    ApplicationEventPublisher events, MetricsRegistry metrics,
+                    @Value("${chat.rooms.membership.max-age-ms:0}") long membershipMaxAgeMs) {
+        this.convs = convs;
+        this.members = members;
+        this.tx = new TransactionTemplate(txManager);
+        this.events = events;
+        this.index = new RoomMembershipIndex(members::findRoomMembers, membershipMaxAgeMs);
+
+        metrics.gauge("chat_room_index_rooms", "Rooms held in the membership index", () -> index.stats().rooms());
+        metrics.gauge("chat_room_index_members", "Memberships held in the membership index", () -> index.stats().members());
+        metrics.counter("chat_room_index_requests_total", "Membership index lookups", () -> index.stats().hits(), "result", "hit");
+        metrics.counter("chat_room_index_requests_total", "Membership index lookups", () -> index.stats().loads(), "result", "load");
+    }
+
+    @Override
+    public RoomDto create(String owner, String name) {
+        String n = name == null ? "" : name.trim();
+        if (n.isEmpty() || n.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Room name must be 1-" + MAX_NAME_LENGTH + " characters");
+        }
+        Long id = tx.execute(status -> {
+            Conversation c = new Conversation();
+            c.setType("ROOM");
+            c.setName(n);
+            c = convs.saveAndFlush(c);
+
+            ConversationMember m = new ConversationMember();
+            m.setConversation(c); m.setUsername(owner); members.save(m);
+            return c.getId();
+        });
+        log.info("event=room_created roomId={} owner={}", id, owner);
+        return new RoomDto(id, n, 1);
+    }
+
+    @Override
+    public RoomDto join(Long roomId, String username) {
+        Conversation room = convs.findById(roomId)
+                .filter(c -> "ROOM".equals(c.getType()))
+                .orElseThrow(() -> new NoSuchElementException("No room " + roomId));
+        if (!index.contains(roomId, username)) {
+            try {
+                tx.executeWithoutResult(status -> {
+                    ConversationMember m = new ConversationMember();
+                    m.setConversation(room); m.setUsername(username); members.saveAndFlush(m);
+                });
+                log.info("event=room_joined roomId={} user={}", roomId, username);
+            } catch (DataIntegrityViolationException e) {
+                // joined concurrently (another tab or node)
+            }
+            index.added(roomId, username);
+        }
+        return new RoomDto(roomId, room.getName(), index.size(roomId));
+    }
+
+    @Override
+    public boolean leave(Long roomId, String username) {
+        Integer deleted = tx.execute(status -> members.deleteMembership(roomId, username));
+        index.removed(roomId, username);
+        if (deleted == null || deleted == 0) return false;
+        log.info("event=room_left roomId={} user={}", roomId, username);
+        events.publishEvent(new RoomLeftEvent(roomId, username));
+        return true;
+    }
+
+    @Override
+    public boolean isMember(Long roomId, String username) {
+        return roomId != null && username != null && index.contains(roomId, username);
+    }
+
+    @Override
+    public Set<String> members(Long roomId) {
+        return roomId == null ? Set.of() : index.members(roomId);
+    }
+
+    @Override
+    public List<RoomDto> roomsOf(String username) {
+        return convs.findRoomsOf(username).stream().map(this::toDto).toList();
+    }
+
+    @Override
+    public List<RoomDto> rooms(int limit) {
+        int n = Math.max(1, Math.min(limit, MAX_LIST_LIMIT));
+        return convs.findRooms(Pageable.ofSize(n)).stream().map(this::toDto).toList();
+    }
+
+    private RoomDto toDto(Conversation c) {
+        return new RoomDto(c.getId(), c.getName(), index.size(c.getId()));
+    }
+}
@@ -0,0 +1,63 @@
+package com.message_app.demo.chat.application;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+
+import java.util.Collection;
+
+/**
+ * Application-layer port for per-member unread counts and read watermarks.
+ *
+ * <p><b>Contract:</b></p>
+ * <ul>
+ *     <li>{@link #messageAdded} is called on the send path and only touches memory; no row is
+ *     read or counted per message.</li>
+ *     <li>Counts and watermarks are durable: they live on the {@code ConversationMember} row and
+ *     increments are written behind in batches, like messages by {@link MessageWriter}.</li>
+ *     <li>{@link #get} is O(1) after the member's row has been read once.</li>
+ *     <li>Watermarks only move forward in history order (sentAt, id), not by id: ids are not
+ *     ordered in time across nodes. Marking read up to an older message is a no-op.</li>
+ * </ul>
+ *
+ * Implemented by {@code com.message_app.demo.chat.infrastructure.persistence.WriteBehindUnreadCounters}.
+ */
+public interface UnreadCounters {
+
+    /**
+     * Read state of one member of one conversation.
+     *
+     * @param lastReadMessageId everything up to this message, in history order, is read (0 = nothing read yet)
+     * @param unreadCount       messages from others after the watermark
+     */
+    record Unread(Long conversationId, long lastReadMessageId, long unreadCount) { }
+
+    /**
+     * One more unread message for each recipient (the sender is skipped).
+     *
+     * @param message    the appended message (id assigned)
+     * @param recipients members of the conversation who should see it as unread
+     */
+    void messageAdded(MessageDto message, Collection<String> recipients);
+
+    /**
+     * Current read state of a member.
+     *
+     * @throws java.util.NoSuchElementException if the user is not a member of that conversation
+     */
+    Unread get(Long conversationId, String username);
+
+    /**
+     * Current read state from a member row the caller has just read (e.g. a page of the inbox),
+     * plus the increments not yet written. Never touches the database, so a list of conversations
+     * costs no read per member.
+     */
+    Unread current(Unread stored, String username);
+
+    /**
+     * Mark everything up to and including {@code messageId} as read. Messages from others after it
+     * stay unread.
+     *
+     * @throws java.util.NoSuchElementException if the user is not a member, or the message does not
+     *                                          exist in that conversation
+     */
+    Unread markRead(Long conversationId, String username, long messageId);
+}
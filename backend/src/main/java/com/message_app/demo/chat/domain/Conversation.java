@@ -1,14 +1,21 @@
 package com.message_app.demo.chat.domain;
 
 import jakarta.persistence.*;
+
+import java.time.Instant;
 /**
- * Root aggregate for any conversation (currently only type "DM").
+ * Root aggregate for any conversation (type "DM", "ROOM" for group rooms, or "PUBLIC" for the public room).
  *
  * Persistence model:
  *  - Each row represents one conversation thread.
  *  - `type` is short ("DM" now, could be "ROOM" later).
  *  - `dmKey` is a canonical, unique key for DMs: "minUser:maxUser" (case-insensitive ordering),
- *    used to ensure there is at most one DM per pair.
+ *    used to ensure there is at most one DM per pair. The public room uses the reserved key "public";
+ *    group rooms have no key (NULLs do not collide) and a display `name` instead.
+ *
+ * Last message (inbox):
+ *  - `last_message_id`, `last_sender`, `last_preview`, `last_message_at` are a denormalized copy of
+ *    the newest message, written behind by {@code InboxService}, so conversation lists never touch `messages`.
  *
  * Lifecycle:
  *  - Created when the first message is sent or when a DM is explicitly "opened" and didn't exist.
@@ -35,6 +42,23 @@ public class Conversation {
     @Column(unique = true, length = 256)
     private String dmKey;
 
+    // Display name of a group room; null for DMs
+    @Column(length = 128)
+    private String name;
+
+    // Newest message, denormalized for the inbox; null until the first message is flushed
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_sender", length = 128)
+    private String lastSender;
+
+    @Column(name = "last_preview", length = 128)
+    private String lastPreview;
+
+    @Column(name = "last_message_at")
+    private Instant lastMessageAt;
+
     public Conversation() {
     }
 
@@ -46,6 +70,34 @@ public class Conversation {
         this.type = type;
     }
 
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public String getLastSender() {
+        return lastSender;
+    }
+
+    public String getLastPreview() {
+        return lastPreview;
+    }
+
+    public Instant getLastMessageAt() {
+        return lastMessageAt;
+    }
+
     // Database identifier
     public Long getId() {
         return id;
@@ -3,6 +3,9 @@ package com.message_app.demo.chat.domain;
 import com.message_app.demo.chat.domain.Conversation;
 import jakarta.persistence.*;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
 /**
  * Join table between Conversation and participating users.
  * <p>
@@ -11,7 +14,20 @@ import jakarta.persistence.*;
  * <p>
  * Constraints & indexing:
  * - (conversation_id, username) should be unique for correctness (one row per user per conversation).
- * - An index on `username` supports lookups like "find all conversations for user X".
+ * - (username, last_activity_at) serves "conversations of user X, most recent first" (the inbox)
+ *   as an index range scan; it also covers plain lookups by `username`.
+ * <p>
+ * Read state:
+ * - `last_read_at`/`last_read_message_id` is the member's read watermark: everything up to that
+ *   (sentAt, id) position is read. Null `last_read_at`: nothing read yet.
+ * - `unread_count` is maintained incrementally by {@code UnreadCounters} (write-behind), never counted per send.
+ * - `last_delivered_at`/`last_delivered_message_id` is the member's delivery cursor: every DM up to
+ *   that (sentAt, id) position reached one of their sessions, live or through catch-up
+ *   ({@code DeliveryCursors}, written behind). Null `last_delivered_at`: nothing delivered yet.
+ * <p>
+ * Activity:
+ * - `last_activity_at` is when the member joined or the last message was sent, copied here by
+ *   {@code InboxService} so the inbox is sorted per member without joining `messages`.
  */
 
 /*@Entity
@@ -19,7 +35,10 @@ import jakarta.persistence.*;
         uniqueConstraints=@UniqueConstraint(columnNames={"conversation_id","username"}))*/
 @Entity
 @Table(name = "conversation_members", indexes = {
-        @Index(name = "idx_cm_username", columnList = "username")
+        @Index(name = "idx_cm_username_activity", columnList = "username, last_activity_at")
+}, uniqueConstraints = {
+        // One row per user per conversation; lets concurrent joins of a room race safely
+        @UniqueConstraint(name = "uk_cm_conversation_username", columnNames = {"conversation_id", "username"})
 })
 public class ConversationMember {
     /**
@@ -41,6 +60,29 @@ public class ConversationMember {
     private
     String username;
 
+    @Column(name = "last_read_at")
+    private Instant lastReadAt;
+
+    @Column(name = "last_read_message_id", nullable = false)
+    private long lastReadMessageId;
+
+    @Column(name = "unread_count", nullable = false)
+    private long unreadCount;
+
+    @Column(name = "last_delivered_at")
+    private Instant lastDeliveredAt;
+
+    @Column(name = "last_delivered_message_id", nullable = false)
+    private long lastDeliveredMessageId;
+
+    @Column(name = "last_activity_at", nullable = false)
+    private Instant lastActivityAt;
+
+    @PrePersist
+    void onCreate() {
+        if (lastActivityAt == null) lastActivityAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
     public Long getId() {
         return id;
     }
@@ -61,4 +103,28 @@ public class ConversationMember {
         this.username = username;
     }
 
+    public Instant getLastReadAt() {
+        return lastReadAt;
+    }
+
+    public long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+
+    public long getUnreadCount() {
+        return unreadCount;
+    }
+
+    public Instant getLastDeliveredAt() {
+        return lastDeliveredAt;
+    }
+
+    public long getLastDeliveredMessageId() {
+        return lastDeliveredMessageId;
+    }
+
+    public Instant getLastActivityAt() {
+        return lastActivityAt;
+    }
+
 }
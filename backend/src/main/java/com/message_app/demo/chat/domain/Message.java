@@ -13,10 +13,18 @@ import java.time.Instant;
  *    which keeps the model simple and decoupled from any user directory.
  *  - `sentAt` defaults to the entity creation time in JVM (good enough for most chat uses).
  */
-@Entity @Table(name="messages")
+@Entity
+@Table(name = "messages", indexes = {
+        // Keyset pagination: WHERE conversation_id = ? AND (sent_at, id) < (?, ?) ORDER BY sent_at, id
+        @Index(name = "idx_msg_conv_sent_id", columnList = "conversation_id, sent_at, id")
+})
 public class Message {
-    /** Surrogate PK. */
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    /**
+     * Surrogate PK. Assigned by the application before insert (block-allocated from the
+     * {@code messages_seq} sequence) so messages can be broadcast and batch-inserted
+     * without waiting for an IDENTITY round trip.
+     */
+    @Id
     private Long id;
     @ManyToOne(optional = false) private Conversation conversation;
     @Column(nullable = false, length = 128) private String sender; // Sender's username
@@ -32,6 +40,9 @@ public class Message {
     public Long getId() {
         return id;
     }
+    public void setId(Long id) {
+        this.id = id;
+    }
    /* public Long getSenderId() {
         return sender;
     }*/
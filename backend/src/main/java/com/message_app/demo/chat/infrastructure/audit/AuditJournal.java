@@ -0,0 +1,266 @@
+package com.message_app.demo.chat.infrastructure.audit;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.MessageAuditLog;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, segmented audit journal for DMs. Replaces the per-message
+ * {@code new FileWriter("message_log.txt", true)} in the DM send path.
+ *
+ * Threading:
+ *  - Request threads only allocate an {@link AuditRecord} and {@code offer} it to a lock-free
+ *    {@link MpscRingBuffer}. No locks, no I/O. If the ring is full the record is dropped and
+ *    counted.
+ *  - One long-lived journal thread owns the file. It drains everything available, encodes it
+ *    into a direct buffer and issues one write per group (group commit).
+ *
+ * Durability ({@code chat.audit.fsync}):
+ *  - {@code batch}: fsync after every group commit.
+ *  - {@code interval}: fsync at most every {@code chat.audit.fsync-interval-ms}.
+ *  - {@code none}: leave flushing to the OS.
+ *
+ * Segments:
+ *  - Files are named {@code audit-<epochMillis>.log} in {@code chat.audit.dir} and rotated when
+ *    they exceed {@code chat.audit.segment-max-bytes} or get older than
+ *    {@code chat.audit.segment-max-age-ms}. Record format: see {@link AuditRecord}.
+ *  - Read them back with {@link AuditJournalReader}.
+ */
+@Component
+class AuditJournal implements MessageAuditLog, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(AuditJournal.class);
+
+    enum FsyncPolicy { BATCH, INTERVAL, NONE }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long DROP_WARN_INTERVAL_MS = 10_000;
+    private static final long ERROR_BACKOFF_MS = 1_000;
+
+    private final Path dir;
+    private final MpscRingBuffer<AuditRecord> ring;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long segmentMaxBytes;
+    private final long segmentMaxAgeMs;
+    private final ByteBuffer buf;
+    private final CRC32C crc = new CRC32C();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private volatile long lastDropWarnMs;
+
+    // journal thread only
+    private FileChannel segment;
+    private long segmentBytes;
+    private long segmentOpenedMs;
+    private long lastFsyncNanos;
+    private boolean dirty;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    AuditJournal(MetricsRegistry metrics,
+                 @Value("${chat.audit.dir:audit}") String dir,
+                 @Value("${chat.audit.ring-capacity:65536}") int ringCapacity,
+                 @Value("${chat.audit.fsync:interval}") String fsync,
+                 @Value("${chat.audit.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                 @Value("${chat.audit.segment-max-bytes:67108864}") long segmentMaxBytes,
+                 @Value("${chat.audit.segment-max-age-ms:3600000}") long segmentMaxAgeMs,
+                 @Value("${chat.audit.write-buffer-bytes:1048576}") int writeBufferBytes) {
+        this.dir = Path.of(dir);
+        this.ring = new MpscRingBuffer<>(ringCapacity);
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.segmentMaxAgeMs = segmentMaxAgeMs;
+        this.buf = ByteBuffer.allocateDirect(writeBufferBytes);
+
+        metrics.counter("chat_audit_written_total", "Audit records written to the journal", written::get);
+        metrics.counter("chat_audit_dropped_total", "Audit records dropped because the ring was full", dropped::get);
+        metrics.counter("chat_audit_fsyncs_total", "Journal fsync calls", fsyncs::get);
+    }
+
+    @Override
+    public void record(MessageDto m, String recipient, boolean delivered) {
+        AuditRecord r = new AuditRecord(m.id(), m.conversationId(), m.sentAt(), m.sender(), recipient, m.content(), delivered);
+        if (!running || !ring.offer(r)) {
+            dropped.incrementAndGet();
+            long now = System.currentTimeMillis();
+            if (now - lastDropWarnMs > DROP_WARN_INTERVAL_MS) {
+                lastDropWarnMs = now;
+                log.warn("event=audit_record_dropped totalDropped={} running={}", dropped.get(), running);
+            }
+        }
+    }
+
+    // === Journal thread ===
+
+    private void run() {
+        while (running || !ring.isEmpty()) {
+            try {
+                if (!drainOnce()) {
+                    maybeFsync(false);
+                    maybeRotate();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                // Lose the current group, start a fresh segment and keep going; never stop auditing for good.
+                log.error("event=audit_write_failed dir={} retryInMs={}", dir.toAbsolutePath(), ERROR_BACKOFF_MS, e);
+                buf.clear();
+                closeSegment();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ERROR_BACKOFF_MS));
+            }
+        }
+        try {
+            forceIfDirty();
+        } catch (IOException e) {
+            log.error("event=audit_final_fsync_failed", e);
+        }
+        closeSegment();
+        log.info("event=audit_journal_stopped written={} dropped={} fsyncs={}", written.get(), dropped.get(), fsyncs.get());
+    }
+
+    /** One group commit: encode everything currently in the ring (up to the buffer size) and write it. */
+    private boolean drainOnce() throws IOException {
+        int records = 0;
+        AuditRecord r;
+        while ((r = ring.poll()) != null) {
+            AuditRecord.Encoded e = new AuditRecord.Encoded(r);
+            if (e.size() > buf.remaining()) {
+                writeBuffer();
+                if (e.size() > buf.capacity()) {
+                    log.warn("event=audit_record_too_large id={} bytes={}", r.messageId(), e.size());
+                    dropped.incrementAndGet();
+                    continue;
+                }
+            }
+            e.writeTo(buf, crc);
+            records++;
+            if (buf.remaining() < buf.capacity() / 8) break; // nearly full: commit this group
+        }
+        if (records == 0) return false;
+        writeBuffer();
+        written.addAndGet(records);
+        maybeFsync(true);
+        maybeRotate();
+        return true;
+    }
+
+    private void writeBuffer() throws IOException {
+        if (buf.position() == 0) return;
+        ensureSegment();
+        buf.flip();
+        while (buf.hasRemaining()) segmentBytes += segment.write(buf);
+        buf.clear();
+        dirty = true;
+    }
+
+    private void maybeFsync(boolean afterGroup) throws IOException {
+        if (!dirty) return;
+        switch (fsyncPolicy) {
+            case BATCH -> {
+                if (afterGroup) force();
+            }
+            case INTERVAL -> {
+                if (System.nanoTime() - lastFsyncNanos >= fsyncIntervalNanos) force();
+            }
+            case NONE -> { }
+        }
+    }
+
+    private void forceIfDirty() throws IOException {
+        if (dirty && segment != null) force();
+    }
+
+    private void force() throws IOException {
+        segment.force(false);
+        fsyncs.incrementAndGet();
+        lastFsyncNanos = System.nanoTime();
+        dirty = false;
+    }
+
+    private void maybeRotate() throws IOException {
+        if (segment == null) return;
+        boolean tooBig = segmentBytes >= segmentMaxBytes;
+        boolean tooOld = System.currentTimeMillis() - segmentOpenedMs >= segmentMaxAgeMs;
+        if (tooBig || tooOld) {
+            forceIfDirty();
+            closeSegment();
+        }
+    }
+
+    private void ensureSegment() throws IOException {
+        if (segment != null) return;
+        Files.createDirectories(dir);
+        long now = System.currentTimeMillis();
+        Path file = dir.resolve(AuditJournalReader.segmentName(now));
+        while (Files.exists(file)) file = dir.resolve(AuditJournalReader.segmentName(++now));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(AuditRecord.FILE_HEADER_BYTES)
+                .putInt(AuditRecord.MAGIC).putShort(AuditRecord.VERSION).flip();
+        while (header.hasRemaining()) segment.write(header);
+        segmentBytes = AuditRecord.FILE_HEADER_BYTES;
+        segmentOpenedMs = now;
+        log.info("event=audit_segment_opened file={}", file.getFileName());
+    }
+
+    private void closeSegment() {
+        if (segment == null) return;
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("event=audit_segment_close_failed", e);
+        }
+        segment = null;
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "audit-journal");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("event=audit_journal_started dir={} fsync={} ringCapacity={}", dir.toAbsolutePath(), fsyncPolicy, ring.capacity());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Same phase as the message writer: stop only after the broker stopped handing us frames. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,120 @@
+package com.message_app.demo.chat.infrastructure.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads audit journal segments written by {@link AuditJournal}.
+ *
+ * Command line:
+ * <pre>
+ *   java -cp backend.jar com.message_app.demo.chat.infrastructure.audit.AuditJournalReader [dir-or-segment ...]
+ * </pre>
+ * Prints one line per record (same shape as the old {@code message_log.txt}). Defaults to {@code ./audit}.
+ *
+ * A torn record at the end of a segment (crash during write) or a CRC mismatch ends that
+ * segment with a warning on stderr; later segments are still read.
+ */
+public final class AuditJournalReader {
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+
+    private AuditJournalReader() { }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        if (args.length == 0) inputs.add(Path.of("audit"));
+        for (String a : args) inputs.add(Path.of(a));
+
+        long[] count = {0};
+        for (Path in : inputs) {
+            for (Path segment : segments(in)) {
+                read(segment, r -> {
+                    System.out.println(r);
+                    count[0]++;
+                });
+            }
+        }
+        System.err.println(count[0] + " record(s)");
+    }
+
+    /** Segment files under {@code path} in write order (or {@code path} itself if it is a file). */
+    public static List<Path> segments(Path path) throws IOException {
+        if (!Files.isDirectory(path)) return List.of(path);
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(p -> {
+                        String n = p.getFileName().toString();
+                        return n.startsWith(PREFIX) && n.endsWith(SUFFIX);
+                    })
+                    .sorted() // zero-padded epoch millis sort chronologically
+                    .toList();
+        }
+    }
+
+    /** Stream every intact record of one segment to {@code sink}. */
+    public static void read(Path segment, Consumer<AuditRecord> sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(AuditRecord.FILE_HEADER_BYTES);
+            if (!readFully(ch, header)) return; // empty segment
+            if (header.getInt() != AuditRecord.MAGIC) throw new IOException(segment + " is not an audit segment");
+            short version = header.getShort();
+            if (version != AuditRecord.VERSION) throw new IOException(segment + ": unsupported version " + version);
+
+            ByteBuffer recordHeader = ByteBuffer.allocate(AuditRecord.RECORD_HEADER_BYTES);
+            CRC32C crc = new CRC32C();
+            long offset = AuditRecord.FILE_HEADER_BYTES;
+            while (true) {
+                recordHeader.clear();
+                if (!readFully(ch, recordHeader)) {
+                    if (recordHeader.position() > 0) warn(segment, offset, "truncated record header");
+                    return;
+                }
+                int length = recordHeader.getInt();
+                int expectedCrc = recordHeader.getInt();
+                if (length <= 0 || length > ch.size() - ch.position()) {
+                    warn(segment, offset, "truncated record");
+                    return;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                if (!readFully(ch, body)) {
+                    warn(segment, offset, "truncated record");
+                    return;
+                }
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    warn(segment, offset, "CRC mismatch");
+                    return;
+                }
+                sink.accept(AuditRecord.decode(body));
+                offset += AuditRecord.RECORD_HEADER_BYTES + length;
+            }
+        }
+    }
+
+    static String segmentName(long epochMillis) {
+        return String.format("%s%013d%s", PREFIX, epochMillis, SUFFIX);
+    }
+
+    /** @return false if the segment ends before {@code buf} is full; flips {@code buf} for reading when complete */
+    private static boolean readFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) return false;
+        }
+        buf.flip();
+        return true;
+    }
+
+    private static void warn(Path segment, long offset, String what) {
+        System.err.println("WARN " + segment.getFileName() + " @" + offset + ": " + what + ", skipping rest of segment");
+    }
+}
@@ -0,0 +1,111 @@
+package com.message_app.demo.chat.infrastructure.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * One audit journal entry and its on-disk encoding.
+ *
+ * Record layout (big endian, length-prefixed):
+ * <pre>
+ *   int    bodyLength
+ *   int    crc32c(body)
+ *   body:
+ *     long   messageId
+ *     long   conversationId
+ *     long   sentAt (epoch microseconds)
+ *     byte   flags (bit 0 = delivered live)
+ *     int    n, byte[n]  sender   (UTF-8)
+ *     int    n, byte[n]  recipient (UTF-8)
+ *     int    n, byte[n]  content  (UTF-8)
+ * </pre>
+ * A segment file starts with {@link #MAGIC} followed by {@link #VERSION}.
+ */
+public record AuditRecord(long messageId, long conversationId, Instant sentAt,
+                          String sender, String recipient, String content, boolean delivered) {
+
+    static final int MAGIC = 0x43484155; // "CHAU"
+    static final short VERSION = 1;
+    static final int FILE_HEADER_BYTES = Integer.BYTES + Short.BYTES;
+    static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int FIXED_BODY_BYTES = 3 * Long.BYTES + 1 + 3 * Integer.BYTES;
+    private static final byte DELIVERED = 1;
+
+    /** Pre-encoded body; built on the journal thread so request threads only allocate the record. */
+    static final class Encoded {
+        final AuditRecord record;
+        final byte[] sender;
+        final byte[] recipient;
+        final byte[] content;
+
+        Encoded(AuditRecord r) {
+            this.record = r;
+            this.sender = r.sender.getBytes(StandardCharsets.UTF_8);
+            this.recipient = r.recipient.getBytes(StandardCharsets.UTF_8);
+            this.content = r.content.getBytes(StandardCharsets.UTF_8);
+        }
+
+        int bodyLength() {
+            return FIXED_BODY_BYTES + sender.length + recipient.length + content.length;
+        }
+
+        int size() {
+            return RECORD_HEADER_BYTES + bodyLength();
+        }
+
+        /** Write header + body into {@code buf}; caller guarantees {@link #size()} bytes remain. */
+        void writeTo(ByteBuffer buf, CRC32C crc) {
+            int headerPos = buf.position();
+            buf.putInt(bodyLength()).putInt(0); // crc patched below
+            int bodyPos = buf.position();
+            buf.putLong(record.messageId)
+                    .putLong(record.conversationId)
+                    .putLong(ChronoUnit.MICROS.between(Instant.EPOCH, record.sentAt))
+                    .put(record.delivered ? DELIVERED : 0);
+            putBytes(buf, sender);
+            putBytes(buf, recipient);
+            putBytes(buf, content);
+
+            crc.reset();
+            crc.update(buf.duplicate().position(bodyPos).limit(buf.position()));
+            buf.putInt(headerPos + Integer.BYTES, (int) crc.getValue());
+        }
+
+        private static void putBytes(ByteBuffer buf, byte[] b) {
+            buf.putInt(b.length).put(b);
+        }
+    }
+
+    /** Decode a body whose CRC has already been verified. */
+    static AuditRecord decode(ByteBuffer body) throws IOException {
+        long id = body.getLong();
+        long conv = body.getLong();
+        long micros = body.getLong();
+        byte flags = body.get();
+        String sender = getString(body);
+        String recipient = getString(body);
+        String content = getString(body);
+        if (body.hasRemaining()) throw new IOException("Trailing bytes in audit record " + id);
+        Instant sentAt = Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+        return new AuditRecord(id, conv, sentAt, sender, recipient, content, (flags & DELIVERED) != 0);
+    }
+
+    private static String getString(ByteBuffer body) throws IOException {
+        int n = body.getInt();
+        if (n < 0 || n > body.remaining()) throw new IOException("Corrupt string length " + n);
+        byte[] b = new byte[n];
+        body.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Same shape as the old message_log.txt lines, for humans. */
+    @Override
+    public String toString() {
+        return String.format("%s | id=%d | conv=%d | from=%s | to=%s | content=%s | delivered=%s",
+                sentAt, messageId, conversationId, sender, recipient, content, delivered ? "LIVE" : "OFFLINE");
+    }
+}
@@ -0,0 +1,77 @@
+package com.message_app.demo.chat.infrastructure.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ *
+ * Algorithm (Vyukov's bounded queue, restricted to one consumer):
+ *  - Every slot carries a sequence number. A producer claims position {@code p} with a CAS on
+ *    {@code tail} only when the slot's sequence equals {@code p}, writes the element, then
+ *    publishes it by setting the sequence to {@code p + 1}.
+ *  - The consumer reads slot {@code head} once its sequence is {@code head + 1}, clears it and
+ *    hands the slot back to producers by setting the sequence to {@code head + capacity}.
+ *  - {@link #offer} never blocks: a full buffer returns false immediately.
+ *
+ * @param <E> element type
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // consumer thread only
+
+    /** @param requestedCapacity rounded up to the next power of two */
+    MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) throw new IllegalArgumentException("capacity must be >= 2");
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+    }
+
+    /** Producer side; safe from any thread. @return false if the buffer is full */
+    boolean offer(E e) {
+        long pos = tail.get();
+        for (;;) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, e);
+                    sequences.set(idx, pos + 1); // publish
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false; // slot still owned by the consumer: full
+            } else {
+                pos = tail.get(); // another producer moved ahead
+            }
+        }
+    }
+
+    /** Consumer side; single thread only. @return next element, or null if empty */
+    E poll() {
+        int idx = (int) (head & mask);
+        if (sequences.get(idx) != head + 1) return null;
+        E e = slots.get(idx);
+        slots.lazySet(idx, null);
+        sequences.set(idx, head + mask + 1); // release the slot for the next lap
+        head++;
+        return e;
+    }
+
+    /** Consumer-side emptiness check. */
+    boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
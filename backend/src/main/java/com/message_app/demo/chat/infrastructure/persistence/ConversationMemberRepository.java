@@ -2,22 +2,24 @@ package com.message_app.demo.chat.infrastructure.persistence;
 
 import com.message_app.demo.chat.domain.ConversationMember;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-import java.util.Optional;
+import java.util.List;
 
 /**
  * Repository for accessing and querying {@link ConversationMember} entities.
  *
  * Responsibilities:
  *  - Look up whether users participate in certain conversations.
- *  - Support DM discovery by finding a conversation that includes both users.
+ *  - DMs are found by their unique {@code dmKey} ({@code ConversationRepository}), and the inbox
+ *    reads members through {@code WriteBehindInbox}, so nothing here scans by user pair.
  *
  * Naming conventions:
  *  - Spring Data automatically parses method names like `existsByUsernameIgnoreCase`
  *    into SQL queries.
- *  - For more complex multi-user lookups, a custom JPQL query is used.
+ *  - Room-specific lookups use custom JPQL queries.
  */
 public interface ConversationMemberRepository extends JpaRepository<ConversationMember, Long> {
 
@@ -45,24 +47,28 @@ public interface ConversationMemberRepository extends JpaRepository<Conversation
     boolean existsByUsernameIgnoreCase(String username);
 
     /**
-     * A custom JPQL query with the purpose to find an existing DM conversation between two users
+     * Members of a group room. Empty if the conversation does not exist or is not a room,
+     * so a DM id can never be mistaken for a room.
      *
-     * Logic
-     * - Select all conversation IDs where the username is either :a or :b.
-     *      *  - Group by conversation ID.
-     *      *  - Filter (HAVING) only conversations that contain both distinct usernames.
-     *      *  Returns an Optional<Long> with the conversation ID if such a conversation exists.
-     * @param a first username
-     * @param b second username
-     * @return conversation ID if both users are members in the same DM conversation
+     * Used to seed the in-memory membership index of {@code RoomServiceImpl}.
+     *
+     * @param roomId conversation id of the room.
+     * @return usernames of all members.
      */
     @Query("""
-     select cm.conversation.id
+     select cm.username
      from ConversationMember cm
-     where cm.username in (:a, :b)
-     group by cm.conversation.id
-     having count(distinct cm.username) = 2
+     where cm.conversation.id = :roomId and cm.conversation.type = 'ROOM'
   """)
-    Optional<Long> findDmConversationId(@Param("a") String a, @Param("b") String b);
+    List<String> findRoomMembers(@Param("roomId") Long roomId);
+
+    /**
+     * Remove one membership row (leaving a room). Must run inside a transaction.
+     *
+     * @return number of rows deleted (0 if the user was not a member).
+     */
+    @Modifying
+    @Query("delete from ConversationMember cm where cm.conversation.id = :conversationId and cm.username = :username")
+    int deleteMembership(@Param("conversationId") Long conversationId, @Param("username") String username);
 }
 
@@ -1,8 +1,12 @@
 package com.message_app.demo.chat.infrastructure.persistence;
 
 import com.message_app.demo.chat.domain.Conversation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,6 +28,37 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
      * @return Optional containing the conversation if found.
      */
     Optional<Conversation> findByDmKey(String dmKey);
+
+    /**
+     * Same lookup as {@link #findByDmKey(String)}, but only selects the id, so no managed
+     * {@link Conversation} entity is loaded into the persistence context.
+     *
+     * @param dmKey the canonical DM key.
+     * @return Optional containing the conversation id if found.
+     */
+    @Query("select c.id from Conversation c where c.dmKey = :dmKey")
+    Optional<Long> findIdByDmKey(@Param("dmKey") String dmKey);
+
+    /**
+     * Group rooms, oldest first, for room discovery.
+     *
+     * @param pageable page size (use {@code Pageable.ofSize(n)})
+     */
+    @Query("select c from Conversation c where c.type = 'ROOM' order by c.id")
+    List<Conversation> findRooms(Pageable pageable);
+
+    /**
+     * Group rooms a user is a member of, oldest first.
+     *
+     * @param username the member.
+     */
+    @Query("""
+        select c from Conversation c
+        where c.type = 'ROOM'
+          and c.id in (select cm.conversation.id from ConversationMember cm where cm.username = :username)
+        order by c.id
+    """)
+    List<Conversation> findRoomsOf(@Param("username") String username);
 }
 
 
@@ -0,0 +1,64 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out {@code messages.id} values before the row is written.
+ *
+ * How it works:
+ *  - A database sequence ({@code messages_seq}) is incremented by {@code blockSize}.
+ *    Each {@code next value} call reserves the id range [value, value + blockSize - 1]
+ *    for this JVM, so ids stay unique across nodes that share the database.
+ *  - Ids inside a block are served from an {@link AtomicLong}; only the thread that
+ *    exhausts a block goes back to the database.
+ *
+ * Replaces the per-row IDENTITY insert: the write-behind pipeline needs the id
+ * before it can broadcast the message and before it batches the INSERT.
+ */
+@Component
+class MessageIdAllocator {
+    static final String SEQUENCE = "messages_seq";
+
+    private final JdbcTemplate jdbc;
+    private final int blockSize;
+    private volatile Block block = new Block(1, 0); // empty: first call reserves a block
+
+    MessageIdAllocator(JdbcTemplate jdbc, @Value("${chat.messages.id-block-size:100}") int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("chat.messages.id-block-size must be >= 1");
+        this.jdbc = jdbc;
+        this.blockSize = blockSize;
+        jdbc.execute("create sequence if not exists " + SEQUENCE + " start with 1 increment by " + blockSize);
+        jdbc.execute("alter sequence " + SEQUENCE + " increment by " + blockSize);
+    }
+
+    /** Next unused message id. */
+    long next() {
+        for (;;) {
+            Block b = block;
+            long id = b.cursor.getAndIncrement();
+            if (id <= b.last) return id;
+            refill(b);
+        }
+    }
+
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted) return; // another thread already reserved a new block
+        Long first = jdbc.queryForObject("select next value for " + SEQUENCE, Long.class);
+        if (first == null) throw new IllegalStateException("Sequence " + SEQUENCE + " returned no value");
+        block = new Block(first, first + blockSize - 1);
+    }
+
+    private static final class Block {
+        final AtomicLong cursor;
+        final long last;
+
+        Block(long first, long last) {
+            this.cursor = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+}
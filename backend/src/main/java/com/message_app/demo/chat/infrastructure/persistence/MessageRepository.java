@@ -1,5 +1,6 @@
 package com.message_app.demo.chat.infrastructure.persistence;
 
+import com.message_app.demo.chat.api.dto.MessageDto;
 import com.message_app.demo.chat.domain.Message;
 import com.message_app.demo.chat.domain.Conversation;
 import org.springframework.data.domain.Page;
@@ -8,38 +9,72 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for {@link Message} entities.
  *
  * Responsibilities:
- *  - Retrieve messages for conversations (with pagination & ordering).
+ *  - Retrieve messages for conversations (keyset pagination on (sent_at, id)).
  *  - Check message sender existence (for user existence heuristics).
  *
  * Common usage:
- *  - {@link com.message_app.demo.chat.api.DmWebSocketController} uses it to persist messages.
+ *  - Read side only: new messages are inserted in JDBC batches by {@link WriteBehindMessageWriter}.
  *  - {@link com.message_app.demo.chat.application.DmServiceImpl#userExists(String)} uses it
  *    to check if a username has ever sent a message.
  */
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
     /**
-     * Retrieve all messages for a conversation ordered by ascending timestamp.
+     * Newest messages of a conversation, newest first.
      *
-     * Supports pagination to efficiently fetch message history in chunks.
+     * Projects straight into {@link MessageDto} (no managed entities, no join to conversations)
+     * and walks the (conversation_id, sent_at, id) index backwards; the {@link Pageable} only
+     * supplies the LIMIT and must not carry an offset.
      *
-     * @param c the conversation whose messages to retrieve.
-     * @param p Spring Data {@link Pageable} controlling page size and number.
-     * @return a {@link Page} of messages ordered by `sentAt` ascending.
+     * @param convId   conversation id
+     * @param pageable page size (use {@code Pageable.ofSize(n)})
      */
     @Query("""
-        select m from Message m
+        select new com.message_app.demo.chat.api.dto.MessageDto(m.id, m.conversation.id, m.sender, m.content, m.sentAt)
+        from Message m
         where m.conversation.id = :convId
-        order by m.sentAt desc
+        order by m.sentAt desc, m.id desc
     """)
-    List<Message> findTopByConversationIdOrderBySentAtDesc(@Param("convId") Long convId, Pageable pageable);
+    List<MessageDto> findNewest(@Param("convId") Long convId, Pageable pageable);
 
+    /**
+     * Keyset page: messages strictly before (sentAt, id), newest first.
+     * Cost is independent of how deep into the history the cursor points.
+     */
+    @Query("""
+        select new com.message_app.demo.chat.api.dto.MessageDto(m.id, m.conversation.id, m.sender, m.content, m.sentAt)
+        from Message m
+        where m.conversation.id = :convId
+          and (m.sentAt < :sentAt or (m.sentAt = :sentAt and m.id < :id))
+        order by m.sentAt desc, m.id desc
+    """)
+    List<MessageDto> findBefore(@Param("convId") Long convId, @Param("sentAt") Instant sentAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Keyset page: messages strictly after (sentAt, id), oldest first.
+     */
+    @Query("""
+        select new com.message_app.demo.chat.api.dto.MessageDto(m.id, m.conversation.id, m.sender, m.content, m.sentAt)
+        from Message m
+        where m.conversation.id = :convId
+          and (m.sentAt > :sentAt or (m.sentAt = :sentAt and m.id > :id))
+        order by m.sentAt asc, m.id asc
+    """)
+    List<MessageDto> findAfter(@Param("convId") Long convId, @Param("sentAt") Instant sentAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Timestamp of one message, used to turn a message id into a history cursor.
+     */
+    @Query("select m.sentAt from Message m where m.id = :id and m.conversation.id = :convId")
+    Optional<Instant> findSentAt(@Param("convId") Long convId, @Param("id") Long id);
 
     Page<Message> findByConversationOrderBySentAtAsc(Conversation c, Pageable p);
 
@@ -0,0 +1,245 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.DeliveryCursors;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind implementation of {@link DeliveryCursors}.
+ *
+ * Why:
+ *  - Messages to offline users were only persisted; a returning client had to open every DM and
+ *    page its history to find out what it missed.
+ *
+ * How:
+ *  - A cursor is a (sentAt, id) position in history order, not an id: ids come from per-node
+ *    blocks and are not ordered in time across nodes.
+ *  - Cursors moved by {@link #delivered} are kept as the newest position per (conversation, member)
+ *    and written in one JDBC batch by {@link #flush}, only ever forward (compared as (sentAt, id)).
+ *  - {@link #undelivered} reads the user's DM membership rows joined to their conversations by
+ *    primary key (one pass over the username index, no message rows) and keeps those whose newest
+ *    message, including one not written to the summary yet, is past the cursor.
+ *  - Only those conversations are read, each as keyset pages after its cursor (recent-messages cache
+ *    first), merged oldest first across conversations, so the cost is what was missed.
+ *  - Cursors not yet flushed are lost if the JVM dies abruptly; those DMs are delivered again.
+ */
+@Component
+class WriteBehindDeliveryCursors implements DeliveryCursors, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindDeliveryCursors.class);
+
+    private static final String ADVANCE_SQL =
+            "update conversation_members set last_delivered_at = ?, last_delivered_message_id = ? "
+                    + "where conversation_id = ? and username = ? and (last_delivered_at is null "
+                    + "or last_delivered_at < ? or (last_delivered_at = ? and last_delivered_message_id < ?))";
+    private static final String CANDIDATES_SQL = """
+            select cm.conversation_id, cm.last_delivered_at, cm.last_delivered_message_id,
+                   c.last_message_at, c.last_message_id
+            from conversation_members cm join conversations c on c.id = cm.conversation_id
+            where cm.username = ? and c.type = 'DM'
+            """;
+    private static final int PAGE_SIZE = 200;
+    /** Before the first message of any conversation. */
+    private static final HistoryCursor START = new HistoryCursor(Instant.EPOCH, 0);
+    private static final Comparator<MessageDto> CHRONOLOGICAL =
+            Comparator.comparing(MessageDto::sentAt).thenComparingLong(MessageDto::id);
+
+    private record Key(Long conversationId, String username) { }
+
+    /** A DM of the user with messages after the cursor. */
+    private record Candidate(Long conversationId, HistoryCursor cursor) { }
+
+    /** Keyset pages of one conversation after its cursor. */
+    private final class Stream {
+        final Long conversationId;
+        List<MessageDto> page = List.of();
+        int at = -1;
+        HistoryCursor next;
+
+        Stream(Long conversationId, HistoryCursor from) {
+            this.conversationId = conversationId;
+            this.next = from;
+        }
+
+        MessageDto head() {
+            return page.get(at);
+        }
+
+        /** Move past the head; false when the conversation has nothing more. */
+        boolean advance() {
+            at++;
+            while (at >= page.size()) {
+                if (next == null) return false;
+                HistoryService.Page p = history.page(conversationId, null, next, PAGE_SIZE);
+                page = p.messages();
+                next = p.next();
+                at = 0;
+            }
+            return true;
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final HistoryService history;
+    private final InboxService inbox;
+    private final ConcurrentHashMap<Key, HistoryCursor> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong flushedCursors = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong caughtUp = new AtomicLong();
+    private final Timer flushDuration;
+    private final Timer sweepDuration;
+
+    private volatile boolean running;
+
+    WriteBehindDeliveryCursors(JdbcTemplate jdbc,
+                               PlatformTransactionManager txManager,
+                               HistoryService history,
+                               InboxService inbox,
+                               MetricsRegistry metrics) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.history = history;
+        this.inbox = inbox;
+
+        this.flushDuration = metrics.timer("chat_delivery_flush_seconds", "Duration of one delivery cursor batch update");
+        this.sweepDuration = metrics.timer("chat_delivery_catchup_seconds", "Time to collect one user's undelivered DMs");
+        metrics.counter("chat_delivery_flushed_cursors_total", "Delivery cursors written to the database", flushedCursors::get);
+        metrics.counter("chat_delivery_flush_failures_total", "Failed delivery cursor flushes", failedFlushes::get);
+        metrics.counter("chat_delivery_catchup_messages_total", "Undelivered DMs collected for catch-up", caughtUp::get);
+        metrics.gauge("chat_delivery_pending_cursors", "Delivery cursors not yet written", pending::size);
+    }
+
+    @Override
+    public void delivered(MessageDto message, String username) {
+        pending.merge(new Key(message.conversationId(), username), HistoryCursor.of(message), WriteBehindDeliveryCursors::later);
+    }
+
+    @Override
+    public Undelivered undelivered(String username, int max) {
+        long start = System.nanoTime();
+        PriorityQueue<Stream> streams = new PriorityQueue<>(
+                Comparator.comparing(Stream::head, CHRONOLOGICAL));
+        List<Candidate> candidates = new ArrayList<>();
+        jdbc.query(CANDIDATES_SQL, rs -> {
+            Long conversationId = rs.getLong(1);
+            HistoryCursor stored = position(rs, 2);
+            HistoryCursor cursor = later(stored == null ? START : stored, pending.getOrDefault(new Key(conversationId, username), START));
+            HistoryCursor newest = inbox.lastMessage(conversationId, position(rs, 4));
+            if (newest != null && newest.compareTo(cursor) > 0) candidates.add(new Candidate(conversationId, cursor));
+        }, username);
+        for (Candidate c : candidates) {
+            Stream s = new Stream(c.conversationId(), c.cursor());
+            if (s.advance()) streams.add(s);
+        }
+
+        int conversations = streams.size();
+        List<MessageDto> out = new ArrayList<>(Math.min(max, 256));
+        while (out.size() < max && !streams.isEmpty()) {
+            Stream s = streams.poll();
+            out.add(s.head());
+            if (s.advance()) streams.add(s);
+        }
+        caughtUp.addAndGet(out.size());
+        sweepDuration.recordSince(start);
+        log.debug("event=dm_catchup_collected user={} conversations={} messages={} complete={}",
+                username, conversations, out.size(), streams.isEmpty());
+        return new Undelivered(out, streams.isEmpty());
+    }
+
+    /** (sentAt, id) in columns {@code column} and {@code column + 1}; null if sentAt is null. */
+    private static HistoryCursor position(ResultSet rs, int column) throws SQLException {
+        OffsetDateTime at = rs.getObject(column, OffsetDateTime.class);
+        return at == null ? null : new HistoryCursor(at.toInstant(), rs.getLong(column + 1));
+    }
+
+    private static HistoryCursor later(HistoryCursor a, HistoryCursor b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static OffsetDateTime utc(Instant t) {
+        return OffsetDateTime.ofInstant(t, ZoneOffset.UTC);
+    }
+
+    // === Flush ===
+
+    @Scheduled(fixedDelayString = "${chat.delivery.flush-interval-ms:1000}")
+    synchronized void flush() {
+        if (pending.isEmpty()) return;
+        List<Map.Entry<Key, HistoryCursor>> taken = new ArrayList<>(pending.size());
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        for (Map.Entry<Key, HistoryCursor> me : pending.entrySet()) {
+            Key key = me.getKey();
+            HistoryCursor c = me.getValue();
+            taken.add(Map.entry(key, c));
+            rows.add(new Object[]{utc(c.sentAt()), c.id(), key.conversationId(), key.username(),
+                    utc(c.sentAt()), utc(c.sentAt()), c.id()});
+        }
+
+        long start = System.nanoTime();
+        try {
+            tx.executeWithoutResult(status -> jdbc.batchUpdate(ADVANCE_SQL, rows));
+        } catch (RuntimeException ex) {
+            // Leave them in the map; the next flush retries
+            failedFlushes.incrementAndGet();
+            log.error("event=delivery_flush_failed cursors={}", taken.size(), ex);
+            return;
+        }
+        flushDuration.recordSince(start);
+        flushedCursors.addAndGet(taken.size());
+        // A cursor moved further meanwhile stays for the next flush
+        for (Map.Entry<Key, HistoryCursor> me : taken) pending.remove(me.getKey(), me.getValue());
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /** Write what is left once no more messages can arrive. */
+    @Override
+    public void stop() {
+        flush();
+        running = false;
+        log.info("event=delivery_cursors_stopped flushedCursors={} failedFlushes={} left={}",
+                flushedCursors.get(), failedFlushes.get(), pending.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Same phase as the message writer: stops after the web server and the broker. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,269 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.InboxEntry;
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind implementation of {@link InboxService}.
+ *
+ * Why:
+ *  - Listing a user's conversations by last activity from {@code messages} means a max() per
+ *    conversation; users with hundreds of DMs would pay for every one of them on each app load.
+ *
+ * How:
+ *  - {@link #messageAdded} keeps the newest message per conversation in a map, nothing else.
+ *    Newest in history order, (sentAt, id): ids come in per-node blocks and do not follow time.
+ *  - {@link #flush} writes them in one transaction, two JDBC batches: the summary columns of
+ *    {@code conversations}, and {@code last_activity_at} of every member row of the conversation.
+ *    Both only move forward, so a late or repeated flush, or another node, never moves them back.
+ *  - {@link #inbox} is one query over the (username, last_activity_at) index, joined to
+ *    {@code conversations} by primary key, with a keyset cursor on (last_activity_at, conversation_id).
+ *    Summaries still in the map are overlaid on the page, unread counts come from {@link UnreadCounters#current}.
+ *  - Summaries not yet flushed are lost if the JVM dies abruptly; the next message restores them.
+ */
+@Component
+class WriteBehindInbox implements InboxService, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindInbox.class);
+
+    private static final String SUMMARY_SQL =
+            "update conversations set last_message_id = ?, last_sender = ?, last_preview = ?, last_message_at = ? "
+                    + "where id = ? and (last_message_at is null or last_message_at < ? "
+                    + "or (last_message_at = ? and last_message_id < ?))";
+    private static final String ACTIVITY_SQL =
+            "update conversation_members set last_activity_at = ? where conversation_id = ? and last_activity_at < ?";
+    private static final String PAGE_SQL = """
+            select cm.conversation_id, c.type, c.dm_key, c.name,
+                   c.last_message_id, c.last_sender, c.last_preview, c.last_message_at,
+                   cm.last_activity_at, cm.unread_count, cm.last_read_message_id
+            from conversation_members cm join conversations c on c.id = cm.conversation_id
+            where cm.username = ? %s
+            order by cm.last_activity_at desc, cm.conversation_id desc
+            limit ?
+            """;
+    private static final String FIRST_PAGE_SQL = PAGE_SQL.formatted("");
+    private static final String NEXT_PAGE_SQL = PAGE_SQL.formatted(
+            "and (cm.last_activity_at < ? or (cm.last_activity_at = ? and cm.conversation_id < ?))");
+    static final int MAX_LIMIT = 200;
+
+    /** Newest message of a conversation, as far as the inbox needs it. */
+    private record Summary(long messageId, String sender, String preview, Instant sentAt) {
+        static Summary of(MessageDto m) {
+            return new Summary(m.id(), m.sender(), InboxEntry.preview(m.content()), m.sentAt());
+        }
+
+        HistoryCursor position() {
+            return new HistoryCursor(sentAt, messageId);
+        }
+    }
+
+    /** A row of {@link #PAGE_SQL}, before overlaying. */
+    private record Row(InboxEntry entry, Instant storedActivity, long storedUnread, long storedLastRead) { }
+
+    private static final Comparator<InboxEntry> NEWEST_FIRST = Comparator
+            .comparing(InboxEntry::lastActivityAt).reversed()
+            .thenComparing(Comparator.comparing(InboxEntry::conversationId).reversed());
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final UnreadCounters unread;
+    private final ConcurrentHashMap<Long, Summary> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong flushedSummaries = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final Timer flushDuration;
+    private final Timer pageDuration;
+
+    private volatile boolean running;
+
+    WriteBehindInbox(JdbcTemplate jdbc,
+                     PlatformTransactionManager txManager,
+                     UnreadCounters unread,
+                     MetricsRegistry metrics) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.unread = unread;
+
+        this.flushDuration = metrics.timer("chat_inbox_flush_seconds", "Duration of one inbox summary batch update");
+        this.pageDuration = metrics.timer("chat_inbox_page_seconds", "Time to read one page of an inbox");
+        metrics.counter("chat_inbox_flushed_summaries_total", "Conversation summaries written to the database", flushedSummaries::get);
+        metrics.counter("chat_inbox_flush_failures_total", "Failed inbox summary flushes", failedFlushes::get);
+        metrics.gauge("chat_inbox_pending_summaries", "Conversation summaries not yet written", pending::size);
+    }
+
+    @Override
+    public void messageAdded(MessageDto message) {
+        Summary s = Summary.of(message);
+        pending.merge(message.conversationId(), s, (old, neu) -> neu.position().compareTo(old.position()) > 0 ? neu : old);
+    }
+
+    @Override
+    public HistoryCursor lastMessage(Long conversationId, HistoryCursor stored) {
+        Summary s = pending.get(conversationId);
+        return s != null && (stored == null || s.position().compareTo(stored) > 0) ? s.position() : stored;
+    }
+
+    @Override
+    public Page inbox(String username, HistoryCursor before, int limit) {
+        long start = System.nanoTime();
+        int n = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<Row> rows = before == null
+                ? jdbc.query(FIRST_PAGE_SQL, (rs, i) -> row(rs, username), username, n + 1)
+                : jdbc.query(NEXT_PAGE_SQL, (rs, i) -> row(rs, username), username,
+                        utc(before.sentAt()), utc(before.sentAt()), before.id(), n + 1);
+
+        boolean more = rows.size() > n;
+        if (more) rows = rows.subList(0, n);
+        // The cursor follows the stored order, so pages neither skip nor repeat rows
+        HistoryCursor next = more
+                ? new HistoryCursor(rows.get(n - 1).storedActivity(), rows.get(n - 1).entry().conversationId())
+                : null;
+
+        List<InboxEntry> out = new ArrayList<>(rows.size());
+        for (Row r : rows) out.add(overlay(r, username));
+        out.sort(NEWEST_FIRST);
+        pageDuration.recordSince(start);
+        log.debug("event=inbox_page user={} returned={} more={}", username, out.size(), more);
+        return new Page(out, next);
+    }
+
+    private Row row(ResultSet rs, String username) throws SQLException {
+        Long conversationId = rs.getLong(1);
+        String type = rs.getString(2);
+        String dmKey = rs.getString(3);
+        long lastMessageId = rs.getLong(5);
+        boolean hasMessage = !rs.wasNull();
+        Instant activity = instant(rs, 9);
+        InboxEntry e = new InboxEntry(
+                conversationId,
+                type,
+                rs.getString(4),
+                "DM".equals(type) ? otherParticipant(dmKey, username) : null,
+                hasMessage ? lastMessageId : null,
+                rs.getString(6),
+                rs.getString(7),
+                instant(rs, 8),
+                activity,
+                0);
+        return new Row(e, activity, rs.getLong(10), rs.getLong(11));
+    }
+
+    /** Newer summary from memory, if any, and the live unread count. */
+    private InboxEntry overlay(Row r, String username) {
+        InboxEntry e = r.entry();
+        long unreadCount = unread.current(
+                new UnreadCounters.Unread(e.conversationId(), r.storedLastRead(), r.storedUnread()), username).unreadCount();
+        Summary s = pending.get(e.conversationId());
+        if (s == null || (e.lastMessageId() != null
+                && s.position().compareTo(new HistoryCursor(e.lastMessageAt(), e.lastMessageId())) <= 0)) {
+            return new InboxEntry(e.conversationId(), e.type(), e.name(), e.otherParticipant(), e.lastMessageId(),
+                    e.lastSender(), e.lastPreview(), e.lastMessageAt(), e.lastActivityAt(), unreadCount);
+        }
+        Instant activity = s.sentAt().isAfter(e.lastActivityAt()) ? s.sentAt() : e.lastActivityAt();
+        return new InboxEntry(e.conversationId(), e.type(), e.name(), e.otherParticipant(), s.messageId(),
+                s.sender(), s.preview(), s.sentAt(), activity, unreadCount);
+    }
+
+    /** DM keys are "a:b" with the two usernames; the one that is not {@code me}. */
+    static String otherParticipant(String dmKey, String me) {
+        if (dmKey == null) return null;
+        if (dmKey.startsWith(me + ":")) return dmKey.substring(me.length() + 1);
+        if (dmKey.endsWith(":" + me)) return dmKey.substring(0, dmKey.length() - me.length() - 1);
+        return dmKey;
+    }
+
+    private static Instant instant(ResultSet rs, int column) throws SQLException {
+        OffsetDateTime t = rs.getObject(column, OffsetDateTime.class);
+        return t == null ? null : t.toInstant();
+    }
+
+    private static OffsetDateTime utc(Instant t) {
+        return OffsetDateTime.ofInstant(t, ZoneOffset.UTC);
+    }
+
+    // === Flush ===
+
+    @Scheduled(fixedDelayString = "${chat.inbox.flush-interval-ms:1000}")
+    synchronized void flush() {
+        if (pending.isEmpty()) return;
+        List<Map.Entry<Long, Summary>> taken = new ArrayList<>(pending.size());
+        List<Object[]> summaries = new ArrayList<>(pending.size());
+        List<Object[]> activity = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, Summary> me : pending.entrySet()) {
+            Long conversationId = me.getKey();
+            Summary s = me.getValue();
+            taken.add(Map.entry(conversationId, s));
+            summaries.add(new Object[]{s.messageId(), s.sender(), s.preview(), utc(s.sentAt()), conversationId,
+                    utc(s.sentAt()), utc(s.sentAt()), s.messageId()});
+            activity.add(new Object[]{utc(s.sentAt()), conversationId, utc(s.sentAt())});
+        }
+
+        long start = System.nanoTime();
+        try {
+            tx.executeWithoutResult(status -> {
+                jdbc.batchUpdate(SUMMARY_SQL, summaries);
+                jdbc.batchUpdate(ACTIVITY_SQL, activity);
+            });
+        } catch (RuntimeException ex) {
+            // Leave them in the map; the next flush retries with whatever is newest by then
+            failedFlushes.incrementAndGet();
+            log.error("event=inbox_flush_failed conversations={}", taken.size(), ex);
+            return;
+        }
+        flushDuration.recordSince(start);
+        flushedSummaries.addAndGet(taken.size());
+        // Only drop what was written; a newer message that arrived meanwhile stays for the next flush
+        for (Map.Entry<Long, Summary> me : taken) pending.remove(me.getKey(), me.getValue());
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /** Write what is left once no more messages can arrive. */
+    @Override
+    public void stop() {
+        flush();
+        running = false;
+        log.info("event=inbox_stopped flushedSummaries={} failedFlushes={} left={}",
+                flushedSummaries.get(), failedFlushes.get(), pending.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Same phase as the message writer: stops after the web server and the broker. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,355 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind implementation of {@link MessageWriter}.
+ *
+ * Flow:
+ *  1) {@link #append} (inbound channel thread) assigns an id from {@link MessageIdAllocator},
+ *     records the message as "unflushed" and offers it to a bounded queue.
+ *  2) A single flusher thread drains the queue and writes the rows with one JDBC batch
+ *     per transaction. A batch is flushed when it reaches {@code batchSize} messages or
+ *     when the oldest message in it has waited {@code maxLatency}, whichever comes first.
+ *  3) After commit the messages are dropped from the unflushed index.
+ *
+ * Guarantees:
+ *  - Backpressure: when the queue is full, {@link #append} blocks up to {@code enqueueTimeout}
+ *    and then fails, instead of letting the backlog grow without bound.
+ *  - At-least-once: a failed batch is retried (with backoff) until it commits. Because ids are
+ *    assigned up front, a retry after an ambiguous commit is detected as a duplicate key and
+ *    the batch is replayed row by row, skipping rows that already exist.
+ *  - Shutdown: the writer stops after the web server and the broker (lower lifecycle phase),
+ *    and drains everything still queued before the DataSource goes away.
+ *    Messages accepted but not yet flushed are lost if the JVM dies abruptly.
+ */
+@Component
+class WriteBehindMessageWriter implements MessageWriter, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindMessageWriter.class);
+
+    private static final String INSERT_SQL =
+            "insert into messages (id, conversation_id, sender, content, sent_at) values (?, ?, ?, ?, ?)";
+    private static final long IDLE_POLL_MS = 100;
+    private static final long MAX_BACKOFF_MS = 5_000;
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final MessageIdAllocator ids;
+    private final BlockingQueue<MessageDto> queue;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final long enqueueTimeoutMs;
+    private final long shutdownTimeoutMs;
+
+    /** Accepted but not yet committed messages, per conversation (read by history queries). */
+    private final ConcurrentMap<Long, ArrayDeque<MessageDto>> unflushed = new ConcurrentHashMap<>();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Timer persistLatency;
+    private final Timer flushDuration;
+
+    private volatile boolean running;
+    /**
+     * Shared by {@link #append} around its running check and enqueue, exclusive to stop accepting:
+     * once {@code running} is false no message can still be on its way into the queue, so the
+     * flusher's final drain sees every accepted message.
+     */
+    private final ReentrantReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    private Thread flusher;
+
+    WriteBehindMessageWriter(JdbcTemplate jdbc,
+                             PlatformTransactionManager txManager,
+                             MessageIdAllocator ids,
+                             MetricsRegistry metrics,
+                             @Value("${chat.messages.write.queue-capacity:10000}") int queueCapacity,
+                             @Value("${chat.messages.write.batch-size:256}") int batchSize,
+                             @Value("${chat.messages.write.max-latency-ms:25}") long maxLatencyMs,
+                             @Value("${chat.messages.write.enqueue-timeout-ms:250}") long enqueueTimeoutMs,
+                             @Value("${chat.messages.write.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.ids = ids;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+
+        this.persistLatency = metrics.timer("chat_dm_persist_latency_seconds", "Time from accepting a DM to its commit");
+        this.flushDuration = metrics.timer("chat_dm_flush_seconds", "Duration of one batch insert transaction");
+        metrics.counter("chat_dm_appended_total", "DMs accepted by the writer", appended::get);
+        metrics.counter("chat_dm_flushed_total", "DMs committed to the database", flushed::get);
+        metrics.counter("chat_dm_flush_batches_total", "Committed write batches", batches::get);
+        metrics.counter("chat_dm_flush_failures_total", "Failed batch attempts and dropped rows", failedFlushes::get);
+        metrics.counter("chat_dm_rejected_total", "DMs refused because the write queue was full", rejected::get);
+        metrics.gauge("chat_dm_write_queue_size", "DMs waiting to be flushed", queue::size);
+    }
+
+    @Override
+    public MessageDto append(Long conversationId, String sender, String content) {
+        acceptLock.readLock().lock();
+        try {
+            if (!running) throw new IllegalStateException("Message writer is not running");
+            return enqueue(conversationId, sender, content);
+        } finally {
+            acceptLock.readLock().unlock();
+        }
+    }
+
+    private MessageDto enqueue(Long conversationId, String sender, String content) {
+        // Truncate to the column precision (timestamp(6)) so the broadcast copy equals the stored row
+        MessageDto m = new MessageDto(ids.next(), conversationId, sender, content, Instant.now().truncatedTo(ChronoUnit.MICROS));
+
+        // Index first, so the message is visible to readers before the flusher can commit and remove it.
+        unflushed.compute(conversationId, (k, q) -> {
+            if (q == null) q = new ArrayDeque<>();
+            q.addLast(m);
+            return q;
+        });
+        boolean accepted;
+        try {
+            accepted = queue.offer(m, enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+        if (!accepted) {
+            forget(m);
+            rejected.incrementAndGet();
+            throw new IllegalStateException("Message write queue is full, try again later");
+        }
+        appended.incrementAndGet();
+        return m;
+    }
+
+    @Override
+    public List<MessageDto> pending(Long conversationId) {
+        List<MessageDto> snapshot = new ArrayList<>();
+        unflushed.computeIfPresent(conversationId, (k, q) -> {
+            snapshot.addAll(q);
+            return q;
+        });
+        return snapshot;
+    }
+
+    // === Flusher ===
+
+    private void runFlusher() {
+        while (running || !queue.isEmpty()) {
+            List<MessageDto> batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                // stop() never interrupts; treat as a request to drain and exit
+                stopAccepting();
+                continue;
+            }
+            if (!batch.isEmpty()) flushWithRetry(batch);
+        }
+        log.info("event=message_writer_stopped appended={} flushed={} batches={} failedFlushes={} rejected={}",
+                appended.get(), flushed.get(), batches.get(), failedFlushes.get(), rejected.get());
+    }
+
+    /** Wait for the first message, then collect until the batch is full or its latency deadline passes. */
+    private List<MessageDto> nextBatch() throws InterruptedException {
+        MessageDto first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+        if (first == null) return List.of();
+
+        List<MessageDto> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + maxLatencyNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize || !running) break;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            MessageDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void flushWithRetry(List<MessageDto> batch) {
+        long backoff = 50;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long start = System.nanoTime();
+                write(batch);
+                flushDuration.recordSince(start);
+                batches.incrementAndGet();
+                flushed.addAndGet(batch.size());
+                batch.forEach(this::forget);
+                recordPersisted(batch);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // Duplicate ids after an ambiguous commit, or a row that can never be stored.
+                log.warn("event=message_batch_integrity_violation size={} msg={}", batch.size(), e.getMessage());
+                writeRowByRow(batch);
+                return;
+            } catch (RuntimeException e) {
+                failedFlushes.incrementAndGet();
+                if (!running && attempt >= SHUTDOWN_ATTEMPTS) {
+                    log.error("event=message_batch_dropped size={} reason=shutdown", batch.size(), e);
+                    batch.forEach(this::forget);
+                    return;
+                }
+                log.error("event=message_batch_failed size={} attempt={} retryInMs={}", batch.size(), attempt, backoff, e);
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void write(List<MessageDto> batch) {
+        tx.executeWithoutResult(status -> jdbc.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                bind(ps, batch.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        }));
+    }
+
+    /** Fallback for a batch that hit a constraint: keep the good rows, skip duplicates, log the rest. */
+    private void writeRowByRow(List<MessageDto> batch) {
+        for (MessageDto m : batch) {
+            try {
+                tx.executeWithoutResult(status -> jdbc.update(INSERT_SQL, ps -> bind(ps, m)));
+                flushed.incrementAndGet();
+                recordPersisted(List.of(m));
+            } catch (DataIntegrityViolationException e) {
+                if (exists(m.id())) {
+                    log.debug("event=message_already_stored id={}", m.id());
+                } else {
+                    failedFlushes.incrementAndGet();
+                    log.error("event=message_dropped id={} conv={} reason={}", m.id(), m.conversationId(), e.getMessage());
+                }
+            }
+            forget(m);
+        }
+        batches.incrementAndGet();
+    }
+
+    /** sentAt is taken in {@link #append}, so commit time minus sentAt is the whole write-behind delay. */
+    private void recordPersisted(List<MessageDto> committed) {
+        Instant now = Instant.now();
+        for (MessageDto m : committed) persistLatency.record(ChronoUnit.NANOS.between(m.sentAt(), now));
+    }
+
+    private boolean exists(long id) {
+        Integer n = jdbc.queryForObject("select count(*) from messages where id = ?", Integer.class, id);
+        return n != null && n > 0;
+    }
+
+    private static void bind(PreparedStatement ps, MessageDto m) throws SQLException {
+        ps.setLong(1, m.id());
+        ps.setLong(2, m.conversationId());
+        ps.setString(3, m.sender());
+        ps.setString(4, m.content());
+        ps.setObject(5, OffsetDateTime.ofInstant(m.sentAt(), ZoneOffset.UTC));
+    }
+
+    private void forget(MessageDto m) {
+        unflushed.computeIfPresent(m.conversationId(), (k, q) -> {
+            q.remove(m);
+            return q.isEmpty() ? null : q;
+        });
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "message-writer");
+        flusher.start();
+        log.info("event=message_writer_started batchSize={} maxLatencyMs={} capacity={}",
+                batchSize, TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos), queue.remainingCapacity());
+    }
+
+    @Override
+    public void stop() {
+        stopAccepting();
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.error("event=message_writer_stop_timeout queued={}", queue.size());
+        }
+    }
+
+    /** Waits for appends in progress (an enqueue blocks at most {@code enqueueTimeout}). */
+    private void stopAccepting() {
+        acceptLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            acceptLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Phase -1, well below the web server and the STOMP broker and WebSocket handler (all close to
+     * {@link SmartLifecycle#DEFAULT_PHASE}): we start before any frame can arrive and stop only
+     * after the last one was handled.
+     */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,384 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.UnreadCounters;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind implementation of {@link UnreadCounters}.
+ *
+ * Why:
+ *  - The DM notifier carries the recipient's unread count on every send; a COUNT(*) over the
+ *    conversation's messages per send does not scale, so counts are maintained incrementally.
+ *
+ * How:
+ *  - One in-memory entry per (conversation, member) that was touched: increments not yet written
+ *    ({@code delta}) and, once the member's row has been read, the live count and watermark.
+ *  - {@link #messageAdded} only bumps entries. {@link #flush} writes all deltas in one JDBC batch as
+ *    {@code unread_count = unread_count + ?}, so several nodes can add to the same row.
+ *  - A row is read once per entry (first {@link #get}, or again after {@code max-age-ms}). Loads and
+ *    flushes hold the same lock, so a load never misses a delta that was taken off for writing.
+ *  - The watermark is a (sentAt, id) position, compared in history order: ids come from per-node
+ *    blocks and are not ordered in time across nodes.
+ *  - {@link #markRead} writes the watermark and the remaining count right away. The remaining count
+ *    is read from history after the watermark (recent-messages cache first) and is at most the
+ *    current count, so its cost is bounded by what is unread and it is never on the send path.
+ *  - Clean entries beyond {@code max-entries} are dropped after a flush and reload on the next read.
+ *  - Deltas not yet flushed are lost if the JVM dies abruptly, like unflushed messages.
+ */
+@Component
+class WriteBehindUnreadCounters implements UnreadCounters, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindUnreadCounters.class);
+
+    private static final String ADD_SQL =
+            "update conversation_members set unread_count = unread_count + ? where conversation_id = ? and username = ?";
+    private static final String MARK_SQL =
+            "update conversation_members set unread_count = ?, last_read_at = ?, last_read_message_id = ? "
+                    + "where conversation_id = ? and username = ? and (last_read_at is null "
+                    + "or last_read_at < ? or (last_read_at = ? and last_read_message_id < ?))";
+    private static final String LOAD_SQL = "select unread_count, last_read_at, last_read_message_id "
+            + "from conversation_members where conversation_id = ? and username = ?";
+    private static final int COUNT_PAGE = 200;
+    /** Watermark of a member who has read nothing. */
+    private static final HistoryCursor NOTHING_READ = new HistoryCursor(Instant.EPOCH, 0);
+
+    private record Key(Long conversationId, String username) { }
+
+    private record Row(long unread, HistoryCursor lastRead) { }
+
+    /** All fields guarded by the instance. */
+    private static final class Entry {
+        long delta;       // increments not yet in the database
+        long added;       // increments ever, so markRead can tell what arrived while it counted
+        boolean loaded;
+        long unread;      // live count, valid when loaded
+        HistoryCursor lastRead = NOTHING_READ; // watermark, valid when loaded
+        long loadedAtNanos;
+        int pins;         // markRead in progress: not evictable
+        boolean removed;  // evicted: callers holding it must look it up again
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final HistoryService history;
+    private final int maxEntries;
+    private final long maxAgeNanos;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock io = new ReentrantLock(); // counter row reads and writes
+
+    private final AtomicLong flushedIncrements = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final Timer flushDuration;
+
+    private volatile boolean running;
+
+    WriteBehindUnreadCounters(JdbcTemplate jdbc,
+                              PlatformTransactionManager txManager,
+                              HistoryService history,
+                              MetricsRegistry metrics,
+                              @Value("${chat.unread.max-entries:100000}") int maxEntries,
+                              @Value("${chat.unread.max-age-ms:0}") long maxAgeMs) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+        this.history = history;
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+
+        this.flushDuration = metrics.timer("chat_unread_flush_seconds", "Duration of one unread counter batch update");
+        metrics.counter("chat_unread_flushed_increments_total", "Unread increments written to the database", flushedIncrements::get);
+        metrics.counter("chat_unread_loads_total", "Member rows read into the unread counters", loads::get);
+        metrics.counter("chat_unread_flush_failures_total", "Failed unread counter flushes", failedFlushes::get);
+        metrics.gauge("chat_unread_entries", "Members held by the unread counters", entries::size);
+        metrics.gauge("chat_unread_pending_increments", "Unread increments not yet written", this::pendingIncrements);
+    }
+
+    @Override
+    public void messageAdded(MessageDto message, Collection<String> recipients) {
+        for (String user : recipients) {
+            if (user.equals(message.sender())) continue;
+            Key key = new Key(message.conversationId(), user);
+            while (true) {
+                Entry e = entries.computeIfAbsent(key, k -> new Entry());
+                synchronized (e) {
+                    if (e.removed) continue;
+                    if (e.loaded && !e.lastRead.sortsAfter(message)) break; // already marked read
+                    e.delta++;
+                    e.added++;
+                    if (e.loaded) e.unread++;
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Unread get(Long conversationId, String username) {
+        Key key = new Key(conversationId, username);
+        Entry e = entries.get(key);
+        if (e != null) {
+            synchronized (e) {
+                if (e.loaded && !e.removed && (maxAgeNanos <= 0 || System.nanoTime() - e.loadedAtNanos < maxAgeNanos)) {
+                    return new Unread(conversationId, e.lastRead.id(), e.unread);
+                }
+            }
+        }
+        return load(key);
+    }
+
+    @Override
+    public Unread current(Unread stored, String username) {
+        Entry e = entries.get(new Key(stored.conversationId(), username));
+        if (e == null) return stored;
+        synchronized (e) {
+            if (e.removed) return stored;
+            if (e.loaded && (maxAgeNanos <= 0 || System.nanoTime() - e.loadedAtNanos < maxAgeNanos)) {
+                return new Unread(stored.conversationId(), e.lastRead.id(), e.unread);
+            }
+            return new Unread(stored.conversationId(), stored.lastReadMessageId(), stored.unreadCount() + e.delta);
+        }
+    }
+
+    @Override
+    public Unread markRead(Long conversationId, String username, long messageId) {
+        Key key = new Key(conversationId, username);
+        Entry e = pin(key);
+        try {
+            Unread current = get(conversationId, username);
+            HistoryCursor from = history.cursorOf(conversationId, messageId);
+
+            long addedBefore;
+            synchronized (e) {
+                // Pinned, so get() loaded this very entry
+                if (from.compareTo(e.lastRead) <= 0) return current;
+                addedBefore = e.added;
+            }
+            // Everything up to the newest message now is counted here; later ones through 'added'
+            List<MessageDto> newest = history.newest(conversationId, 1);
+            HistoryCursor upTo = newest.isEmpty() ? from : HistoryCursor.of(newest.get(0));
+            long remaining = countAfter(conversationId, username, from, upTo, current.unreadCount());
+
+            io.lock();
+            try {
+                long value;
+                long delta;
+                synchronized (e) {
+                    if (from.compareTo(e.lastRead) <= 0) return new Unread(conversationId, e.lastRead.id(), e.unread);
+                    value = remaining + (e.added - addedBefore);
+                    delta = e.delta;
+                    e.unread = value;
+                    e.lastRead = from;
+                    e.delta = 0; // included in value
+                }
+                int updated;
+                try {
+                    updated = jdbc.update(MARK_SQL, value, utc(from.sentAt()), messageId, conversationId, username,
+                            utc(from.sentAt()), utc(from.sentAt()), messageId);
+                } catch (RuntimeException ex) {
+                    unload(e, delta);
+                    throw ex;
+                }
+                if (updated == 0) {
+                    // Another node moved the watermark further, or the membership is gone: reread the row
+                    unload(e, delta);
+                    return load(key);
+                }
+                log.debug("event=unread_marked conversationId={} user={} upTo={} unread={}", conversationId, username, messageId, value);
+                return new Unread(conversationId, messageId, value);
+            } finally {
+                io.unlock();
+            }
+        } finally {
+            synchronized (e) {
+                e.pins--;
+            }
+        }
+    }
+
+    /** Messages from others after {@code from} and up to {@code upTo}, counting no further than {@code cap}. */
+    private long countAfter(Long conversationId, String username, HistoryCursor from, HistoryCursor upTo, long cap) {
+        long n = 0;
+        HistoryCursor after = from;
+        while (n < cap && after != null) {
+            HistoryService.Page page = history.page(conversationId, null, after, COUNT_PAGE);
+            for (MessageDto m : page.messages()) {
+                if (!upTo.sortsAfter(m) && !m.sender().equals(username)) n++;
+            }
+            after = page.next();
+        }
+        return Math.min(n, cap);
+    }
+
+    private Unread load(Key key) {
+        io.lock();
+        try {
+            List<Row> rows = jdbc.query(LOAD_SQL, (rs, i) -> {
+                OffsetDateTime at = rs.getObject(2, OffsetDateTime.class);
+                return new Row(rs.getLong(1), at == null ? NOTHING_READ : new HistoryCursor(at.toInstant(), rs.getLong(3)));
+            }, key.conversationId(), key.username());
+            if (rows.isEmpty()) throw new NoSuchElementException("Not a member of conversation " + key.conversationId());
+            loads.incrementAndGet();
+            Row row = rows.get(0);
+            while (true) {
+                Entry e = entries.computeIfAbsent(key, k -> new Entry());
+                synchronized (e) {
+                    if (e.removed) continue;
+                    e.unread = row.unread() + e.delta; // the row has every flushed increment, delta the rest
+                    e.lastRead = row.lastRead();
+                    e.loaded = true;
+                    e.loadedAtNanos = System.nanoTime();
+                    return new Unread(key.conversationId(), e.lastRead.id(), e.unread);
+                }
+            }
+        } finally {
+            io.unlock();
+        }
+    }
+
+    private Entry pin(Key key) {
+        while (true) {
+            Entry e = entries.computeIfAbsent(key, k -> new Entry());
+            synchronized (e) {
+                if (e.removed) continue;
+                e.pins++;
+                return e;
+            }
+        }
+    }
+
+    private static OffsetDateTime utc(Instant t) {
+        return OffsetDateTime.ofInstant(t, ZoneOffset.UTC);
+    }
+
+    /** Give back increments that were not written and force a reread of the row. */
+    private static void unload(Entry e, long delta) {
+        synchronized (e) {
+            e.delta += delta;
+            e.loaded = false;
+        }
+    }
+
+    // === Flush ===
+
+    @Scheduled(fixedDelayString = "${chat.unread.flush-interval-ms:1000}")
+    void flush() {
+        io.lock();
+        try {
+            List<Object[]> rows = new ArrayList<>();
+            List<Entry> taken = new ArrayList<>();
+            for (Map.Entry<Key, Entry> me : entries.entrySet()) {
+                Entry e = me.getValue();
+                synchronized (e) {
+                    if (e.delta == 0 || e.removed) continue;
+                    rows.add(new Object[]{e.delta, me.getKey().conversationId(), me.getKey().username()});
+                    taken.add(e);
+                    e.delta = 0;
+                }
+            }
+            if (!rows.isEmpty() && !write(rows, taken)) return;
+            evictClean();
+        } finally {
+            io.unlock();
+        }
+    }
+
+    private boolean write(List<Object[]> rows, List<Entry> taken) {
+        long start = System.nanoTime();
+        try {
+            tx.executeWithoutResult(status -> jdbc.batchUpdate(ADD_SQL, rows));
+        } catch (RuntimeException ex) {
+            // Put the increments back; the next flush retries them
+            for (int i = 0; i < taken.size(); i++) {
+                Entry e = taken.get(i);
+                synchronized (e) {
+                    e.delta += (Long) rows.get(i)[0];
+                }
+            }
+            failedFlushes.incrementAndGet();
+            log.error("event=unread_flush_failed members={}", rows.size(), ex);
+            return false;
+        }
+        flushDuration.recordSince(start);
+        long n = 0;
+        for (Object[] row : rows) n += (Long) row[0];
+        flushedIncrements.addAndGet(n);
+        return true;
+    }
+
+    /** Caller holds {@link #io}; entries with unwritten increments or a markRead in progress stay. */
+    private void evictClean() {
+        int excess = entries.size() - maxEntries;
+        for (var it = entries.entrySet().iterator(); excess > 0 && it.hasNext(); ) {
+            Map.Entry<Key, Entry> me = it.next();
+            Entry e = me.getValue();
+            synchronized (e) {
+                if (e.delta != 0 || e.pins > 0) continue;
+                e.removed = true;
+                entries.remove(me.getKey(), e);
+            }
+            excess--;
+        }
+    }
+
+    private double pendingIncrements() {
+        long n = 0;
+        for (Entry e : entries.values()) {
+            synchronized (e) {
+                n += e.delta;
+            }
+        }
+        return n;
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /** Write what is left once no more messages can arrive. */
+    @Override
+    public void stop() {
+        flush();
+        running = false;
+        log.info("event=unread_counters_stopped flushedIncrements={} loads={} failedFlushes={} left={}",
+                flushedIncrements.get(), loads.get(), failedFlushes.get(), (long) pendingIncrements());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Same phase as the message writer: stops after the web server and the broker. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.message_app.demo.chat.infrastructure.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into index terms, the same way for messages and queries.
+ *
+ *  - A term is a run of letters or digits; everything else separates terms.
+ *  - Terms are lower-cased and stripped of accents ({@code Café} and {@code cafe} match).
+ *  - Terms longer than {@link #MAX_TERM_LENGTH} are skipped (hashes, base64, URLs without separators).
+ *  - Each token keeps its offsets in the original text, for highlighting.
+ */
+final class Analyzer {
+    static final int MAX_TERM_LENGTH = 40;
+
+    /** A term and where it came from: {@code text.substring(start, end)}. */
+    record Token(String term, int start, int end) { }
+
+    private Analyzer() {
+    }
+
+    static List<Token> tokens(String text) {
+        List<Token> out = new ArrayList<>();
+        if (text == null) return out;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int cp = text.codePointAt(i);
+            if (!Character.isLetterOrDigit(cp)) {
+                i += Character.charCount(cp);
+                continue;
+            }
+            int start = i;
+            while (i < n) {
+                cp = text.codePointAt(i);
+                // Combining marks belong to the letter before them (decomposed input)
+                if (!Character.isLetterOrDigit(cp) && Character.getType(cp) != Character.NON_SPACING_MARK) break;
+                i += Character.charCount(cp);
+            }
+            String term = normalize(text.substring(start, i));
+            if (!term.isEmpty() && term.length() <= MAX_TERM_LENGTH) out.add(new Token(term, start, i));
+        }
+        return out;
+    }
+
+    static String normalize(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) >= 0x80) return stripMarks(lower);
+        }
+        return lower;
+    }
+
+    private static String stripMarks(String s) {
+        String d = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(d.length());
+        for (int i = 0; i < d.length(); i++) {
+            char c = d.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) out.append(c);
+        }
+        return out.toString();
+    }
+}
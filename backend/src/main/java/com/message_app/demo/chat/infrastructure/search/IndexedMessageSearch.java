@@ -0,0 +1,506 @@
+package com.message_app.demo.chat.infrastructure.search;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.api.dto.SearchHit;
+import com.message_app.demo.chat.application.MessageSearch;
+import com.message_app.demo.chat.application.MessageWriter;
+import com.message_app.demo.chat.application.PublicRoomService;
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * {@link MessageSearch} over an in-memory {@link InvertedIndex}, snapshotted to local disk.
+ *
+ * Why:
+ *  - {@code content like '%word%'} reads every message row on each search; at our table size that
+ *    is seconds per query and it cannot rank or highlight.
+ *
+ * How:
+ *  - Send path: {@link #messageAdded} offers the message to a bounded queue, nothing else. If the
+ *    queue is full the message is dropped, counted, and re-read from {@code messages} by id a
+ *    moment later (once the write-behind writer has flushed it).
+ *  - One indexer thread owns all writes: it drains the queue in batches into the index, and every
+ *    {@code chat.search.snapshot-interval-ms} (and on shutdown) writes the index to
+ *    {@code chat.search.dir}.
+ *  - Startup: the snapshot is used if {@code messages} still holds exactly the rows it covers
+ *    (count of ids up to its newest one); newer rows are then read by primary-key range.
+ *    Otherwise, or with {@code chat.search.rebuild-on-start}, the index is rebuilt from the table.
+ *  - Rebuild ({@link #rebuild}, {@code POST /api/search/rebuild}): the table is read in id order,
+ *    in pages, into a new index while searches use the old one; live messages go to both meanwhile.
+ *  - Search: the index returns the best message ids of the caller's conversations, then only
+ *    those rows are read (by id; messages not flushed yet come from {@link MessageWriter#pending})
+ *    to cut the snippets.
+ *  - The index is node-local: with several nodes each one only sees the messages sent through it.
+ */
+@Component
+class IndexedMessageSearch implements MessageSearch, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(IndexedMessageSearch.class);
+
+    private static final String SNAPSHOT_FILE = "messages.idx";
+    private static final String SCAN_SQL =
+            "select id, conversation_id, content from messages where id > ? order by id limit ?";
+    private static final String COUNT_UP_TO_SQL = "select count(*) from messages where id <= ?";
+    private static final String MEMBER_OF_SQL = "select conversation_id from conversation_members where username = ?";
+    private static final String IS_MEMBER_SQL =
+            "select count(*) from conversation_members where conversation_id = ? and username = ?";
+    private static final String HITS_SQL =
+            "select id, conversation_id, sender, content, sent_at from messages where id in (%s)";
+    static final int MAX_LIMIT = 100;
+    private static final int MAX_QUERY_TERMS = 8;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int BATCH = 1024;
+    private static final long IDLE_POLL_MS = 100;
+    private static final long CATCH_UP_DELAY_MS = 2_000;
+    private static final long DROP_WARN_INTERVAL_MS = 10_000;
+    private static final long ERROR_BACKOFF_MS = 1_000;
+    private static final int SNIPPET_CHARS = 160;
+    private static final int SNIPPET_LEAD_CHARS = 40;
+
+    enum State { LOADING, REBUILDING, READY }
+
+    /** Query words after analysis: all of {@code exact}, and {@code prefix} (may be null) as a word start. */
+    record Query(List<String> exact, String prefix) {
+        static Query parse(String text) {
+            List<Analyzer.Token> tokens = Analyzer.tokens(text);
+            if (tokens.isEmpty()) throw new IllegalArgumentException("Query has no searchable words");
+            Analyzer.Token last = tokens.get(tokens.size() - 1);
+            // Still typing the last word: no space after it
+            boolean typing = last.end() == text.length() && last.term().length() >= MIN_PREFIX_LENGTH;
+            Set<String> exact = new LinkedHashSet<>();
+            for (int i = 0; i < tokens.size() - (typing ? 1 : 0) && exact.size() < MAX_QUERY_TERMS; i++) {
+                exact.add(tokens.get(i).term());
+            }
+            String prefix = typing && !exact.contains(last.term()) ? last.term() : null;
+            return new Query(List.copyOf(exact), prefix);
+        }
+
+        boolean matches(String term) {
+            return exact.contains(term) || (prefix != null && term.startsWith(prefix));
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final MessageWriter writer;
+    private final PublicRoomService publicRoom;
+    private final boolean enabled;
+    private final Path dir;
+    private final BlockingQueue<MessageDto> queue;
+    private final long snapshotIntervalMs;
+    private final boolean rebuildOnStart;
+    private final int pageSize;
+    private final long shutdownTimeoutMs;
+
+    private volatile InvertedIndex index = new InvertedIndex();
+    private volatile State state = State.LOADING;
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    /** Lowest id to re-read from the table (dropped messages, rebuild tail); MAX_VALUE = none. */
+    private final AtomicLong droppedFloor = new AtomicLong(Long.MAX_VALUE);
+    private volatile long lastDropMs;
+    private volatile long lastDropWarnMs;
+
+    private final Counter indexed;
+    private final Counter dropped;
+    private final Counter rebuilds;
+    private final Timer queryDuration;
+    private final Timer snapshotDuration;
+
+    // indexer thread only
+    private boolean dirty;
+    private long lastSnapshotMs;
+    private long lastScannedId;
+
+    private volatile boolean running;
+    private Thread indexer;
+
+    IndexedMessageSearch(JdbcTemplate jdbc,
+                         MessageWriter writer,
+                         PublicRoomService publicRoom,
+                         MetricsRegistry metrics,
+                         @Value("${chat.search.enabled:true}") boolean enabled,
+                         @Value("${chat.search.dir:search-index}") String dir,
+                         @Value("${chat.search.queue-capacity:10000}") int queueCapacity,
+                         @Value("${chat.search.snapshot-interval-ms:60000}") long snapshotIntervalMs,
+                         @Value("${chat.search.rebuild-on-start:false}") boolean rebuildOnStart,
+                         @Value("${chat.search.rebuild-page-size:1000}") int pageSize,
+                         @Value("${chat.search.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.jdbc = jdbc;
+        this.writer = writer;
+        this.publicRoom = publicRoom;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.snapshotIntervalMs = snapshotIntervalMs;
+        this.rebuildOnStart = rebuildOnStart;
+        this.pageSize = pageSize;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+
+        this.indexed = metrics.counter("chat_search_indexed_total", "Messages added to the search index");
+        this.dropped = metrics.counter("chat_search_dropped_total", "Messages dropped from a full indexer queue (re-read from the table later)");
+        this.rebuilds = metrics.counter("chat_search_rebuilds_total", "Completed rebuilds of the search index from the messages table");
+        this.queryDuration = metrics.timer("chat_search_query_seconds", "Time to answer one search, snippets included");
+        this.snapshotDuration = metrics.timer("chat_search_snapshot_seconds", "Time to write the search index to disk");
+        metrics.gauge("chat_search_documents", "Messages in the search index", () -> index.docs());
+        metrics.gauge("chat_search_terms", "Distinct terms in the search index", () -> index.terms());
+        metrics.gauge("chat_search_queue_size", "Messages waiting to be indexed", queue::size);
+    }
+
+    @Override
+    public void messageAdded(MessageDto message) {
+        if (!enabled) return;
+        if (running && queue.offer(message)) return;
+        dropped.increment();
+        long now = scheduleCatchUp(message.id());
+        if (now - lastDropWarnMs > DROP_WARN_INTERVAL_MS) {
+            lastDropWarnMs = now;
+            log.warn("event=search_index_dropped totalDropped={} running={}", dropped.count(), running);
+        }
+    }
+
+    @Override
+    public Result search(String username, Long conversationId, String query, Sort sort, int limit) {
+        if (!enabled) throw new IllegalStateException("Search is disabled");
+        long start = System.nanoTime();
+        Query q = Query.parse(query == null ? "" : query);
+        int n = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        LongPredicate allowed = null;
+        if (conversationId != null) {
+            requireReadable(username, conversationId);
+        } else {
+            long[] readable = conversationsOf(username);
+            allowed = id -> Arrays.binarySearch(readable, id) >= 0;
+        }
+        List<InvertedIndex.Match> matches = index.search(q.exact(), q.prefix(), conversationId, allowed, sort == Sort.NEWEST, n);
+        Map<Long, MessageDto> messages = load(matches);
+
+        List<SearchHit> hits = new ArrayList<>(matches.size());
+        for (InvertedIndex.Match m : matches) {
+            MessageDto message = messages.get(m.messageId());
+            if (message != null) hits.add(hit(message, q, m.score()));
+        }
+        queryDuration.recordSince(start);
+        log.debug("event=search user={} conversationId={} terms={} prefix={} hits={}",
+                username, conversationId, q.exact().size(), q.prefix() != null, hits.size());
+        return new Result(hits, state == State.READY);
+    }
+
+    @Override
+    public boolean rebuild() {
+        if (!enabled) throw new IllegalStateException("Search is disabled");
+        return state != State.REBUILDING && rebuildRequested.compareAndSet(false, true);
+    }
+
+    // === Access ===
+
+    private void requireReadable(String username, Long conversationId) {
+        if (conversationId.equals(publicRoom.conversationId())) return;
+        Integer n = jdbc.queryForObject(IS_MEMBER_SQL, Integer.class, conversationId, username);
+        if (n == null || n == 0) throw new NoSuchElementException("Not a member of conversation " + conversationId);
+    }
+
+    /** The user's DMs and rooms and the public room, sorted. */
+    private long[] conversationsOf(String username) {
+        List<Long> ids = jdbc.queryForList(MEMBER_OF_SQL, Long.class, username);
+        long[] out = new long[ids.size() + 1];
+        for (int i = 0; i < ids.size(); i++) out[i] = ids.get(i);
+        out[ids.size()] = publicRoom.conversationId();
+        Arrays.sort(out);
+        return out;
+    }
+
+    // === Hits ===
+
+    /** Rows of the hits by primary key; hits not flushed yet come from the writer. */
+    private Map<Long, MessageDto> load(List<InvertedIndex.Match> matches) {
+        if (matches.isEmpty()) return Map.of();
+        Map<Long, MessageDto> out = new HashMap<>(matches.size() * 2);
+        Object[] ids = matches.stream().map(InvertedIndex.Match::messageId).toArray();
+        String sql = HITS_SQL.formatted(String.join(",", Collections.nCopies(ids.length, "?")));
+        jdbc.query(sql, rs -> {
+            MessageDto m = row(rs);
+            out.put(m.id(), m);
+        }, ids);
+        if (out.size() < matches.size()) {
+            for (InvertedIndex.Match m : matches) {
+                if (out.containsKey(m.messageId())) continue;
+                for (MessageDto p : writer.pending(m.conversationId())) {
+                    if (p.id() == m.messageId()) out.put(p.id(), p);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static MessageDto row(ResultSet rs) throws SQLException {
+        OffsetDateTime sentAt = rs.getObject(5, OffsetDateTime.class);
+        return new MessageDto(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4),
+                sentAt == null ? null : sentAt.toInstant());
+    }
+
+    /** Up to {@link #SNIPPET_CHARS} around the first match, cut at spaces, with the matched words marked. */
+    static SearchHit hit(MessageDto m, Query q, double score) {
+        String content = m.content();
+        List<Analyzer.Token> found = new ArrayList<>();
+        for (Analyzer.Token t : Analyzer.tokens(content)) {
+            if (q.matches(t.term())) found.add(t);
+        }
+        int length = content.length();
+        int start = 0;
+        int end = length;
+        if (length > SNIPPET_CHARS) {
+            Analyzer.Token first = found.isEmpty() ? null : found.get(0);
+            int anchor = first == null ? 0 : first.start();
+            start = Math.max(0, anchor - SNIPPET_LEAD_CHARS);
+            while (start > 0 && start < anchor && !Character.isWhitespace(content.charAt(start - 1))) start++;
+            end = Math.min(length, start + SNIPPET_CHARS);
+            int minEnd = first == null ? start : first.end();
+            while (end < length && end > minEnd && !Character.isWhitespace(content.charAt(end))) end--;
+        }
+        String lead = start > 0 ? "…" : "";
+        String snippet = lead + content.substring(start, end) + (end < length ? "…" : "");
+        List<SearchHit.Highlight> highlights = new ArrayList<>();
+        for (Analyzer.Token t : found) {
+            if (t.start() >= start && t.end() <= end) {
+                highlights.add(new SearchHit.Highlight(t.start() - start + lead.length(), t.end() - start + lead.length()));
+            }
+        }
+        return new SearchHit(m, snippet, highlights, score);
+    }
+
+    // === Indexer thread ===
+
+    private void run() {
+        open();
+        while (running || !queue.isEmpty()) {
+            try {
+                if (rebuildRequested.get()) {
+                    rebuildNow();
+                    rebuildRequested.set(false);
+                }
+                drain(IDLE_POLL_MS, null);
+                catchUpDropped();
+                snapshot(false);
+            } catch (RuntimeException e) {
+                log.error("event=search_indexer_failed retryInMs={}", ERROR_BACKOFF_MS, e);
+                sleep(ERROR_BACKOFF_MS);
+            }
+        }
+        snapshot(true);
+        log.info("event=search_indexer_stopped documents={} indexed={} dropped={}",
+                index.docs(), indexed.count(), dropped.count());
+    }
+
+    /** Snapshot plus newer rows if it still matches the table, a rebuild otherwise. */
+    private void open() {
+        try {
+            InvertedIndex loaded = rebuildOnStart ? null : load();
+            if (loaded != null && matchesTable(loaded)) {
+                long start = System.nanoTime();
+                index = loaded;
+                int added = scan(loaded, loaded.maxMessageId(), null);
+                state = State.READY;
+                log.info("event=search_index_loaded documents={} caughtUp={} ms={}",
+                        loaded.docs(), added, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return;
+            }
+            rebuildNow();
+        } catch (RuntimeException e) {
+            // Searches still work on whatever the live feed adds; a rebuild can be requested later
+            state = State.READY;
+            log.error("event=search_index_open_failed", e);
+        }
+    }
+
+    private InvertedIndex load() {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        try {
+            return InvertedIndex.readFrom(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("event=search_snapshot_unusable file={} reason={}", file.toAbsolutePath(), e.toString());
+            return null;
+        }
+    }
+
+    /** Every row up to the snapshot's newest id is in it, and nothing else: nothing was lost or added behind it. */
+    private boolean matchesTable(InvertedIndex snapshot) {
+        Long rows = jdbc.queryForObject(COUNT_UP_TO_SQL, Long.class, snapshot.maxMessageId());
+        boolean matches = rows != null && rows == snapshot.docs();
+        if (!matches) log.info("event=search_snapshot_stale documents={} rows={}", snapshot.docs(), rows);
+        return matches;
+    }
+
+    private void rebuildNow() {
+        state = State.REBUILDING;
+        long start = System.nanoTime();
+        log.info("event=search_rebuild_started");
+        InvertedIndex fresh = new InvertedIndex();
+        int rows = scan(fresh, 0, fresh);
+        if (!running) {
+            state = State.READY;
+            log.info("event=search_rebuild_abandoned reason=shutdown rows={}", rows);
+            return;
+        }
+        index = fresh;
+        dirty = true;
+        state = State.READY;
+        rebuilds.increment();
+        // Messages the live index got before the rebuild but the writer flushed only after the scan passed them
+        scheduleCatchUp(lastScannedId + 1);
+        log.info("event=search_rebuild_done documents={} terms={} ms={}",
+                fresh.docs(), fresh.terms(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Rows with ids above {@code afterId}, in pages by primary key, into {@code target}. The queue is
+     * drained between pages so live messages are not held up, into {@code alsoLive} as well if set.
+     */
+    private int scan(InvertedIndex target, long afterId, InvertedIndex alsoLive) {
+        long[] last = {afterId};
+        int total = 0;
+        while (running) {
+            int[] n = {0};
+            jdbc.query(SCAN_SQL, rs -> {
+                long id = rs.getLong(1);
+                if (target.add(id, rs.getLong(2), rs.getString(3))) indexed.increment();
+                last[0] = id;
+                n[0]++;
+            }, last[0], pageSize);
+            lastScannedId = last[0];
+            total += n[0];
+            if (n[0] > 0) dirty = true;
+            drain(0, alsoLive);
+            if (n[0] < pageSize) break;
+        }
+        return total;
+    }
+
+    private void drain(long waitMs, InvertedIndex alsoLive) {
+        List<MessageDto> batch = new ArrayList<>(BATCH);
+        try {
+            MessageDto first = waitMs > 0 ? queue.poll(waitMs, TimeUnit.MILLISECONDS) : queue.poll();
+            if (first == null) return;
+            batch.add(first);
+        } catch (InterruptedException e) {
+            // stop() never interrupts; treat as a request to finish
+            running = false;
+            return;
+        }
+        queue.drainTo(batch, BATCH - 1);
+        InvertedIndex live = index;
+        for (MessageDto m : batch) {
+            if (live.add(m.id(), m.conversationId(), m.content())) indexed.increment();
+            if (alsoLive != null) alsoLive.add(m.id(), m.conversationId(), m.content());
+        }
+        dirty = true;
+    }
+
+    /** Re-read rows from {@code fromId} on after {@link #CATCH_UP_DELAY_MS}; returns the current time. */
+    private long scheduleCatchUp(long fromId) {
+        droppedFloor.accumulateAndGet(fromId, Math::min);
+        long now = System.currentTimeMillis();
+        lastDropMs = now;
+        return now;
+    }
+
+    /** Re-read dropped (or rebuild-tail) messages from the table once the writer has had time to flush them. */
+    private void catchUpDropped() {
+        long floor = droppedFloor.get();
+        if (floor == Long.MAX_VALUE || System.currentTimeMillis() - lastDropMs < CATCH_UP_DELAY_MS) return;
+        if (!droppedFloor.compareAndSet(floor, Long.MAX_VALUE)) return;
+        int rows = scan(index, floor - 1, null);
+        log.info("event=search_caught_up fromId={} rows={}", floor, rows);
+    }
+
+    private void snapshot(boolean force) {
+        if (!dirty || state == State.LOADING) return;
+        long now = System.currentTimeMillis();
+        if (!force && now - lastSnapshotMs < snapshotIntervalMs) return;
+        lastSnapshotMs = now;
+        long start = System.nanoTime();
+        InvertedIndex current = index;
+        try {
+            Files.createDirectories(dir);
+            current.writeTo(dir.resolve(SNAPSHOT_FILE));
+            dirty = false;
+            snapshotDuration.recordSince(start);
+            log.debug("event=search_snapshot_written documents={} ms={}",
+                    current.docs(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.error("event=search_snapshot_failed dir={}", dir.toAbsolutePath(), e);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // === Lifecycle ===
+
+    @Override
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        indexer = new Thread(this::run, "search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+        log.info("event=search_indexer_started dir={} queueCapacity={}", dir.toAbsolutePath(), queue.remainingCapacity());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            indexer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Same phase as the message writer: stop only after the broker stopped handing us messages. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,500 @@
+package com.message_app.demo.chat.infrastructure.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Term to message postings for {@link IndexedMessageSearch}.
+ *
+ * Layout:
+ *  - Documents are numbered in the order they are added; per document the message id,
+ *    conversation id and length in terms are kept in parallel arrays. Content is not stored:
+ *    snippets are cut from the rows of the hits only.
+ *  - Each term has one postings list: (document delta, term frequency) pairs as varints, in
+ *    document order, with a skip entry every {@link #SKIP_INTERVAL} postings so intersections
+ *    jump over long lists instead of decoding them.
+ *  - Every document is also posted under a term for its conversation, which is never produced by
+ *    {@link Analyzer}, so a per-conversation search intersects with it like with any other term.
+ *  - Message ids already in the index are ignored, so overlapping feeds (send path, catch-up,
+ *    rebuild) are harmless.
+ *
+ * Queries: all exact terms must match, optionally plus one prefix (the word being typed), ranked
+ * by BM25 or by message id (newest first).
+ *
+ * Threading: one writer (the indexer thread), any number of readers; a read-write lock keeps
+ * readers from seeing a half-added document.
+ */
+final class InvertedIndex {
+    static final int MAGIC = 0x43534958; // "CSIX"
+    static final short VERSION = 1;
+
+    private static final int SKIP_INTERVAL = 64;
+    private static final int MAX_PREFIX_TERMS = 64;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final String CONVERSATION_TERM = "\u0000c"; // Analyzer never emits control characters
+
+    /** A hit before its message is loaded. */
+    record Match(long messageId, long conversationId, double score) { }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final IdSet ids = new IdSet();
+    private long[] messageIds = new long[1024];
+    private long[] conversationIds = new long[1024];
+    private short[] lengths = new short[1024];
+    private int docs;
+    private long totalLength;
+    private long maxMessageId;
+
+    /** @return false if the message was already indexed */
+    boolean add(long messageId, long conversationId, String content) {
+        List<Analyzer.Token> tokens = Analyzer.tokens(content);
+        Map<String, Integer> freq = new HashMap<>();
+        for (Analyzer.Token t : tokens) freq.merge(t.term(), 1, Integer::sum);
+
+        lock.writeLock().lock();
+        try {
+            if (!ids.add(messageId)) return false;
+            int doc = docs;
+            if (doc == messageIds.length) {
+                int n = doc + (doc >> 1);
+                messageIds = Arrays.copyOf(messageIds, n);
+                conversationIds = Arrays.copyOf(conversationIds, n);
+                lengths = Arrays.copyOf(lengths, n);
+            }
+            messageIds[doc] = messageId;
+            conversationIds[doc] = conversationId;
+            lengths[doc] = (short) Math.min(tokens.size(), Short.MAX_VALUE);
+            totalLength += tokens.size();
+            maxMessageId = Math.max(maxMessageId, messageId);
+            for (Map.Entry<String, Integer> e : freq.entrySet()) {
+                terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(doc, e.getValue());
+            }
+            terms.computeIfAbsent(CONVERSATION_TERM + conversationId, k -> new Postings()).add(doc, 1);
+            docs = doc + 1;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int docs() {
+        return docs;
+    }
+
+    int terms() {
+        return terms.size();
+    }
+
+    long maxMessageId() {
+        return maxMessageId;
+    }
+
+    // === Queries ===
+
+    /**
+     * @param exact          terms that must all occur
+     * @param prefix         a term that must occur as the start of some word, or null
+     * @param conversationId only this conversation, or null for any
+     * @param allowed        conversations the caller may see; null = no restriction
+     * @param newest         order by message id instead of relevance
+     * @return best first, at most {@code limit}
+     */
+    List<Match> search(List<String> exact, String prefix, Long conversationId, LongPredicate allowed,
+                       boolean newest, int limit) {
+        lock.readLock().lock();
+        try {
+            if (docs == 0 || limit <= 0) return List.of();
+            List<Clause> clauses = new ArrayList<>();
+            for (String term : exact) {
+                Postings p = terms.get(term);
+                if (p == null) return List.of();
+                clauses.add(new Clause(p.iterator(), idf(p.count), p.count));
+            }
+            if (prefix != null) {
+                Clause c = prefixClause(prefix);
+                if (c == null) return List.of();
+                clauses.add(c);
+            }
+            if (conversationId != null) {
+                Postings p = terms.get(CONVERSATION_TERM + conversationId);
+                if (p == null) return List.of();
+                clauses.add(new Clause(p.iterator(), 0, p.count)); // filter only, not scored
+            }
+            if (clauses.isEmpty()) return List.of();
+            clauses.sort(Comparator.comparingInt(Clause::cost));
+            return collect(clauses, allowed, newest, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Leapfrog intersection led by the shortest list, scored into a bounded heap. */
+    private List<Match> collect(List<Clause> clauses, LongPredicate allowed, boolean newest, int limit) {
+        Comparator<Match> order = newest
+                ? Comparator.comparingLong(Match::messageId)
+                : Comparator.comparingDouble(Match::score).thenComparingLong(Match::messageId);
+        PriorityQueue<Match> top = new PriorityQueue<>(limit + 1, order);
+        double avgLength = Math.max(1.0, (double) totalLength / docs);
+
+        DocIterator lead = clauses.get(0).it();
+        int doc = lead.next();
+        candidates:
+        while (doc != DocIterator.NO_MORE) {
+            for (int i = 1; i < clauses.size(); i++) {
+                int d = clauses.get(i).it().advance(doc);
+                if (d > doc) {
+                    doc = lead.advance(d);
+                    continue candidates;
+                }
+            }
+            if (allowed == null || allowed.test(conversationIds[doc])) {
+                double score = 0;
+                if (!newest) {
+                    double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                    for (Clause c : clauses) {
+                        int tf = c.it().tf();
+                        score += c.idf() * tf * (K1 + 1) / (tf + norm);
+                    }
+                }
+                top.add(new Match(messageIds[doc], conversationIds[doc], score));
+                if (top.size() > limit) top.poll();
+            }
+            doc = lead.next();
+        }
+        List<Match> out = new ArrayList<>(top);
+        out.sort(Collections.reverseOrder(order));
+        return out;
+    }
+
+    /** The union of the first {@link #MAX_PREFIX_TERMS} terms starting with {@code prefix}, tf summed. */
+    private Clause prefixClause(String prefix) {
+        NavigableMap<String, Postings> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        if (range.isEmpty()) return null;
+        int total = 0;
+        List<Postings> lists = new ArrayList<>();
+        for (Postings p : range.values()) {
+            lists.add(p);
+            total += p.count;
+            if (lists.size() == MAX_PREFIX_TERMS) break;
+        }
+        long[] pairs = new long[total]; // doc << 32 | tf, sorted by doc
+        int n = 0;
+        for (Postings p : lists) {
+            PostingsIterator it = p.iterator();
+            for (int d = it.next(); d != DocIterator.NO_MORE; d = it.next()) pairs[n++] = ((long) d << 32) | it.tf();
+        }
+        Arrays.sort(pairs);
+        int[] docIds = new int[n];
+        int[] tfs = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int d = (int) (pairs[i] >>> 32);
+            int tf = (int) pairs[i];
+            if (m > 0 && docIds[m - 1] == d) {
+                tfs[m - 1] += tf;
+            } else {
+                docIds[m] = d;
+                tfs[m++] = tf;
+            }
+        }
+        return new Clause(new ArrayIterator(docIds, tfs, m), idf(m), m);
+    }
+
+    private double idf(int df) {
+        return Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+    }
+
+    private record Clause(DocIterator it, double idf, int cost) { }
+
+    private abstract static class DocIterator {
+        static final int NO_MORE = Integer.MAX_VALUE;
+
+        abstract int next();
+
+        /** First document {@code >= target}; the current one if it already is. */
+        abstract int advance(int target);
+
+        abstract int tf();
+    }
+
+    private static final class ArrayIterator extends DocIterator {
+        private final int[] docIds;
+        private final int[] tfs;
+        private final int size;
+        private int i = -1;
+
+        ArrayIterator(int[] docIds, int[] tfs, int size) {
+            this.docIds = docIds;
+            this.tfs = tfs;
+            this.size = size;
+        }
+
+        @Override
+        int next() {
+            return ++i < size ? docIds[i] : NO_MORE;
+        }
+
+        @Override
+        int advance(int target) {
+            if (target == NO_MORE) return NO_MORE;
+            if (i >= 0 && (i >= size || docIds[i] >= target)) return i < size ? docIds[i] : NO_MORE;
+            int at = Arrays.binarySearch(docIds, Math.max(i, 0), size, target);
+            i = at >= 0 ? at : -at - 1;
+            return i < size ? docIds[i] : NO_MORE;
+        }
+
+        @Override
+        int tf() {
+            return tfs[i];
+        }
+    }
+
+    // === Postings ===
+
+    private static final class Postings {
+        private static final int[] NONE = new int[0];
+
+        private byte[] data = new byte[8];
+        private int bytes;
+        private int count;
+        private int lastDoc = -1;
+        // Entry k: doc of posting (k + 1) * SKIP_INTERVAL - 1, and byte offset of the posting after it
+        private int[] skipDocs = NONE;
+        private int[] skipOffsets = NONE;
+        private int skips;
+
+        void add(int doc, int tf) {
+            if (count > 0 && count % SKIP_INTERVAL == 0) {
+                if (skips == skipDocs.length) {
+                    int n = Math.max(4, skips * 2);
+                    skipDocs = Arrays.copyOf(skipDocs, n);
+                    skipOffsets = Arrays.copyOf(skipOffsets, n);
+                }
+                skipDocs[skips] = lastDoc;
+                skipOffsets[skips++] = bytes;
+            }
+            if (bytes + 10 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, bytes + 10));
+            writeVInt(doc - lastDoc);
+            writeVInt(tf);
+            lastDoc = doc;
+            count++;
+        }
+
+        private void writeVInt(int v) {
+            while ((v & ~0x7f) != 0) {
+                data[bytes++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            data[bytes++] = (byte) v;
+        }
+
+        PostingsIterator iterator() {
+            return new PostingsIterator(this);
+        }
+    }
+
+    private static final class PostingsIterator extends DocIterator {
+        private final Postings p;
+        private int pos;
+        private int read;
+        private int doc = -1;
+        private int tf;
+
+        PostingsIterator(Postings p) {
+            this.p = p;
+        }
+
+        @Override
+        int next() {
+            if (read >= p.count) return doc = NO_MORE;
+            doc += readVInt();
+            tf = readVInt();
+            read++;
+            return doc;
+        }
+
+        @Override
+        int advance(int target) {
+            if (doc >= target) return doc;
+            if (target == NO_MORE) return doc = NO_MORE;
+            // Last skip entry below the target, if it is ahead of where we are
+            int lo = 0, hi = p.skips - 1, k = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (p.skipDocs[mid] < target) {
+                    k = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (k >= 0 && (k + 1) * SKIP_INTERVAL > read) {
+                pos = p.skipOffsets[k];
+                doc = p.skipDocs[k];
+                read = (k + 1) * SKIP_INTERVAL;
+            }
+            while (doc < target) next();
+            return doc;
+        }
+
+        @Override
+        int tf() {
+            return tf;
+        }
+
+        private int readVInt() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = p.data[pos++];
+                v |= (b & 0x7f) << shift;
+                if (b >= 0) return v;
+            }
+        }
+    }
+
+    /** Open-addressing set of message ids (ids are positive, 0 marks a free slot). */
+    private static final class IdSet {
+        private long[] slots = new long[2048];
+        private int size;
+
+        boolean add(long id) {
+            if (size * 2 >= slots.length) resize();
+            int i = slot(id, slots.length);
+            while (slots[i] != 0) {
+                if (slots[i] == id) return false;
+                i = (i + 1) & (slots.length - 1);
+            }
+            slots[i] = id;
+            size++;
+            return true;
+        }
+
+        private void resize() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            for (long id : old) {
+                if (id == 0) continue;
+                int i = slot(id, slots.length);
+                while (slots[i] != 0) i = (i + 1) & (slots.length - 1);
+                slots[i] = id;
+            }
+        }
+
+        private static int slot(long id, int length) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (length - 1);
+        }
+    }
+
+    // === Snapshot ===
+
+    /** Written to a temporary file and moved into place, so a crash never leaves a torn snapshot. */
+    void writeTo(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        lock.readLock().lock();
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(raw, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(docs);
+            out.writeLong(totalLength);
+            out.writeLong(maxMessageId);
+            for (int d = 0; d < docs; d++) {
+                out.writeLong(messageIds[d]);
+                out.writeLong(conversationIds[d]);
+                out.writeShort(lengths[d]);
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, Postings> e : terms.entrySet()) {
+                Postings p = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeInt(p.count);
+                out.writeInt(p.lastDoc);
+                out.writeInt(p.bytes);
+                out.write(p.data, 0, p.bytes);
+                out.writeInt(p.skips);
+                for (int k = 0; k < p.skips; k++) {
+                    out.writeInt(p.skipDocs[k]);
+                    out.writeInt(p.skipOffsets[k]);
+                }
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @throws IOException if the file is unreadable, of another version or corrupt */
+    static InvertedIndex readFrom(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(raw, 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a search index: " + file);
+            short version = in.readShort();
+            if (version != VERSION) throw new IOException("Search index version " + version + ", expected " + VERSION);
+            InvertedIndex index = new InvertedIndex();
+            int docs = in.readInt();
+            index.totalLength = in.readLong();
+            index.maxMessageId = in.readLong();
+            int capacity = Math.max(1024, docs);
+            index.messageIds = new long[capacity];
+            index.conversationIds = new long[capacity];
+            index.lengths = new short[capacity];
+            for (int d = 0; d < docs; d++) {
+                index.messageIds[d] = in.readLong();
+                index.conversationIds[d] = in.readLong();
+                index.lengths[d] = in.readShort();
+                index.ids.add(index.messageIds[d]);
+            }
+            index.docs = docs;
+            int terms = in.readInt();
+            for (int t = 0; t < terms; t++) {
+                String term = in.readUTF();
+                Postings p = new Postings();
+                p.count = in.readInt();
+                p.lastDoc = in.readInt();
+                p.bytes = in.readInt();
+                p.data = new byte[Math.max(8, p.bytes)];
+                in.readFully(p.data, 0, p.bytes);
+                p.skips = in.readInt();
+                p.skipDocs = new int[p.skips];
+                p.skipOffsets = new int[p.skips];
+                for (int k = 0; k < p.skips; k++) {
+                    p.skipDocs[k] = in.readInt();
+                    p.skipOffsets[k] = in.readInt();
+                }
+                index.terms.put(term, p);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) throw new IOException("Search index checksum mismatch: " + file);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.message_app.demo.chat.infrastructure.ws;
+
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.realtime.ChannelBacklog;
+import com.message_app.demo.realtime.FanOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Inbound ChannelInterceptor that rate-limits client SEND frames and sheds them under overload.
+ *
+ * Why:
+ *  - Nothing bounded how fast one client could send: a scripted session could fill the inbound
+ *    executor, the message writer and every recipient's outbox on its own.
+ *
+ * How:
+ *  - Token buckets, kept as GCRA ("virtual scheduling"): each bucket is one long, the time at which
+ *    it is full again, moved forward by one interval per frame with a CAS. No locks, no refill timer.
+ *  - Every user has one bucket for all their SENDs ({@code user.rate}/{@code user.burst}) and one per
+ *    destination rule ({@code destinations}, templates as in {@link MessageRateInterceptor}). A frame
+ *    must fit both; the destination token is given back if the user bucket refuses it.
+ *  - Buckets live in one array per user in a {@link ConcurrentHashMap}. {@link #evictIdle} drops users
+ *    whose buckets are all full again, which is the same as having none, so eviction loses nothing.
+ *  - Global admission: while the inbound executor holds more than {@code global.max-backlog} tasks,
+ *    SENDs are refused before they are queued. CONNECT, SUBSCRIBE and the like always pass.
+ *  - A refused frame is not handed to the channel. The session gets a {@link RateLimitErr} on
+ *    {@code /user/queue/errors} (at most one per {@code notice-interval-ms}); after
+ *    {@code disconnect-after} refusals in a row the frame fails instead, which Spring answers with
+ *    a STOMP ERROR frame and closes the session.
+ *  - Hot path for an allowed frame: header reads, two map lookups, two CAS. See InboundRateLimiterBenchmark.
+ */
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(InboundRateLimiter.class);
+
+    static final String QUEUE_ERRORS = "/queue/errors";
+    private static final int MAX_MEMOIZED = 8192;
+    private static final Integer NO_RULE = -1;
+    private static final int USER_BUCKET = 0;
+
+    /** Sent to the refused session; {@code retryAfterMs} is when the same frame would pass. */
+    public record RateLimitErr(String errorCode, String destination, long retryAfterMs) { }
+
+    /** {@code template:ratePerSecond:burst}. */
+    private record Rule(String template, long intervalNanos, long toleranceNanos) { }
+
+    private static final class Buckets {
+        final AtomicLongArray fullAt; // per bucket: nanoTime at which it holds `burst` tokens again
+        final AtomicInteger refusedInARow = new AtomicInteger();
+        final AtomicLong noticeAt;
+
+        Buckets(int n, long now, long noticeIntervalNanos) {
+            fullAt = new AtomicLongArray(n);
+            for (int i = 0; i < n; i++) fullAt.set(i, Long.MIN_VALUE);
+            noticeAt = new AtomicLong(now - noticeIntervalNanos);
+        }
+    }
+
+    private final boolean enabled;
+    private final long userInterval;
+    private final long userTolerance;
+    private final Rule[] rules;
+    private final int maxBacklog;
+    private final int disconnectAfter;
+    private final long noticeIntervalNanos;
+    private final Supplier<FanOut> fanOut; // lazy: FanOut needs the broker, which needs this channel
+    private final IntSupplier backlog;
+
+    private final ConcurrentHashMap<String, Buckets> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> ruleOf = new ConcurrentHashMap<>();
+
+    private final Counter refusedUser;
+    private final Counter refusedDestination;
+    private final Counter refusedOverload;
+    private final Counter disconnects;
+    private final Counter notices;
+    private final Counter evicted;
+
+    @Autowired
+    public InboundRateLimiter(MetricsRegistry metrics,
+                              ObjectProvider<FanOut> fanOut,
+                              @Qualifier("clientInboundChannelExecutor") ObjectProvider<Executor> inboundExecutor,
+                              @Value("${chat.ratelimit.enabled:true}") boolean enabled,
+                              @Value("${chat.ratelimit.user.rate:20}") double userRate,
+                              @Value("${chat.ratelimit.user.burst:40}") int userBurst,
+                              @Value("${chat.ratelimit.destinations:/app/message:5:20,/app/dm/{user}/send:10:30,/app/room/{id}/send:10:30,/app/dm/{user}/open:2:10,/app/room/create:1:5,/app/dm/catchup:1:5}") String destinations,
+                              @Value("${chat.ratelimit.global.max-backlog:10000}") int maxBacklog,
+                              @Value("${chat.ratelimit.disconnect-after:200}") int disconnectAfter,
+                              @Value("${chat.ratelimit.notice-interval-ms:1000}") long noticeIntervalMs) {
+        this(metrics, fanOut::getIfAvailable, ChannelBacklog.lazy(inboundExecutor::getObject),
+                enabled, userRate, userBurst, destinations, maxBacklog, disconnectAfter, noticeIntervalMs);
+    }
+
+    /** For benchmarks: no Spring context, any backlog source. */
+    public InboundRateLimiter(MetricsRegistry metrics, Supplier<FanOut> fanOut, IntSupplier backlog,
+                              boolean enabled, double userRate, int userBurst, String destinations,
+                              int maxBacklog, int disconnectAfter, long noticeIntervalMs) {
+        this.enabled = enabled;
+        this.userInterval = interval(userRate);
+        this.userTolerance = userInterval * Math.max(1, userBurst);
+        this.rules = parse(destinations);
+        this.maxBacklog = maxBacklog;
+        this.disconnectAfter = disconnectAfter;
+        this.noticeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(noticeIntervalMs);
+        this.fanOut = fanOut;
+        this.backlog = backlog;
+
+        String help = "Client SEND frames refused by the inbound rate limiter";
+        this.refusedUser = metrics.counter("chat_ratelimit_refused_total", help, "reason", "user");
+        this.refusedDestination = metrics.counter("chat_ratelimit_refused_total", help, "reason", "destination");
+        this.refusedOverload = metrics.counter("chat_ratelimit_refused_total", help, "reason", "overload");
+        this.disconnects = metrics.counter("chat_ratelimit_disconnects_total", "Sessions closed for sending past the limit");
+        this.notices = metrics.counter("chat_ratelimit_notices_total", "RateLimitErr messages sent to clients");
+        this.evicted = metrics.counter("chat_ratelimit_evicted_total", "Idle users whose buckets were dropped");
+        metrics.gauge("chat_ratelimit_users", "Users with rate limiter state", users::size);
+
+        log.info("event=ratelimit_configured enabled={} userRate={} userBurst={} rules={} maxBacklog={} disconnectAfter={}",
+                enabled, userRate, userBurst, rules.length, maxBacklog, disconnectAfter);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) return message;
+        MessageHeaders headers = message.getHeaders();
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) return message;
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        String key = user != null ? user.getName() : sessionId;
+        if (key == null) return message;
+
+        long now = System.nanoTime();
+        if (maxBacklog > 0 && backlog.getAsInt() > maxBacklog) {
+            refusedOverload.increment();
+            return refuse(user, sessionId, key, destination, "OVERLOADED", 0, now);
+        }
+
+        int rule = destination == null ? NO_RULE : ruleIndex(destination);
+        Buckets b = users.get(key);
+        if (b == null) b = users.computeIfAbsent(key, k -> new Buckets(1 + rules.length, now, noticeIntervalNanos));
+
+        long wait;
+        if (rule >= 0) {
+            Rule r = rules[rule];
+            wait = take(b.fullAt, 1 + rule, r.intervalNanos(), r.toleranceNanos(), now);
+            if (wait > 0) {
+                refusedDestination.increment();
+                return refuse(user, sessionId, key, destination, "RATE_LIMITED", wait, now);
+            }
+        }
+        wait = take(b.fullAt, USER_BUCKET, userInterval, userTolerance, now);
+        if (wait > 0) {
+            if (rule >= 0) b.fullAt.getAndAdd(1 + rule, -rules[rule].intervalNanos()); // not spent after all
+            refusedUser.increment();
+            return refuse(user, sessionId, key, destination, "RATE_LIMITED", wait, now);
+        }
+        if (b.refusedInARow.get() != 0) b.refusedInARow.set(0);
+        return message;
+    }
+
+    /** One token from bucket {@code i}: 0 if taken, otherwise nanos until it would be. */
+    private static long take(AtomicLongArray fullAt, int i, long interval, long tolerance, long now) {
+        while (true) {
+            long current = fullAt.get(i);
+            long next = Math.max(current, now) + interval;
+            long over = next - now - tolerance;
+            if (over > 0) return over;
+            if (fullAt.compareAndSet(i, current, next)) return 0;
+        }
+    }
+
+    private Message<?> refuse(Principal user, String sessionId, String key, String destination,
+                              String code, long waitNanos, long now) {
+        Buckets b = users.computeIfAbsent(key, k -> new Buckets(1 + rules.length, now, noticeIntervalNanos));
+        int refused = b.refusedInARow.incrementAndGet();
+        if (disconnectAfter > 0 && refused >= disconnectAfter) {
+            b.refusedInARow.set(0);
+            disconnects.increment();
+            log.warn("event=ratelimit_disconnect user={} simpSessionId={} dest={} refusedInARow={}",
+                    key, sessionId, destination, refused);
+            throw new MessageDeliveryException("Rate limit exceeded: " + refused + " frames refused in a row");
+        }
+        long last = b.noticeAt.get();
+        if (user != null && sessionId != null && now - last >= noticeIntervalNanos && b.noticeAt.compareAndSet(last, now)) {
+            notice(user.getName(), sessionId, new RateLimitErr(code, destination, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1));
+        }
+        return null;
+    }
+
+    private void notice(String user, String sessionId, RateLimitErr err) {
+        FanOut out = fanOut.get();
+        if (out == null) return;
+        try {
+            out.toSession(user, sessionId, QUEUE_ERRORS, out.encode(err));
+            notices.increment();
+            log.info("event=ratelimit_refused user={} simpSessionId={} dest={} code={} retryAfterMs={}",
+                    user, sessionId, err.destination(), err.errorCode(), err.retryAfterMs());
+        } catch (RuntimeException e) {
+            log.warn("event=ratelimit_notice_failed user={} error={}", user, e.toString());
+        }
+    }
+
+    private int ruleIndex(String destination) {
+        Integer i = ruleOf.get(destination);
+        if (i == null) {
+            i = NO_RULE;
+            String template = MessageRateInterceptor.template(destination);
+            for (int r = 0; r < rules.length; r++) {
+                if (rules[r].template().equals(template)) i = r;
+            }
+            if (ruleOf.size() < MAX_MEMOIZED) ruleOf.put(destination, i);
+        }
+        return i;
+    }
+
+    /** Users whose buckets are all full again are the same as unknown users. */
+    @Scheduled(fixedDelayString = "${chat.ratelimit.evict-interval-ms:60000}")
+    void evictIdle() {
+        long now = System.nanoTime();
+        int dropped = 0;
+        for (var e : users.entrySet()) {
+            AtomicLongArray fullAt = e.getValue().fullAt;
+            boolean idle = true;
+            for (int i = 0; i < fullAt.length() && idle; i++) {
+                long t = fullAt.get(i);
+                idle = t == Long.MIN_VALUE || t - now <= 0;
+            }
+            // A frame racing with the removal lands in the dropped array: at worst one extra token
+            if (idle && users.remove(e.getKey(), e.getValue())) dropped++;
+        }
+        evicted.increment(dropped);
+        if (dropped > 0) log.debug("event=ratelimit_evicted users={} left={}", dropped, users.size());
+    }
+
+    private static long interval(double perSecond) {
+        if (!(perSecond > 0)) throw new IllegalArgumentException("Rate must be positive: " + perSecond);
+        return Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / perSecond));
+    }
+
+    private static Rule[] parse(String spec) {
+        List<Rule> out = new ArrayList<>();
+        if (spec != null) {
+            for (String part : spec.split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) continue;
+                String[] f = p.split(":");
+                if (f.length != 3) throw new IllegalArgumentException("Expected template:rate:burst, got " + p);
+                long interval = interval(Double.parseDouble(f[1].trim()));
+                out.add(new Rule(f[0].trim(), interval, interval * Math.max(1, Integer.parseInt(f[2].trim()))));
+            }
+        }
+        return out.toArray(Rule[]::new);
+    }
+}
@@ -0,0 +1,98 @@
+package com.message_app.demo.chat.infrastructure.ws;
+
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts STOMP frames per destination on one client channel
+ * ({@code chat_stomp_messages_total{direction,type,destination}}); one instance per direction.
+ *
+ * Destinations are reduced to templates before they become a tag, so the number of series stays
+ * bounded no matter how many users and conversations exist:
+ *  - numeric path segments become {@code {id}} ({@code /user/queue/dm/42} -> {@code /user/queue/dm/{id}});
+ *  - the user segment of {@code /app/dm/<user>/<action>} becomes {@code {user}} (only with an
+ *    action after it: {@code /app/dm/catchup} stays as it is);
+ *  - the per-session suffix of resolved user destinations ({@code /queue/dm/42-user<sid>}) is dropped.
+ * Past {@code MAX_TEMPLATES} templates, new ones are counted as {@code other}.
+ *
+ * Hot path: raw destination -> counter is memoized (bounded), so a repeat destination costs one
+ * map lookup and one {@link java.util.concurrent.atomic.LongAdder} increment.
+ */
+public class MessageRateInterceptor implements ChannelInterceptor {
+    private static final int MAX_TEMPLATES = 256;
+    private static final int MAX_MEMOIZED = 8192;
+
+    private final MetricsRegistry metrics;
+    private final String direction;
+    private final ConcurrentHashMap<String, Counter> byDestination = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> byTemplate = new ConcurrentHashMap<>();
+
+    public MessageRateInterceptor(MetricsRegistry metrics, String direction) {
+        this.metrics = metrics;
+        this.direction = direction;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type != SimpMessageType.MESSAGE && type != SimpMessageType.SUBSCRIBE) return message;
+        // Outbound frames of user destinations carry the destination the client subscribed to
+        Object original = message.getHeaders().get(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        String destination = original instanceof String s ? s : SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) return message;
+
+        String key = type == SimpMessageType.MESSAGE ? destination : "SUBSCRIBE " + destination;
+        Counter c = byDestination.get(key);
+        if (c == null) {
+            c = forTemplate(type, template(destination));
+            if (byDestination.size() < MAX_MEMOIZED) byDestination.put(key, c);
+        }
+        c.increment();
+        return message;
+    }
+
+    private Counter forTemplate(SimpMessageType type, String template) {
+        String key = type + " " + template;
+        Counter c = byTemplate.get(key);
+        if (c != null) return c;
+        if (byTemplate.size() >= MAX_TEMPLATES) {
+            template = "other";
+            key = type + " other";
+        }
+        String t = template;
+        return byTemplate.computeIfAbsent(key, k -> metrics.counter("chat_stomp_messages_total",
+                "STOMP frames per destination template",
+                "direction", direction, "type", type.name(), "destination", t));
+    }
+
+    static String template(String destination) {
+        String[] parts = destination.split("/", -1);
+        boolean app = parts.length > 1 && "app".equals(parts[1]);
+        StringBuilder sb = new StringBuilder(destination.length());
+        for (int i = 1; i < parts.length; i++) {
+            String p = parts[i];
+            int sessionSuffix = app ? -1 : p.lastIndexOf("-user");
+            if (sessionSuffix > 0) p = p.substring(0, sessionSuffix);
+            sb.append('/');
+            if (app && i == 3 && parts.length > 4 && "dm".equals(parts[2])) sb.append("{user}");
+            else if (isNumeric(p)) sb.append("{id}");
+            else sb.append(p);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) return false;
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package com.message_app.demo.chat.infrastructure.ws;
+
+import com.message_app.demo.chat.application.RoomLeftEvent;
+import com.message_app.demo.chat.application.RoomService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inbound ChannelInterceptor that keeps {@code /topic/room/{roomId}} members-only.
+ *
+ * Responsibilities:
+ *  - SUBSCRIBE to a room topic is refused unless the user is a member. Checked against the
+ *    membership index in {@link RoomService}; no database query per subscription.
+ *  - SUBSCRIBE to a pattern under {@code /topic/} or {@code /queue/} is refused: the simple broker
+ *    matches subscriptions as Ant patterns ({@code /topic/**}), relay brokers have their own
+ *    wildcards ({@code #}, {@code >}), and either would receive every room, or every user's
+ *    queue, without a membership check.
+ *  - Clients may not SEND to a room topic directly; room messages go through
+ *    {@code /app/room/{roomId}/send}, which persists and authorizes them.
+ *  - When a user leaves a room ({@link RoomLeftEvent}), that user's live subscriptions to it on
+ *    this node are cancelled by injecting an UNSUBSCRIBE for each, as if the client had sent it.
+ *    This works for both the simple broker and the relay.
+ *
+ * Only sessions with at least one room subscription are tracked; entries are dropped on
+ * UNSUBSCRIBE and on {@link SessionDisconnectEvent}. Frames to any other destination only cost
+ * a type and a prefix check.
+ */
+@Component
+public class RoomSubscriptionInterceptor implements ChannelInterceptor {
+
+    static final String TOPIC_PREFIX = "/topic/";
+    static final String QUEUE_PREFIX = "/queue/";
+    static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    private static final Logger log = LoggerFactory.getLogger(RoomSubscriptionInterceptor.class);
+
+    private record SessionRooms(Principal user, Map<String, Long> subscriptions) { }
+
+    private final RoomService rooms;
+    private final ObjectProvider<MessageChannel> clientInbound; // lazy: this interceptor is part of that channel
+    private final ConcurrentMap<String, SessionRooms> sessions = new ConcurrentHashMap<>();
+
+    public RoomSubscriptionInterceptor(RoomService rooms,
+                                       @Qualifier("clientInboundChannel") ObjectProvider<MessageChannel> clientInbound) {
+        this.rooms = rooms;
+        this.clientInbound = clientInbound;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == SimpMessageType.UNSUBSCRIBE) {
+            SessionRooms s = sessions.get(SimpMessageHeaderAccessor.getSessionId(headers));
+            if (s != null) s.subscriptions().remove(SimpMessageHeaderAccessor.getSubscriptionId(headers));
+            return message;
+        }
+        if (type != SimpMessageType.SUBSCRIBE && type != SimpMessageType.MESSAGE) return message;
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null) return message;
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (type == SimpMessageType.SUBSCRIBE && isPattern(destination)) {
+            log.info("event=topic_pattern_denied dest={} user={}", destination, user == null ? null : user.getName());
+            throw new AccessDeniedException("Subscribe to one topic, not a pattern: " + destination);
+        }
+        if (!destination.startsWith(ROOM_TOPIC_PREFIX)) return message;
+
+        if (type == SimpMessageType.MESSAGE) {
+            throw new AccessDeniedException("Send room messages to /app/room/{roomId}/send");
+        }
+        Long roomId = roomId(destination);
+        if (user == null || roomId == null || !rooms.isMember(roomId, user.getName())) {
+            log.info("event=room_subscribe_denied dest={} user={}", destination, user == null ? null : user.getName());
+            throw new AccessDeniedException("Not a member of " + destination);
+        }
+        String sid = SimpMessageHeaderAccessor.getSessionId(headers);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+        if (sid != null && subscriptionId != null) {
+            sessions.computeIfAbsent(sid, k -> new SessionRooms(user, new ConcurrentHashMap<>()))
+                    .subscriptions().put(subscriptionId, roomId);
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onRoomLeft(RoomLeftEvent e) {
+        sessions.forEach((sid, s) -> {
+            if (!s.user().getName().equals(e.username())) return;
+            s.subscriptions().forEach((subscriptionId, roomId) -> {
+                if (!roomId.equals(e.roomId()) || !s.subscriptions().remove(subscriptionId, roomId)) return;
+                StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+                acc.setSessionId(sid);
+                acc.setSubscriptionId(subscriptionId);
+                acc.setUser(s.user());
+                acc.setLeaveMutable(true); // like client frames: ordered channels stamp a header on it
+                clientInbound.getObject().send(MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders()));
+                log.info("event=room_subscription_revoked roomId={} user={} simpSessionId={}", roomId, e.username(), sid);
+            });
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        sessions.remove(e.getSessionId());
+    }
+
+    /** A broker destination with Ant pattern characters (simple broker) or common relay broker wildcards. */
+    private static boolean isPattern(String destination) {
+        if (!destination.startsWith(TOPIC_PREFIX) && !destination.startsWith(QUEUE_PREFIX)) return false;
+        for (int i = 0; i < destination.length(); i++) {
+            if ("*?{#>".indexOf(destination.charAt(i)) >= 0) return true;
+        }
+        return false;
+    }
+
+    /** Strict: only {@code /topic/room/<digits>}; patterns like {@code /topic/room/*} never match a room. */
+    private static Long roomId(String destination) {
+        String rest = destination.substring(ROOM_TOPIC_PREFIX.length());
+        if (rest.isEmpty() || rest.length() > 18) return null;
+        for (int i = 0; i < rest.length(); i++) {
+            if (!Character.isDigit(rest.charAt(i))) return null;
+        }
+        return Long.parseLong(rest);
+    }
+}
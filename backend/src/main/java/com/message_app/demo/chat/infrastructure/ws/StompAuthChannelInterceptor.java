@@ -2,17 +2,27 @@ package com.message_app.demo.chat.infrastructure.ws;
 // Authenticate on STOMP CONNECT (ChannelInterceptor)
 
 import com.message_app.demo.auth.infrastructure.security.JwtService;
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
 import org.slf4j.Logger; import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.*;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.stomp.*;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
 import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -24,65 +34,93 @@ import java.security.Principal;
  *  - Attach that Authentication as the session "user" (Principal).
  * Once set, the user is available as Principal in @MessageMapping methods,
  * and Spring Messaging Security can enforce authorization rules.
+ *
+ * Performance:
+ *  - After CONNECT, Spring's STOMP handler stamps the session's principal on every inbound frame.
+ *    Such frames take a fast path: two header lookups and the same message returned, no accessor,
+ *    no rebuilt message and no logging.
+ *  - Only frames without a principal fall back to the session attributes, then {@code bySession}.
+ *    Header changes go through the frame's mutable accessor, so the message is rebuilt only
+ *    when its headers were already sealed.
+ *  - {@code bySession} entries are removed on {@link SessionDisconnectEvent}, which Spring
+ *    publishes for every closed session, including ones that never sent DISCONNECT.
  */
 @Component
 public class StompAuthChannelInterceptor implements ChannelInterceptor {
     private static final String AUTH_KEY = "auth";
     private static final Logger log = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
     private final JwtService jwt;
-    private final java.util.concurrent.ConcurrentMap<String, Principal> bySession = new java.util.concurrent.ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Principal> bySession = new ConcurrentHashMap<>();
 
-    public StompAuthChannelInterceptor(JwtService jwt) { this.jwt = jwt; }
+    private final Timer jwtVerify;
+    private final Counter jwtRejected;
+
+    public StompAuthChannelInterceptor(JwtService jwt, MetricsRegistry metrics) {
+        this.jwt = jwt;
+        this.jwtVerify = metrics.timer("chat_jwt_verify_seconds", "JWT signature and claims verification on STOMP CONNECT");
+        this.jwtRejected = metrics.counter("chat_jwt_rejected_total", "STOMP CONNECTs refused because the JWT was invalid");
+        metrics.gauge("chat_stomp_auth_sessions", "Sessions whose principal is held by the STOMP auth interceptor",
+                bySession::size);
+    }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-        StompHeaderAccessor acc = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-        if (acc == null) return message;
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type != SimpMessageType.CONNECT && SimpMessageHeaderAccessor.getUser(headers) != null) {
+            return message; // fast path: established session, principal already attached
+        }
 
+        StompHeaderAccessor acc = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        boolean sealed = acc == null;
+        if (sealed) {
+            if (type == null) return message; // not a STOMP frame
+            acc = StompHeaderAccessor.wrap(message);
+        }
         String sid = acc.getSessionId();
 
-        if (StompCommand.CONNECT.equals(acc.getCommand())) {
-
-            // ... read Authorization, parse JWT -> username ...
-            String authz = first(acc.getNativeHeader("Authorization"));
-            String username;
-            if (authz != null && authz.startsWith("Bearer ")) {
-                var jws = jwt.parse(authz.substring("Bearer ".length()).trim());
-                username = jwt.userName(jws);
-                if (username == null || username.isBlank())
-                    throw new IllegalStateException("JWT parsed but username was null/blank");
-                log.warn("STOMP CONNECT attached user via JWT -> {}", username);
-            } else {
-                throw new IllegalArgumentException("Missing Authorization: Bearer <JWT>");
-            }
-            var auth = new UsernamePasswordAuthenticationToken(username, "N/A");
-
-            acc.setUser(auth); // mutate headers on the original accessor
+        if (type == SimpMessageType.CONNECT) {
+            acc.setUser(authenticate(acc));
             var attrs = acc.getSessionAttributes();
-            if (attrs != null) attrs.put(AUTH_KEY, auth);
-            if (sid != null) bySession.put(sid, auth); // your session cache
+            if (attrs != null) attrs.put(AUTH_KEY, acc.getUser());
+            if (sid != null) bySession.put(sid, acc.getUser());
         } else {
-            if (acc.getUser() == null) {
-                var attrs = acc.getSessionAttributes();
-                if (attrs != null) {
-                    Object cached = attrs.get(AUTH_KEY);
-                    if (cached instanceof Principal p) acc.setUser(p);
-                }
-            }
-            if (acc.getUser() == null && sid != null) {
-                Principal p = bySession.get(sid);
-                if (p != null) acc.setUser(p);
-            }
-            if (acc.getUser() == null) {
-                Principal headerUser = SimpMessageHeaderAccessor.getUser(message.getHeaders());
-                if (headerUser != null) acc.setUser(headerUser);
-            }
-            log.warn("preSend cmd={} sid={} user={}", acc.getCommand(), sid, acc.getUser());
+            Principal p = null;
+            var attrs = acc.getSessionAttributes();
+            if (attrs != null && attrs.get(AUTH_KEY) instanceof Principal cached) p = cached;
+            if (p == null && sid != null) p = bySession.get(sid);
+            if (p == null) return message; // unauthenticated; authorization rules decide
+            acc.setUser(p);
+            log.debug("event=stomp_principal_restored cmd={} simpSessionId={}", acc.getCommand(), sid);
         }
-        // ✅ Rebuild message so header mutations are definitely applied downstream
-        return MessageBuilder.createMessage(message.getPayload(), acc.getMessageHeaders());
+        return sealed ? MessageBuilder.createMessage(message.getPayload(), acc.getMessageHeaders()) : message;
     }
 
-    private static String first(java.util.List<String> xs) { return (xs != null && !xs.isEmpty()) ? xs.get(0) : null; }
-}
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        bySession.remove(e.getSessionId());
+    }
 
+    private Principal authenticate(StompHeaderAccessor acc) {
+        // ... read Authorization, parse JWT -> username ...
+        String authz = acc.getFirstNativeHeader("Authorization");
+        if (authz == null || !authz.startsWith("Bearer ")) {
+            throw new IllegalArgumentException("Missing Authorization: Bearer <JWT>");
+        }
+        long start = System.nanoTime();
+        Jws<Claims> jws;
+        try {
+            jws = jwt.parse(authz.substring("Bearer ".length()).trim());
+        } catch (RuntimeException e) {
+            jwtRejected.increment();
+            throw e;
+        } finally {
+            jwtVerify.recordSince(start);
+        }
+        String username = jwt.userName(jws);
+        if (username == null || username.isBlank())
+            throw new IllegalStateException("JWT parsed but username was null/blank");
+        log.debug("event=stomp_connect_authenticated user={}", username);
+        return new UsernamePasswordAuthenticationToken(username, "N/A");
+    }
+}
@@ -0,0 +1,23 @@
+package com.message_app.demo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic counter; obtain from {@link MetricsRegistry#counter(String, String, String...)}. */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void increment(long n) {
+        count.add(n);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,157 @@
+package com.message_app.demo.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics, rendered in the Prometheus text exposition format (version 0.0.4).
+ *
+ * Why:
+ *  - One place for counters, gauges and latency histograms of the messaging hot path, scraped
+ *    from {@code GET /metrics}.
+ *  - The API follows Micrometer's shape (name + alternating tag key/values, counters, gauges,
+ *    timers), so moving to a Micrometer registry later is a mechanical change.
+ *
+ * How:
+ *  - Meters are looked up by (name, tags); asking twice returns the same instance. Callers on hot
+ *    paths keep the instance in a field instead of looking it up per event.
+ *  - Counters and timers are {@link java.util.concurrent.atomic.LongAdder}-based: recording never
+ *    locks and never allocates. Gauges and function counters are read only at scrape time.
+ *  - Names use Prometheus conventions: {@code _total} for counters, {@code _seconds} for timers.
+ */
+@Component
+public class MetricsRegistry {
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    /** Meters of one name; Prometheus wants them grouped under a single HELP/TYPE header. */
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Map<String, Object> byTags = new ConcurrentHashMap<>();
+        final List<String> order = new ArrayList<>(); // guarded by this; scrape output is stable
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    private final List<Family> familyOrder = new ArrayList<>(); // guarded by itself
+
+    /** Counter with a fixed set of tags, e.g. {@code counter("chat_ws_connects_total", "...")}. */
+    public Counter counter(String name, String help, String... tags) {
+        return (Counter) meter(name, help, Type.COUNTER, tags, Counter::new);
+    }
+
+    /** Counter whose value is read from {@code value} at scrape time (for counts kept elsewhere). */
+    public void counter(String name, String help, DoubleSupplier value, String... tags) {
+        meter(name, help, Type.COUNTER, tags, () -> value);
+    }
+
+    /** Gauge read from {@code value} at scrape time. */
+    public void gauge(String name, String help, DoubleSupplier value, String... tags) {
+        meter(name, help, Type.GAUGE, tags, () -> value);
+    }
+
+    /** Latency histogram in seconds with {@link Timer#BUCKETS_SECONDS} buckets. */
+    public Timer timer(String name, String help, String... tags) {
+        return (Timer) meter(name, help, Type.HISTOGRAM, tags, Timer::new);
+    }
+
+    /** Writes every meter in registration order. */
+    public void scrape(Appendable out) throws IOException {
+        List<Family> snapshot;
+        synchronized (familyOrder) {
+            snapshot = new ArrayList<>(familyOrder);
+        }
+        for (Family f : snapshot) {
+            List<String> keys;
+            synchronized (f) {
+                keys = new ArrayList<>(f.order);
+            }
+            out.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(f.name).append(' ').append(f.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            for (String tags : keys) {
+                Object m = f.byTags.get(tags);
+                if (m instanceof Counter c) sample(out, f.name, tags, c.count());
+                else if (m instanceof DoubleSupplier s) sample(out, f.name, tags, read(s));
+                else if (m instanceof Timer t) t.scrape(out, f.name, tags);
+            }
+        }
+    }
+
+    private Object meter(String name, String help, Type type, String[] tags, Supplier<Object> create) {
+        Family f = families.computeIfAbsent(name, n -> {
+            Family created = new Family(n, help, type);
+            synchronized (familyOrder) {
+                familyOrder.add(created);
+            }
+            return created;
+        });
+        if (f.type != type) throw new IllegalArgumentException("Metric " + name + " is already registered as a " + f.type);
+        String key = tags(tags);
+        Object existing = f.byTags.get(key);
+        if (existing != null) return existing;
+        synchronized (f) {
+            return f.byTags.computeIfAbsent(key, k -> {
+                f.order.add(k);
+                return create.get();
+            });
+        }
+    }
+
+    /** {@code "k1","v1","k2","v2"} -> {@code k1="v1",k2="v2"} (label values escaped). */
+    static String tags(String... kv) {
+        if (kv.length % 2 != 0) throw new IllegalArgumentException("Tags must be key/value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < kv.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(kv[i]).append("=\"");
+            String v = kv[i + 1] == null ? "" : kv[i + 1];
+            for (int j = 0; j < v.length(); j++) {
+                char c = v.charAt(j);
+                switch (c) {
+                    case '\\' -> sb.append("\\\\");
+                    case '"' -> sb.append("\\\"");
+                    case '\n' -> sb.append("\\n");
+                    default -> sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    static void sample(Appendable out, String name, String tags, double value) throws IOException {
+        out.append(name);
+        if (!tags.isEmpty()) out.append('{').append(tags).append('}');
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    static String format(double v) {
+        if (Double.isNaN(v)) return "NaN";
+        if (Double.isInfinite(v)) return v > 0 ? "+Inf" : "-Inf";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    private static double read(DoubleSupplier s) {
+        try {
+            return s.getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN; // a broken gauge must not break the whole scrape
+        }
+    }
+}
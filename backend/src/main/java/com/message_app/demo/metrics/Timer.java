@@ -0,0 +1,71 @@
+package com.message_app.demo.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets; obtain from {@link MetricsRegistry#timer}.
+ *
+ * Recording is a binary search over {@link #BUCKETS_SECONDS} plus two {@link LongAdder} updates.
+ * Buckets are stored non-cumulative and summed up at scrape time, as Prometheus expects
+ * {@code le} buckets to be cumulative.
+ */
+public final class Timer {
+
+    /** 100µs .. 10s; covers an in-memory fan-out as well as a stalled database flush. */
+    public static final double[] BUCKETS_SECONDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS_SECONDS.length];
+    private static final String[] BUCKET_LABELS = new String[BUCKETS_SECONDS.length + 1];
+
+    static {
+        for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+            BUCKETS_NANOS[i] = Math.round(BUCKETS_SECONDS[i] * 1e9);
+            BUCKET_LABELS[i] = "le=\"" + BigDecimal.valueOf(BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString() + "\"";
+        }
+        BUCKET_LABELS[BUCKETS_SECONDS.length] = "le=\"+Inf\"";
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS_NANOS.length + 1]; // last one is +Inf
+    private final LongAdder sumNanos = new LongAdder();
+
+    Timer() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int lo = 0, hi = BUCKETS_NANOS.length;
+        while (lo < hi) { // first bucket with bound >= nanos
+            int mid = (lo + hi) >>> 1;
+            if (BUCKETS_NANOS[mid] < nanos) lo = mid + 1;
+            else hi = mid;
+        }
+        buckets[lo].increment();
+        sumNanos.add(nanos);
+    }
+
+    /** Record the time elapsed since {@code startNanos}, a value of {@link System#nanoTime()}. */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        long n = 0;
+        for (LongAdder b : buckets) n += b.sum();
+        return n;
+    }
+
+    void scrape(Appendable out, String name, String tags) throws IOException {
+        String sep = tags.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            MetricsRegistry.sample(out, name + "_bucket", tags + sep + BUCKET_LABELS[i], cumulative);
+        }
+        MetricsRegistry.sample(out, name + "_sum", tags, sumNanos.sum() / 1e9);
+        MetricsRegistry.sample(out, name + "_count", tags, cumulative);
+    }
+}
@@ -0,0 +1,100 @@
+package com.message_app.demo.realtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link PresenceBus} over the external STOMP broker ({@code chat.broker.mode=relay}).
+ *
+ * Events are published to {@code chat.presence.broadcast} like any other broker message. Every
+ * node receives them on the relay's "system" session: the destination is added to the relay's
+ * system subscriptions (next to Spring's own user-registry broadcast) before the relay starts.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "relay")
+class BrokerPresenceBus implements PresenceBus, MessageHandler, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(BrokerPresenceBus.class);
+
+    private final SimpMessagingTemplate broker;
+    private final StompBrokerRelayMessageHandler relay;
+    private final ObjectMapper json;
+    private final String destination;
+    private final List<Consumer<PresenceEvent>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+
+    BrokerPresenceBus(SimpMessagingTemplate broker,
+                      @Qualifier("stompBrokerRelayMessageHandler") AbstractBrokerMessageHandler relay,
+                      ObjectMapper json,
+                      @Value("${chat.presence.broadcast:/topic/cluster-presence}") String destination) {
+        this.broker = broker;
+        this.relay = (StompBrokerRelayMessageHandler) relay;
+        this.json = json;
+        this.destination = destination;
+    }
+
+    @Override
+    public void publish(PresenceEvent event) {
+        broker.convertAndSend(destination, event);
+    }
+
+    @Override
+    public void subscribe(Consumer<PresenceEvent> listener) {
+        listeners.add(listener);
+    }
+
+    /** Called by the relay's system session for every message on {@link #destination}. */
+    @Override
+    public void handleMessage(Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload)) return;
+        PresenceEvent event;
+        try {
+            event = json.readValue(payload, PresenceEvent.class);
+        } catch (IOException e) {
+            log.warn("event=presence_event_unreadable bytes={}", payload.length, e);
+            return;
+        }
+        for (Consumer<PresenceEvent> l : listeners) l.accept(event);
+    }
+
+    @Override
+    public void start() {
+        Map<String, MessageHandler> subscriptions = new HashMap<>(relay.getSystemSubscriptions());
+        subscriptions.put(destination, this);
+        relay.setSystemSubscriptions(subscriptions);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Before the relay (phase 0) connects its system session. */
+    @Override
+    public int getPhase() {
+        return -1;
+    }
+}
@@ -0,0 +1,241 @@
+package com.message_app.demo.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plain-socket STOMP transport for the broker relay, for development and tests only
+ * ({@code chat.broker.relay.transport=socket}).
+ *
+ * Spring's {@code StompBrokerRelayMessageHandler} only needs a {@link TcpOperations}; its default
+ * implementation requires Reactor Netty (build with {@code -Pbroker-relay}), which is what
+ * production nodes use. This one lets relay mode run without it:
+ *  - one blocking socket and one reader thread per connection (the relay opens a "system"
+ *    connection plus one per client session), frames decoded with {@link StompDecoder};
+ *  - writes are encoded with {@link StompEncoder} and written under the connection's lock;
+ *  - heartbeat inactivity callbacks are driven by a single scheduler thread.
+ *
+ * Thread-per-connection costs a platform thread and its stack for every connected client, so it
+ * does not scale like the Reactor Netty client and is never chosen implicitly.
+ */
+final class BrokerRelayTcpClient implements TcpOperations<byte[]> {
+    private static final Logger log = LoggerFactory.getLogger(BrokerRelayTcpClient.class);
+
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    private final InetSocketAddress address;
+    private final Set<SocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger threadIds = new AtomicInteger();
+    private volatile boolean stopped;
+
+    BrokerRelayTcpClient(String host, int port) {
+        this.address = InetSocketAddress.createUnresolved(host, port);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "broker-relay-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler) {
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        startThread(() -> {
+            SocketConnection conn;
+            try {
+                conn = open(handler);
+            } catch (IOException e) {
+                handler.afterConnectFailure(e);
+                connected.completeExceptionally(e);
+                return;
+            }
+            connected.complete(null);
+            conn.readLoop();
+        });
+        return connected;
+    }
+
+    @Override
+    public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy) {
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        startThread(() -> {
+            int attempt = 0;
+            while (!stopped) {
+                try {
+                    SocketConnection conn = open(handler);
+                    attempt = 0;
+                    connected.complete(null);
+                    conn.readLoop(); // returns when the connection is gone
+                } catch (IOException e) {
+                    handler.afterConnectFailure(e);
+                }
+                Long delay = strategy.getTimeToNextAttempt(attempt++);
+                if (stopped || delay == null) break;
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            connected.completeExceptionally(new IOException("Gave up connecting to " + address));
+        });
+        return connected;
+    }
+
+    @Override
+    public CompletableFuture<Void> shutdownAsync() {
+        stopped = true;
+        connections.forEach(SocketConnection::close);
+        scheduler.shutdownNow();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private SocketConnection open(TcpConnectionHandler<byte[]> handler) throws IOException {
+        if (stopped) throw new IOException("Client is shut down");
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        SocketConnection conn = new SocketConnection(socket, handler);
+        connections.add(conn);
+        handler.afterConnected(conn);
+        return conn;
+    }
+
+    private void startThread(Runnable task) {
+        Thread t = new Thread(task, "broker-relay-" + threadIds.incrementAndGet());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private final class SocketConnection implements TcpConnection<byte[]> {
+        private final Socket socket;
+        private final OutputStream out;
+        private final TcpConnectionHandler<byte[]> handler;
+        private final StompEncoder encoder = new StompEncoder();
+        private final StompDecoder decoder = new StompDecoder();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long lastReadNanos = System.nanoTime();
+        private volatile long lastWriteNanos = System.nanoTime();
+        private ScheduledFuture<?> readCheck;
+        private ScheduledFuture<?> writeCheck;
+
+        SocketConnection(Socket socket, TcpConnectionHandler<byte[]> handler) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            this.handler = handler;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendAsync(Message<byte[]> message) {
+            byte[] frame = encoder.encode(message);
+            try {
+                synchronized (out) {
+                    out.write(frame);
+                    out.flush();
+                }
+                lastWriteNanos = System.nanoTime();
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                close();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public void onReadInactivity(Runnable runnable, long duration) {
+            readCheck = every(duration, () -> {
+                if (System.nanoTime() - lastReadNanos > TimeUnit.MILLISECONDS.toNanos(duration)) runnable.run();
+            });
+        }
+
+        @Override
+        public void onWriteInactivity(Runnable runnable, long duration) {
+            writeCheck = every(duration, () -> {
+                if (System.nanoTime() - lastWriteNanos > TimeUnit.MILLISECONDS.toNanos(duration)) runnable.run();
+            });
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            if (readCheck != null) readCheck.cancel(false);
+            if (writeCheck != null) writeCheck.cancel(false);
+            try {
+                socket.close(); // unblocks the reader, which reports afterConnectionClosed
+            } catch (IOException e) {
+                log.debug("event=broker_relay_close_failed", e);
+            }
+        }
+
+        void readLoop() {
+            ByteBuffer buf = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+            try (InputStream in = socket.getInputStream()) {
+                while (true) {
+                    if (!buf.hasRemaining()) buf = grow(buf);
+                    int n = in.read(buf.array(), buf.position(), buf.remaining());
+                    if (n < 0) break;
+                    lastReadNanos = System.nanoTime();
+                    buf.position(buf.position() + n);
+                    buf.flip();
+                    List<Message<byte[]>> frames = decoder.decode(buf); // leaves a partial frame unread
+                    buf.compact();
+                    for (Message<byte[]> frame : frames) handler.handleMessage(frame);
+                }
+            } catch (IOException e) {
+                if (!closed.get()) handler.handleFailure(e);
+            } catch (RuntimeException e) {
+                handler.handleFailure(e);
+            } finally {
+                close();
+                connections.remove(this);
+                handler.afterConnectionClosed();
+            }
+        }
+
+        private ScheduledFuture<?> every(long periodMs, Runnable check) {
+            return scheduler.scheduleWithFixedDelay(check, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        }
+
+        private ByteBuffer grow(ByteBuffer buf) throws IOException {
+            if (buf.capacity() >= MAX_FRAME_BYTES) throw new IOException("STOMP frame larger than " + MAX_FRAME_BYTES + " bytes");
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(buf.capacity() * 2, MAX_FRAME_BYTES));
+            buf.flip();
+            return bigger.put(buf);
+        }
+    }
+}
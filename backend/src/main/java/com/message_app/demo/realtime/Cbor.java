@@ -0,0 +1,292 @@
+package com.message_app.demo.realtime;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * CBOR (RFC 8949) for Jackson trees: what our JSON payloads hold, nothing more.
+ *
+ * Why:
+ *  - The compact wire format only has to carry what the JSON converter produces (objects, arrays,
+ *    strings, integers, doubles, booleans, null), so a tree walk is all it takes; no extra library.
+ *
+ * How:
+ *  - {@link #encode} writes definite lengths and the shortest integer form, doubles as float64.
+ *  - Timestamps ({@code *At} fields holding an ISO-8601 instant, e.g. {@code sentAt}) become tag 1,
+ *    epoch seconds: an integer, or float64 with sub-microsecond precision, 10 bytes instead of ~28.
+ *    Only by field name, so message text that happens to look like a date stays text.
+ *  - {@link #decode} also reads what other encoders emit: indefinite lengths, half/single floats,
+ *    tags (skipped, the tagged value is kept), undefined (as null), non-string map keys (as text).
+ */
+public final class Cbor {
+    private static final int UNSIGNED = 0, NEGATIVE = 1, BYTES = 2, TEXT = 3, ARRAY = 4, MAP = 5, TAG = 6, SIMPLE = 7;
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xff;
+    private static final int MAX_DEPTH = 64;
+
+    private Cbor() {
+    }
+
+    public static byte[] encode(JsonNode node) {
+        Out out = new Out(256);
+        write(out, node);
+        return out.toByteArray();
+    }
+
+    public static JsonNode decode(byte[] bytes) {
+        In in = new In(bytes);
+        JsonNode node = read(in, 0);
+        if (in.pos != bytes.length) throw new IllegalArgumentException("Trailing bytes after CBOR item at " + in.pos);
+        return node;
+    }
+
+    // === Encoding ===
+
+    private static final class Out extends ByteArrayOutputStream {
+        Out(int size) {
+            super(size);
+        }
+
+        void head(int major, long value) {
+            int m = major << 5;
+            if (value < 24) {
+                write(m | (int) value);
+            } else if (value < 0x100) {
+                write(m | 24);
+                write((int) value);
+            } else if (value < 0x10000) {
+                write(m | 25);
+                bigEndian(value, 2);
+            } else if (value < 0x100000000L) {
+                write(m | 26);
+                bigEndian(value, 4);
+            } else {
+                write(m | 27);
+                bigEndian(value, 8);
+            }
+        }
+
+        void bigEndian(long value, int bytes) {
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) write((int) (value >>> shift) & 0xff);
+        }
+    }
+
+    private static void write(Out out, JsonNode node) {
+        switch (node.getNodeType()) {
+            case OBJECT -> {
+                out.head(MAP, node.size());
+                for (Map.Entry<String, JsonNode> e : node.properties()) {
+                    text(out, e.getKey());
+                    if (!(e.getKey().endsWith("At") && epoch(out, e.getValue()))) write(out, e.getValue());
+                }
+            }
+            case ARRAY -> {
+                out.head(ARRAY, node.size());
+                for (JsonNode child : node) write(out, child);
+            }
+            case STRING -> text(out, node.textValue());
+            case NUMBER -> number(out, node);
+            case BOOLEAN -> out.write(node.booleanValue() ? 0xf5 : 0xf4);
+            case BINARY -> {
+                byte[] b = binary(node);
+                out.head(BYTES, b.length);
+                out.writeBytes(b);
+            }
+            default -> out.write(0xf6); // null, missing, POJO
+        }
+    }
+
+    private static byte[] binary(JsonNode node) {
+        try {
+            byte[] b = node.binaryValue();
+            return b == null ? new byte[0] : b;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Tag 1 for an ISO-8601 instant; false (nothing written) for anything else. */
+    private static boolean epoch(Out out, JsonNode node) {
+        String s = node.textValue();
+        if (s == null || s.length() < 20 || s.charAt(10) != 'T' || s.charAt(s.length() - 1) != 'Z') return false;
+        Instant t;
+        try {
+            t = Instant.parse(s);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        out.head(TAG, 1);
+        if (t.getNano() == 0) {
+            long v = t.getEpochSecond();
+            if (v >= 0) out.head(UNSIGNED, v);
+            else out.head(NEGATIVE, -1 - v);
+        } else {
+            out.write((SIMPLE << 5) | 27);
+            out.bigEndian(Double.doubleToLongBits(t.getEpochSecond() + t.getNano() / 1e9), 8);
+        }
+        return true;
+    }
+
+    private static void text(Out out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.head(TEXT, b.length);
+        out.writeBytes(b);
+    }
+
+    private static void number(Out out, JsonNode node) {
+        if (node.isIntegralNumber() && node.canConvertToLong()) {
+            long v = node.longValue();
+            if (v >= 0) out.head(UNSIGNED, v);
+            else out.head(NEGATIVE, -1 - v);
+        } else if (node.isIntegralNumber()) {
+            text(out, node.bigIntegerValue().toString()); // beyond 64 bits: never produced by our DTOs
+        } else {
+            out.write((SIMPLE << 5) | 27);
+            out.bigEndian(Double.doubleToLongBits(node.doubleValue()), 8);
+        }
+    }
+
+    // === Decoding ===
+
+    private static final class In {
+        final byte[] b;
+        int pos;
+
+        In(byte[] b) {
+            this.b = b;
+        }
+
+        int next() {
+            if (pos >= b.length) throw new IllegalArgumentException("Truncated CBOR");
+            return b[pos++] & 0xff;
+        }
+
+        int peek() {
+            if (pos >= b.length) throw new IllegalArgumentException("Truncated CBOR");
+            return b[pos] & 0xff;
+        }
+
+        long argument(int info) {
+            if (info < 24) return info;
+            int n = switch (info) {
+                case 24 -> 1;
+                case 25 -> 2;
+                case 26 -> 4;
+                case 27 -> 8;
+                default -> throw new IllegalArgumentException("Bad CBOR argument " + info + " at " + (pos - 1));
+            };
+            long v = 0;
+            for (int i = 0; i < n; i++) v = (v << 8) | next();
+            return v;
+        }
+
+        byte[] take(long length) {
+            if (length < 0 || length > b.length - pos) throw new IllegalArgumentException("Truncated CBOR");
+            byte[] out = new byte[(int) length];
+            System.arraycopy(b, pos, out, 0, out.length);
+            pos += out.length;
+            return out;
+        }
+    }
+
+    private static JsonNode read(In in, int depth) {
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("CBOR nested too deep");
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        int initial = in.next();
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case UNSIGNED -> {
+                long v = in.argument(info);
+                return v >= 0 ? f.numberNode(v) : f.numberNode(new BigInteger(Long.toUnsignedString(v)));
+            }
+            case NEGATIVE -> {
+                long v = in.argument(info);
+                return v >= 0 ? f.numberNode(-1 - v)
+                        : f.numberNode(BigInteger.valueOf(-1).subtract(new BigInteger(Long.toUnsignedString(v))));
+            }
+            case BYTES -> {
+                return f.binaryNode(string(in, info, BYTES));
+            }
+            case TEXT -> {
+                return f.textNode(new String(string(in, info, TEXT), StandardCharsets.UTF_8));
+            }
+            case ARRAY -> {
+                ArrayNode a = f.arrayNode();
+                if (info == INDEFINITE) {
+                    while (in.peek() != BREAK) a.add(read(in, depth + 1));
+                    in.next();
+                } else {
+                    for (long n = in.argument(info); n > 0; n--) a.add(read(in, depth + 1));
+                }
+                return a;
+            }
+            case MAP -> {
+                ObjectNode o = f.objectNode();
+                if (info == INDEFINITE) {
+                    while (in.peek() != BREAK) o.set(key(read(in, depth + 1)), read(in, depth + 1));
+                    in.next();
+                } else {
+                    for (long n = in.argument(info); n > 0; n--) o.set(key(read(in, depth + 1)), read(in, depth + 1));
+                }
+                return o;
+            }
+            case TAG -> {
+                in.argument(info);
+                return read(in, depth + 1);
+            }
+            default -> {
+                return simple(in, info);
+            }
+        }
+    }
+
+    /** Definite, or indefinite as a series of definite chunks of the same type. */
+    private static byte[] string(In in, int info, int major) {
+        if (info != INDEFINITE) return in.take(in.argument(info));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (in.peek() != BREAK) {
+            int chunk = in.next();
+            if (chunk >>> 5 != major || (chunk & 0x1f) == INDEFINITE) throw new IllegalArgumentException("Bad CBOR string chunk");
+            out.writeBytes(in.take(in.argument(chunk & 0x1f)));
+        }
+        in.next();
+        return out.toByteArray();
+    }
+
+    private static JsonNode simple(In in, int info) {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        return switch (info) {
+            case 20 -> f.booleanNode(false);
+            case 21 -> f.booleanNode(true);
+            case 22, 23 -> f.nullNode();
+            case 25 -> f.numberNode(halfToDouble((int) in.argument(25)));
+            case 26 -> f.numberNode((double) Float.intBitsToFloat((int) in.argument(26)));
+            case 27 -> f.numberNode(Double.longBitsToDouble(in.argument(27)));
+            default -> throw new IllegalArgumentException("Unsupported CBOR simple value " + info);
+        };
+    }
+
+    private static String key(JsonNode node) {
+        return node.isTextual() ? node.textValue() : node.toString();
+    }
+
+    private static double halfToDouble(int half) {
+        int exp = (half >> 10) & 0x1f;
+        int mant = half & 0x3ff;
+        double v = exp == 0 ? mant * Math.pow(2, -24)
+                : exp == 31 ? (mant == 0 ? Double.POSITIVE_INFINITY : Double.NaN)
+                : (mant + 1024) * Math.pow(2, exp - 25);
+        return (half & 0x8000) != 0 ? -v : v;
+    }
+}
@@ -0,0 +1,62 @@
+package com.message_app.demo.realtime;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+import java.lang.reflect.Type;
+
+/**
+ * {@code application/cbor} payloads, bound with the same Jackson mapping as JSON.
+ *
+ * Registered next to Spring's JSON converter. Strict content-type match: it only reads frames that
+ * say {@code content-type:application/cbor} and only writes when that type is asked for, so the
+ * broker template and {@link FanOut#encode} keep producing JSON.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final ObjectMapper mapper;
+
+    public CborMessageConverter(ObjectMapper mapper) {
+        super(APPLICATION_CBOR);
+        this.mapper = mapper;
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] bytes)) return null;
+        try {
+            JsonNode tree = Cbor.decode(bytes);
+            return mapper.convertValue(tree, javaType(targetClass, conversionHint));
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException(message, "Could not read CBOR: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return Cbor.encode(mapper.valueToTree(payload));
+    }
+
+    private JavaType javaType(Class<?> targetClass, Object conversionHint) {
+        if (conversionHint instanceof MethodParameter param) {
+            Type type = param.nestedIfOptional().getNestedGenericParameterType();
+            return mapper.getTypeFactory().constructType(type);
+        }
+        return mapper.getTypeFactory().constructType(targetClass);
+    }
+}
@@ -0,0 +1,52 @@
+package com.message_app.demo.realtime;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Work accepted by a channel executor and not finished yet: queued plus running tasks.
+ *
+ * Knows the executors {@link WebSocketConfig} builds: thread pools (queue + active threads),
+ * {@link VirtualThreadChannelExecutor} (in flight + blocked submitters) and
+ * {@link SessionOrderedExecutor} (tasks in session queues + its delegate). Anything else reports 0.
+ * Every read is a few counter loads, cheap enough to check on each inbound frame.
+ */
+public final class ChannelBacklog {
+
+    private ChannelBacklog() {
+    }
+
+    public static IntSupplier of(Executor executor) {
+        if (executor instanceof SessionOrderedExecutor ordered) {
+            IntSupplier delegate = of(ordered.delegate());
+            return () -> ordered.queued() + delegate.getAsInt();
+        }
+        if (executor instanceof VirtualThreadChannelExecutor virtual) {
+            return () -> virtual.active() + virtual.waiting();
+        }
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            return () -> pool.getQueueSize() + pool.getActiveCount();
+        }
+        return () -> 0;
+    }
+
+    /**
+     * Resolves the executor on first use; for callers that are built before the executor bean
+     * (the channel's own interceptors).
+     */
+    public static IntSupplier lazy(Supplier<? extends Executor> executor) {
+        return new IntSupplier() {
+            private volatile IntSupplier resolved;
+
+            @Override
+            public int getAsInt() {
+                IntSupplier r = resolved;
+                if (r == null) resolved = r = of(executor.get());
+                return r.getAsInt();
+            }
+        };
+    }
+}
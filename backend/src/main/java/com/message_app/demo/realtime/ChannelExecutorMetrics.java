@@ -0,0 +1,57 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Queue depth and thread usage of the three STOMP channel executors
+ * ({@code chat_channel_*{channel="inbound|outbound|broker"}}).
+ *
+ * A growing inbound queue means controllers cannot keep up; a growing outbound queue means
+ * clients cannot read fast enough. With virtual-thread channels "queue size" counts submitters
+ * blocked on {@code max-concurrency} and "active threads" counts messages in flight.
+ */
+@Component
+class ChannelExecutorMetrics {
+
+    ChannelExecutorMetrics(MetricsRegistry metrics,
+                           @Qualifier("clientInboundChannelExecutor") Executor inbound,
+                           @Qualifier("clientOutboundChannelExecutor") Executor outbound,
+                           @Qualifier("brokerChannelExecutor") Executor broker) {
+        register(metrics, "inbound", inbound);
+        register(metrics, "outbound", outbound);
+        register(metrics, "broker", broker);
+    }
+
+    private static void register(MetricsRegistry metrics, String channel, Executor executor) {
+        if (executor instanceof SessionOrderedExecutor ordered) {
+            metrics.gauge("chat_channel_ordered_sessions", "Sessions with messages queued or running on an ordered channel",
+                    ordered::activeSessions, "channel", channel);
+            executor = ordered.delegate();
+        }
+        if (executor instanceof VirtualThreadChannelExecutor virtual) {
+            metrics.gauge("chat_channel_queue_size", "Tasks waiting in the channel executor queue",
+                    virtual::waiting, "channel", channel);
+            metrics.gauge("chat_channel_active_threads", "Channel executor threads running a task",
+                    virtual::active, "channel", channel);
+            if (virtual.maxConcurrency() > 0) {
+                metrics.gauge("chat_channel_max_pool_size", "Configured channel executor thread limit",
+                        virtual::maxConcurrency, "channel", channel);
+            }
+            return;
+        }
+        if (!(executor instanceof ThreadPoolTaskExecutor pool)) return;
+        metrics.gauge("chat_channel_queue_size", "Tasks waiting in the channel executor queue",
+                pool::getQueueSize, "channel", channel);
+        metrics.gauge("chat_channel_active_threads", "Channel executor threads running a task",
+                pool::getActiveCount, "channel", channel);
+        metrics.gauge("chat_channel_pool_size", "Current channel executor threads",
+                pool::getPoolSize, "channel", channel);
+        metrics.gauge("chat_channel_max_pool_size", "Configured channel executor thread limit",
+                pool::getMaxPoolSize, "channel", channel);
+    }
+}
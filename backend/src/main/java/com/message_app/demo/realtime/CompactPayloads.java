@@ -0,0 +1,169 @@
+package com.message_app.demo.realtime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Opt-in CBOR payloads per session, on both client channels.
+ *
+ * Why:
+ *  - Every frame body is JSON with its field names repeated in each message; for public-room
+ *    fan-out that is most of the outbound bytes.
+ *
+ * How:
+ *  - A client asks for it on CONNECT with {@code x-payload-format:cbor} (inbound interceptor).
+ *    Clients that do not keep getting JSON; nothing changes for them.
+ *  - Only sessions on a plain WebSocket can have it ({@link #decorate} tells them apart): SockJS
+ *    transports carry text only, and CBOR is binary.
+ *  - Outbound, JSON MESSAGE frames for those sessions are re-encoded to CBOR ({@link Cbor}) just
+ *    before flow control, so the outbox counts the bytes actually written. The content type is
+ *    {@code application/octet-stream;format=cbor}: Spring writes octet-stream payloads as binary
+ *    WebSocket messages and anything else as text, which would mangle the bytes.
+ *  - Payloads are sent once and shared by every subscriber ({@link FanOut}), so the CBOR form is
+ *    cached by payload identity in a small direct-mapped table: a broadcast is re-encoded once,
+ *    however many CBOR sessions receive it.
+ *  - Inbound, such clients may send {@code content-type:application/cbor} bodies; those are bound
+ *    by {@link CborMessageConverter}.
+ */
+@Component
+public class CompactPayloads implements ChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(CompactPayloads.class);
+
+    public static final String FORMAT_HEADER = "x-payload-format";
+    public static final MimeType WIRE_TYPE = new MimeType("application", "octet-stream", Map.of("format", "cbor"));
+    private static final int CACHE_SLOTS = 256; // power of two
+
+    private record Encoded(byte[] json, byte[] cbor) { }
+
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final Set<String> binaryCapable = ConcurrentHashMap.newKeySet();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicReferenceArray<Encoded> recent = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private final Counter frames;
+    private final Counter encodes;
+    private final Counter jsonBytes;
+    private final Counter cborBytes;
+
+    public CompactPayloads(ObjectMapper mapper, MetricsRegistry metrics,
+                           @Value("${chat.ws.compact.enabled:true}") boolean enabled) {
+        this.mapper = mapper;
+        this.enabled = enabled;
+        this.frames = metrics.counter("chat_wire_compact_frames_total", "Outbound frames sent as CBOR instead of JSON");
+        this.encodes = metrics.counter("chat_wire_compact_encodes_total", "JSON payloads re-encoded to CBOR (cache misses)");
+        this.jsonBytes = metrics.counter("chat_wire_compact_bytes_total", "Payload bytes of frames sent as CBOR", "format", "json");
+        this.cborBytes = metrics.counter("chat_wire_compact_bytes_total", "Payload bytes of frames sent as CBOR", "format", "cbor");
+        metrics.gauge("chat_wire_compact_sessions", "Sessions that asked for CBOR payloads", sessions::size);
+    }
+
+    /** Inbound: remember sessions that ask for CBOR. Outbound: re-encode their JSON frames. */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) return message;
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type == SimpMessageType.CONNECT) {
+            connect(message);
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE || sessions.isEmpty()) return message;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null || !sessions.contains(sessionId)) return message;
+        if (!(message.getPayload() instanceof byte[] json)) return message;
+        MimeType contentType = headers.get(MessageHeaders.CONTENT_TYPE, MimeType.class);
+        if (contentType == null || !contentType.isCompatibleWith(MimeTypeUtils.APPLICATION_JSON)) return message;
+
+        byte[] cbor = cbor(json);
+        if (cbor == null) return message;
+        MessageHeaderAccessor acc = MessageHeaderAccessor.getMutableAccessor(message);
+        acc.setContentType(WIRE_TYPE);
+        frames.increment();
+        jsonBytes.increment(json.length);
+        cborBytes.increment(cbor.length);
+        return MessageBuilder.createMessage(cbor, acc.getMessageHeaders());
+    }
+
+    private void connect(Message<?> message) {
+        StompHeaderAccessor acc = StompHeaderAccessor.wrap(message);
+        String format = acc.getFirstNativeHeader(FORMAT_HEADER);
+        if (format == null || !"cbor".equals(format.trim().toLowerCase(Locale.ROOT))) return;
+        String sessionId = acc.getSessionId();
+        if (sessionId == null) return;
+        if (!binaryCapable.contains(sessionId)) {
+            log.debug("event=compact_payloads_refused simpSessionId={} reason=sockjs", sessionId);
+            return;
+        }
+        sessions.add(sessionId);
+        log.debug("event=compact_payloads_on simpSessionId={}", sessionId);
+    }
+
+    /** The CBOR form of a shared JSON payload, or null if it is not valid JSON (sent as is). */
+    private byte[] cbor(byte[] json) {
+        int slot = System.identityHashCode(json) & (CACHE_SLOTS - 1);
+        Encoded hit = recent.get(slot);
+        if (hit != null && hit.json() == json) return hit.cbor();
+        byte[] cbor;
+        try {
+            cbor = Cbor.encode(mapper.readTree(json));
+        } catch (IOException e) {
+            log.debug("event=compact_payload_skipped reason={}", e.toString());
+            return null;
+        }
+        encodes.increment();
+        recent.set(slot, new Encoded(json, cbor));
+        return cbor;
+    }
+
+    /** WebSocket transport decorator: remembers which sessions can take binary frames. */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (!(session instanceof SockJsSession)) binaryCapable.add(session.getId());
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                binaryCapable.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        sessions.remove(e.getSessionId());
+    }
+}
@@ -0,0 +1,96 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+/**
+ * Sends one payload to any number of user and topic destinations, serializing it once.
+ *
+ * Why:
+ *  - {@code convertAndSend} / {@code convertAndSendToUser} run the JSON converter on every call, so a
+ *    DM delivered to sender and recipient was serialized twice for identical bytes.
+ *
+ * How:
+ *  - {@link #encode} runs the broker template's own message converter once (same JSON and
+ *    {@code content-type} as {@code convertAndSend}) and keeps the resulting bytes.
+ *  - {@link #toUser} / {@link #toTopic} wrap the bytes in a fresh header set per send and hand it to
+ *    the template's {@code send}. The payload array itself is never copied or modified: the
+ *    broker and the per-subscriber messages of {@code /topic/...} all reference the same buffer
+ *    until the session handler writes it into each STOMP frame.
+ */
+@Component
+public class FanOut {
+
+    /** A payload already converted to its wire bytes; send it as often as needed, never modify {@code bytes}. */
+    public record Encoded(byte[] bytes, MimeType contentType) {
+        public int size() {
+            return bytes.length;
+        }
+    }
+
+    private final SimpMessagingTemplate broker;
+    private final Counter encodes;
+    private final Counter userSends;
+    private final Counter topicSends;
+
+    public FanOut(SimpMessagingTemplate broker, MetricsRegistry metrics) {
+        this.broker = broker;
+        this.encodes = metrics.counter("chat_fanout_encodes_total", "Payloads serialized for fan-out");
+        this.userSends = metrics.counter("chat_fanout_sends_total", "Pre-serialized payloads handed to the broker", "target", "user");
+        this.topicSends = metrics.counter("chat_fanout_sends_total", "Pre-serialized payloads handed to the broker", "target", "topic");
+    }
+
+    public Encoded encode(Object payload) {
+        Message<?> message = broker.getMessageConverter().toMessage(payload, null);
+        if (message == null || !(message.getPayload() instanceof byte[] bytes)) {
+            throw new MessageConversionException("No converter produced bytes for " + payload.getClass().getName());
+        }
+        encodes.increment();
+        return new Encoded(bytes, message.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class));
+    }
+
+    /** Same destination as {@code convertAndSendToUser(user, destination, ...)}, e.g. {@code /queue/dm/42}. */
+    public void toUser(String user, String destination, Encoded payload) {
+        String prefix = broker.getUserDestinationPrefix();
+        broker.send(prefix + user.replace("/", "%2F") + destination, message(payload));
+        userSends.increment();
+    }
+
+    /**
+     * Like {@link #toUser} but to one session of that user only (a reply to what that session
+     * asked for). The user destination handler resolves a message carrying a session id to that
+     * session alone, as it does for {@code @SendToUser(broadcast = false)}.
+     */
+    public void toSession(String user, String sessionId, String destination, Encoded payload) {
+        Message<byte[]> message = message(payload);
+        SimpMessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class).setSessionId(sessionId);
+        String prefix = broker.getUserDestinationPrefix();
+        broker.send(prefix + user.replace("/", "%2F") + destination, message);
+        userSends.increment();
+    }
+
+    /** Broadcast to every subscriber of a broker destination, e.g. {@code /topic/public}. */
+    public void toTopic(String destination, Encoded payload) {
+        broker.send(destination, message(payload));
+        topicSends.increment();
+    }
+
+    /**
+     * Headers are per send (the template sets the destination on them), the payload is shared.
+     * Left mutable so the template stamps the destination in place instead of copying the headers.
+     */
+    private static Message<byte[]> message(Encoded payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        if (payload.contentType() != null) headers.setContentType(payload.contentType());
+        headers.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload.bytes(), headers.getMessageHeaders());
+    }
+}
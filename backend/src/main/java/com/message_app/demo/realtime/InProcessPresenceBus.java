@@ -0,0 +1,28 @@
+package com.message_app.demo.realtime;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link PresenceBus} that delivers synchronously to every subscriber in this JVM.
+ * The default with the in-memory broker; also lets tests wire several registries together.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "simple", matchIfMissing = true)
+class InProcessPresenceBus implements PresenceBus {
+    private final List<Consumer<PresenceEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(PresenceEvent event) {
+        for (Consumer<PresenceEvent> l : listeners) l.accept(event);
+    }
+
+    @Override
+    public void subscribe(Consumer<PresenceEvent> listener) {
+        listeners.add(listener);
+    }
+}
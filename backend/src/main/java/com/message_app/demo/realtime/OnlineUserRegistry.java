@@ -1,6 +1,19 @@
 package com.message_app.demo.realtime;
 
-//todo add to git
+import java.time.Instant;
+
+/**
+ * Who is connected right now, across all nodes.
+ *
+ * A user is online while at least one of their WebSocket sessions (any tab, any node) is open.
+ * Lookups are O(1) and never leave the JVM. Implemented by {@link SessionCountingOnlineUserRegistry}.
+ */
 public interface OnlineUserRegistry {
     boolean isOnline(String username);
+
+    /** Open sessions of this user across the cluster. */
+    int sessionCount(String username);
+
+    /** Now while online, otherwise when the last session closed; null if unknown. */
+    Instant lastSeen(String username);
 }
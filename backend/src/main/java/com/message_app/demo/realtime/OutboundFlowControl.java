@@ -0,0 +1,345 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
+import com.message_app.demo.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded per-session outbound queues with a slow-consumer policy.
+ *
+ * Why:
+ *  - Spring queues frames for a session that cannot keep up without limit (the per-session order
+ *    queue and the outbound executor queue). One stalled mobile client subscribed to
+ *    {@code /topic/public} then keeps every broadcast on our heap.
+ *
+ * How:
+ *  - Installed as the last interceptor on {@code clientOutboundChannel}: frames for a connected
+ *    session are taken off the channel into that session's {@link Outbox} and written by one
+ *    drain task at a time on the outbound executor, so per-session order holds (this replaces
+ *    Spring's preserve-publish-order, which is switched off when flow control is on).
+ *  - An outbox is bounded by {@code max-queued-messages} and {@code max-queued-bytes}. When a new
+ *    frame would exceed the bound, {@code chat.ws.outbound.policy} decides:
+ *      - {@code drop-oldest}: drop the oldest queued droppable frames until it fits;
+ *      - {@code coalesce}: older droppable frames for the same destination are superseded by the new
+ *        one, then fall back to drop-oldest;
+ *      - {@code disconnect}: close the session with 1008 "slow consumer".
+ *  - A session whose drain task has been stuck in one write for longer than
+ *    {@code chat.ws.transport.send-time-limit-ms} is closed as well ({@link #closeStuckWriters}).
+ *  - Only MESSAGE frames on {@code droppable-prefixes} (default {@code /topic/}) are ever dropped.
+ *    DMs, receipts and errors are not: if what is left does not fit, the session is closed under
+ *    every policy, so the heap bound always holds.
+ *
+ * Metrics: aggregate counters and gauges on {@link MetricsRegistry} (per-session labels would be
+ * unbounded); each session's own totals are logged when it first falls behind and when it closes.
+ */
+@Component
+public class OutboundFlowControl implements ChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(OutboundFlowControl.class);
+
+    enum Policy { DROP_OLDEST, COALESCE, DISCONNECT }
+
+    /** Headers, accessor and map overhead of a queued frame besides its payload. */
+    private static final int FRAME_OVERHEAD_BYTES = 512;
+
+    private record Queued(Message<?> message, String destination, boolean droppable, int bytes, long enqueuedNanos) { }
+
+    /** One session's queue; all fields guarded by the instance, except what the drain task owns. */
+    private final class Outbox {
+        final String sessionId;
+        final WebSocketSession session;
+        final ArrayDeque<Queued> queue = new ArrayDeque<>();
+        long bytes;
+        boolean draining;
+        boolean closed;
+        boolean behind; // over the bound at least once since it last emptied
+        volatile long writeStartedNanos; // 0 while the drain task is not inside a socket write
+        long sent, dropped, coalesced, peak;
+
+        Outbox(String sessionId, WebSocketSession session) {
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+    }
+
+    private final boolean enabled;
+    private final Policy policy;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final List<String> droppablePrefixes;
+    private final int drainBatch;
+    private final long sendTimeLimitNanos;
+    private final ObjectProvider<WebSocketHandler> sessions;
+    private final ObjectProvider<Executor> executor;
+    private final ConcurrentHashMap<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    private final Counter droppedOldest;
+    private final Counter droppedCoalesced;
+    private final Counter slowDisconnects;
+    private final Counter stuckDisconnects;
+    private final Timer queueWait;
+
+    OutboundFlowControl(MetricsRegistry metrics,
+                        @Qualifier("subProtocolWebSocketHandler") ObjectProvider<WebSocketHandler> sessions,
+                        @Qualifier("clientOutboundChannelExecutor") ObjectProvider<Executor> executor,
+                        @Value("${chat.ws.outbound.flow-control.enabled:true}") boolean enabled,
+                        @Value("${chat.ws.outbound.policy:drop-oldest}") String policy,
+                        @Value("${chat.ws.outbound.max-queued-messages:1000}") int maxMessages,
+                        @Value("${chat.ws.outbound.max-queued-bytes:1048576}") long maxBytes,
+                        @Value("${chat.ws.outbound.droppable-prefixes:/topic/}") String droppablePrefixes,
+                        @Value("${chat.ws.outbound.drain-batch:64}") int drainBatch,
+                        @Value("${chat.ws.transport.send-time-limit-ms:10000}") long sendTimeLimitMs) {
+        this.enabled = enabled;
+        this.policy = Policy.valueOf(policy.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.droppablePrefixes = Arrays.stream(droppablePrefixes.split(",")).map(String::trim).filter(p -> !p.isEmpty()).toList();
+        this.drainBatch = Math.max(1, drainBatch);
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.sessions = sessions;
+        this.executor = executor;
+
+        this.droppedOldest = metrics.counter("chat_outbound_dropped_total", "Frames dropped for slow consumers", "reason", "drop_oldest");
+        this.droppedCoalesced = metrics.counter("chat_outbound_dropped_total", "Frames dropped for slow consumers", "reason", "coalesced");
+        this.slowDisconnects = metrics.counter("chat_outbound_slow_consumer_disconnects_total", "Sessions closed because they could not keep up", "reason", "queue_full");
+        this.stuckDisconnects = metrics.counter("chat_outbound_slow_consumer_disconnects_total", "Sessions closed because they could not keep up", "reason", "send_timeout");
+        this.queueWait = metrics.timer("chat_outbound_queue_wait_seconds", "Time a frame waited in its session outbox");
+        metrics.gauge("chat_outbound_queued_messages", "Frames waiting in session outboxes", () -> sum(false));
+        metrics.gauge("chat_outbound_queued_bytes", "Estimated bytes waiting in session outboxes", () -> sum(true));
+        metrics.gauge("chat_outbound_max_session_backlog", "Largest single session outbox, in frames", this::maxBacklog);
+        metrics.gauge("chat_outbound_sessions_behind", "Sessions that hit their outbox bound and have not caught up", this::behindCount);
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    /** Registers sessions so the interceptor knows where frames go and can close slow ones. */
+    WebSocketHandler decorate(WebSocketHandler handler) {
+        if (!enabled) return handler;
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                outboxes.put(session.getId(), new Outbox(session.getId(), session));
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                Outbox box = outboxes.remove(session.getId());
+                if (box != null) discard(box, status.getCode());
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) return message;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        Outbox box = sessionId == null ? null : outboxes.get(sessionId);
+        if (box == null) return message; // not (or no longer) a live session: normal dispatch
+
+        boolean droppable = false;
+        String destination = null;
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            droppable = destination != null && isDroppable(destination);
+        }
+        int bytes = FRAME_OVERHEAD_BYTES + (message.getPayload() instanceof byte[] b ? b.length : 0);
+        Queued q = new Queued(message, destination, droppable, bytes, System.nanoTime());
+
+        boolean startDrain = false;
+        boolean disconnect = false;
+        synchronized (box) {
+            if (box.closed) return null;
+            if (!fits(box, q)) {
+                makeRoom(box, q);
+                if (!fits(box, q)) disconnect = true;
+                if (!box.behind) {
+                    box.behind = true;
+                    log.warn("event=slow_consumer sid={} policy={} queued={} bytes={} dropped={} coalesced={}",
+                            box.sessionId, policy, box.queue.size(), box.bytes, box.dropped, box.coalesced);
+                }
+            }
+            if (!disconnect) {
+                box.queue.addLast(q);
+                box.bytes += q.bytes();
+                box.peak = Math.max(box.peak, box.queue.size());
+                if (!box.draining) {
+                    box.draining = true;
+                    startDrain = true;
+                }
+            }
+        }
+        if (disconnect) {
+            slowDisconnects.increment();
+            close(box, "slow consumer");
+        } else if (startDrain) {
+            executor.getObject().execute(() -> drain(box));
+        }
+        return null; // taken over: the outbox delivers it
+    }
+
+    private boolean fits(Outbox box, Queued q) {
+        return box.queue.size() + 1 <= maxMessages && box.bytes + q.bytes() <= maxBytes;
+    }
+
+    /** Apply the policy; caller holds the outbox lock. */
+    private void makeRoom(Outbox box, Queued incoming) {
+        if (policy == Policy.DISCONNECT) return;
+        if (policy == Policy.COALESCE && incoming.droppable()) {
+            for (Iterator<Queued> it = box.queue.iterator(); it.hasNext(); ) {
+                Queued old = it.next();
+                if (old.droppable() && old.destination().equals(incoming.destination())) {
+                    it.remove();
+                    box.bytes -= old.bytes();
+                    box.coalesced++;
+                    droppedCoalesced.increment();
+                }
+            }
+        }
+        for (Iterator<Queued> it = box.queue.iterator(); it.hasNext() && !fits(box, incoming); ) {
+            Queued old = it.next();
+            if (!old.droppable()) continue;
+            it.remove();
+            box.bytes -= old.bytes();
+            box.dropped++;
+            droppedOldest.increment();
+        }
+    }
+
+    private void drain(Outbox box) {
+        MessageHandler handler = (MessageHandler) sessions.getObject(); // SubProtocolWebSocketHandler
+        for (int i = 0; i < drainBatch; i++) {
+            Queued q;
+            synchronized (box) {
+                q = box.queue.pollFirst();
+                if (q == null || box.closed) {
+                    box.draining = false;
+                    box.behind = false;
+                    return;
+                }
+                box.bytes -= q.bytes();
+            }
+            queueWait.recordSince(q.enqueuedNanos());
+            box.writeStartedNanos = System.nanoTime();
+            try {
+                handler.handleMessage(q.message());
+                box.sent++;
+            } catch (RuntimeException e) {
+                log.debug("event=outbound_send_failed sid={} msg={}", box.sessionId, e.getMessage());
+            } finally {
+                box.writeStartedNanos = 0;
+            }
+        }
+        // Batch done: yield the thread to other sessions and continue later
+        executor.getObject().execute(() -> drain(box));
+    }
+
+    /**
+     * The drain task is the only writer of its session, so Spring's send-time limit (checked by
+     * the next concurrent sender) never fires for it. Close sessions stuck in one write instead,
+     * which also frees the executor thread blocked in that write.
+     */
+    @Scheduled(fixedDelay = 1000)
+    void closeStuckWriters() {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        for (Outbox box : outboxes.values()) {
+            long started = box.writeStartedNanos;
+            if (started != 0 && now - started > sendTimeLimitNanos && !box.closed) {
+                log.warn("event=slow_consumer_send_timeout sid={} blockedMs={}", box.sessionId, TimeUnit.NANOSECONDS.toMillis(now - started));
+                stuckDisconnects.increment();
+                close(box, "send timeout");
+            }
+        }
+    }
+
+    private void close(Outbox box, String reason) {
+        try {
+            box.session.close(CloseStatus.POLICY_VIOLATION.withReason(reason));
+        } catch (IOException e) {
+            log.debug("event=slow_consumer_close_failed sid={} msg={}", box.sessionId, e.getMessage());
+        }
+        discard(box, CloseStatus.POLICY_VIOLATION.getCode());
+    }
+
+    private void discard(Outbox box, int closeCode) {
+        int left;
+        boolean wasBehind;
+        synchronized (box) {
+            if (box.closed) return;
+            box.closed = true;
+            left = box.queue.size();
+            wasBehind = box.behind || box.dropped > 0 || box.coalesced > 0;
+            box.queue.clear();
+            box.bytes = 0;
+        }
+        if (wasBehind) {
+            log.info("event=outbound_session_stats sid={} close={} sent={} dropped={} coalesced={} peakQueued={} discarded={}",
+                    box.sessionId, closeCode, box.sent, box.dropped, box.coalesced, box.peak, left);
+        }
+    }
+
+    private boolean isDroppable(String destination) {
+        for (String p : droppablePrefixes) if (destination.startsWith(p)) return true;
+        return false;
+    }
+
+    private double sum(boolean bytes) {
+        long n = 0;
+        for (Outbox box : outboxes.values()) {
+            synchronized (box) {
+                n += bytes ? box.bytes : box.queue.size();
+            }
+        }
+        return n;
+    }
+
+    private double maxBacklog() {
+        int max = 0;
+        for (Outbox box : outboxes.values()) {
+            synchronized (box) {
+                max = Math.max(max, box.queue.size());
+            }
+        }
+        return max;
+    }
+
+    private double behindCount() {
+        int n = 0;
+        for (Outbox box : outboxes.values()) {
+            synchronized (box) {
+                if (box.behind) n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,18 @@
+package com.message_app.demo.realtime;
+
+import java.util.function.Consumer;
+
+/**
+ * Transport that replicates {@link PresenceEvent}s between the nodes' {@link SessionCountingOnlineUserRegistry}s.
+ *
+ * Implementations:
+ *  - {@link InProcessPresenceBus}: single node, or several registries in one JVM (tests).
+ *  - {@link BrokerPresenceBus}: through the external STOMP broker in {@code chat.broker.mode=relay}.
+ *
+ * Delivery is best effort; registries re-send their full state periodically.
+ */
+interface PresenceBus {
+    void publish(PresenceEvent event);
+
+    void subscribe(Consumer<PresenceEvent> listener);
+}
@@ -0,0 +1,42 @@
+package com.message_app.demo.realtime;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Presence change exchanged between nodes over a {@link PresenceBus}.
+ *
+ * @param type     what happened
+ * @param node     id of the node that owns the session(s)
+ * @param user     OPENED/CLOSED only
+ * @param session  OPENED/CLOSED only; unique per node
+ * @param at       epoch millis on the sending node
+ * @param sessions SNAPSHOT only: all open sessions of {@code node}, by user
+ */
+record PresenceEvent(Type type, String node, String user, String session, long at, Map<String, List<String>> sessions) {
+
+    enum Type {
+        OPENED,
+        CLOSED,
+        /** Periodic full state of one node: heals lost deltas and keeps the node alive. */
+        SNAPSHOT,
+        /** Node shut down cleanly; drop all of its sessions. */
+        LEFT
+    }
+
+    static PresenceEvent opened(String node, String user, String session, long at) {
+        return new PresenceEvent(Type.OPENED, node, user, session, at, null);
+    }
+
+    static PresenceEvent closed(String node, String user, String session, long at) {
+        return new PresenceEvent(Type.CLOSED, node, user, session, at, null);
+    }
+
+    static PresenceEvent snapshot(String node, Map<String, List<String>> sessions, long at) {
+        return new PresenceEvent(Type.SNAPSHOT, node, null, null, at, sessions);
+    }
+
+    static PresenceEvent left(String node, long at) {
+        return new PresenceEvent(Type.LEFT, node, null, null, at, null);
+    }
+}
@@ -0,0 +1,229 @@
+package com.message_app.demo.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster-wide {@link OnlineUserRegistry} that counts sessions instead of remembering names.
+ *
+ * Why:
+ *  - A user with two tabs has two sessions; closing one must not mark them offline.
+ *  - With several nodes, a user connected elsewhere must still count as online.
+ *
+ * How:
+ *  - Sessions are tracked per (node, sessionId), so duplicate connect/disconnect events are
+ *    harmless. Reads go through a {@code username -> UserPresence} map holding the session count
+ *    and last-seen time: a plain hash lookup.
+ *  - Local changes are applied immediately and published on the {@link PresenceBus}; changes from
+ *    other nodes arrive the same way.
+ *  - Every {@code chat.presence.heartbeat-ms} each node publishes a snapshot of its sessions. It
+ *    replaces what we knew about that node (repairing lost deltas); nodes silent for longer than
+ *    {@code chat.presence.node-timeout-ms} are dropped, so a crashed node does not keep its users online.
+ *
+ * Writes (connect, disconnect, remote events) are serialized on this object; reads never lock.
+ */
+@Component
+class SessionCountingOnlineUserRegistry implements OnlineUserRegistry, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(SessionCountingOnlineUserRegistry.class);
+
+    private static final class UserPresence {
+        volatile int sessions;
+        volatile long lastSeenMs;
+    }
+
+    private static final class Node {
+        final Map<String, Set<String>> sessionsByUser = new HashMap<>();
+        long lastHeardMs;
+    }
+
+    private final String nodeId;
+    private final PresenceBus bus;
+    private final long nodeTimeoutMs;
+    private final long lastSeenRetentionMs;
+    private final ConcurrentHashMap<String, UserPresence> users = new ConcurrentHashMap<>();
+    private final Map<String, Node> nodes = new HashMap<>(); // guarded by "this"
+    private volatile boolean running;
+
+    SessionCountingOnlineUserRegistry(PresenceBus bus,
+                                      @Value("${chat.presence.node-id:}") String nodeId,
+                                      @Value("${chat.presence.node-timeout-ms:30000}") long nodeTimeoutMs,
+                                      @Value("${chat.presence.last-seen-retention-ms:86400000}") long lastSeenRetentionMs) {
+        this.bus = bus;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.lastSeenRetentionMs = lastSeenRetentionMs;
+        bus.subscribe(this::onEvent);
+    }
+
+    @Override
+    public boolean isOnline(String username) {
+        UserPresence p = users.get(username);
+        return p != null && p.sessions > 0;
+    }
+
+    @Override
+    public int sessionCount(String username) {
+        UserPresence p = users.get(username);
+        return p == null ? 0 : p.sessions;
+    }
+
+    @Override
+    public Instant lastSeen(String username) {
+        UserPresence p = users.get(username);
+        if (p == null) return null;
+        return p.sessions > 0 ? Instant.now() : Instant.ofEpochMilli(p.lastSeenMs);
+    }
+
+    void sessionOpened(String username, String sessionId) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            add(nodeId, username, sessionId, now);
+        }
+        bus.publish(PresenceEvent.opened(nodeId, username, sessionId, now));
+    }
+
+    void sessionClosed(String username, String sessionId) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            remove(nodeId, username, sessionId, now);
+        }
+        bus.publish(PresenceEvent.closed(nodeId, username, sessionId, now));
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    /** Sessions connected to this node. */
+    synchronized int localSessions() {
+        Node self = nodes.get(nodeId);
+        if (self == null) return 0;
+        int n = 0;
+        for (Set<String> s : self.sessionsByUser.values()) n += s.size();
+        return n;
+    }
+
+    /** Users with at least one session on any node. */
+    int onlineUsers() {
+        int n = 0;
+        for (UserPresence p : users.values()) if (p.sessions > 0) n++;
+        return n;
+    }
+
+    /** Nodes we currently hold sessions for, this one included once it has a session. */
+    synchronized int knownNodes() {
+        return nodes.size();
+    }
+
+    /** Publish our snapshot, forget silent nodes and long-gone users. */
+    @Scheduled(fixedDelayString = "${chat.presence.heartbeat-ms:10000}")
+    void heartbeat() {
+        long now = System.currentTimeMillis();
+        Map<String, List<String>> mine = new HashMap<>();
+        synchronized (this) {
+            Node self = nodes.get(nodeId);
+            if (self != null) self.sessionsByUser.forEach((u, s) -> mine.put(u, new ArrayList<>(s)));
+            List<String> silent = new ArrayList<>();
+            nodes.forEach((id, n) -> {
+                if (!id.equals(nodeId) && now - n.lastHeardMs > nodeTimeoutMs) silent.add(id);
+            });
+            for (String id : silent) {
+                log.warn("event=presence_node_expired node={} silentMs={}", id, now - nodes.get(id).lastHeardMs);
+                dropNode(id, now);
+            }
+            // Under the lock: add() looks the entry up before raising its count
+            users.entrySet().removeIf(e -> e.getValue().sessions == 0 && now - e.getValue().lastSeenMs > lastSeenRetentionMs);
+        }
+        bus.publish(PresenceEvent.snapshot(nodeId, mine, now));
+    }
+
+    private void onEvent(PresenceEvent e) {
+        if (nodeId.equals(e.node())) return; // our own, already applied
+        synchronized (this) {
+            switch (e.type()) {
+                case OPENED -> add(e.node(), e.user(), e.session(), e.at());
+                case CLOSED -> remove(e.node(), e.user(), e.session(), e.at());
+                case SNAPSHOT -> replaceNode(e.node(), e.sessions() == null ? Map.of() : e.sessions(), e.at());
+                case LEFT -> dropNode(e.node(), e.at());
+            }
+            Node n = nodes.get(e.node());
+            if (n != null) n.lastHeardMs = System.currentTimeMillis(); // local clock: immune to skew
+        }
+    }
+
+    // === Mutations, caller holds the lock ===
+
+    private void add(String node, String user, String session, long at) {
+        Node n = nodes.computeIfAbsent(node, id -> new Node());
+        if (n.sessionsByUser.computeIfAbsent(user, u -> new HashSet<>()).add(session)) {
+            UserPresence p = users.computeIfAbsent(user, u -> new UserPresence());
+            p.sessions++;
+            p.lastSeenMs = Math.max(p.lastSeenMs, at);
+        }
+    }
+
+    private void remove(String node, String user, String session, long at) {
+        Node n = nodes.get(node);
+        Set<String> sessions = n == null ? null : n.sessionsByUser.get(user);
+        if (sessions == null || !sessions.remove(session)) return; // duplicate disconnect event
+        if (sessions.isEmpty()) n.sessionsByUser.remove(user);
+        UserPresence p = users.get(user);
+        if (p != null) {
+            p.sessions--;
+            p.lastSeenMs = Math.max(p.lastSeenMs, at);
+        }
+    }
+
+    private void replaceNode(String node, Map<String, List<String>> snapshot, long at) {
+        Node n = nodes.computeIfAbsent(node, id -> new Node());
+        List<String[]> gone = new ArrayList<>();
+        n.sessionsByUser.forEach((u, ss) -> {
+            List<String> now = snapshot.getOrDefault(u, List.of());
+            for (String s : ss) if (!now.contains(s)) gone.add(new String[]{u, s});
+        });
+        for (String[] us : gone) remove(node, us[0], us[1], at);
+        snapshot.forEach((u, ss) -> ss.forEach(s -> add(node, u, s, at)));
+    }
+
+    private void dropNode(String node, long at) {
+        Node n = nodes.get(node);
+        if (n == null) return;
+        List<String[]> all = new ArrayList<>();
+        n.sessionsByUser.forEach((u, ss) -> ss.forEach(s -> all.add(new String[]{u, s})));
+        for (String[] us : all) remove(node, us[0], us[1], at);
+        nodes.remove(node);
+    }
+
+    // === Lifecycle: announce a clean shutdown while the broker is still up ===
+
+    @Override
+    public void start() {
+        running = true;
+        log.info("event=presence_started node={}", nodeId);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        bus.publish(PresenceEvent.left(nodeId, System.currentTimeMillis()));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,136 @@
+package com.message_app.demo.realtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inbound channel executor that runs the tasks of one STOMP session one after another, in the
+ * order they were submitted; different sessions still run in parallel on the delegate.
+ *
+ * Why:
+ *  - Spring's own {@code setPreserveReceiveOrder} also makes the user-destination handler send
+ *    through a per-session ordered channel, which reuses one message for every session of the
+ *    target user and fails with "Expected mutable SimpMessageHeaderAccessor" from the second
+ *    session on: a DM to a user with two tabs reached neither of them.
+ *  - Ordering at the executor gives the same per-session guarantee without touching that path.
+ *
+ * How:
+ *  - The channel submits one {@link MessageHandlingRunnable} per subscribed handler, so the task
+ *    carries its message and the session id comes from its headers. Tasks without a session run directly.
+ *  - Each session has a queue and at most one drain task on the delegate. A drain ends, and its
+ *    queue is removed, only inside {@code compute} on the map and only if the queue is empty there;
+ *    adding goes through {@code compute} too, so a task never lands in a dropped queue and a new
+ *    queue's drain never starts while the old one is still running.
+ */
+final class SessionOrderedExecutor implements TaskExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionOrderedExecutor.class);
+
+    private final Executor delegate;
+    private final ConcurrentHashMap<String, SessionQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    SessionOrderedExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String sessionId = task instanceof MessageHandlingRunnable mhr
+                ? SimpMessageHeaderAccessor.getSessionId(mhr.getMessage().getHeaders()) : null;
+        if (sessionId == null) {
+            delegate.execute(task);
+            return;
+        }
+        SessionQueue q = queues.compute(sessionId, (id, existing) -> {
+            SessionQueue sq = existing != null ? existing : new SessionQueue(id);
+            sq.tasks.add(task);
+            queued.incrementAndGet();
+            return sq;
+        });
+        q.schedule();
+    }
+
+    /** The wrapped executor, for metrics. */
+    Executor delegate() {
+        return delegate;
+    }
+
+    /** Sessions with tasks queued or running. */
+    int activeSessions() {
+        return queues.size();
+    }
+
+    /** Tasks waiting in session queues, not started yet. */
+    int queued() {
+        return queued.get();
+    }
+
+    /** Called by Spring as the inferred destroy method of the channel executor bean. */
+    public void shutdown() {
+        if (delegate instanceof ThreadPoolTaskExecutor pool) pool.shutdown();
+    }
+
+    private final class SessionQueue implements Runnable {
+        final String sessionId;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                delegate.execute(this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    queued.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        // The channel's own task already reports handler failures; keep draining this session
+                        log.warn("event=inbound_task_failed simpSessionId={} error={}", sessionId, t.toString());
+                    }
+                }
+            } while (!retireIfEmpty());
+        }
+
+        /**
+         * Under the map's lock for this session, which {@link #execute} also takes to add a task: the
+         * drain ends and the queue goes only if nothing was added since the last poll. Otherwise this
+         * drain stays scheduled and keeps going, so two drains of one session never overlap.
+         */
+        private boolean retireIfEmpty() {
+            boolean[] retired = {false};
+            queues.compute(sessionId, (id, q) -> {
+                if (q == this && !tasks.isEmpty()) return q;
+                scheduled.set(false);
+                retired[0] = true;
+                return q == this ? null : q;
+            });
+            return retired[0];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.message_app.demo.realtime;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.RequestUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebSocket handshake with an off switch for permessage-deflate.
+ *
+ * Why:
+ *  - Tomcat negotiates permessage-deflate whenever the client offers it (browsers always do),
+ *    straight from the request header; Spring's extension filtering is not consulted. Compression
+ *    trades CPU per frame for bandwidth, which is a poor trade for payloads that are already compact.
+ *
+ * How:
+ *  - With {@code perMessageDeflate=false} the container's upgrade strategy gets the request without
+ *    its {@code Sec-WebSocket-Extensions} header (the only extension Tomcat has is permessage-deflate),
+ *    so it sees no offer and the session is uncompressed.
+ */
+final class TransportHandshakeHandler extends DefaultHandshakeHandler {
+    private static final String EXTENSIONS = "Sec-WebSocket-Extensions";
+
+    TransportHandshakeHandler(boolean perMessageDeflate) {
+        super(upgradeStrategy(perMessageDeflate));
+    }
+
+    /** The container's own strategy, as {@link DefaultHandshakeHandler} picks it; wrapped if deflate is off. */
+    private static RequestUpgradeStrategy upgradeStrategy(boolean perMessageDeflate) {
+        RequestUpgradeStrategy container = new DefaultHandshakeHandler().getRequestUpgradeStrategy();
+        return perMessageDeflate ? container : new WithoutExtensions(container);
+    }
+
+    private record WithoutExtensions(RequestUpgradeStrategy delegate) implements RequestUpgradeStrategy {
+        @Override
+        public String[] getSupportedVersions() {
+            return delegate.getSupportedVersions();
+        }
+
+        @Override
+        public List<WebSocketExtension> getSupportedExtensions(ServerHttpRequest request) {
+            return List.of();
+        }
+
+        @Override
+        public void upgrade(ServerHttpRequest request, ServerHttpResponse response, String selectedProtocol,
+                            List<WebSocketExtension> selectedExtensions, Principal user,
+                            WebSocketHandler wsHandler, Map<String, Object> attributes) throws HandshakeFailureException {
+            if (request instanceof ServletServerHttpRequest servlet && servlet.getServletRequest().getHeader(EXTENSIONS) != null) {
+                request = new ServletServerHttpRequest(withoutExtensions(servlet.getServletRequest()));
+            }
+            delegate.upgrade(request, response, selectedProtocol, List.of(), user, wsHandler, attributes);
+        }
+    }
+
+    private static HttpServletRequest withoutExtensions(HttpServletRequest request) {
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public String getHeader(String name) {
+                return EXTENSIONS.equalsIgnoreCase(name) ? null : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return EXTENSIONS.equalsIgnoreCase(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaderNames() {
+                return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                        .filter(n -> !EXTENSIONS.equalsIgnoreCase(n)).toList());
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package com.message_app.demo.realtime;
+
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * What a user is subscribed to right now, from Spring's {@link SimpUserRegistry} (all nodes in
+ * relay mode, as far as the registry broadcast has reached).
+ *
+ * Used to tell whether a user is looking at a conversation: a DM is then already on screen, so
+ * no notifier is needed and the message counts as delivered.
+ */
+@Component
+public class UserSubscriptions {
+
+    private final SimpUserRegistry users;
+
+    public UserSubscriptions(SimpUserRegistry users) {
+        this.users = users;
+    }
+
+    /**
+     * True if any session of the user holds a subscription to {@code destination} exactly as the
+     * client sent it, e.g. {@code /user/queue/dm/42}. Walks that user's sessions only.
+     */
+    public boolean isSubscribed(String username, String destination) {
+        SimpUser user = users.getUser(username);
+        if (user == null) return false;
+        for (SimpSession session : user.getSessions()) {
+            for (SimpSubscription sub : session.getSubscriptions()) {
+                if (destination.equals(sub.getDestination())) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.message_app.demo.realtime;
+
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Channel executor that runs every message on its own virtual thread.
+ *
+ * Why:
+ *  - With a fixed pool, a handler blocked on the database holds a carrier for the whole wait;
+ *    enough of them and every other session's frames queue up behind it. A virtual thread
+ *    parks instead and gives its carrier to the next message.
+ *
+ * How:
+ *  - No queue: a task gets a thread immediately. {@code maxConcurrency > 0} caps the tasks in
+ *    flight; past the cap {@link #execute} blocks the submitting thread (the WebSocket reader)
+ *    until a slot frees up, which is the backpressure a bounded pool queue would give.
+ *  - Per-session ordering is not this class's job: the channel is wrapped by Spring's ordered
+ *    decorator when {@code chat.ws.preserve-order} is on.
+ *  - {@link #active()} and {@link #waiting()} feed {@link ChannelExecutorMetrics}.
+ */
+final class VirtualThreadChannelExecutor implements TaskExecutor {
+
+    private final ThreadFactory threads;
+    private final Semaphore permits; // null = unbounded
+    private final int maxConcurrency;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    VirtualThreadChannelExecutor(String threadNamePrefix, int maxConcurrency) {
+        this.threads = Thread.ofVirtual().name(threadNamePrefix, 0).factory();
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (permits != null && !permits.tryAcquire()) {
+            waiting.incrementAndGet();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a channel executor slot", e);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        active.incrementAndGet();
+        try {
+            threads.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    if (permits != null) permits.release();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            active.decrementAndGet();
+            if (permits != null) permits.release();
+            throw e;
+        }
+    }
+
+    /** Tasks running (or parked) right now. */
+    int active() {
+        return active.get();
+    }
+
+    /** Submitters blocked on {@code maxConcurrency}. */
+    int waiting() {
+        return waiting.get();
+    }
+
+    /** 0 if unbounded. */
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+}
@@ -1,44 +1,287 @@
 package com.message_app.demo.realtime;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.message_app.demo.chat.infrastructure.ws.ClientIdMdcInterceptor;
+import com.message_app.demo.chat.infrastructure.ws.InboundRateLimiter;
+import com.message_app.demo.chat.infrastructure.ws.MessageRateInterceptor;
+import com.message_app.demo.chat.infrastructure.ws.RoomSubscriptionInterceptor;
 import com.message_app.demo.chat.infrastructure.ws.StompAuthChannelInterceptor;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.socket.config.annotation.*;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    /**
+     * Where /topic and /queue subscriptions live ({@code chat.broker.mode}):
+     *  - {@code simple}: in this JVM's memory (single node).
+     *  - {@code relay}: on an external STOMP broker (RabbitMQ, ActiveMQ, ...), so any number of
+     *    nodes can share them. User destinations ({@code /user/queue/dm/...}) that cannot be
+     *    resolved locally are re-published on {@code user-destination-broadcast} for the node
+     *    holding the session, and each node's sessions are shared on {@code user-registry-broadcast}
+     *    so {@code SimpUserRegistry} lookups see users connected to other nodes.
+     */
+    enum BrokerMode { SIMPLE, RELAY }
+
+    /**
+     * How the relay talks to the broker ({@code chat.broker.relay.transport}):
+     *  - {@code netty}: Spring's Reactor Netty client, non-blocking; the supported choice. Needs
+     *    {@code reactor-netty-core} on the classpath ({@code -Pbroker-relay}).
+     *  - {@code socket}: {@link BrokerRelayTcpClient}, one blocking socket and platform thread per
+     *    relayed session. For development and tests without Reactor Netty only.
+     */
+    enum RelayTransport { NETTY, SOCKET }
+
+    /**
+     * How a client channel runs its messages ({@code chat.ws.inbound.mode} / {@code chat.ws.outbound.mode}):
+     *  - {@code virtual}: one virtual thread per message ({@link VirtualThreadChannelExecutor}), so a
+     *    handler waiting on the database does not hold a pool thread other sessions need.
+     *  - {@code platform}: a classic thread pool sized by {@code chat.ws.inbound.*} / {@code chat.ws.outbound.*}.
+     * Inbound defaults to virtual. Outbound defaults to platform: its work is the WebSocket write,
+     * which runs inside monitors and pins the carrier thread on JDK 21, so virtual threads only add
+     * overhead there. Either way {@code chat.ws.preserve-order} keeps each session's frames in order:
+     * inbound through {@link SessionOrderedExecutor}, outbound through the flow-control outbox
+     * (or Spring's publish ordering when flow control is off).
+     */
+    enum ExecutorMode { VIRTUAL, PLATFORM }
+
+    private static final boolean REACTOR_NETTY_PRESENT =
+            ClassUtils.isPresent("reactor.netty.tcp.TcpClient", WebSocketConfig.class.getClassLoader());
 
     private final StompAuthChannelInterceptor auth;
     private final ClientIdMdcInterceptor mdc;
-    public WebSocketConfig(StompAuthChannelInterceptor auth, ClientIdMdcInterceptor mdc) {
+    private final RoomSubscriptionInterceptor roomGuard;
+    private final InboundRateLimiter rateLimiter;
+    private final MessageRateInterceptor inboundRates;
+    private final MessageRateInterceptor outboundRates;
+    private final OutboundFlowControl flowControl;
+    private final CompactPayloads compact;
+    private final ObjectMapper objectMapper;
+    private final TaskScheduler brokerScheduler;
+
+    @Value("${chat.broker.mode:simple}") private String brokerMode;
+    @Value("${chat.broker.relay.host:localhost}") private String relayHost;
+    @Value("${chat.broker.relay.port:61613}") private int relayPort;
+    @Value("${chat.broker.relay.transport:netty}") private String relayTransport;
+    @Value("${chat.broker.relay.client-login:guest}") private String clientLogin;
+    @Value("${chat.broker.relay.client-passcode:guest}") private String clientPasscode;
+    @Value("${chat.broker.relay.system-login:guest}") private String systemLogin;
+    @Value("${chat.broker.relay.system-passcode:guest}") private String systemPasscode;
+    @Value("${chat.broker.relay.virtual-host:}") private String virtualHost;
+    @Value("${chat.broker.relay.system-heartbeat-ms:10000}") private long systemHeartbeatMs;
+    @Value("${chat.broker.relay.user-destination-broadcast:/topic/unresolved-user-destination}") private String userDestinationBroadcast;
+    @Value("${chat.broker.relay.user-registry-broadcast:/topic/simp-user-registry}") private String userRegistryBroadcast;
+    @Value("${chat.broker.heartbeat.send-ms:10000}") private long heartbeatSendMs;
+    @Value("${chat.broker.heartbeat.receive-ms:10000}") private long heartbeatReceiveMs;
+
+    @Value("${chat.ws.inbound.mode:virtual}") private String inboundMode;
+    @Value("${chat.ws.outbound.mode:platform}") private String outboundMode;
+    @Value("${chat.ws.preserve-order:true}") private boolean preserveOrder;
+    @Value("${chat.ws.inbound.core-pool-size:0}") private int inboundCorePoolSize;
+    @Value("${chat.ws.inbound.max-pool-size:0}") private int inboundMaxPoolSize;
+    @Value("${chat.ws.inbound.queue-capacity:10000}") private int inboundQueueCapacity;
+    @Value("${chat.ws.inbound.max-concurrency:0}") private int inboundMaxConcurrency;
+    @Value("${chat.ws.outbound.core-pool-size:0}") private int outboundCorePoolSize;
+    @Value("${chat.ws.outbound.max-pool-size:0}") private int outboundMaxPoolSize;
+    @Value("${chat.ws.outbound.queue-capacity:10000}") private int outboundQueueCapacity;
+    @Value("${chat.ws.outbound.max-concurrency:0}") private int outboundMaxConcurrency;
+    @Value("${chat.ws.keep-alive-seconds:60}") private int keepAliveSeconds;
+    @Value("${chat.ws.transport.send-time-limit-ms:10000}") private int sendTimeLimitMs;
+    @Value("${chat.ws.transport.send-buffer-size-limit:524288}") private int sendBufferSizeLimit;
+    @Value("${chat.ws.transport.message-size-limit:65536}") private int messageSizeLimit;
+    @Value("${chat.ws.transport.time-to-first-message-ms:60000}") private int timeToFirstMessageMs;
+    @Value("${chat.ws.transport.permessage-deflate:true}") private boolean perMessageDeflate;
+    @Value("${chat.ws.sockjs.enabled:true}") private boolean sockJsEnabled;
+    @Value("${chat.ws.sockjs.stream-bytes-limit:131072}") private int sockJsStreamBytesLimit;
+    @Value("${chat.ws.sockjs.http-message-cache-size:100}") private int sockJsHttpMessageCacheSize;
+    @Value("${chat.ws.sockjs.disconnect-delay-ms:5000}") private long sockJsDisconnectDelayMs;
+    @Value("${chat.ws.sockjs.heartbeat-ms:25000}") private long sockJsHeartbeatMs;
+    @Value("${chat.ws.sockjs.session-cookie-needed:false}") private boolean sockJsSessionCookieNeeded;
+
+    public WebSocketConfig(StompAuthChannelInterceptor auth, ClientIdMdcInterceptor mdc, MetricsRegistry metrics,
+                           OutboundFlowControl flowControl, RoomSubscriptionInterceptor roomGuard,
+                           InboundRateLimiter rateLimiter, CompactPayloads compact, ObjectMapper objectMapper,
+                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler brokerScheduler) {
         this.mdc= mdc;
         this.auth = auth;
+        this.roomGuard = roomGuard;
+        this.rateLimiter = rateLimiter;
+        this.compact = compact;
+        this.objectMapper = objectMapper;
+        this.brokerScheduler = brokerScheduler; // lazy: that bean is built by the configuration this class customizes
+        this.flowControl = flowControl;
+        this.inboundRates = new MessageRateInterceptor(metrics, "inbound");
+        this.outboundRates = new MessageRateInterceptor(metrics, "outbound");
     }
+
+    /**
+     * Two endpoints, same STOMP handler:
+     *  - {@code /ws}: plain WebSocket, what clients use by default. One WebSocket message per STOMP
+     *    frame, binary frames possible, no SockJS session around it.
+     *  - {@code /chat}: SockJS, for clients that cannot open a WebSocket ({@code chat.ws.sockjs.enabled}).
+     *    Its streaming and polling transports hold an HTTP response and a message cache per session;
+     *    {@code chat.ws.sockjs.*} bounds them. {@code /chat/websocket} is SockJS's own raw WebSocket URL.
+     */
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        registry.addEndpoint("/chat")
-                .setAllowedOriginPatterns("*")
-                .withSockJS();
+        TransportHandshakeHandler handshake = new TransportHandshakeHandler(perMessageDeflate);
+        registry.addEndpoint("/ws")
+                .setHandshakeHandler(handshake)
+                .setAllowedOriginPatterns("*");
+        if (sockJsEnabled) {
+            registry.addEndpoint("/chat")
+                    .setHandshakeHandler(handshake)
+                    .setAllowedOriginPatterns("*")
+                    .withSockJS()
+                    .setStreamBytesLimit(sockJsStreamBytesLimit)
+                    .setHttpMessageCacheSize(sockJsHttpMessageCacheSize)
+                    .setDisconnectDelay(sockJsDisconnectDelayMs)
+                    // Only sent while no STOMP heart-beat was negotiated; Spring turns it off otherwise
+                    .setHeartbeatTime(sockJsHeartbeatMs)
+                    .setSessionCookieNeeded(sockJsSessionCookieNeeded);
+        }
+        // Receive order is kept by SessionOrderedExecutor instead; Spring's variant breaks user
+        // destinations for users with more than one session (see that class)
+        registry.setPreserveReceiveOrder(false);
+        log.info("event=stomp_endpoints_configured native=/ws sockjs={} permessageDeflate={}",
+                sockJsEnabled ? "/chat" : "off", perMessageDeflate);
+    }
+
+    /** JSON stays the default; {@code application/cbor} is only used when a frame asks for it. */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new CborMessageConverter(objectMapper));
+        return true;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/topic", "/queue");
+        switch (BrokerMode.valueOf(brokerMode.trim().toUpperCase(Locale.ROOT))) {
+            case SIMPLE -> registry.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{heartbeatSendMs, heartbeatReceiveMs})
+                    .setTaskScheduler(brokerScheduler);
+            case RELAY -> configureRelay(registry.enableStompBrokerRelay("/topic", "/queue"));
+        }
         registry.setUserDestinationPrefix("/user");
+        // With flow control on, each session's outbox is drained by one task at a time, which already keeps order
+        registry.setPreservePublishOrder(preserveOrder && !flowControl.enabled());
+    }
+
+    /**
+     * Per-session WebSocket limits, enforced by Spring's session decorator: a send blocked longer than
+     * {@code send-time-limit-ms}, or more than {@code send-buffer-size-limit} bytes buffered behind it,
+     * closes the session. Frames above {@code message-size-limit} are rejected.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .setTimeToFirstMessage(timeToFirstMessageMs)
+                .addDecoratorFactory(flowControl::decorate)
+                .addDecoratorFactory(compact::decorate);
+    }
+
+    private void configureRelay(StompBrokerRelayRegistration relay) {
+        relay.setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(clientLogin)
+                .setClientPasscode(clientPasscode)
+                .setSystemLogin(systemLogin)
+                .setSystemPasscode(systemPasscode)
+                .setSystemHeartbeatSendInterval(systemHeartbeatMs)
+                .setSystemHeartbeatReceiveInterval(systemHeartbeatMs)
+                .setUserDestinationBroadcast(userDestinationBroadcast)
+                .setUserRegistryBroadcast(userRegistryBroadcast);
+        if (!virtualHost.isBlank()) relay.setVirtualHost(virtualHost);
+        RelayTransport transport = RelayTransport.valueOf(relayTransport.trim().toUpperCase(Locale.ROOT));
+        if (transport == RelayTransport.SOCKET) {
+            relay.setTcpClient(new BrokerRelayTcpClient(relayHost, relayPort));
+            log.warn("event=broker_relay_socket_transport note=\"one thread per relayed session, development only\"");
+        } else if (!REACTOR_NETTY_PRESENT) {
+            throw new IllegalStateException("chat.broker.mode=relay needs Reactor Netty: build with -Pbroker-relay"
+                    + " (or set chat.broker.relay.transport=socket for development)");
+        }
+        log.info("event=broker_relay_configured host={} port={} transport={}",
+                relayHost, relayPort, transport.name().toLowerCase(Locale.ROOT));
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        // order: auth first (sets user), then mdc (for logging)
-        registration.interceptors(auth, mdc);
+        // order: auth first (sets user), rate limits (needs user; refused frames go no further),
+        // room membership (needs user), mdc (for logging), per-destination counts, payload format (CONNECT only)
+        registration.interceptors(auth, rateLimiter, roomGuard, mdc, inboundRates, compact);
+        configureExecutor(registration, "clientInboundChannel-", inboundMode, preserveOrder,
+                inboundCorePoolSize, inboundMaxPoolSize, inboundQueueCapacity, inboundMaxConcurrency);
     }
 
+    @Override
     public void configureClientOutboundChannel(ChannelRegistration registration) {
-        registration.interceptors(mdc);
+        // compact payloads before flow control, so outboxes count what is written; flow control last: it takes the frame off the channel
+        registration.interceptors(mdc, outboundRates, compact, flowControl);
+        configureExecutor(registration, "clientOutboundChannel-", outboundMode, false,
+                outboundCorePoolSize, outboundMaxPoolSize, outboundQueueCapacity, outboundMaxConcurrency);
+    }
+
+    /**
+     * Pool sizes of 0 mean "twice the CPU count". A full platform queue runs the message on the
+     * submitting thread (the WebSocket reader of that session), which slows down only that sender.
+     */
+    private void configureExecutor(ChannelRegistration registration, String threadNamePrefix, String executorMode,
+                                   boolean orderBySession, int corePoolSize, int maxPoolSize, int queueCapacity,
+                                   int maxConcurrency) {
+        String channel = threadNamePrefix.substring(0, threadNamePrefix.length() - 1);
+        ExecutorMode mode = ExecutorMode.valueOf(executorMode.trim().toUpperCase(Locale.ROOT));
+        if (mode == ExecutorMode.VIRTUAL) {
+            Executor virtual = new VirtualThreadChannelExecutor(threadNamePrefix, maxConcurrency);
+            registration.executor(orderBySession ? new SessionOrderedExecutor(virtual) : virtual);
+            log.info("event=channel_executor_configured channel={} mode=virtual orderBySession={} maxConcurrency={}",
+                    channel, orderBySession, maxConcurrency);
+        } else {
+            int core = corePoolSize > 0 ? corePoolSize : Runtime.getRuntime().availableProcessors() * 2;
+            int max = Math.max(core, maxPoolSize > 0 ? maxPoolSize : core);
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix(threadNamePrefix);
+            pool.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+            if (orderBySession) {
+                // Not registered as the bean itself, so configure and start it here
+                pool.setCorePoolSize(core);
+                pool.setMaxPoolSize(max);
+                pool.setQueueCapacity(queueCapacity);
+                pool.setKeepAliveSeconds(keepAliveSeconds);
+                pool.initialize();
+                registration.executor(new SessionOrderedExecutor(pool));
+            } else {
+                registration.taskExecutor(pool)
+                        .corePoolSize(core)
+                        .maxPoolSize(max)
+                        .queueCapacity(queueCapacity)
+                        .keepAliveSeconds(keepAliveSeconds);
+            }
+            log.info("event=channel_executor_configured channel={} mode=platform orderBySession={} corePoolSize={} maxPoolSize={} queueCapacity={}",
+                    channel, orderBySession, core, max, queueCapacity);
+        }
     }
 }
 
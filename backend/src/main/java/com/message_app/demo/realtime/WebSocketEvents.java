@@ -1,5 +1,7 @@
 package com.message_app.demo.realtime;
 
+import com.message_app.demo.metrics.Counter;
+import com.message_app.demo.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
@@ -8,19 +10,30 @@ import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 
 import java.security.Principal;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class WebSocketEvents {
     private static final Logger log = LoggerFactory.getLogger(WebSocketEvents.class);
-    private static final Set<String> onlineUsers = ConcurrentHashMap.<String>newKeySet();
+    private final SessionCountingOnlineUserRegistry presence;
+    private final Counter connects;
+    private final Counter disconnects;
+
+    WebSocketEvents(SessionCountingOnlineUserRegistry presence, MetricsRegistry metrics) {
+        this.presence = presence;
+        this.connects = metrics.counter("chat_ws_connects_total", "STOMP sessions connected to this node");
+        this.disconnects = metrics.counter("chat_ws_disconnects_total", "STOMP sessions closed on this node");
+        metrics.gauge("chat_ws_sessions", "STOMP sessions currently connected to this node", presence::localSessions);
+        metrics.gauge("chat_users_online", "Users with at least one session on any node", presence::onlineUsers);
+        metrics.gauge("chat_presence_nodes", "Nodes currently contributing sessions to presence", presence::knownNodes);
+    }
 
     @EventListener
     public void onConnect(org.springframework.web.socket.messaging.SessionConnectEvent e) {
         var sha = StompHeaderAccessor.wrap(e.getMessage());
         Principal p = SimpMessageHeaderAccessor.getUser(e.getMessage().getHeaders());
-        if (p != null) onlineUsers.add(p.getName());
+        if (p == null) p = e.getUser();
+        if (p != null && sha.getSessionId() != null) presence.sessionOpened(p.getName(), sha.getSessionId());
+        connects.increment();
         log.info("event=session_connect simpSessionId={} ver={} hb={}",
                 sha.getSessionId(),
                 sha.getFirstNativeHeader("accept-version"),
@@ -29,9 +42,10 @@ public class WebSocketEvents {
 
     @EventListener
     public void onDisconnect(org.springframework.web.socket.messaging.SessionDisconnectEvent e) {
+        disconnects.increment();
         Principal p = e.getUser();
         if (p != null) {
-            onlineUsers.remove(p.getName());
+            presence.sessionClosed(p.getName(), e.getSessionId()); // only this tab; other sessions keep the user online
         }
         log.info("event=session_disconnect simpSessionId={} close={}", e.getSessionId(), e.getCloseStatus());
     }
@@ -41,6 +55,4 @@ public class WebSocketEvents {
         var sha = StompHeaderAccessor.wrap(e.getMessage());
         log.info("event=session_subscribe simpSessionId={} dest={}", sha.getSessionId(), sha.getDestination());
     }
-
-    public static boolean isOnline(String u) { return onlineUsers.contains(u); }
 }
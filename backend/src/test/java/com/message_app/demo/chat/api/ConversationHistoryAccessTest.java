@@ -0,0 +1,60 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.auth.infrastructure.security.JwtService;
+import com.message_app.demo.chat.application.DmService;
+import com.message_app.demo.chat.application.RoomService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** DM and room history over REST is for members only. */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConversationHistoryAccessTest {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private JwtService jwt;
+
+	@Autowired
+	private DmService dms;
+
+	@Autowired
+	private RoomService rooms;
+
+	private MockHttpServletRequestBuilder as(String user, MockHttpServletRequestBuilder request) {
+		return request.header("Authorization", "Bearer " + jwt.issue(user, List.of("ROLE_USER"), 300));
+	}
+
+	@Test
+	void nonMembersCannotReadDmHistory() throws Exception {
+		Long dm = dms.getOrCreateDmId("alice", "bob");
+
+		mvc.perform(get("/api/dm/{id}/messages", dm)).andExpect(status().isUnauthorized());
+		mvc.perform(get("/api/dm/{id}/history", dm)).andExpect(status().isUnauthorized());
+		mvc.perform(as("carol", get("/api/dm/{id}/messages", dm))).andExpect(status().isNotFound());
+		mvc.perform(as("carol", get("/api/dm/{id}/history", dm))).andExpect(status().isNotFound());
+
+		mvc.perform(as("bob", get("/api/dm/{id}/messages", dm))).andExpect(status().isOk());
+		mvc.perform(as("alice", get("/api/dm/{id}/history", dm))).andExpect(status().isOk());
+	}
+
+	@Test
+	void nonMembersCannotReadRoomHistory() throws Exception {
+		Long room = rooms.create("dave", "ops-" + System.nanoTime()).id();
+
+		mvc.perform(as("erin", get("/api/dm/{id}/history", room))).andExpect(status().isNotFound());
+		rooms.join(room, "erin");
+		mvc.perform(as("erin", get("/api/dm/{id}/history", room))).andExpect(status().isOk());
+	}
+}
@@ -0,0 +1,37 @@
+package com.message_app.demo.chat.api;
+
+import com.message_app.demo.chat.application.MessageSearch;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** The rebuild is a maintenance command: a configured token, not the caller's address, lets it through. */
+class SearchControllerTest {
+
+	private final MessageSearch search = mock(MessageSearch.class);
+
+	@Test
+	void rebuildIsRefusedWithoutTheConfiguredToken() {
+		var disabled = new SearchController(search, "");
+		assertThat(disabled.rebuild(null).getStatusCode().value()).isEqualTo(403);
+		assertThat(disabled.rebuild("").getStatusCode().value()).isEqualTo(403);
+
+		var guarded = new SearchController(search, "s3cret");
+		assertThat(guarded.rebuild(null).getStatusCode().value()).isEqualTo(403);
+		assertThat(guarded.rebuild("s3cre").getStatusCode().value()).isEqualTo(403);
+		verify(search, never()).rebuild();
+	}
+
+	@Test
+	void rebuildStartsWithTheConfiguredToken() {
+		when(search.rebuild()).thenReturn(true, false);
+		var guarded = new SearchController(search, "s3cret");
+
+		assertThat(guarded.rebuild("s3cret").getStatusCode().value()).isEqualTo(202);
+		assertThat(guarded.rebuild("s3cret").getStatusCode().value()).as("already running").isEqualTo(409);
+	}
+}
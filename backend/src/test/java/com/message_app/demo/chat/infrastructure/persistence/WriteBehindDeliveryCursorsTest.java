@@ -0,0 +1,172 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.DeliveryCursors.Undelivered;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.InboxService;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindDeliveryCursorsTest {
+
+	/** Messages per conversation in the order they were sent; history order is (sentAt, id). */
+	private static final class MapHistory implements HistoryService, InboxService {
+		final Map<Long, List<MessageDto>> byConversation = new ConcurrentHashMap<>();
+
+		private List<MessageDto> ordered(Long conversationId) {
+			return byConversation.getOrDefault(conversationId, List.of()).stream()
+					.sorted(Comparator.comparing(MessageDto::sentAt).thenComparingLong(MessageDto::id)).toList();
+		}
+
+		@Override
+		public List<MessageDto> newest(Long conversationId, int limit) {
+			return ordered(conversationId).reversed().stream().limit(limit).toList();
+		}
+
+		@Override
+		public HistoryService.Page page(Long conversationId, HistoryCursor before, HistoryCursor after, int limit) {
+			List<MessageDto> rest = ordered(conversationId).stream().filter(after::sortsAfter).toList();
+			List<MessageDto> page = rest.stream().limit(limit).toList();
+			return new HistoryService.Page(page, rest.size() > limit ? HistoryCursor.of(page.getLast()) : null);
+		}
+
+		@Override
+		public HistoryCursor cursorOf(Long conversationId, long messageId) {
+			return byConversation.getOrDefault(conversationId, List.of()).stream().filter(m -> m.id() == messageId)
+					.findFirst().map(HistoryCursor::of).orElseThrow(() -> new NoSuchElementException("No message " + messageId));
+		}
+
+		@Override
+		public void appended(MessageDto message) {
+			byConversation.computeIfAbsent(message.conversationId(), c -> new ArrayList<>()).add(message);
+		}
+
+		@Override
+		public void messageAdded(MessageDto message) {
+		}
+
+		/** As if nothing had reached the summary column yet. */
+		@Override
+		public HistoryCursor lastMessage(Long conversationId, HistoryCursor stored) {
+			List<MessageDto> messages = ordered(conversationId);
+			return messages.isEmpty() ? stored : HistoryCursor.of(messages.getLast());
+		}
+
+		@Override
+		public InboxService.Page inbox(String username, HistoryCursor before, int limit) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private JdbcTemplate jdbc;
+	private MapHistory history;
+	private WriteBehindDeliveryCursors cursors;
+
+	@BeforeEach
+	void setUp() {
+		var ds = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		jdbc = new JdbcTemplate(ds);
+		jdbc.execute("create table conversations (id bigint primary key, type varchar(16) not null, "
+				+ "last_message_at timestamp(6) with time zone, last_message_id bigint)");
+		jdbc.execute("create table conversation_members (conversation_id bigint not null, username varchar(128) not null, "
+				+ "last_delivered_at timestamp(6) with time zone, last_delivered_message_id bigint not null)");
+		jdbc.update("insert into conversations values (1, 'DM', null, null), (2, 'DM', null, null), (3, 'ROOM', null, null)");
+		jdbc.update("insert into conversation_members values (1, 'alice', null, 0), (1, 'bob', null, 0), "
+				+ "(2, 'bob', null, 0), (2, 'carol', null, 0), (3, 'bob', null, 0)");
+		history = new MapHistory();
+		cursors = new WriteBehindDeliveryCursors(jdbc, new DataSourceTransactionManager(ds), history, history, new MetricsRegistry());
+		cursors.start();
+
+		message(1, 1L, "alice");
+		message(2, 2L, "carol");
+		message(3, 2L, "carol");
+		message(4, 1L, "alice");
+		message(5, 1L, "alice");
+		message(6, 2L, "carol");
+		message(7, 3L, "dave"); // a room: not part of DM catch-up
+	}
+
+	private void message(long id, Long conversationId, String sender) {
+		message(id, conversationId, sender, id);
+	}
+
+	private MessageDto message(long id, Long conversationId, String sender, long second) {
+		var m = new MessageDto(id, conversationId, sender, "m" + id, Instant.ofEpochSecond(second));
+		history.appended(m);
+		return m;
+	}
+
+	private long cursor(Long conversationId, String username) {
+		return jdbc.queryForObject("select last_delivered_message_id from conversation_members "
+				+ "where conversation_id = ? and username = ?", Long.class, conversationId, username);
+	}
+
+	private static List<Long> ids(Undelivered u) {
+		return u.messages().stream().map(MessageDto::id).toList();
+	}
+
+	@Test
+	void catchUpMergesMissedDmsOldestFirstFromTheCursor() {
+		cursors.delivered(history.byConversation.get(1L).get(0), "bob"); // not flushed yet: still counts
+
+		Undelivered all = cursors.undelivered("bob", 100);
+		assertThat(ids(all)).containsExactly(2L, 3L, 4L, 5L, 6L);
+		assertThat(all.complete()).isTrue();
+
+		Undelivered first = cursors.undelivered("bob", 3);
+		assertThat(ids(first)).containsExactly(2L, 3L, 4L);
+		assertThat(first.complete()).isFalse();
+	}
+
+	@Test
+	void flushWritesCursorsOnlyForward() {
+		cursors.delivered(history.byConversation.get(1L).get(1), "bob"); // 4
+		cursors.delivered(history.byConversation.get(1L).get(0), "bob"); // 1: behind, ignored
+		assertThat(cursor(1L, "bob")).isZero();
+
+		cursors.flush();
+		assertThat(cursor(1L, "bob")).isEqualTo(4);
+
+		jdbc.update("update conversation_members set last_delivered_at = ?, last_delivered_message_id = 6 "
+				+ "where conversation_id = 2 and username = 'bob'", OffsetDateTime.ofInstant(Instant.ofEpochSecond(6), ZoneOffset.UTC));
+		cursors.delivered(history.byConversation.get(2L).get(0), "bob"); // 2: another node is already past it
+		cursors.stop(); // flushes what is left
+		assertThat(cursor(2L, "bob")).isEqualTo(6);
+		assertThat(ids(cursors.undelivered("bob", 100))).containsExactly(5L);
+	}
+
+	@Test
+	void aNewerDmWithALowerIdIsStillCaughtUp() {
+		// Ids come in per-node blocks: a node that allocated 101 first can send after one still at 8
+		MessageDto fromNodeB = message(101, 1L, "alice", 10);
+		cursors.delivered(fromNodeB, "bob");
+		cursors.delivered(history.byConversation.get(2L).getLast(), "bob");
+		cursors.flush();
+		message(8, 1L, "alice", 20);
+
+		assertThat(ids(cursors.undelivered("bob", 100))).containsExactly(8L);
+
+		cursors.delivered(history.byConversation.get(1L).getLast(), "bob");
+		cursors.flush();
+		assertThat(cursor(1L, "bob")).as("moved forward in time, to a lower id").isEqualTo(8);
+		assertThat(cursors.undelivered("bob", 100).messages()).isEmpty();
+	}
+}
@@ -0,0 +1,88 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteBehindMessageWriterTest {
+
+	private JdbcTemplate jdbc;
+	private DataSourceTransactionManager tx;
+
+	@BeforeEach
+	void setUp() {
+		var ds = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		jdbc = new JdbcTemplate(ds);
+		tx = new DataSourceTransactionManager(ds);
+		jdbc.execute("create table messages (id bigint primary key, conversation_id bigint not null, "
+				+ "sender varchar(255), content varchar(2000), sent_at timestamp(6) with time zone)");
+	}
+
+	/** Long latency: batches only leave on size or on stop. */
+	private WriteBehindMessageWriter writer(int batchSize) {
+		return new WriteBehindMessageWriter(jdbc, tx, new MessageIdAllocator(jdbc, 100), new MetricsRegistry(),
+				10_000, batchSize, 60_000, 250, 10_000);
+	}
+
+	private int rows() {
+		return jdbc.queryForObject("select count(*) from messages", Integer.class);
+	}
+
+	@Test
+	void stopFlushesEverythingQueued() {
+		var writer = writer(256);
+		writer.start();
+		for (int i = 0; i < 1000; i++) writer.append(1L + i % 3, "alice", "m" + i);
+		assertThat(writer.pending(1L)).isNotEmpty();
+
+		writer.stop();
+
+		assertThat(rows()).isEqualTo(1000);
+		assertThat(writer.pending(1L)).isEmpty();
+		assertThatThrownBy(() -> writer.append(1L, "alice", "late")).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void appendsRacingStopAreStoredOrRefused() throws InterruptedException {
+		var writer = writer(64);
+		writer.start();
+		var accepted = new AtomicInteger();
+		var started = new CountDownLatch(4);
+		List<Thread> senders = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread sender = new Thread(() -> {
+				started.countDown();
+				try {
+					for (;;) {
+						writer.append(1L, "alice", "hi");
+						accepted.incrementAndGet();
+					}
+				} catch (IllegalStateException refused) {
+					// stopped (or full): the caller was told, nothing to store
+				}
+			});
+			sender.start();
+			senders.add(sender);
+		}
+		started.await();
+		Thread.sleep(50);
+
+		writer.stop();
+		for (Thread sender : senders) sender.join();
+
+		assertThat(accepted.get()).isPositive();
+		assertThat(rows()).isEqualTo(accepted.get());
+	}
+}
@@ -0,0 +1,143 @@
+package com.message_app.demo.chat.infrastructure.persistence;
+
+import com.message_app.demo.chat.api.dto.MessageDto;
+import com.message_app.demo.chat.application.HistoryCursor;
+import com.message_app.demo.chat.application.HistoryService;
+import com.message_app.demo.chat.application.UnreadCounters.Unread;
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindUnreadCountersTest {
+
+	/** History of one conversation, in the order sent; enough of HistoryService for markRead. */
+	private static final class ListHistory implements HistoryService {
+		final List<MessageDto> messages = new ArrayList<>();
+
+		private List<MessageDto> ordered() {
+			return messages.stream().sorted(Comparator.comparing(MessageDto::sentAt).thenComparingLong(MessageDto::id)).toList();
+		}
+
+		@Override
+		public List<MessageDto> newest(Long conversationId, int limit) {
+			return ordered().reversed().stream().limit(limit).toList();
+		}
+
+		@Override
+		public Page page(Long conversationId, HistoryCursor before, HistoryCursor after, int limit) {
+			List<MessageDto> rest = ordered().stream().filter(m -> after == null || after.sortsAfter(m)).toList();
+			List<MessageDto> page = rest.stream().limit(limit).toList();
+			return new Page(page, rest.size() > limit ? HistoryCursor.of(page.getLast()) : null);
+		}
+
+		@Override
+		public HistoryCursor cursorOf(Long conversationId, long messageId) {
+			return messages.stream().filter(m -> m.id() == messageId).findFirst().map(HistoryCursor::of)
+					.orElseThrow(() -> new NoSuchElementException("No message " + messageId));
+		}
+
+		@Override
+		public void appended(MessageDto message) {
+			messages.add(message);
+		}
+	}
+
+	private JdbcTemplate jdbc;
+	private ListHistory history;
+	private WriteBehindUnreadCounters counters;
+
+	@BeforeEach
+	void setUp() {
+		var ds = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+		jdbc = new JdbcTemplate(ds);
+		jdbc.execute("create table conversation_members (conversation_id bigint not null, username varchar(128) not null, "
+				+ "unread_count bigint not null, last_read_at timestamp(6) with time zone, last_read_message_id bigint not null)");
+		jdbc.update("insert into conversation_members values (1, 'alice', 0, null, 0), (1, 'bob', 0, null, 0)");
+		history = new ListHistory();
+		counters = new WriteBehindUnreadCounters(jdbc, new DataSourceTransactionManager(ds), history,
+				new MetricsRegistry(), 100_000, 0);
+		counters.start();
+	}
+
+	private void send(long id, String sender) {
+		send(id, sender, id);
+	}
+
+	private void send(long id, String sender, long second) {
+		var m = new MessageDto(id, 1L, sender, "m" + id, Instant.ofEpochSecond(second));
+		history.appended(m);
+		counters.messageAdded(m, List.of("alice", "bob"));
+	}
+
+	private long[] row(String username) {
+		return jdbc.queryForObject("select unread_count, last_read_message_id from conversation_members "
+				+ "where conversation_id = 1 and username = ?", (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2)}, username);
+	}
+
+	@Test
+	void incrementsStayInMemoryUntilFlushed() {
+		for (long id = 1; id <= 3; id++) send(id, "alice");
+
+		assertThat(row("bob")).containsExactly(0, 0);
+		assertThat(counters.get(1L, "bob").unreadCount()).isEqualTo(3);
+		assertThat(counters.get(1L, "alice").unreadCount()).as("own messages").isZero();
+
+		counters.flush();
+		assertThat(row("bob")).containsExactly(3, 0);
+		assertThat(counters.get(1L, "bob").unreadCount()).as("not counted twice").isEqualTo(3);
+
+		send(4, "alice");
+		assertThat(counters.current(new Unread(1L, 0, 3), "bob").unreadCount()).isEqualTo(4);
+		counters.stop(); // flushes what is left
+		assertThat(row("bob")).containsExactly(4, 0);
+	}
+
+	@Test
+	void markReadWritesTheRemainingCountAndOnlyMovesForward() {
+		send(1, "alice");
+		send(2, "alice");
+		send(3, "bob");
+		send(4, "alice");
+		send(5, "alice");
+		assertThat(counters.get(1L, "bob").unreadCount()).isEqualTo(4);
+
+		Unread read = counters.markRead(1L, "bob", 2);
+		assertThat(read).isEqualTo(new Unread(1L, 2, 2)); // 4 and 5; 3 is bob's own
+		assertThat(row("bob")).as("written at once").containsExactly(2, 2);
+
+		assertThat(counters.markRead(1L, "bob", 1)).isEqualTo(new Unread(1L, 2, 2));
+
+		send(6, "alice");
+		counters.flush();
+		assertThat(counters.get(1L, "bob")).isEqualTo(new Unread(1L, 2, 3));
+		assertThat(row("bob")).containsExactly(3, 2);
+	}
+
+	@Test
+	void watermarkFollowsHistoryOrderNotIds() {
+		// Ids come in per-node blocks: 101 was allocated on one node, 2 and 3 later on another
+		send(101, "alice", 1);
+		send(2, "alice", 2);
+		assertThat(counters.markRead(1L, "bob", 101)).isEqualTo(new Unread(1L, 101, 1));
+
+		send(3, "alice", 3);
+		assertThat(counters.get(1L, "bob").unreadCount()).as("newer, though a lower id").isEqualTo(2);
+
+		assertThat(counters.markRead(1L, "bob", 2)).isEqualTo(new Unread(1L, 2, 1));
+		assertThat(row("bob")).containsExactly(1, 2);
+		assertThat(counters.markRead(1L, "bob", 101)).as("older, though a higher id").isEqualTo(new Unread(1L, 2, 1));
+		assertThat(row("bob")).containsExactly(1, 2);
+	}
+}
@@ -0,0 +1,72 @@
+package com.message_app.demo.chat.infrastructure.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InvertedIndexTest {
+
+	private static List<Long> ids(List<InvertedIndex.Match> matches) {
+		return matches.stream().map(InvertedIndex.Match::messageId).toList();
+	}
+
+	@Test
+	void allTermsMustMatchAcrossSkipEntries() {
+		var index = new InvertedIndex();
+		// "common" in every message, "rare" in every 97th: the intersection jumps through "common"'s skip list
+		for (long id = 1; id <= 1000; id++) {
+			index.add(id, id % 3, id % 97 == 0 ? "common rare words" : "common words");
+		}
+		index.add(500, 0, "rare"); // already indexed: ignored
+
+		assertThat(index.docs()).isEqualTo(1000);
+		assertThat(ids(index.search(List.of("rare", "common"), null, null, null, true, 100)))
+				.containsExactly(970L, 873L, 776L, 679L, 582L, 485L, 388L, 291L, 194L, 97L);
+		assertThat(ids(index.search(List.of("rare", "common"), null, 1L, null, true, 100)))
+				.containsExactly(970L, 679L, 388L, 97L);
+		assertThat(ids(index.search(List.of("rare"), null, null, c -> c == 2, true, 2)))
+				.containsExactly(776L, 485L);
+		assertThat(index.search(List.of("rare", "missing"), null, null, null, false, 10)).isEmpty();
+	}
+
+	@Test
+	void prefixAndAccentsAndRanking() {
+		var index = new InvertedIndex();
+		index.add(1, 1, "Meet at the Café tonight");
+		index.add(2, 1, "cafeteria cafeteria cafeteria");
+		index.add(3, 1, "a long message that only mentions the cafe once among many other words");
+		index.add(4, 1, "nothing here");
+
+		assertThat(ids(index.search(List.of(), "caf", null, null, true, 10))).containsExactly(3L, 2L, 1L);
+		assertThat(ids(index.search(List.of("cafe"), null, null, null, false, 10))).containsExactly(1L, 3L);
+		assertThat(ids(index.search(List.of("tonight"), "caf", null, null, false, 10))).containsExactly(1L);
+	}
+
+	@Test
+	void snapshotRoundTrip(@TempDir Path dir) throws IOException {
+		var index = new InvertedIndex();
+		for (long id = 1; id <= 300; id++) index.add(id * 2, id % 5, "message number " + id + (id % 10 == 0 ? " tenth" : ""));
+		Path file = dir.resolve("messages.idx");
+		index.writeTo(file);
+
+		var loaded = InvertedIndex.readFrom(file);
+		assertThat(loaded.docs()).isEqualTo(300);
+		assertThat(loaded.maxMessageId()).isEqualTo(600);
+		assertThat(loaded.search(List.of("tenth", "message"), null, null, null, false, 100))
+				.isEqualTo(index.search(List.of("tenth", "message"), null, null, null, false, 100));
+		assertThat(loaded.add(600, 0, "again")).isFalse();
+		assertThat(loaded.add(601, 0, "tenth")).isTrue();
+
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[30] ^= 1; // inside the first message id
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> InvertedIndex.readFrom(file)).isInstanceOf(IOException.class);
+	}
+}
@@ -0,0 +1,97 @@
+package com.message_app.demo.chat.infrastructure.ws;
+
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InboundRateLimiterTest {
+
+	private static final MessageChannel CHANNEL = new ExecutorSubscribableChannel();
+
+	private static InboundRateLimiter limiter(double userRate, int userBurst, String rules, IntSupplier backlog, int disconnectAfter) {
+		return new InboundRateLimiter(new MetricsRegistry(), () -> null, backlog,
+				true, userRate, userBurst, rules, 10, disconnectAfter, 1000);
+	}
+
+	private static Message<byte[]> frame(StompCommand command, String user, String destination) {
+		StompHeaderAccessor acc = StompHeaderAccessor.create(command);
+		acc.setSessionId("s-" + user);
+		acc.setUser(new UsernamePasswordAuthenticationToken(user, "N/A"));
+		if (destination != null) acc.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+	}
+
+	private static Message<byte[]> send(String user, String destination) {
+		return frame(StompCommand.SEND, user, destination);
+	}
+
+	@Test
+	void userBucketRefusesPastBurstAndRefills() throws InterruptedException {
+		var limiter = limiter(20, 3, "", () -> 0, 0); // one token every 50ms
+
+		for (int i = 0; i < 3; i++) assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNull();
+		assertThat(limiter.preSend(send("bob", "/app/message"), CHANNEL)).as("own bucket").isNotNull();
+
+		Thread.sleep(150);
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNotNull();
+	}
+
+	@Test
+	void catchUpHasItsOwnRuleApartFromPerUserDmTemplates() {
+		var limiter = limiter(1000, 1000, "/app/dm/{user}/send:0.001:1,/app/dm/catchup:0.001:2", () -> 0, 0);
+
+		assertThat(limiter.preSend(send("alice", "/app/dm/catchup"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/dm/catchup"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/dm/catchup"), CHANNEL)).isNull();
+		assertThat(limiter.preSend(send("alice", "/app/dm/bob/send"), CHANNEL)).as("own rule").isNotNull();
+		assertThat(MessageRateInterceptor.template("/app/dm/catchup")).isEqualTo("/app/dm/catchup");
+		assertThat(MessageRateInterceptor.template("/app/dm/bob/open")).isEqualTo("/app/dm/{user}/open");
+	}
+
+	@Test
+	void destinationRuleLimitsOnlyItsTemplate() {
+		var limiter = limiter(1000, 1000, "/app/dm/{user}/send:0.001:2", () -> 0, 0);
+
+		assertThat(limiter.preSend(send("alice", "/app/dm/bob/send"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/dm/carol/send"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/dm/bob/send"), CHANNEL)).isNull();
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNotNull();
+	}
+
+	@Test
+	void overloadShedsSendsButNotSubscriptions() {
+		var backlog = new AtomicInteger(11);
+		var limiter = limiter(1000, 1000, "", backlog::get, 0);
+
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNull();
+		assertThat(limiter.preSend(frame(StompCommand.SUBSCRIBE, "alice", "/topic/public"), CHANNEL)).isNotNull();
+
+		backlog.set(10);
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNotNull();
+	}
+
+	@Test
+	void refusalsInARowEndTheSession() {
+		var limiter = limiter(0.001, 1, "", () -> 0, 3);
+
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNotNull();
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNull();
+		assertThat(limiter.preSend(send("alice", "/app/message"), CHANNEL)).isNull();
+		assertThatThrownBy(() -> limiter.preSend(send("alice", "/app/message"), CHANNEL))
+				.isInstanceOf(MessageDeliveryException.class);
+	}
+}
@@ -0,0 +1,60 @@
+package com.message_app.demo.chat.infrastructure.ws;
+
+import com.message_app.demo.chat.application.RoomService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoomSubscriptionInterceptorTest {
+
+	private static final MessageChannel CHANNEL = new ExecutorSubscribableChannel();
+
+	private final RoomService rooms = mock(RoomService.class);
+	private final RoomSubscriptionInterceptor interceptor = new RoomSubscriptionInterceptor(rooms,
+			new StaticListableBeanFactory(Map.of()).getBeanProvider(MessageChannel.class));
+
+	private static Message<byte[]> subscribe(String user, String destination) {
+		StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+		acc.setSessionId("s-" + user);
+		acc.setSubscriptionId("sub-0");
+		acc.setUser(new UsernamePasswordAuthenticationToken(user, "N/A"));
+		acc.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+	}
+
+	@Test
+	void roomTopicsAreMembersOnly() {
+		when(rooms.isMember(7L, "alice")).thenReturn(true);
+
+		assertThat(interceptor.preSend(subscribe("alice", "/topic/room/7"), CHANNEL)).isNotNull();
+		assertThatThrownBy(() -> interceptor.preSend(subscribe("bob", "/topic/room/7"), CHANNEL))
+				.isInstanceOf(AccessDeniedException.class);
+		assertThat(interceptor.preSend(subscribe("bob", "/topic/public"), CHANNEL)).isNotNull();
+	}
+
+	@Test
+	void patternSubscriptionsToBrokerDestinationsAreRefused() {
+		when(rooms.isMember(7L, "alice")).thenReturn(true); // a member of one room still gets no pattern
+
+		for (String pattern : new String[]{"/topic/**", "/topic/r*/*", "/topic/room/?", "/topic/{room}/7",
+				"/topic/room.#", "/topic/room.>", "/queue/**"}) {
+			assertThatThrownBy(() -> interceptor.preSend(subscribe("alice", pattern), CHANNEL))
+					.as(pattern).isInstanceOf(AccessDeniedException.class);
+		}
+		assertThat(interceptor.preSend(subscribe("alice", "/user/queue/dm"), CHANNEL)).isNotNull();
+	}
+}
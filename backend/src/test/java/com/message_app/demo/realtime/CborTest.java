@@ -0,0 +1,97 @@
+package com.message_app.demo.realtime;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CborTest {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+	private static final JsonNodeFactory F = JsonNodeFactory.instance;
+
+	private static byte[] hex(String s) {
+		return HexFormat.of().parseHex(s.replace(" ", ""));
+	}
+
+	@Test
+	void integersUseTheShortestWidthAndRoundTrip() {
+		long[] values = {0, 23, 24, 255, 256, 65_535, 65_536, 4_294_967_295L, 4_294_967_296L, Long.MAX_VALUE,
+				-1, -24, -25, -256, -257, -65_537, -4_294_967_297L, Long.MIN_VALUE};
+		int[] sizes = {1, 1, 2, 2, 3, 3, 5, 5, 9, 9,
+				1, 1, 2, 2, 3, 5, 9, 9};
+		for (int i = 0; i < values.length; i++) {
+			byte[] encoded = Cbor.encode(F.numberNode(values[i]));
+			assertThat(encoded).as("%d", values[i]).hasSize(sizes[i]);
+			assertThat(Cbor.decode(encoded).longValue()).isEqualTo(values[i]);
+		}
+		assertThat(Cbor.encode(F.numberNode(-25))).isEqualTo(hex("38 18"));
+
+		// Past 64 bits either way, as other encoders may send them
+		assertThat(Cbor.decode(hex("1b ffffffffffffffff")).bigIntegerValue())
+				.isEqualTo(new BigInteger("18446744073709551615"));
+		assertThat(Cbor.decode(hex("3b ffffffffffffffff")).bigIntegerValue())
+				.isEqualTo(new BigInteger("-18446744073709551616"));
+	}
+
+	@Test
+	void instantFieldsBecomeTag1EpochSeconds() throws Exception {
+		JsonNode node = JSON.readTree("""
+				{"sentAt":"2024-05-01T12:00:00Z","editedAt":"2024-05-01T12:00:00.250Z",
+				 "bornAt":"1969-12-31T23:59:59Z","text":"2024-05-01T12:00:00Z","lastAt":"soon"}""");
+		byte[] encoded = Cbor.encode(node);
+		long epoch = Instant.parse("2024-05-01T12:00:00Z").getEpochSecond();
+
+		assertThat(HexFormat.of().formatHex(encoded)).contains("c11a" + String.format("%08x", epoch)).contains("c120");
+		JsonNode decoded = Cbor.decode(encoded);
+		assertThat(decoded.get("sentAt").isIntegralNumber()).isTrue();
+		assertThat(decoded.get("sentAt").longValue()).isEqualTo(epoch);
+		assertThat(decoded.get("editedAt").doubleValue()).isEqualTo(epoch + 0.25);
+		assertThat(decoded.get("bornAt").longValue()).isEqualTo(-1);
+		assertThat(decoded.get("text").textValue()).as("only *At fields").isEqualTo("2024-05-01T12:00:00Z");
+		assertThat(decoded.get("lastAt").textValue()).as("not an instant").isEqualTo("soon");
+	}
+
+	@Test
+	void treesRoundTrip() throws Exception {
+		JsonNode node = JSON.readTree("""
+				{"id":42,"text":"héllo ✓","ok":true,"none":null,"score":-1.5,"tags":["a",[],{}]}""");
+		assertThat(Cbor.decode(Cbor.encode(node)).toString()).as("integers come back as longs").isEqualTo(node.toString());
+	}
+
+	@Test
+	void decodesIndefiniteLengthsAndOtherEncodersForms() throws Exception {
+		// {_ "a": [_ 1, 2], "s": (_ "he", "llo"), "h": 1.0 as float16, "t": 1(0) }
+		byte[] bytes = hex("bf 6161 9f 01 02 ff 6173 7f 626865 636c6c6f ff 6168 f93c00 6174 c100 ff");
+		JsonNode decoded = Cbor.decode(bytes);
+
+		assertThat(decoded.get("a")).isEqualTo(F.arrayNode().add(1L).add(2L));
+		assertThat(decoded.get("s").textValue()).isEqualTo("hello");
+		assertThat(decoded.get("h").doubleValue()).isEqualTo(1.0);
+		assertThat(decoded.get("t").longValue()).as("tag skipped").isZero();
+		assertThat(Cbor.decode(hex("5f 4101 4102 ff")).binaryValue()).isEqualTo(new byte[]{1, 2});
+	}
+
+	@Test
+	void truncatedOrTrailingInputIsRejected() throws Exception {
+		byte[] whole = Cbor.encode(JSON.readTree("""
+				{"id":4294967296,"sentAt":"2024-05-01T12:00:00.5Z","text":"hi","tags":[1,2]}"""));
+		for (int n = 0; n < whole.length; n++) {
+			byte[] prefix = Arrays.copyOf(whole, n);
+			assertThatThrownBy(() -> Cbor.decode(prefix)).as("%d of %d bytes", n, whole.length)
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+		assertThatThrownBy(() -> Cbor.decode(hex("9f 01 02"))).as("no break").isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> Cbor.decode(hex("7a ffffffff 61"))).as("length past the end")
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> Cbor.decode(hex("01 02"))).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,115 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.auth.infrastructure.security.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** User destinations over a real broker: a user with several sessions gets each message on every one. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MultiSessionDeliveryTest {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private JwtService jwt;
+
+	@Autowired
+	private SimpUserRegistry users;
+
+	private WebSocketStompClient client;
+
+	@BeforeEach
+	void setUp() {
+		client = new WebSocketStompClient(new StandardWebSocketClient());
+		client.setMessageConverter(new MappingJackson2MessageConverter());
+		client.setDefaultHeartbeat(new long[]{0, 0});
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.stop();
+	}
+
+	private StompSession connect(String user) throws Exception {
+		StompHeaders headers = new StompHeaders();
+		headers.add("Authorization", "Bearer " + jwt.issue(user, List.of("ROLE_USER"), 300));
+		return client.connectAsync("ws://localhost:" + port + "/chat/websocket", new WebSocketHttpHeaders(), headers,
+				new StompSessionHandlerAdapter() { }).get(5, TimeUnit.SECONDS);
+	}
+
+	private static BlockingQueue<Map<String, Object>> subscribe(StompSession session, String destination) {
+		BlockingQueue<Map<String, Object>> frames = new LinkedBlockingQueue<>();
+		session.subscribe(destination, new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return Map.class;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void handleFrame(StompHeaders headers, Object payload) {
+				frames.add((Map<String, Object>) payload);
+			}
+		});
+		return frames;
+	}
+
+	/** Subscriptions of different sessions are not ordered with each other; wait until the broker has all of them. */
+	private void awaitSubscribed(String user, int sessions, String destination) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (System.currentTimeMillis() < deadline) {
+			SimpUser u = users.getUser(user);
+			if (u != null && u.getSessions().size() == sessions && u.getSessions().stream()
+					.allMatch(s -> s.getSubscriptions().stream().anyMatch(sub -> sub.getDestination().equals(destination)))) {
+				return;
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError(user + " not subscribed to " + destination + " on " + sessions + " sessions");
+	}
+
+	@Test
+	void dmReachesEverySessionOfTheRecipient() throws Exception {
+		StompSession tab1 = connect("bob");
+		StompSession tab2 = connect("bob");
+		StompSession alice = connect("alice");
+
+		BlockingQueue<Map<String, Object>> opened = subscribe(alice, "/user/queue/dm/open");
+		alice.send("/app/dm/bob/open", Map.of());
+		Map<String, Object> reply = opened.poll(5, TimeUnit.SECONDS);
+		assertThat(reply).containsKey("conversationId");
+		String queue = "/user/queue/dm/" + reply.get("conversationId");
+
+		BlockingQueue<Map<String, Object>> first = subscribe(tab1, queue);
+		BlockingQueue<Map<String, Object>> second = subscribe(tab2, queue);
+		awaitSubscribed("bob", 2, queue);
+
+		alice.send("/app/dm/bob/send", Map.of("content", "hello both tabs"));
+		assertThat(first.poll(5, TimeUnit.SECONDS)).containsEntry("content", "hello both tabs");
+		assertThat(second.poll(5, TimeUnit.SECONDS)).containsEntry("content", "hello both tabs");
+	}
+}
@@ -0,0 +1,143 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundFlowControlTest {
+
+	/** Stands in for SubProtocolWebSocketHandler: records what the drain task writes. */
+	private static final class Recorder implements WebSocketHandler, MessageHandler {
+		final List<String> written = new ArrayList<>();
+
+		@Override
+		public void handleMessage(Message<?> message) {
+			written.add(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void afterConnectionEstablished(WebSocketSession session) { }
+
+		@Override
+		public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) { }
+
+		@Override
+		public void handleTransportError(WebSocketSession session, Throwable exception) { }
+
+		@Override
+		public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) { }
+
+		@Override
+		public boolean supportsPartialMessages() {
+			return false;
+		}
+	}
+
+	private final Recorder recorder = new Recorder();
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<>(); // the outbound executor, run by hand
+	private final WebSocketSession session = mock(WebSocketSession.class);
+	private final ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+
+	private OutboundFlowControl flowControl(String policy, int maxMessages) throws Exception {
+		var beans = new StaticListableBeanFactory(Map.of("handler", recorder, "executor", (Executor) tasks::add));
+		var flow = new OutboundFlowControl(new MetricsRegistry(),
+				beans.getBeanProvider(WebSocketHandler.class), beans.getBeanProvider(Executor.class),
+				true, policy, maxMessages, 1 << 20, "/topic/", 64, 10_000);
+		when(session.getId()).thenReturn("s1");
+		flow.decorate(recorder).afterConnectionEstablished(session);
+		return flow;
+	}
+
+	private Message<?> frame(String destination, String body) {
+		SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		acc.setSessionId("s1");
+		acc.setDestination(destination);
+		return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), acc.getMessageHeaders());
+	}
+
+	private void offer(OutboundFlowControl flow, String destination, String body) {
+		assertThat(flow.preSend(frame(destination, body), channel)).as("taken into the outbox").isNull();
+	}
+
+	private void drain() {
+		for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) task.run();
+	}
+
+	@Test
+	void dropOldestDropsOnlyBroadcasts() throws Exception {
+		var flow = flowControl("drop-oldest", 3);
+
+		offer(flow, "/topic/public", "p1");
+		offer(flow, "/topic/public", "p2");
+		offer(flow, "/topic/public", "p3");
+		offer(flow, "/user/bob/queue/dm/7", "dm"); // full: p1 goes
+		offer(flow, "/topic/public", "p4"); // full: p2 goes
+		drain();
+
+		assertThat(recorder.written).containsExactly("p3", "dm", "p4");
+		verify(session, never()).close(any());
+	}
+
+	@Test
+	void dropOldestClosesWhenOnlyUndroppableFramesAreLeft() throws Exception {
+		var flow = flowControl("drop-oldest", 2);
+
+		offer(flow, "/user/bob/queue/dm/7", "dm1");
+		offer(flow, "/user/bob/queue/dm/7", "dm2");
+		offer(flow, "/user/bob/queue/dm/7", "dm3");
+		drain();
+
+		verify(session).close(CloseStatus.POLICY_VIOLATION.withReason("slow consumer"));
+		assertThat(recorder.written).isEmpty();
+	}
+
+	@Test
+	void coalesceKeepsTheNewestPerDestination() throws Exception {
+		var flow = flowControl("coalesce", 2);
+
+		offer(flow, "/topic/room/1", "a1");
+		offer(flow, "/topic/room/2", "b1");
+		offer(flow, "/topic/room/1", "a2"); // supersedes a1
+		drain();
+
+		assertThat(recorder.written).containsExactly("b1", "a2");
+	}
+
+	@Test
+	void disconnectPolicyClosesInsteadOfDropping() throws Exception {
+		var flow = flowControl("disconnect", 2);
+
+		offer(flow, "/topic/public", "p1");
+		offer(flow, "/topic/public", "p2");
+		offer(flow, "/topic/public", "p3");
+		offer(flow, "/topic/public", "p4"); // closed: swallowed
+		drain();
+
+		verify(session).close(CloseStatus.POLICY_VIOLATION.withReason("slow consumer"));
+		assertThat(recorder.written).isEmpty();
+	}
+}
@@ -0,0 +1,134 @@
+package com.message_app.demo.realtime;
+
+import com.message_app.demo.MessengerAppApplication;
+import com.message_app.demo.auth.infrastructure.security.JwtService;
+import com.message_app.demo.chat.application.DmService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application nodes in relay mode sharing one STOMP broker and one database: a DM sent on one
+ * node reaches the recipient connected to the other, and /topic/public fans out across both.
+ * Runs the blocking socket transport against {@link StompTestBroker}; the Reactor Netty transport
+ * speaks the same frames to the same relay handler.
+ */
+class RelayTwoNodeTest {
+
+	@TempDir
+	static Path dir;
+
+	private static StompTestBroker broker;
+	private static ConfigurableApplicationContext nodeA;
+	private static ConfigurableApplicationContext nodeB;
+	private static WebSocketStompClient client;
+
+	@BeforeAll
+	static void startNodes() throws Exception {
+		broker = new StompTestBroker();
+		String db = "jdbc:h2:mem:relay-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+		nodeA = node("a", db);
+		nodeB = node("b", db);
+		client = new WebSocketStompClient(new StandardWebSocketClient());
+		client.setMessageConverter(new MappingJackson2MessageConverter());
+		client.setDefaultHeartbeat(new long[]{0, 0});
+	}
+
+	@AfterAll
+	static void stopNodes() throws Exception {
+		if (client != null) client.stop();
+		if (nodeA != null) nodeA.close();
+		if (nodeB != null) nodeB.close();
+		if (broker != null) broker.close();
+	}
+
+	/** Command-line arguments, so they win over application.properties. */
+	private static ConfigurableApplicationContext node(String name, String db) {
+		return new SpringApplicationBuilder(MessengerAppApplication.class).run(
+				"--server.port=0",
+				"--chat.broker.mode=relay",
+				"--chat.broker.relay.transport=socket",
+				"--chat.broker.relay.port=" + broker.port(),
+				"--chat.presence.node-id=" + name,
+				"--spring.datasource.url=" + db,
+				"--spring.jpa.hibernate.ddl-auto=update",
+				"--chat.audit.dir=" + dir.resolve("audit-" + name),
+				"--chat.search.enabled=false");
+	}
+
+	private static StompSession connect(ConfigurableApplicationContext node, String user) throws Exception {
+		String token = node.getBean(JwtService.class).issue(user, List.of("ROLE_USER"), 300);
+		StompHeaders headers = new StompHeaders();
+		headers.add("Authorization", "Bearer " + token);
+		int port = node.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+		return client.connectAsync("ws://localhost:" + port + "/ws", new WebSocketHttpHeaders(), headers,
+				new StompSessionHandlerAdapter() { }).get(5, TimeUnit.SECONDS);
+	}
+
+	private static BlockingQueue<Map<String, Object>> subscribe(StompSession session, String destination) {
+		BlockingQueue<Map<String, Object>> frames = new LinkedBlockingQueue<>();
+		session.subscribe(destination, new StompFrameHandler() {
+			@Override
+			public Type getPayloadType(StompHeaders headers) {
+				return Map.class;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void handleFrame(StompHeaders headers, Object payload) {
+				frames.add((Map<String, Object>) payload);
+			}
+		});
+		return frames;
+	}
+
+	/** SUBSCRIBEs reach the broker asynchronously, through each node's relay connection. */
+	private static void awaitBrokerSubscriptions(Predicate<String> destination, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (broker.subscriptions(destination) < count) {
+			if (System.currentTimeMillis() > deadline) throw new AssertionError("broker never saw " + count + " subscriptions");
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	void dmAndPublicMessagesCrossNodes() throws Exception {
+		Long dm = nodeA.getBean(DmService.class).getOrCreateDmId("alice", "bob");
+		StompSession alice = connect(nodeA, "alice");
+		StompSession bob = connect(nodeB, "bob");
+
+		BlockingQueue<Map<String, Object>> bobDm = subscribe(bob, "/user/queue/dm/" + dm);
+		BlockingQueue<Map<String, Object>> alicePublic = subscribe(alice, "/topic/public");
+		awaitBrokerSubscriptions(d -> d.startsWith("/queue/dm/" + dm + "-user"), 1);
+		awaitBrokerSubscriptions("/topic/public"::equals, 1);
+
+		alice.send("/app/dm/bob/send", Map.of("content", "from node a"));
+		assertThat(bobDm.poll(10, TimeUnit.SECONDS)).containsEntry("content", "from node a");
+
+		bob.send("/app/message", Map.of("content", "from node b"));
+		assertThat(alicePublic.poll(10, TimeUnit.SECONDS)).containsEntry("content", "from node b");
+	}
+}
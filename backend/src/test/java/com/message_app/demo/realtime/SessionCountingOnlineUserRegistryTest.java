@@ -0,0 +1,87 @@
+package com.message_app.demo.realtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionCountingOnlineUserRegistryTest {
+
+	private static SessionCountingOnlineUserRegistry node(PresenceBus bus, String id, long nodeTimeoutMs) {
+		return new SessionCountingOnlineUserRegistry(bus, id, nodeTimeoutMs, 86_400_000);
+	}
+
+	@Test
+	void closingOneTabKeepsUserOnline() {
+		var registry = node(new InProcessPresenceBus(), "a", 30_000);
+
+		registry.sessionOpened("alice", "s1");
+		registry.sessionOpened("alice", "s2");
+		registry.sessionClosed("alice", "s1");
+		registry.sessionClosed("alice", "s1"); // duplicate disconnect event
+
+		assertThat(registry.isOnline("alice")).isTrue();
+		assertThat(registry.sessionCount("alice")).isEqualTo(1);
+
+		registry.sessionClosed("alice", "s2");
+		assertThat(registry.isOnline("alice")).isFalse();
+		assertThat(registry.lastSeen("alice")).isNotNull();
+	}
+
+	@Test
+	void sessionsOnOtherNodesCount() {
+		var bus = new InProcessPresenceBus();
+		var a = node(bus, "a", 30_000);
+		var b = node(bus, "b", 30_000);
+
+		a.sessionOpened("alice", "s1");
+		b.sessionOpened("alice", "s1"); // same session id on another node is another session
+
+		assertThat(a.sessionCount("alice")).isEqualTo(2);
+		assertThat(b.sessionCount("alice")).isEqualTo(2);
+
+		a.sessionClosed("alice", "s1");
+		assertThat(b.isOnline("alice")).isTrue();
+
+		b.stop(); // clean shutdown drops b's sessions everywhere
+		assertThat(a.isOnline("alice")).isFalse();
+	}
+
+	@Test
+	void silentNodeExpires() throws InterruptedException {
+		var bus = new InProcessPresenceBus();
+		var a = node(bus, "a", 1);
+		var b = node(bus, "b", 30_000);
+
+		b.sessionOpened("bob", "s1");
+		assertThat(a.isOnline("bob")).isTrue();
+
+		Thread.sleep(5);
+		a.heartbeat(); // b has not been heard from for longer than the timeout
+		assertThat(a.isOnline("bob")).isFalse();
+	}
+
+	@Test
+	void reconnectDuringExpiryStaysOnline() throws InterruptedException {
+		// Retention below zero: every heartbeat forgets users without sessions
+		var registry = new SessionCountingOnlineUserRegistry(new InProcessPresenceBus(), "a", 30_000, -1);
+		var stop = new AtomicBoolean();
+		var expirer = new Thread(() -> {
+			while (!stop.get()) registry.heartbeat();
+		});
+		expirer.start();
+		int offline = 0; // rounds where the open session was not counted
+		try {
+			for (int i = 0; i < 100_000; i++) {
+				registry.sessionOpened("alice", "s" + i);
+				if (registry.sessionCount("alice") != 1) offline++;
+				registry.sessionClosed("alice", "s" + i);
+			}
+		} finally {
+			stop.set(true);
+			expirer.join();
+		}
+		assertThat(offline).isZero();
+	}
+}
@@ -0,0 +1,123 @@
+package com.message_app.demo.realtime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionOrderedExecutorTest {
+
+	/** What the channel submits: the task carries its message, and so its session id. */
+	private record Task(Message<?> message, Runnable body) implements MessageHandlingRunnable {
+		@Override
+		public Message<?> getMessage() {
+			return message;
+		}
+
+		@Override
+		public MessageHandler getMessageHandler() {
+			return m -> { };
+		}
+
+		@Override
+		public void run() {
+			body.run();
+		}
+	}
+
+	private static Message<?> frame(String sessionId) {
+		SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		acc.setSessionId(sessionId);
+		return MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+	}
+
+	private static void spin(int n) {
+		for (int i = 0; i < n; i++) Thread.onSpinWait();
+	}
+
+	@Test
+	void oneSessionRunsOneTaskAtATimeInSubmissionOrder() throws InterruptedException {
+		int submitters = 4;
+		int each = 50_000;
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		var executor = new SessionOrderedExecutor(pool);
+		Message<?> message = frame("s1");
+
+		var running = new AtomicInteger();
+		var overlaps = new AtomicInteger();
+		var outOfOrder = new AtomicInteger();
+		int[] next = new int[submitters]; // only touched by the task running for s1
+		var done = new CountDownLatch(submitters * each);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int s = 0; s < submitters; s++) {
+			int submitter = s;
+			Thread t = new Thread(() -> {
+				for (int i = 0; i < each; i++) {
+					int seq = i;
+					executor.execute(new Task(message, () -> {
+						if (running.incrementAndGet() != 1) overlaps.incrementAndGet();
+						if (next[submitter] != seq) outOfOrder.incrementAndGet();
+						next[submitter] = seq + 1;
+						spin(20); // long enough for another drain to overlap, if one could
+						running.decrementAndGet();
+						done.countDown();
+					}));
+					spin(20); // let the queue run dry now and then: the drain's exit is where it went wrong
+				}
+			});
+			t.start();
+			threads.add(t);
+		}
+		for (Thread t : threads) t.join();
+
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		assertThat(overlaps.get()).as("tasks of one session running in parallel").isZero();
+		assertThat(outOfOrder.get()).as("tasks run out of submission order").isZero();
+		pool.shutdown();
+		assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.activeSessions()).isZero();
+		assertThat(executor.queued()).isZero();
+	}
+
+	@Test
+	void sessionsRunInParallelAndTasksWithoutOneRunDirectly() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		var executor = new SessionOrderedExecutor(pool);
+		var bothStarted = new CountDownLatch(2);
+		var release = new CountDownLatch(1);
+		Runnable blocking = () -> {
+			bothStarted.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+
+		executor.execute(new Task(frame("a"), blocking));
+		executor.execute(new Task(frame("b"), blocking));
+		assertThat(bothStarted.await(5, TimeUnit.SECONDS)).as("a and b at the same time").isTrue();
+		assertThat(executor.activeSessions()).isEqualTo(2);
+
+		var plain = new CountDownLatch(1);
+		release.countDown();
+		executor.execute(plain::countDown);
+		assertThat(plain.await(5, TimeUnit.SECONDS)).isTrue();
+		pool.shutdown();
+		assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+	}
+}
@@ -0,0 +1,177 @@
+package com.message_app.demo.realtime;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * The smallest STOMP broker the relay can run against: CONNECT, SUBSCRIBE/UNSUBSCRIBE, SEND fanned
+ * out to subscriptions with exactly that destination, RECEIPT, DISCONNECT. No acks, no
+ * heart-beats, no wildcards, no durable queues; test use only.
+ */
+final class StompTestBroker implements AutoCloseable {
+
+	private record Subscription(Connection connection, String id, String destination) { }
+
+	private final ServerSocket server;
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+	private final AtomicLong messageIds = new AtomicLong();
+
+	StompTestBroker() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "stomp-test-broker");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	int port() {
+		return server.getLocalPort();
+	}
+
+	/** Subscriptions whose destination matches, across all connections. */
+	long subscriptions(Predicate<String> destination) {
+		return subscriptions.stream().filter(s -> destination.test(s.destination())).count();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connections.forEach(Connection::close);
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Connection c = new Connection(server.accept());
+				connections.add(c);
+				Thread reader = new Thread(c::read, "stomp-test-broker-conn");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				return; // closed
+			}
+		}
+	}
+
+	private final class Connection {
+		private final Socket socket;
+		private final OutputStream out;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = socket.getOutputStream();
+		}
+
+		void read() {
+			try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+				for (;;) {
+					int b;
+					do {
+						b = in.read(); // newlines between frames are heart-beats
+					} while (b == '\n' || b == '\r');
+					if (b < 0) return;
+					String command = (char) b + line(in);
+					Map<String, String> headers = new LinkedHashMap<>();
+					for (String h = line(in); !h.isEmpty(); h = line(in)) {
+						int colon = h.indexOf(':');
+						if (colon > 0) headers.putIfAbsent(h.substring(0, colon), h.substring(colon + 1));
+					}
+					byte[] body = body(in, headers.get("content-length"));
+					if (!handle(command, headers, body)) return;
+				}
+			} catch (IOException e) {
+				// connection gone
+			} finally {
+				close();
+			}
+		}
+
+		private boolean handle(String command, Map<String, String> headers, byte[] body) throws IOException {
+			switch (command) {
+				case "CONNECT", "STOMP" -> send("CONNECTED", Map.of("version", "1.2", "heart-beat", "0,0"), new byte[0]);
+				case "SUBSCRIBE" -> subscriptions.add(new Subscription(this, headers.get("id"), headers.get("destination")));
+				case "UNSUBSCRIBE" -> subscriptions.removeIf(s -> s.connection() == this && s.id().equals(headers.get("id")));
+				case "SEND" -> {
+					for (Subscription s : subscriptions) {
+						if (!s.destination().equals(headers.get("destination"))) continue;
+						Map<String, String> message = new LinkedHashMap<>(headers);
+						message.remove("receipt");
+						message.put("subscription", s.id());
+						message.put("message-id", Long.toString(messageIds.incrementAndGet()));
+						s.connection().send("MESSAGE", message, body);
+					}
+				}
+				case "DISCONNECT" -> {
+					receipt(headers);
+					return false;
+				}
+				default -> { }
+			}
+			receipt(headers);
+			return true;
+		}
+
+		private void receipt(Map<String, String> headers) throws IOException {
+			String receipt = headers.get("receipt");
+			if (receipt != null) send("RECEIPT", Map.of("receipt-id", receipt), new byte[0]);
+		}
+
+		void send(String command, Map<String, String> headers, byte[] body) throws IOException {
+			StringBuilder frame = new StringBuilder(command).append('\n');
+			headers.forEach((k, v) -> frame.append(k).append(':').append(v).append('\n'));
+			frame.append('\n');
+			synchronized (out) {
+				out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+				out.write(body);
+				out.write(0);
+				out.flush();
+			}
+		}
+
+		void close() {
+			connections.remove(this);
+			subscriptions.removeIf(s -> s.connection() == this);
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// already closed
+			}
+		}
+
+		private static String line(InputStream in) throws IOException {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			for (int b = in.read(); b != '\n'; b = in.read()) {
+				if (b < 0) throw new IOException("Connection closed mid-frame");
+				if (b != '\r') buf.write(b);
+			}
+			return buf.toString(StandardCharsets.UTF_8);
+		}
+
+		private static byte[] body(InputStream in, String contentLength) throws IOException {
+			if (contentLength != null) {
+				byte[] body = in.readNBytes(Integer.parseInt(contentLength.trim()));
+				if (in.read() != 0) throw new IOException("Frame not terminated by NUL");
+				return body;
+			}
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			for (int b = in.read(); b != 0; b = in.read()) {
+				if (b < 0) throw new IOException("Connection closed mid-frame");
+				buf.write(b);
+			}
+			return buf.toByteArray();
+		}
+	}
+}
@@ -48,6 +48,7 @@ export default function ChatApp() {
   const dmSubsRef = useRef({});
   const messageScrollRef = useRef(null);
   const dmRecipientMap = useRef({});
+  const lastPublicIdRef = useRef(null); // newest public message seen, for replay after a reconnect
 
   // Inputs
   const [inputMessage, setInputMessage] = useState("");
@@ -104,7 +105,45 @@ export default function ChatApp() {
     selectedDmId,
   ]);
 
-  const appendGlobal = (msg) => setPublicChatMessages((prev) => [...prev, msg]);
+  const appendGlobal = (msg) => mergeGlobal([msg]);
+
+  // Live messages and replayed history can overlap around a reconnect: de-duplicate by id, keep (sentAt, id) order
+  const mergeGlobal = (msgs) => {
+    const last = msgs.filter((m) => m.id != null).at(-1);
+    if (last) lastPublicIdRef.current = last.id;
+    setPublicChatMessages((prev) => {
+      const seen = new Set(prev.map((m) => m.id).filter((id) => id != null));
+      const added = msgs.filter((m) => m.id == null || !seen.has(m.id));
+      if (added.length === 0) return prev;
+      const next = [...prev, ...added];
+      if (added.length > 1 || prev.length > 0) {
+        const at = (m) => (m.sentAt ? Date.parse(m.sentAt) : 0);
+        next.sort((a, b) => at(a) - at(b) || (a.id ?? 0) - (b.id ?? 0));
+      }
+      return next;
+    });
+  };
+
+  // First connect: newest page. Reconnect: everything after the last message we saw, page by page.
+  async function loadPublicHistory() {
+    const headers = { Authorization: `Bearer ${getToken()}` };
+    try {
+      let after = lastPublicIdRef.current;
+      if (after == null) {
+        mergeGlobal(await fetch(`/api/public/messages?limit=50`, { headers }).then((r) => r.json()));
+        return;
+      }
+      for (let pages = 0; after && pages < 20; pages++) {
+        const r = await fetch(`/api/public/history?after=${encodeURIComponent(after)}&limit=200`, { headers });
+        if (!r.ok) return;
+        const page = await r.json();
+        mergeGlobal(page.messages);
+        after = page.nextCursor;
+      }
+    } catch (e) {
+      log.error("Public history load failed", e);
+    }
+  }
 
   const appendDm = (conversationId, msg) => {
     setDmMessages((prev) => {
@@ -139,13 +178,31 @@ export default function ChatApp() {
       setStatus("disconnected");
       return;
     }
-    const socket = new SockJS("/chat");
+    // Plain WebSocket on /ws; SockJS on /chat only if a WebSocket never opened (proxy, old browser).
+    // A new socket per attempt: the factory is called again on every reconnect.
+    const wsUrl = `${window.location.protocol === "https:" ? "wss" : "ws"}://${window.location.host}/ws`;
+    let everOpened = false;
+    let useSockJs = typeof WebSocket === "undefined";
     const client = new StompClient({
-      webSocketFactory: () => socket,
+      webSocketFactory: () => {
+        if (useSockJs) return new SockJS("/chat");
+        const ws = new WebSocket(wsUrl, ["v12.stomp", "v11.stomp", "v10.stomp"]);
+        ws.addEventListener("open", () => (everOpened = true));
+        return ws;
+      },
       reconnectDelay: 5000,
+      // Server offers 10s both ways (chat.broker.heartbeat.*); a silent side is dropped after ~3 intervals
+      heartbeatIncoming: 10000,
+      heartbeatOutgoing: 10000,
       connectHeaders: { Authorization: `Bearer ${token}` },
       onStompError: (f) => log.error("STOMP ERROR", f),
-      onWebSocketClose: () => setStatus("disconnected"),
+      onWebSocketClose: () => {
+        if (!everOpened && !useSockJs) {
+          log.warn("WebSocket unavailable, falling back to SockJS");
+          useSockJs = true;
+        }
+        setStatus("disconnected");
+      },
     });
 
     createStompLogger(client, log);
@@ -160,15 +217,62 @@ export default function ChatApp() {
           appendGlobal({ content: m.body });
         }
       });
+      loadPublicHistory(); // after subscribing, so nothing falls between history and live messages
       // Subscribe Notify
       client.subscribe("/user/queue/dm/notify", (m) => {
         try {
           const n = JSON.parse(m.body);
-          setNotifications((prev) => [...prev, n]);
+          // One entry per conversation: a coalesced notifier replaces the previous one
+          setNotifications((prev) => [
+            ...prev.filter((x) => x.conversationId !== n.conversationId),
+            n,
+          ]);
         } catch (e) {
           log.error("Notify parse fail", e);
         }
       });
+      // Missed DMs: appended to open conversations, the rest become notifications
+      client.subscribe("/user/queue/dm/catchup", (m) => {
+        try {
+          const batch = JSON.parse(m.body);
+          const missed = new Map();
+          for (const msg of batch.messages) {
+            if (dmSubsRef.current[msg.conversationId]) {
+              appendDm(msg.conversationId, msg);
+            } else {
+              const n = missed.get(msg.conversationId);
+              missed.set(msg.conversationId, {
+                conversationId: msg.conversationId,
+                from: msg.sender,
+                preview: msg.content,
+                sentAt: msg.sentAt,
+                count: (n?.count ?? 0) + 1,
+              });
+            }
+          }
+          if (missed.size > 0) {
+            setNotifications((prev) => [
+              ...prev.filter((x) => !missed.has(x.conversationId)),
+              ...missed.values(),
+            ]);
+          }
+          if (batch.last && batch.more) {
+            client.publish({ destination: "/app/dm/catchup", body: "{}" });
+          }
+        } catch (e) {
+          log.error("Catch-up parse fail", e);
+        }
+      });
+      // Frames the server refused (RATE_LIMITED, OVERLOADED); the refused message was not sent
+      client.subscribe("/user/queue/errors", (m) => {
+        try {
+          const err = JSON.parse(m.body);
+          setLatestError(`${err.errorCode}: slow down, retry in ${err.retryAfterMs} ms`);
+        } catch (e) {
+          log.error("Error frame parse fail", e);
+        }
+      });
+      client.publish({ destination: "/app/dm/catchup", body: "{}" }); // after subscribing
     };
     client.activate();
     clientRef.current = client;
@@ -11,6 +11,11 @@ export default defineConfig({
     proxy: {
       '/api': 'http://localhost:8080',  
       "/auth": "http://localhost:8080",
+      "/ws": {
+        target: 'http://127.0.0.1:8080',
+        ws: true,
+        changeOrigin: true,
+      },
       "/chat": {
         //target: "http://localhost:8080", // Spring Boot backend
         target: 'http://127.0.0.1:8080',